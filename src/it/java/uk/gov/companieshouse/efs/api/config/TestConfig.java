@@ -8,7 +8,7 @@ import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
 import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.s3.S3Client;
-import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.SqsAsyncClient;
 
 import java.net.URI;
 
@@ -17,11 +17,11 @@ public class TestConfig {
 
     @Bean("testSqsClient")
     @Primary
-    SqsClient sqsClient(@Value("${sqs.endpoint.override}") String sqsEndpointOverride,
-                        @Value("${aws.access.key}") String awsAccessKey,
-                        @Value("${aws.secret.key}") String awsSecretKey,
-                        @Value("${aws.region}") String awsRegion) {
-        return SqsClient.builder()
+    SqsAsyncClient sqsClient(@Value("${sqs.endpoint.override}") String sqsEndpointOverride,
+                             @Value("${aws.access.key}") String awsAccessKey,
+                             @Value("${aws.secret.key}") String awsSecretKey,
+                             @Value("${aws.region}") String awsRegion) {
+        return SqsAsyncClient.builder()
                 .endpointOverride(URI.create(sqsEndpointOverride))
                 .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create(awsAccessKey, awsSecretKey)))
                 .region(Region.of(awsRegion))
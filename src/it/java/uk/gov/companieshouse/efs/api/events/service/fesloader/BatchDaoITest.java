@@ -3,6 +3,7 @@ package uk.gov.companieshouse.efs.api.events.service.fesloader;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import java.time.LocalDateTime;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
@@ -60,7 +61,7 @@ class BatchDaoITest {
             END fes_common_pkg;
         """);
 
-        batchDao = new BatchDao(jdbcTemplate);
+        batchDao = new BatchDao(jdbcTemplate, new SequenceAllocator(jdbcTemplate, new SimpleMeterRegistry(), 20));
     }
 
     @Test
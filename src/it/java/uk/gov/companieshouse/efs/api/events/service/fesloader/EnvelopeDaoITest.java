@@ -3,6 +3,7 @@ package uk.gov.companieshouse.efs.api.events.service.fesloader;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInstance;
@@ -38,7 +39,7 @@ class EnvelopeDaoITest {
 
         jdbcTemplate.execute("CREATE SEQUENCE ENVELOPE_ID_SEQ START WITH 1 INCREMENT BY 1");
 
-        envelopeDao = new EnvelopeDao(jdbcTemplate);
+        envelopeDao = new EnvelopeDao(jdbcTemplate, new SequenceAllocator(jdbcTemplate, new SimpleMeterRegistry(), 20));
     }
 
     @Test
@@ -3,6 +3,7 @@ package uk.gov.companieshouse.efs.api.events.service.fesloader;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
 
+import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
@@ -52,7 +53,7 @@ class FormDaoITest {
     }
 
     @Test
-    void insertForm_insertsRow() {
+    void insertForms_insertsRow() {
         final var model = FormModel.builder()
             .withBarcode("123456")
             .withCompanyNumber("COMP123")
@@ -66,7 +67,7 @@ class FormDaoITest {
             .withSameDayService(false)
             .build();
 
-        formDao.insertForm(model);
+        formDao.insertForms(List.of(model));
 
         final var verifyQuery = """
             SELECT FORM_BARCODE,
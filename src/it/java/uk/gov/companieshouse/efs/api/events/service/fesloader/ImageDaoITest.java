@@ -3,12 +3,16 @@ package uk.gov.companieshouse.efs.api.events.service.fesloader;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.ByteArrayInputStream;
+import java.util.List;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInstance;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.datasource.DriverManagerDataSource;
 import org.testcontainers.junit.jupiter.Testcontainers;
+import uk.gov.companieshouse.efs.api.events.service.model.TiffStream;
 import uk.gov.companieshouse.efs.api.util.OracleTestContainer;
 
 @Testcontainers
@@ -38,7 +42,7 @@ class ImageDaoITest {
 
         jdbcTemplate.execute("CREATE SEQUENCE IMAGE_ID_SEQ START WITH 1 INCREMENT BY 1");
 
-        imageDao = new ImageDao(jdbcTemplate);
+        imageDao = new ImageDao(jdbcTemplate, new SequenceAllocator(jdbcTemplate, new SimpleMeterRegistry(), 20));
     }
 
     @Test
@@ -47,10 +51,11 @@ class ImageDaoITest {
     }
 
     @Test
-    void insertImage_insertsRow() {
+    void insertImages_insertsRow() {
         final var payload = "test-image".getBytes();
 
-        imageDao.insertImage(400L, payload);
+        imageDao.insertImages(List.of(400L),
+            List.of(new TiffStream(new ByteArrayInputStream(payload), payload.length)));
 
         final var verifyQuery = """
             SELECT IMAGE_ID,
@@ -0,0 +1,235 @@
+package uk.gov.companieshouse.efs.api.client;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import tools.jackson.core.JacksonException;
+import tools.jackson.databind.ObjectMapper;
+import uk.gov.companieshouse.api.error.ApiError;
+import uk.gov.companieshouse.api.model.ApiResponse;
+import uk.gov.companieshouse.efs.api.client.exception.EmailClientException;
+import uk.gov.companieshouse.efs.api.email.model.EmailDocument;
+import uk.gov.companieshouse.logging.Logger;
+import uk.gov.companieshouse.logging.LoggerFactory;
+
+/**
+ * Sends email documents to the CHS Kafka API without blocking the caller, over a shared HTTP client that reuses its
+ * connections.
+ * <p>
+ * At most the configured number of requests are in flight at once; further requests wait in turn without holding a
+ * thread. Each request must be answered within the request timeout. The errors in the body of an answer that is not
+ * successful are returned in the response. With the client disabled, emails are sent by {@link EmailClient} instead.
+ * </p>
+ */
+@Component
+public class AsyncEmailClient {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger("efs-submission-api");
+    private static final String SEND_EMAIL_PATH = "/send-email";
+    private static final String REQUEST_ID_HEADER = "X-Request-Id";
+
+    // the body of an answer that is not successful
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    private record ErrorBody(List<ErrorEntry> errors) {
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    private record ErrorEntry(String error, String location, @JsonProperty("location_type") String locationType,
+                              String type) {
+    }
+
+    private final HttpClient httpClient;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    private final boolean enabled;
+    private final URI sendEmailUri;
+    private final String authorization;
+    private final Duration requestTimeout;
+    private final Semaphore inFlight;
+    private final Queue<Runnable> waiting = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Constructor.
+     *
+     * @param httpClient       dependency
+     * @param objectMapper     dependency
+     * @param meterRegistry    dependency
+     * @param enabled          whether emails are sent by this client rather than by {@link EmailClient}
+     * @param apiKey           the CHS Kafka API key
+     * @param apiUrl           the CHS Kafka API base URL
+     * @param requestTimeoutMs the milliseconds allowed for the API to answer a request
+     * @param maxInFlight      the most requests in flight at once
+     */
+    public AsyncEmailClient(@Qualifier("chsKafkaApiHttpClient") final HttpClient httpClient,
+        final ObjectMapper objectMapper, final MeterRegistry meterRegistry,
+        @Value("${email.client.async.enabled:false}") final boolean enabled,
+        @Value("${chs.kafka.api.key}") final String apiKey, @Value("${chs.kafka.api.url}") final String apiUrl,
+        @Value("${email.client.request.timeout.ms:10000}") final long requestTimeoutMs,
+        @Value("${email.client.max-in-flight:16}") final int maxInFlight) {
+        if (requestTimeoutMs < 1 || maxInFlight < 1) {
+            throw new IllegalArgumentException("Email client request timeout and in-flight limit must be at least 1");
+        }
+        this.httpClient = httpClient;
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.sendEmailUri = URI.create(apiUrl + SEND_EMAIL_PATH);
+        // the API key is the basic auth user name, with no password
+        this.authorization = "Basic " + Base64.getEncoder().encodeToString(
+            (apiKey + ":").getBytes(StandardCharsets.UTF_8));
+        this.requestTimeout = Duration.ofMillis(requestTimeoutMs);
+        this.inFlight = new Semaphore(maxInFlight);
+        Gauge.builder("efs.email.client.in-flight", inFlight, permits -> maxInFlight - permits.availablePermits())
+            .description("Email requests sent to the CHS Kafka API and not yet answered")
+            .register(meterRegistry);
+        Gauge.builder("efs.email.client.waiting", waiting, Queue::size)
+            .description("Email requests waiting for the in-flight limit")
+            .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Send the email document, returning without waiting for the API.
+     *
+     * @param document the email document
+     * @param <T>      the email data type
+     * @return the API response, or failing with {@link EmailClientException} if the email could not be sent
+     */
+    public <T> CompletableFuture<ApiResponse<Void>> sendEmail(final EmailDocument<T> document) {
+        final HttpRequest request;
+        try {
+            request = buildRequest(document);
+        } catch (final JacksonException ex) {
+            LOGGER.error("Error creating payload", ex);
+            return CompletableFuture.failedFuture(
+                new EmailClientException("Error creating payload for CHS Kafka API: ", ex));
+        }
+
+        final CompletableFuture<ApiResponse<Void>> result = new CompletableFuture<>();
+        waiting.add(() -> send(request, document.getMessageType(), result));
+        startWaiting();
+        return result;
+    }
+
+    private <T> HttpRequest buildRequest(final EmailDocument<T> document) throws JacksonException {
+        final Map<String, String> sendEmail = new LinkedHashMap<>();
+        sendEmail.put("app_id", document.getAppId());
+        sendEmail.put("message_id", document.getMessageId());
+        sendEmail.put("message_type", document.getMessageType());
+        sendEmail.put("json_data", objectMapper.writeValueAsString(document.getData()));
+        sendEmail.put("email_address", document.getEmailAddress());
+
+        // read on the caller's thread, where the servlet request is bound
+        final String requestId = EmailClient.getRequestId().orElse(UUID.randomUUID().toString());
+        return HttpRequest.newBuilder(sendEmailUri)
+            .timeout(requestTimeout)
+            .header(HttpHeaders.AUTHORIZATION, authorization)
+            .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+            .header(REQUEST_ID_HEADER, requestId)
+            .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(sendEmail)))
+            .build();
+    }
+
+    // starts waiting requests while there is room in flight; a request finishing calls this again, so none is left
+    // waiting once there is room
+    private void startWaiting() {
+        while (!waiting.isEmpty() && inFlight.tryAcquire()) {
+            final Runnable next = waiting.poll();
+            if (next == null) {
+                inFlight.release();
+            } else {
+                next.run();
+            }
+        }
+    }
+
+    private void send(final HttpRequest request, final String messageType,
+        final CompletableFuture<ApiResponse<Void>> result) {
+        final Timer.Sample sample = Timer.start(meterRegistry);
+        final CompletableFuture<HttpResponse<String>> response;
+        try {
+            response = httpClient.sendAsync(request, AsyncEmailClient::errorBody);
+        } catch (final RuntimeException ex) {
+            finish(sample, "failure");
+            result.completeExceptionally(new EmailClientException("Error sending payload to CHS Kafka API: ", ex));
+            return;
+        }
+        response.whenComplete((answer, failure) -> {
+            finish(sample, failure == null ? "success" : "failure");
+            if (failure == null) {
+                LOGGER.info("Posted '%s' email to CHS Kafka API (RequestId: %s): (Response %d)".formatted(messageType,
+                    request.headers().firstValue(REQUEST_ID_HEADER).orElse(""), answer.statusCode()));
+                result.complete(new ApiResponse<Void>(answer.statusCode(), new HashMap<>(answer.headers().map()),
+                    errors(answer)));
+            } else {
+                final Throwable cause = failure instanceof CompletionException && failure.getCause() != null
+                    ? failure.getCause() : failure;
+                LOGGER.error("Error sending email", cause);
+                result.completeExceptionally(new EmailClientException(cause instanceof HttpTimeoutException
+                    ? "Timed out sending payload to CHS Kafka API: "
+                    : "Error sending payload to CHS Kafka API: ", cause));
+            }
+        });
+    }
+
+    // keeps the body only of an answer that is not successful, where it holds the errors
+    private static HttpResponse.BodySubscriber<String> errorBody(final HttpResponse.ResponseInfo info) {
+        return info.statusCode() / 100 == 2
+            ? HttpResponse.BodySubscribers.replacing(null)
+            : HttpResponse.BodySubscribers.ofString(StandardCharsets.UTF_8);
+    }
+
+    private List<ApiError> errors(final HttpResponse<String> answer) {
+        final String body = answer.body();
+        if (body == null || body.isBlank()) {
+            return List.of();
+        }
+        try {
+            final ErrorBody errorBody = objectMapper.readValue(body, ErrorBody.class);
+            return errorBody.errors() == null ? List.of() : errorBody.errors().stream()
+                .map(error -> new ApiError(error.error(), error.location(), error.locationType(), error.type()))
+                .toList();
+        } catch (final JacksonException ex) {
+            LOGGER.error("Unreadable errors from CHS Kafka API (Response %d): %s".formatted(answer.statusCode(),
+                body));
+            return List.of();
+        }
+    }
+
+    private void finish(final Timer.Sample sample, final String outcome) {
+        sample.stop(Timer.builder("efs.email.client.requests")
+            .description("Email requests sent to the CHS Kafka API")
+            .tag("outcome", outcome)
+            .register(meterRegistry));
+        inFlight.release();
+        startWaiting();
+    }
+}
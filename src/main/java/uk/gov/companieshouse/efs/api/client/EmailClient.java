@@ -66,7 +66,7 @@ public class EmailClient {
         }
     }
 
-    private Optional<String> getRequestId() {
+    static Optional<String> getRequestId() {
         ServletRequestAttributes attributes = (ServletRequestAttributes) RequestContextHolder.getRequestAttributes();
         if(attributes == null) {
             return Optional.empty();
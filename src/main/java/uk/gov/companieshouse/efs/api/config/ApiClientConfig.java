@@ -1,5 +1,6 @@
 package uk.gov.companieshouse.efs.api.config;
 
+import java.util.function.Function;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -12,9 +13,19 @@ public class ApiClientConfig {
     @Value( "${chs.internal.api.key}" )
     private String internalApiKey;
 
+    /**
+     * Returns a factory that creates a file transfer client bound to the given base path.
+     * The base path is set before the client is returned and must not be changed afterwards.
+     *
+     * @return factory of {@link InternalFileTransferClient} keyed by base path
+     */
     @Bean
-    public InternalFileTransferClient getInternalFileClient(){
-        return new InternalFileTransferClient( new FileTransferHttpClient( internalApiKey ) );
+    public Function<String, InternalFileTransferClient> getInternalFileClientFactory(){
+        return basePath -> {
+            final var client = new InternalFileTransferClient( new FileTransferHttpClient( internalApiKey ) );
+            client.setBasePath( basePath );
+            return client;
+        };
     }
 
 }
@@ -1,9 +1,11 @@
 package uk.gov.companieshouse.efs.api.config;
 
+import java.net.http.HttpClient;
 import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
 import java.security.SecureRandom;
 import java.time.Clock;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.UUID;
@@ -25,7 +27,7 @@ import org.springframework.transaction.annotation.EnableTransactionManagement;
 import org.springframework.web.client.RestClient;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.presigner.S3Presigner;
-import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.SqsAsyncClient;
 import uk.gov.companieshouse.api.InternalApiClient;
 import uk.gov.companieshouse.api.http.ApiKeyHttpClient;
 import uk.gov.companieshouse.efs.api.categorytemplates.service.CategoryTemplateService;
@@ -191,8 +193,8 @@ public class Config {
     }
 
     @Bean
-    SqsClient sqsClient() {
-        return SqsClient.create();
+    SqsAsyncClient sqsClient() {
+        return SqsAsyncClient.create();
     }
 
     @Bean
@@ -322,4 +324,19 @@ public class Config {
         return () -> internalApiClient;
     }
 
+    /**
+     * Creates the HTTP client used to send emails to the CHS Kafka API asynchronously. It negotiates HTTP/2 where the
+     * API supports it and reuses its connections across requests.
+     *
+     * @param connectTimeoutMs the milliseconds allowed to open a connection
+     * @return the HTTP client
+     */
+    @Bean("chsKafkaApiHttpClient")
+    HttpClient chsKafkaApiHttpClient(@Value("${email.client.connect.timeout.ms:2000}") final long connectTimeoutMs) {
+        return HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
+            .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+            .build();
+    }
+
 }
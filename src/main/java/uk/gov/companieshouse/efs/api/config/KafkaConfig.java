@@ -1,5 +1,6 @@
 package uk.gov.companieshouse.efs.api.config;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import org.apache.avro.Schema;
 import org.json.JSONObject;
 import org.springframework.beans.factory.annotation.Value;
@@ -7,6 +8,7 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.client.RestClient;
 import uk.gov.companieshouse.efs.api.kafka.CHKafkaProducer;
+import uk.gov.companieshouse.efs.api.kafka.ProducerBatching;
 import uk.gov.companieshouse.efs.api.client.EfsRestClient;
 import uk.gov.companieshouse.kafka.producer.Acks;
 import uk.gov.companieshouse.kafka.producer.ProducerConfig;
@@ -27,6 +29,21 @@ public class KafkaConfig {
     @Value("${kafka.config.isRoundRobin}")
     private boolean isRoundRobin;
 
+    @Value("${kafka.config.batching.enabled:false}")
+    private boolean batchingEnabled;
+
+    @Value("${kafka.config.linger.ms:20}")
+    private int lingerMs;
+
+    @Value("${kafka.config.batch.size:65536}")
+    private int batchSize;
+
+    @Value("${kafka.config.compression.type:lz4}")
+    private String compressionType;
+
+    @Value("${kafka.config.idempotence:false}")
+    private boolean idempotence;
+
     @Value("${kafka.schema.registry.url}")
     private String schemaRegistryUrl;
 
@@ -41,8 +58,11 @@ public class KafkaConfig {
     }
 
     @Bean
-    CHKafkaProducer producer(final ProducerConfig producerConfig) {
-        return new CHKafkaProducer(producerConfig);
+    CHKafkaProducer producer(final ProducerConfig producerConfig, final MeterRegistry meterRegistry) {
+        final var batching =
+            new ProducerBatching(batchingEnabled, lingerMs, batchSize, compressionType, idempotence);
+
+        return new CHKafkaProducer(producerConfig, batching, meterRegistry);
     }
 
     @Bean
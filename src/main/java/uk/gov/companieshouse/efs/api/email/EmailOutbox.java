@@ -0,0 +1,254 @@
+package uk.gov.companieshouse.efs.api.email;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+import tools.jackson.core.JacksonException;
+import tools.jackson.core.type.TypeReference;
+import tools.jackson.databind.ObjectMapper;
+import uk.gov.companieshouse.efs.api.email.exception.EmailServiceException;
+import uk.gov.companieshouse.efs.api.email.model.EmailDocument;
+import uk.gov.companieshouse.efs.api.email.model.OutboxEmail;
+import uk.gov.companieshouse.efs.api.util.CurrentTimestampGenerator;
+import uk.gov.companieshouse.logging.Logger;
+import uk.gov.companieshouse.logging.LoggerFactory;
+
+/**
+ * Outbox of email documents waiting to be sent, held in the {@code email_outbox} collection.
+ * <p>
+ * An email is claimed for sending by the same atomic update that pushes its next attempt back by the lease, so it is
+ * sent by one dispatcher at a time, across instances too. An email that is sent is removed. One that fails is retried
+ * with exponential backoff, and after the maximum number of attempts is left in the collection as a dead letter. A
+ * dispatcher that stops while sending leaves its emails to be claimed again once their lease expires, so an email may
+ * be sent more than once but is never lost once added.
+ * </p>
+ */
+@Component
+public class EmailOutbox implements ApplicationRunner {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger("efs-submission-api");
+    private static final TypeReference<Map<String, Object>> DATA_TYPE = new TypeReference<>() {
+    };
+    private static final String ID = "_id";
+    private static final String STATUS = "status";
+    private static final String ATTEMPTS = "attempts";
+    private static final String NEXT_ATTEMPT_AT = "next_attempt_at";
+    private static final String LAST_ERROR = "last_error";
+
+    private final MongoTemplate template;
+    private final CurrentTimestampGenerator timestampGenerator;
+    private final ObjectMapper objectMapper;
+    private final boolean enabled;
+    private final int maxAttempts;
+    private final Duration initialBackoff;
+    private final Duration maxBackoff;
+    private final Duration lease;
+    // released when an email is added, so that the dispatcher need not wait for its next poll
+    private final Semaphore added = new Semaphore(0);
+    private final Counter enqueued;
+    private final Counter sent;
+    private final Counter retried;
+    private final Counter deadLettered;
+
+    /**
+     * Constructor.
+     *
+     * @param template              dependency
+     * @param timestampGenerator    dependency
+     * @param objectMapper          dependency
+     * @param meterRegistry         dependency
+     * @param enabled               whether emails are added to the outbox rather than sent directly
+     * @param maxAttempts           the number of attempts to send an email before it is dead-lettered
+     * @param initialBackoffSeconds the seconds before the first retry, doubled for each retry after it
+     * @param maxBackoffSeconds     the most seconds between retries
+     * @param leaseSeconds          the seconds a claimed email is hidden from other dispatchers while it is sent
+     */
+    public EmailOutbox(final MongoTemplate template, final CurrentTimestampGenerator timestampGenerator,
+        final ObjectMapper objectMapper, final MeterRegistry meterRegistry,
+        @Value("${email.outbox.enabled:false}") final boolean enabled,
+        @Value("${email.outbox.max-attempts:8}") final int maxAttempts,
+        @Value("${email.outbox.backoff.initial.seconds:30}") final long initialBackoffSeconds,
+        @Value("${email.outbox.backoff.max.seconds:3600}") final long maxBackoffSeconds,
+        @Value("${email.outbox.lease.seconds:300}") final long leaseSeconds) {
+        if (maxAttempts < 1 || initialBackoffSeconds < 1 || maxBackoffSeconds < initialBackoffSeconds
+            || leaseSeconds < 1) {
+            throw new IllegalArgumentException(
+                "Email outbox needs at least 1 attempt, a positive lease and a backoff of at least 1 second");
+        }
+        this.template = template;
+        this.timestampGenerator = timestampGenerator;
+        this.objectMapper = objectMapper;
+        this.enabled = enabled;
+        this.maxAttempts = maxAttempts;
+        this.initialBackoff = Duration.ofSeconds(initialBackoffSeconds);
+        this.maxBackoff = Duration.ofSeconds(maxBackoffSeconds);
+        this.lease = Duration.ofSeconds(leaseSeconds);
+        this.enqueued = Counter.builder("efs.email.outbox.enqueued")
+            .description("Emails added to the outbox")
+            .register(meterRegistry);
+        this.sent = Counter.builder("efs.email.outbox.sent")
+            .description("Emails sent from the outbox")
+            .register(meterRegistry);
+        this.retried = Counter.builder("efs.email.outbox.retried")
+            .description("Emails that failed to send and will be retried")
+            .register(meterRegistry);
+        this.deadLettered = Counter.builder("efs.email.outbox.dead-lettered")
+            .description("Emails given up on after the maximum number of attempts")
+            .register(meterRegistry);
+    }
+
+    @Override
+    public void run(final ApplicationArguments args) {
+        if (!enabled) {
+            return;
+        }
+        try {
+            template.indexOps(OutboxEmail.class).createIndex(
+                new Index().on(STATUS, Sort.Direction.ASC).on(NEXT_ATTEMPT_AT, Sort.Direction.ASC)
+                    .named("status_next_attempt_at"));
+        } catch (DataAccessException ex) {
+            LOGGER.error("Failed to create email outbox index", ex);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Add the email document to the outbox, to be sent as soon as a dispatcher claims it.
+     *
+     * @param document the email document
+     * @throws EmailServiceException if the email cannot be added
+     */
+    public void enqueue(final EmailDocument<?> document) {
+        final LocalDateTime timestamp = timestampGenerator.generateTimestamp();
+        try {
+            // held as sent, so that later changes to the data object are not picked up
+            final EmailDocument<Map<String, Object>> snapshot = new EmailDocument<>(document.getAppId(),
+                document.getMessageId(), document.getMessageType(),
+                objectMapper.convertValue(document.getData(), DATA_TYPE), document.getEmailAddress(),
+                document.getCreatedAt(), document.getTopic());
+            template.insert(new OutboxEmail(UUID.randomUUID().toString(), snapshot, OutboxEmail.Status.PENDING, 0,
+                timestamp, timestamp, null));
+        } catch (IllegalArgumentException | JacksonException ex) {
+            throw new EmailServiceException("Error creating payload for email outbox: ", ex);
+        } catch (DataAccessException ex) {
+            throw new EmailServiceException("Error adding email to outbox - message [%s]".formatted(ex.getMessage()),
+                ex);
+        }
+        enqueued.increment();
+        added.release();
+    }
+
+    /**
+     * Claim the emails due to be sent, earliest first, hiding each from other dispatchers for the lease.
+     *
+     * @param max the most emails to claim
+     * @return the claimed emails, with this attempt counted
+     */
+    public List<OutboxEmail> claim(final int max) {
+        final List<OutboxEmail> claimed = new ArrayList<>();
+        while (claimed.size() < max) {
+            final LocalDateTime now = timestampGenerator.generateTimestamp();
+            final OutboxEmail email = template.findAndModify(
+                Query.query(Criteria.where(STATUS).is(OutboxEmail.Status.PENDING).and(NEXT_ATTEMPT_AT).lte(now))
+                    .with(Sort.by(NEXT_ATTEMPT_AT)),
+                new Update().set(NEXT_ATTEMPT_AT, now.plus(lease)).inc(ATTEMPTS, 1),
+                FindAndModifyOptions.options().returnNew(true), OutboxEmail.class);
+            if (email == null) {
+                break;
+            }
+            claimed.add(email);
+        }
+        return claimed;
+    }
+
+    /**
+     * Remove a claimed email that has been sent. Nothing is removed if the email has since been claimed again.
+     *
+     * @param email the claimed email
+     */
+    public void sent(final OutboxEmail email) {
+        if (template.remove(claimed(email), OutboxEmail.class).getDeletedCount() == 0) {
+            LOGGER.info("Email [%s] was claimed again before attempt [%d] was recorded as sent".formatted(
+                email.getId(), email.getAttempts()));
+            return;
+        }
+        sent.increment();
+    }
+
+    /**
+     * Schedule a claimed email that failed to send to be retried, or dead-letter it if it has had the maximum
+     * number of attempts. Nothing is changed if the email has since been claimed again.
+     *
+     * @param email the claimed email
+     * @param cause why it failed
+     */
+    public void failed(final OutboxEmail email, final RuntimeException cause) {
+        final boolean exhausted = email.getAttempts() >= maxAttempts;
+        final Duration backoff = backoff(email.getAttempts());
+        final Update update = new Update().set(LAST_ERROR, cause.getMessage());
+        if (exhausted) {
+            update.set(STATUS, OutboxEmail.Status.DEAD_LETTER);
+        } else {
+            update.set(NEXT_ATTEMPT_AT, timestampGenerator.generateTimestamp().plus(backoff));
+        }
+        if (template.updateFirst(claimed(email), update, OutboxEmail.class).getMatchedCount() == 0) {
+            LOGGER.error("Email [%s] was claimed again before failed attempt [%d] was recorded".formatted(
+                email.getId(), email.getAttempts()), cause);
+        } else if (exhausted) {
+            deadLettered.increment();
+            LOGGER.error("Giving up on email [%s] after [%d] attempts".formatted(email.getId(), email.getAttempts()),
+                cause);
+        } else {
+            retried.increment();
+            LOGGER.error("Failed to send email [%s] on attempt [%d], retrying in [%s]".formatted(email.getId(),
+                email.getAttempts(), backoff), cause);
+        }
+    }
+
+    /**
+     * Wait for an email to be added to the outbox by this instance.
+     *
+     * @param timeout the longest to wait
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void awaitEnqueued(final Duration timeout) throws InterruptedException {
+        if (added.tryAcquire(timeout.toMillis(), TimeUnit.MILLISECONDS)) {
+            added.drainPermits();
+        }
+    }
+
+    // matches the email only while it is still on the attempt it was claimed for, so a dispatcher whose lease ran
+    // out cannot overwrite the outcome of a later claim
+    private static Query claimed(final OutboxEmail email) {
+        return Query.query(Criteria.where(ID).is(email.getId()).and(ATTEMPTS).is(email.getAttempts()));
+    }
+
+    // doubles from the initial backoff for each attempt already made, up to the maximum
+    private Duration backoff(final int attempts) {
+        final int doublings = Math.min(attempts - 1, 30);
+        final Duration backoff = initialBackoff.multipliedBy(1L << Math.max(doublings, 0));
+        return backoff.compareTo(maxBackoff) > 0 ? maxBackoff : backoff;
+    }
+}
@@ -0,0 +1,165 @@
+package uk.gov.companieshouse.efs.api.email;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+import uk.gov.companieshouse.efs.api.email.model.OutboxEmail;
+import uk.gov.companieshouse.logging.Logger;
+import uk.gov.companieshouse.logging.LoggerFactory;
+
+/**
+ * Sends the emails in the {@link EmailOutbox} in the background.
+ * <p>
+ * Emails are claimed in batches and each batch is sent concurrently, up to the configured number at once. Whenever a
+ * batch is not full the dispatcher waits for an email to be added by this instance, or for the poll interval to pass
+ * so that retries and emails added by other instances are picked up. On shutdown the emails already being sent are
+ * given up to the shutdown timeout to finish. With the outbox disabled nothing is dispatched.
+ * </p>
+ */
+@Component
+public class EmailOutboxDispatcher implements ApplicationRunner, DisposableBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger("efs-submission-api");
+
+    private final EmailOutbox emailOutbox;
+    private final EmailSender emailSender;
+    private final int batchSize;
+    private final Duration pollInterval;
+    private final Duration shutdownTimeout;
+    private final Semaphore permits;
+    private final Executor executor;
+    private volatile Thread dispatcher;
+    private volatile CountDownLatch inFlight = new CountDownLatch(0);
+
+    /**
+     * Constructor.
+     *
+     * @param emailOutbox       dependency
+     * @param emailSender       dependency
+     * @param batchSize         the most emails claimed at once
+     * @param concurrency       the most emails sent at once
+     * @param pollIntervalMs    the milliseconds between polls of the outbox when it is idle
+     * @param shutdownTimeoutMs the most milliseconds shutdown waits for the emails being sent to finish
+     */
+    public EmailOutboxDispatcher(final EmailOutbox emailOutbox, final EmailSender emailSender,
+        @Value("${email.outbox.dispatch.batch-size:50}") final int batchSize,
+        @Value("${email.outbox.dispatch.concurrency:8}") final int concurrency,
+        @Value("${email.outbox.poll.interval.ms:1000}") final long pollIntervalMs,
+        @Value("${email.outbox.shutdown.timeout.ms:10000}") final long shutdownTimeoutMs) {
+        this(emailOutbox, emailSender, batchSize, concurrency, pollIntervalMs, shutdownTimeoutMs,
+            task -> Thread.ofVirtual().name("email-outbox-send").start(task));
+    }
+
+    EmailOutboxDispatcher(final EmailOutbox emailOutbox, final EmailSender emailSender, final int batchSize,
+        final int concurrency, final long pollIntervalMs, final long shutdownTimeoutMs, final Executor executor) {
+        if (batchSize < 1 || concurrency < 1 || pollIntervalMs < 1 || shutdownTimeoutMs < 1) {
+            throw new IllegalArgumentException(
+                "Email outbox batch size, concurrency, poll interval and shutdown timeout must all be at least 1");
+        }
+        this.emailOutbox = emailOutbox;
+        this.emailSender = emailSender;
+        this.batchSize = batchSize;
+        this.pollInterval = Duration.ofMillis(pollIntervalMs);
+        this.shutdownTimeout = Duration.ofMillis(shutdownTimeoutMs);
+        this.permits = new Semaphore(concurrency);
+        this.executor = executor;
+    }
+
+    @Override
+    public void run(final ApplicationArguments args) {
+        if (!emailOutbox.isEnabled()) {
+            return;
+        }
+        dispatcher = Thread.ofVirtual().name("email-outbox-dispatcher").start(this::dispatchUntilStopped);
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        final Thread running = dispatcher;
+        if (running != null) {
+            running.interrupt();
+            running.join(pollInterval.toMillis());
+        }
+        final CountDownLatch sending = inFlight;
+        if (!sending.await(shutdownTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+            LOGGER.error("Stopped with [%d] emails still being sent, left to be claimed again once their lease expires"
+                .formatted(sending.getCount()));
+        }
+    }
+
+    /**
+     * Claim a batch of emails and send them, waiting until each has been sent or has failed.
+     *
+     * @return the number of emails claimed
+     * @throws InterruptedException if interrupted while waiting for the batch
+     */
+    int dispatch() throws InterruptedException {
+        final List<OutboxEmail> batch = emailOutbox.claim(batchSize);
+        final CountDownLatch done = new CountDownLatch(batch.size());
+        inFlight = done;
+        int handedOver = 0;
+        try {
+            for (final OutboxEmail email : batch) {
+                permits.acquire();
+                executor.execute(() -> {
+                    try {
+                        send(email);
+                    } finally {
+                        permits.release();
+                        done.countDown();
+                    }
+                });
+                handedOver++;
+            }
+        } finally {
+            // emails never handed over are left to be claimed again once their lease expires
+            for (int i = handedOver; i < batch.size(); i++) {
+                done.countDown();
+            }
+        }
+        done.await();
+        return batch.size();
+    }
+
+    private void dispatchUntilStopped() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                if (dispatch() < batchSize) {
+                    emailOutbox.awaitEnqueued(pollInterval);
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException ex) {
+                LOGGER.error("Failed to dispatch emails from outbox", ex);
+                try {
+                    Thread.sleep(pollInterval);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    private void send(final OutboxEmail email) {
+        try {
+            try {
+                emailSender.send(email.toEmailDocument());
+            } catch (RuntimeException ex) {
+                emailOutbox.failed(email, ex);
+                return;
+            }
+            emailOutbox.sent(email);
+        } catch (RuntimeException ex) {
+            // left to be claimed again once its lease expires
+            LOGGER.error("Failed to record outcome of sending email [%s]".formatted(email.getId()), ex);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package uk.gov.companieshouse.efs.api.email;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Collectors;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import uk.gov.companieshouse.api.error.ApiError;
+import uk.gov.companieshouse.api.model.ApiResponse;
+import uk.gov.companieshouse.efs.api.client.AsyncEmailClient;
+import uk.gov.companieshouse.efs.api.client.EmailClient;
+import uk.gov.companieshouse.efs.api.client.exception.EmailClientException;
+import uk.gov.companieshouse.efs.api.email.exception.EmailNotPublishedException;
+import uk.gov.companieshouse.efs.api.email.exception.EmailServiceException;
+import uk.gov.companieshouse.efs.api.email.model.EmailDocument;
+import uk.gov.companieshouse.efs.api.kafka.EmailProducer;
+import uk.gov.companieshouse.logging.Logger;
+import uk.gov.companieshouse.logging.LoggerFactory;
+
+/**
+ * Sends an email document, publishing it straight to Kafka through the {@link EmailProducer} when it is enabled.
+ * Otherwise, or when the email cannot be handed to the producer and the fallback is enabled, the document is posted to
+ * the CHS Kafka API through the {@link AsyncEmailClient} when it is enabled and the {@link EmailClient} otherwise.
+ * <p>
+ * An email the producer has taken is not posted when publishing it fails or times out, since the producer may still
+ * deliver it. The failure is passed on instead, and any later retry of such an email can still produce a duplicate.
+ * </p>
+ */
+@Component
+public class EmailSender {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger("efs-submission-api");
+
+    private final EmailClient emailClient;
+    private final AsyncEmailClient asyncEmailClient;
+    private final EmailProducer emailProducer;
+
+    /**
+     * Constructor.
+     *
+     * @param emailClient      dependency
+     * @param asyncEmailClient dependency
+     * @param emailProducer    dependency
+     */
+    public EmailSender(final EmailClient emailClient, final AsyncEmailClient asyncEmailClient,
+        final EmailProducer emailProducer) {
+        this.emailClient = emailClient;
+        this.asyncEmailClient = asyncEmailClient;
+        this.emailProducer = emailProducer;
+    }
+
+    /**
+     * Send the email document, waiting for it to be accepted.
+     *
+     * @param document the email document
+     * @throws EmailServiceException if the email cannot be sent or is not accepted
+     */
+    public void send(final EmailDocument<?> document) {
+        if (emailProducer.isEnabled() || asyncEmailClient.isEnabled()) {
+            try {
+                sendAsync(document).join();
+            } catch (final CompletionException ex) {
+                if (ex.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                throw ex;
+            }
+            return;
+        }
+        sendOverHttp(document);
+    }
+
+    /**
+     * Send the email document without waiting for it to be accepted. With neither the {@link EmailProducer} nor the
+     * {@link AsyncEmailClient} enabled, the email is sent before this returns.
+     *
+     * @param document the email document
+     * @return completing once the email is accepted, or failing with {@link EmailServiceException}
+     */
+    public CompletableFuture<Void> sendAsync(final EmailDocument<?> document) {
+        if (!emailProducer.isEnabled()) {
+            return sendOverHttpAsync(document);
+        }
+        return emailProducer.send(document).exceptionallyCompose(failure -> {
+            final Throwable cause = failure instanceof CompletionException && failure.getCause() != null
+                ? failure.getCause() : failure;
+            if (!emailProducer.isFallbackToHttp() || !(cause instanceof EmailNotPublishedException)) {
+                return CompletableFuture.failedFuture(cause);
+            }
+            LOGGER.info("Unable to publish message [%s] to Kafka, sending to CHS Kafka API instead: %s".formatted(
+                document.getMessageId(), cause.getMessage()));
+            return sendOverHttpAsync(document);
+        });
+    }
+
+    private void sendOverHttp(final EmailDocument<?> document) {
+        LOGGER.debug("Sending message to [%s]".formatted(document.getEmailAddress()));
+        try {
+            checkAccepted(emailClient.sendEmail(document));
+        } catch(final EmailClientException ex) {
+            throw clientFailure(document, ex);
+        }
+    }
+
+    private CompletableFuture<Void> sendOverHttpAsync(final EmailDocument<?> document) {
+        if (!asyncEmailClient.isEnabled()) {
+            try {
+                sendOverHttp(document);
+                return CompletableFuture.completedFuture(null);
+            } catch (final EmailServiceException ex) {
+                return CompletableFuture.failedFuture(ex);
+            }
+        }
+        LOGGER.debug("Sending message to [%s]".formatted(document.getEmailAddress()));
+        return asyncEmailClient.sendEmail(document).handle((response, failure) -> {
+            if (failure != null) {
+                final Throwable cause = failure instanceof CompletionException && failure.getCause() != null
+                    ? failure.getCause() : failure;
+                if (cause instanceof EmailClientException clientException) {
+                    throw clientFailure(document, clientException);
+                }
+                throw new CompletionException(cause);
+            }
+            checkAccepted(response);
+            return null;
+        });
+    }
+
+    private static void checkAccepted(final ApiResponse<Void> response) {
+        if (response.getStatusCode() != HttpStatus.OK.value()) {
+            LOGGER.error("Error sending document to email client: [%d]".formatted(response.getStatusCode()));
+
+            final var errorList = response.getErrors().stream().map(ApiError::getError).collect(Collectors.joining());
+            throw new EmailServiceException("Error sending request to CHS Kafka API: %s".formatted(errorList));
+        }
+    }
+
+    private static EmailServiceException clientFailure(final EmailDocument<?> document,
+        final EmailClientException ex) {
+        final Map<String, Object> errorMap = new HashMap<>();
+        errorMap.put("document", document);
+        LOGGER.errorContext(document.getAppId(), ex, errorMap);
+
+        return new EmailServiceException("Error sending document to email client: ", ex);
+    }
+}
@@ -1,5 +1,6 @@
 package uk.gov.companieshouse.efs.api.email;
 
+import java.util.concurrent.CompletableFuture;
 import uk.gov.companieshouse.efs.api.email.model.DelayedSubmissionBusinessEmailModel;
 import uk.gov.companieshouse.efs.api.email.model.DelayedSubmissionSupportEmailModel;
 import uk.gov.companieshouse.efs.api.email.model.ExternalAcceptEmailModel;
@@ -33,5 +34,13 @@ public interface EmailService {
 
     void sendDelayedSubmissionBusinessEmail(DelayedSubmissionBusinessEmailModel emailModel);
 
+    /**
+     * Send the delayed submission business email without waiting for it to be accepted.
+     *
+     * @param emailModel the email model
+     * @return completing once the email is accepted or added to the outbox
+     */
+    CompletableFuture<Void> sendDelayedSubmissionBusinessEmailAsync(DelayedSubmissionBusinessEmailModel emailModel);
+
     void sendPaymentReportEmail(PaymentReportEmailModel emailModel);
 }
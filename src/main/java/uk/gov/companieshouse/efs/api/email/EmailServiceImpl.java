@@ -1,13 +1,7 @@
 package uk.gov.companieshouse.efs.api.email;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.stream.Collectors;
-import org.springframework.http.HttpStatus;
+import java.util.concurrent.CompletableFuture;
 import org.springframework.stereotype.Service;
-import uk.gov.companieshouse.api.error.ApiError;
-import uk.gov.companieshouse.efs.api.client.EmailClient;
-import uk.gov.companieshouse.efs.api.client.exception.EmailClientException;
 import uk.gov.companieshouse.efs.api.email.exception.EmailServiceException;
 import uk.gov.companieshouse.efs.api.email.mapper.EmailMapperFactory;
 import uk.gov.companieshouse.efs.api.email.model.DelayedSubmissionBusinessEmailModel;
@@ -27,10 +21,13 @@ import uk.gov.companieshouse.logging.LoggerFactory;
  * Service implementation for sending various types of email notifications related to submissions.
  * <p>
  * This class coordinates the mapping of submission models to email documents and delegates the actual
- * sending of emails to the {@link EmailClient}. It supports external and internal notifications, payment
+ * sending of emails to the {@link EmailSender}. It supports external and internal notifications, payment
  * reports, delayed submission notifications, and more. Each public method corresponds to a specific type
  * of email notification and uses the appropriate mapper from {@link EmailMapperFactory}.
  * <p>
+ * With the outbox enabled, emails are instead added to the {@link EmailOutbox} and sent in the background by the
+ * {@link EmailOutboxDispatcher}, so that callers do not wait for the CHS Kafka API.
+ * <p>
  * Error handling is performed for failed email sends, and all operations are logged for traceability.
  */
 @Service
@@ -39,17 +36,21 @@ public class EmailServiceImpl implements EmailService {
     private static final Logger LOGGER = LoggerFactory.getLogger("efs-submission-api");
 
     private final EmailMapperFactory emailMapperFactory;
-    private final EmailClient emailClient;
+    private final EmailSender emailSender;
+    private final EmailOutbox emailOutbox;
 
     /**
      * Constructor.
      *
      * @param emailMapperFactory    dependency
-     * @param emailClient           dependency
+     * @param emailSender           dependency
+     * @param emailOutbox           dependency
      */
-    public EmailServiceImpl(final EmailMapperFactory emailMapperFactory, final EmailClient emailClient) {
+    public EmailServiceImpl(final EmailMapperFactory emailMapperFactory, final EmailSender emailSender,
+        final EmailOutbox emailOutbox) {
         this.emailMapperFactory = emailMapperFactory;
-        this.emailClient = emailClient;
+        this.emailSender = emailSender;
+        this.emailOutbox = emailOutbox;
     }
 
     @Override
@@ -128,6 +129,14 @@ public class EmailServiceImpl implements EmailService {
         sendMessage(this.emailMapperFactory.getDelayedSubmissionBusinessEmailMapper().map(emailModel));
     }
 
+    @Override
+    public CompletableFuture<Void> sendDelayedSubmissionBusinessEmailAsync(
+        final DelayedSubmissionBusinessEmailModel emailModel) {
+        LOGGER.debug("Sending delayed submission business email for [%d] submissions".formatted(
+            emailModel.getNumberOfDelayedSubmissions()));
+        return sendMessageAsync(this.emailMapperFactory.getDelayedSubmissionBusinessEmailMapper().map(emailModel));
+    }
+
     @Override
     public void sendPaymentReportEmail(final PaymentReportEmailModel emailModel) {
         LOGGER.debug("Sending payment report email");
@@ -135,23 +144,23 @@ public class EmailServiceImpl implements EmailService {
     }
 
     private void sendMessage(final EmailDocument<?> document) {
-        LOGGER.debug("Sending message to [%s]".formatted(document.getEmailAddress()));
-        try {
-            final var response = emailClient.sendEmail(document);
-
-            if (response.getStatusCode() != HttpStatus.OK.value()) {
-                LOGGER.error("Error sending document to email client: [%d]".formatted(response.getStatusCode()));
-
-                final var errorList = response.getErrors().stream().map(ApiError::getError).collect(Collectors.joining());
-                throw new EmailServiceException("Error sending request to CHS Kafka API: %s".formatted(errorList));
-            }
-
-        } catch(final EmailClientException ex) {
-            final Map<String, Object> errorMap = new HashMap<>();
-            errorMap.put("document", document);
-            LOGGER.errorContext(document.getAppId(), ex, errorMap);
+        if (emailOutbox.isEnabled()) {
+            LOGGER.debug("Adding message to [%s] to the email outbox".formatted(document.getEmailAddress()));
+            emailOutbox.enqueue(document);
+        } else {
+            emailSender.send(document);
+        }
+    }
 
-            throw new EmailServiceException("Error sending document to email client: ", ex);
+    private CompletableFuture<Void> sendMessageAsync(final EmailDocument<?> document) {
+        if (!emailOutbox.isEnabled()) {
+            return emailSender.sendAsync(document);
+        }
+        try {
+            sendMessage(document);
+            return CompletableFuture.completedFuture(null);
+        } catch (final EmailServiceException ex) {
+            return CompletableFuture.failedFuture(ex);
         }
     }
 }
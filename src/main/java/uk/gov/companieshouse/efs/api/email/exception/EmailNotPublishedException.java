@@ -0,0 +1,13 @@
+package uk.gov.companieshouse.efs.api.email.exception;
+
+/**
+ * An email that failed before it was handed to the Kafka producer, so it cannot reach the topic and may safely be sent
+ * another way.
+ */
+public class EmailNotPublishedException extends EmailServiceException {
+
+    public EmailNotPublishedException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+}
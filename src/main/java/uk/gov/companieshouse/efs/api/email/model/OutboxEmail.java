@@ -0,0 +1,133 @@
+package uk.gov.companieshouse.efs.api.email.model;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Objects;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
+
+/**
+ * An email document waiting in the outbox to be sent, with its data held as the JSON object it is sent as.
+ */
+@Document(collection = "email_outbox")
+public class OutboxEmail {
+
+    /**
+     * Whether an email is still to be sent.
+     */
+    public enum Status {
+        PENDING, DEAD_LETTER
+    }
+
+    @Id
+    private String id;
+
+    @Field("app_id")
+    private String appId;
+
+    @Field("message_id")
+    private String messageId;
+
+    @Field("message_type")
+    private String messageType;
+
+    @Field("data")
+    private Map<String, Object> data;
+
+    @Field("email_address")
+    private String emailAddress;
+
+    @Field("created_at")
+    private String createdAt;
+
+    @Field("topic")
+    private String topic;
+
+    @Field("status")
+    private Status status;
+
+    @Field("attempts")
+    private int attempts;
+
+    @Field("next_attempt_at")
+    private LocalDateTime nextAttemptAt;
+
+    @Field("enqueued_at")
+    private LocalDateTime enqueuedAt;
+
+    @Field("last_error")
+    private String lastError;
+
+    public OutboxEmail() {
+        // required by Spring Data
+    }
+
+    public OutboxEmail(final String id, final EmailDocument<Map<String, Object>> document, final Status status,
+        final int attempts, final LocalDateTime nextAttemptAt, final LocalDateTime enqueuedAt,
+        final String lastError) {
+        this.id = id;
+        this.appId = document.getAppId();
+        this.messageId = document.getMessageId();
+        this.messageType = document.getMessageType();
+        this.data = document.getData();
+        this.emailAddress = document.getEmailAddress();
+        this.createdAt = document.getCreatedAt();
+        this.topic = document.getTopic();
+        this.status = status;
+        this.attempts = attempts;
+        this.nextAttemptAt = nextAttemptAt;
+        this.enqueuedAt = enqueuedAt;
+        this.lastError = lastError;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public LocalDateTime getNextAttemptAt() {
+        return nextAttemptAt;
+    }
+
+    public LocalDateTime getEnqueuedAt() {
+        return enqueuedAt;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    /**
+     * @return the email document to send
+     */
+    public EmailDocument<Map<String, Object>> toEmailDocument() {
+        return new EmailDocument<>(appId, messageId, messageType, data, emailAddress, createdAt, topic);
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        final OutboxEmail that = (OutboxEmail) o;
+        return attempts == that.attempts && Objects.equals(id, that.id) && Objects.equals(toEmailDocument(),
+            that.toEmailDocument()) && status == that.status && Objects.equals(nextAttemptAt, that.nextAttemptAt)
+            && Objects.equals(enqueuedAt, that.enqueuedAt) && Objects.equals(lastError, that.lastError);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, toEmailDocument(), status, attempts, nextAttemptAt, enqueuedAt, lastError);
+    }
+}
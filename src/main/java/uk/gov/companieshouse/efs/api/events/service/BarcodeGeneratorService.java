@@ -6,4 +6,15 @@ public interface BarcodeGeneratorService {
 
     String getBarcode(LocalDateTime date);
 
+    /**
+     * Get a barcode for the submission, handing out the same barcode again if one was already allocated to it.
+     *
+     * @param date         the date the submission was received
+     * @param submissionId the submission the barcode is for
+     * @return the barcode
+     */
+    default String getBarcode(LocalDateTime date, String submissionId) {
+        return getBarcode(date);
+    }
+
 }
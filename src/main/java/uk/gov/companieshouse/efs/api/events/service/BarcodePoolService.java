@@ -0,0 +1,288 @@
+package uk.gov.companieshouse.efs.api.events.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.context.annotation.Primary;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+import uk.gov.companieshouse.efs.api.events.service.exception.BarcodeException;
+import uk.gov.companieshouse.efs.api.events.service.model.PooledBarcode;
+import uk.gov.companieshouse.efs.api.util.CurrentTimestampGenerator;
+import uk.gov.companieshouse.logging.Logger;
+import uk.gov.companieshouse.logging.LoggerFactory;
+
+/**
+ * Hands out barcodes pre-fetched from the barcode service, so that a slow barcode service does not hold up
+ * submissions being loaded into FES.
+ * <p>
+ * Barcodes are pooled per received date in the {@code barcode_pool} collection. Each fetched barcode is recorded as
+ * available before it can be handed out, and is marked allocated by the same atomic update that hands it out, so a
+ * barcode survives a restart until it is allocated and is never allocated twice, across instances too. The same
+ * update records the submission the barcode is allocated to, so a submission that is retried is handed the barcode it
+ * was allocated before rather than a new one. If the pool for a date is empty the barcode is fetched directly, and
+ * that allocation is recorded too.
+ * </p>
+ * <p>
+ * When taking a barcode leaves fewer than the low-water mark for today or a later date, the pool for that date is
+ * refilled in the background. The number of barcodes pooled for each date is kept in the {@code barcode_pool_counts}
+ * collection, and a refill reserves a place in the pool there with a conditional upsert before fetching each barcode,
+ * so refills running on several instances at once never take the pool beyond its size. Pools for past dates are not
+ * refilled: once a day the barcodes still available for them are marked expired and their counts removed, so that a
+ * place reserved by an instance that stopped mid-refill is reclaimed too.
+ * </p>
+ * <p>
+ * With a pool size of 0 every barcode is fetched directly, as before.
+ * </p>
+ */
+@Service
+@Primary
+public class BarcodePoolService implements BarcodeGeneratorService, ApplicationRunner {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger("efs-submission-api");
+    private static final String DATE_RECEIVED = "date_received";
+    private static final String STATUS = "status";
+    private static final String CREATED_AT = "created_at";
+    private static final String ALLOCATED_AT = "allocated_at";
+    private static final String ALLOCATED_TO = "allocated_to";
+    private static final String POOL_COUNTS = "barcode_pool_counts";
+    private static final String ID = "_id";
+    private static final String POOLED = "pooled";
+
+    private final BarcodeGeneratorServiceImpl barcodeGeneratorService;
+    private final MongoTemplate template;
+    private final CurrentTimestampGenerator timestampGenerator;
+    private final int poolSize;
+    private final int lowWaterMark;
+    private final Executor refillExecutor;
+    private final Set<Integer> refilling = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger expiredBefore = new AtomicInteger();
+    private final Counter misses;
+
+    /**
+     * Constructor.
+     *
+     * @param barcodeGeneratorService dependency
+     * @param template                dependency
+     * @param timestampGenerator      dependency
+     * @param meterRegistry           dependency
+     * @param poolSize                the number of barcodes a refill tops the pool for a date up to
+     * @param lowWaterMark            the number of available barcodes for a date below which it is refilled
+     */
+    public BarcodePoolService(final BarcodeGeneratorServiceImpl barcodeGeneratorService,
+        final MongoTemplate template, final CurrentTimestampGenerator timestampGenerator,
+        final MeterRegistry meterRegistry, @Value("${barcode.pool.size:0}") final int poolSize,
+        @Value("${barcode.pool.low-water-mark:5}") final int lowWaterMark) {
+        this(barcodeGeneratorService, template, timestampGenerator, meterRegistry, poolSize, lowWaterMark,
+            task -> Thread.ofVirtual().name("barcode-pool-refill").start(task));
+    }
+
+    BarcodePoolService(final BarcodeGeneratorServiceImpl barcodeGeneratorService, final MongoTemplate template,
+        final CurrentTimestampGenerator timestampGenerator, final MeterRegistry meterRegistry, final int poolSize,
+        final int lowWaterMark, final Executor refillExecutor) {
+        if (poolSize < 0 || lowWaterMark < 0 || (poolSize > 0 && lowWaterMark >= poolSize)) {
+            throw new IllegalArgumentException(
+                "Barcode pool low-water mark [%d] must be below the pool size [%d]".formatted(lowWaterMark,
+                    poolSize));
+        }
+        this.barcodeGeneratorService = barcodeGeneratorService;
+        this.template = template;
+        this.timestampGenerator = timestampGenerator;
+        this.poolSize = poolSize;
+        this.lowWaterMark = lowWaterMark;
+        this.refillExecutor = refillExecutor;
+        this.misses = Counter.builder("efs.barcode.pool.misses")
+            .description("Barcodes fetched directly because none were pooled for the received date")
+            .register(meterRegistry);
+    }
+
+    @Override
+    public void run(final ApplicationArguments args) {
+        if (poolSize == 0) {
+            return;
+        }
+        try {
+            template.indexOps(PooledBarcode.class).createIndex(
+                new Index().on(DATE_RECEIVED, Sort.Direction.ASC).on(STATUS, Sort.Direction.ASC)
+                    .on(CREATED_AT, Sort.Direction.ASC).named("date_received_status_created_at"));
+            template.indexOps(PooledBarcode.class).createIndex(
+                new Index().on(ALLOCATED_TO, Sort.Direction.ASC).sparse().named("allocated_to"));
+        } catch (DataAccessException ex) {
+            LOGGER.error("Failed to create barcode pool indexes", ex);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Takes the oldest available barcode pooled for the received date, falling back to the barcode service.
+     *
+     * @throws BarcodeException if the barcode cannot be taken from the pool or fetched
+     */
+    @Override
+    public String getBarcode(final LocalDateTime date) {
+        return getBarcode(date, null);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Takes the oldest available barcode pooled for the received date, falling back to the barcode service, unless a
+     * barcode has already been allocated to the submission.
+     *
+     * @throws BarcodeException if the barcode cannot be taken from the pool or fetched
+     */
+    @Override
+    public String getBarcode(final LocalDateTime date, final String submissionId) {
+        if (poolSize == 0) {
+            return barcodeGeneratorService.getBarcode(date);
+        }
+        final int dateReceived = toDateReceived(date);
+        final int today = toDateReceived(timestampGenerator.generateTimestamp());
+        expireIfNewDay(today);
+
+        final PooledBarcode pooled;
+        try {
+            final PooledBarcode allocated = submissionId == null ? null : template.findOne(
+                Query.query(Criteria.where(ALLOCATED_TO).is(submissionId)), PooledBarcode.class);
+            if (allocated != null) {
+                LOGGER.debug("Reusing barcode [%s] already allocated to submission [%s]".formatted(
+                    allocated.getBarcode(), submissionId));
+                return allocated.getBarcode();
+            }
+            pooled = template.findAndModify(
+                Query.query(Criteria.where(DATE_RECEIVED).is(dateReceived).and(STATUS)
+                    .is(PooledBarcode.Status.AVAILABLE)).with(Sort.by(CREATED_AT)),
+                new Update().set(STATUS, PooledBarcode.Status.ALLOCATED)
+                    .set(ALLOCATED_AT, timestampGenerator.generateTimestamp()).set(ALLOCATED_TO, submissionId),
+                FindAndModifyOptions.options().returnNew(true), PooledBarcode.class);
+        } catch (DataAccessException ex) {
+            throw new BarcodeException("Error taking barcode from pool - message [%s]".formatted(ex.getMessage()),
+                ex);
+        }
+
+        if (pooled != null) {
+            releasePlace(dateReceived);
+        }
+        if (dateReceived >= today) {
+            refillIfLow(date, dateReceived);
+        }
+        if (pooled != null) {
+            return pooled.getBarcode();
+        }
+
+        misses.increment();
+        LOGGER.debug("No barcode pooled for date received [%d], fetching one directly".formatted(dateReceived));
+        final String barcode = barcodeGeneratorService.getBarcode(date);
+        record(barcode, dateReceived, PooledBarcode.Status.ALLOCATED, submissionId);
+        return barcode;
+    }
+
+    // the first barcode taken on a new day expires what is left of the pools for earlier dates
+    private void expireIfNewDay(final int today) {
+        if (expiredBefore.getAndAccumulate(today, Math::max) >= today) {
+            return;
+        }
+        try {
+            template.updateMulti(Query.query(
+                    Criteria.where(DATE_RECEIVED).lt(today).and(STATUS).is(PooledBarcode.Status.AVAILABLE)),
+                new Update().set(STATUS, PooledBarcode.Status.EXPIRED), PooledBarcode.class);
+            template.remove(Query.query(Criteria.where(ID).lt(today)), POOL_COUNTS);
+            LOGGER.debug("Expired barcodes pooled for dates received before [%d]".formatted(today));
+        } catch (DataAccessException ex) {
+            LOGGER.error("Failed to expire barcodes pooled for dates received before [%d]".formatted(today), ex);
+        }
+    }
+
+    private void refillIfLow(final LocalDateTime date, final int dateReceived) {
+        if (pooled(dateReceived) >= lowWaterMark || !refilling.add(dateReceived)) {
+            return;
+        }
+        refillExecutor.execute(() -> {
+            try {
+                refill(date, dateReceived);
+            } catch (RuntimeException ex) {
+                LOGGER.error("Failed to refill barcode pool for date received [%d]".formatted(dateReceived), ex);
+            } finally {
+                refilling.remove(dateReceived);
+            }
+        });
+    }
+
+    private void refill(final LocalDateTime date, final int dateReceived) {
+        int fetched = 0;
+        while (reservePlace(dateReceived)) {
+            try {
+                // recorded as soon as it is fetched, so a restart does not lose it
+                record(barcodeGeneratorService.getBarcode(date), dateReceived, PooledBarcode.Status.AVAILABLE, null);
+            } catch (RuntimeException ex) {
+                releasePlace(dateReceived);
+                throw ex;
+            }
+            fetched++;
+        }
+        LOGGER.debug("Refilled barcode pool for date received [%d] with [%d] barcodes".formatted(dateReceived,
+            fetched));
+    }
+
+    private long pooled(final int dateReceived) {
+        final Document counts = template.findOne(Query.query(Criteria.where(ID).is(dateReceived)), Document.class,
+            POOL_COUNTS);
+        return counts == null ? 0 : counts.get(POOLED, Number.class).longValue();
+    }
+
+    // the upsert only matches while the pool has room, so once it is full it tries to insert the date again and fails
+    private boolean reservePlace(final int dateReceived) {
+        try {
+            template.upsert(Query.query(Criteria.where(ID).is(dateReceived).and(POOLED).lt(poolSize)),
+                new Update().inc(POOLED, 1), POOL_COUNTS);
+            return true;
+        } catch (DuplicateKeyException ex) {
+            return false;
+        }
+    }
+
+    private void releasePlace(final int dateReceived) {
+        try {
+            template.updateFirst(Query.query(Criteria.where(ID).is(dateReceived)), new Update().inc(POOLED, -1),
+                POOL_COUNTS);
+        } catch (DataAccessException ex) {
+            LOGGER.error("Failed to update barcode pool count for date received [%d]".formatted(dateReceived), ex);
+        }
+    }
+
+    private void record(final String barcode, final int dateReceived, final PooledBarcode.Status status,
+        final String submissionId) {
+        final LocalDateTime timestamp = timestampGenerator.generateTimestamp();
+        try {
+            template.insert(new PooledBarcode(barcode, dateReceived, status, timestamp,
+                status == PooledBarcode.Status.ALLOCATED ? timestamp : null, submissionId));
+        } catch (DuplicateKeyException ex) {
+            throw new BarcodeException(
+                "Error recording barcode - barcode [%s] has already been issued".formatted(barcode), ex);
+        } catch (DataAccessException ex) {
+            throw new BarcodeException("Error recording barcode - message [%s]".formatted(ex.getMessage()), ex);
+        }
+    }
+
+    private static int toDateReceived(final LocalDateTime date) {
+        return Integer.parseInt(date.format(DateTimeFormatter.BASIC_ISO_DATE));
+    }
+}
@@ -2,7 +2,13 @@ package uk.gov.companieshouse.efs.api.events.service;
 
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 import java.util.stream.Collectors;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import uk.gov.companieshouse.api.filetransfer.AvStatus;
 import uk.gov.companieshouse.api.filetransfer.FileDetailsApi;
@@ -13,7 +19,7 @@ import uk.gov.companieshouse.efs.api.filetransfer.FileTransferService;
 import uk.gov.companieshouse.efs.api.formtemplates.repository.FormTemplateRepository;
 import uk.gov.companieshouse.efs.api.submissions.model.FileDetails;
 import uk.gov.companieshouse.efs.api.submissions.model.Submission;
-import uk.gov.companieshouse.efs.api.submissions.service.SubmissionService;
+import uk.gov.companieshouse.efs.api.submissions.repository.SubmissionRepository;
 import uk.gov.companieshouse.efs.api.util.CurrentTimestampGenerator;
 import uk.gov.companieshouse.logging.Logger;
 import uk.gov.companieshouse.logging.LoggerFactory;
@@ -27,21 +33,103 @@ public class DecisionEngine {
 
     private final FileTransferService fileTransferService;
     private final FormTemplateRepository repository;
+    private final SubmissionRepository submissionRepository;
     private final CurrentTimestampGenerator timestampGenerator;
-    private final SubmissionService submissionService;
+    private final int parallelism;
 
+    /**
+     * Constructor.
+     *
+     * @param fileTransferService   dependency
+     * @param repository            dependency
+     * @param submissionRepository  dependency
+     * @param timestampGenerator    dependency
+     * @param parallelism           max. number of submissions evaluated concurrently (1 = serial)
+     */
     public DecisionEngine(final FileTransferService fileTransferService, final FormTemplateRepository repository,
-                          final CurrentTimestampGenerator timestampGenerator, final SubmissionService submissionService) {
+                          final SubmissionRepository submissionRepository,
+                          final CurrentTimestampGenerator timestampGenerator,
+                          @Value("${av.check.parallelism:1}") final int parallelism) {
         this.fileTransferService = fileTransferService;
         this.repository = repository;
+        this.submissionRepository = submissionRepository;
         this.timestampGenerator = timestampGenerator;
-        this.submissionService = submissionService;
+        this.parallelism = parallelism;
     }
 
+    /**
+     * Evaluate the submissions against their files' AV status and form template. Once all are evaluated, the file
+     * statuses of submissions whose files changed are written as one bulk write, without touching the rest of the
+     * document; a submission whose write failed is left undecided, to be evaluated again.
+     *
+     * @param submissions the submissions
+     * @return the decisions, grouped by result
+     */
     public Map<DecisionResult, List<Decision>> evaluateSubmissions(final List<Submission> submissions) {
-        return submissions.stream()
-                .map(this::evaluate)
-                .collect(Collectors.groupingBy(Decision::getDecisionResult));
+        final List<Decision> decisions = parallelism <= 1 || submissions.size() <= 1
+                ? submissions.stream().map(this::evaluate).toList()
+                : evaluateConcurrently(submissions);
+        recordFileConversionStatuses(decisions);
+
+        return decisions.stream().collect(Collectors.groupingBy(Decision::getDecisionResult));
+    }
+
+    // writes the changed file statuses of all decisions at once, so that a batch costs one round trip
+    private void recordFileConversionStatuses(final List<Decision> decisions) {
+        final List<Submission> changed = decisions.stream()
+                .filter(Decision::isChanged)
+                .map(Decision::getSubmission)
+                .toList();
+        if (changed.isEmpty()) {
+            return;
+        }
+        final Set<String> failed = submissionRepository.updateFileConversionStatuses(changed);
+        decisions.stream()
+                .filter(decision -> failed.contains(decision.getSubmission().getId()))
+                .forEach(decision -> decision.setDecisionResult(DecisionResult.NO_DECISION));
+    }
+
+    /**
+     * Evaluate each submission on its own virtual thread, with at most {@code parallelism} evaluations
+     * (and hence file-transfer-api calls) in flight at once. Decisions are collected in submission order.
+     */
+    private List<Decision> evaluateConcurrently(final List<Submission> submissions) {
+        LOGGER.debug("Evaluating [%d] submissions with parallelism [%d]".formatted(submissions.size(), parallelism));
+        final var permits = new Semaphore(parallelism);
+
+        try (final var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            final List<Future<Decision>> futures = submissions.stream()
+                    .map(submission -> executor.submit(() -> evaluateWithPermit(submission, permits)))
+                    .toList();
+
+            return futures.stream()
+                    .map(this::awaitDecision)
+                    .toList();
+        }
+    }
+
+    private Decision evaluateWithPermit(final Submission submission,
+                                        final Semaphore permits) throws InterruptedException {
+        permits.acquire();
+        try {
+            return evaluate(submission);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private Decision awaitDecision(final Future<Decision> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while evaluating submissions", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException("Failed to evaluate submission", e.getCause());
+        }
     }
 
     private Decision evaluate(final Submission submission) {
@@ -53,9 +141,6 @@ public class DecisionEngine {
                 decision.incrementNumberOfDecisions();
             }
         }
-        if (decision.isChanged()) {
-            submissionService.updateSubmission(decision.getSubmission());
-        }
         return finaliseDecision(decision, submission.getFormDetails().getFormType());
     }
 
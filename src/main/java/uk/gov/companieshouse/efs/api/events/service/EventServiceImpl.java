@@ -1,7 +1,6 @@
 package uk.gov.companieshouse.efs.api.events.service;
 
 import java.time.LocalDateTime;
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -9,23 +8,15 @@ import java.util.Optional;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import uk.gov.companieshouse.api.model.efs.events.FileConversionStatusApi;
-import uk.gov.companieshouse.api.model.efs.formtemplates.FormTemplateApi;
 import uk.gov.companieshouse.api.model.efs.submissions.FileConversionStatus;
 import uk.gov.companieshouse.api.model.efs.submissions.SubmissionStatus;
 import uk.gov.companieshouse.efs.api.email.EmailService;
 import uk.gov.companieshouse.efs.api.email.exception.EmailServiceException;
 import uk.gov.companieshouse.efs.api.email.model.InternalFailedConversionModel;
-import uk.gov.companieshouse.efs.api.events.service.exception.BarcodeException;
-import uk.gov.companieshouse.efs.api.events.service.exception.FesLoaderException;
-import uk.gov.companieshouse.efs.api.events.service.exception.InvalidTiffException;
-import uk.gov.companieshouse.efs.api.events.service.exception.TiffDownloadException;
-import uk.gov.companieshouse.efs.api.events.service.model.FesFileModel;
-import uk.gov.companieshouse.efs.api.events.service.model.FesLoaderModel;
-import uk.gov.companieshouse.efs.api.formtemplates.service.FormTemplateService;
 import uk.gov.companieshouse.efs.api.submissions.model.FileDetails;
 import uk.gov.companieshouse.efs.api.submissions.model.Submission;
 import uk.gov.companieshouse.efs.api.submissions.repository.SubmissionRepository;
-import uk.gov.companieshouse.efs.api.submissions.service.SubmissionService;
+import uk.gov.companieshouse.efs.api.submissions.repository.SubmissionWriteSink;
 import uk.gov.companieshouse.efs.api.submissions.service.exception.FileIncorrectStateException;
 import uk.gov.companieshouse.efs.api.submissions.service.exception.FileNotFoundException;
 import uk.gov.companieshouse.efs.api.submissions.service.exception.SubmissionIncorrectStateException;
@@ -47,37 +38,33 @@ public class EventServiceImpl implements EventService {
     private static final String FILE_INCORRECT_STATE_MESSAGE =
         "Status for file with id [%s] wasn't [%s] on submission with id [%s], couldn't update";
 
-    private SubmissionService submissionService;
-    private FormTemplateService formTemplateService;
     private EmailService emailService;
     private SubmissionRepository repository;
     private CurrentTimestampGenerator currentTimestampGenerator;
     private int maxQueuedMessages;
     private DecisionEngine decisionEngine;
-    private BarcodeGeneratorService barcodeGeneratorService;
-    private TiffDownloadService tiffDownloadService;
-    private FesLoaderService fesLoaderService;
     private ExecutionEngine executionEngine;
     private DelayedSubmissionHandlerContext delayedSubmissionHandlerContext;
+    private SubmissionLeaseService submissionLeaseService;
+    private FesSubmissionPipeline fesSubmissionPipeline;
+    private TiffPrefetcher tiffPrefetcher;
 
-    public EventServiceImpl(final SubmissionService submissionService,
-        final FormTemplateService formTemplateService, final EmailService emailService,
+    public EventServiceImpl(final EmailService emailService,
         final SubmissionRepository repository, final CurrentTimestampGenerator currentTimestampGenerator,
         @Value("${max.queue.messages}") final int maxQueuedMessages, final DecisionEngine decisionEngine,
-        final BarcodeGeneratorService barcodeGeneratorService, final TiffDownloadService tiffDownloadService,
-        final FesLoaderService fesLoaderService, final ExecutionEngine executionEngine, final DelayedSubmissionHandlerContext delayedSubmissionHandlerContext) {
-        this.submissionService = submissionService;
-        this.formTemplateService = formTemplateService;
+        final ExecutionEngine executionEngine, final DelayedSubmissionHandlerContext delayedSubmissionHandlerContext,
+        final SubmissionLeaseService submissionLeaseService, final FesSubmissionPipeline fesSubmissionPipeline,
+        final TiffPrefetcher tiffPrefetcher) {
         this.emailService = emailService;
         this.repository = repository;
         this.currentTimestampGenerator = currentTimestampGenerator;
         this.maxQueuedMessages = maxQueuedMessages;
         this.decisionEngine = decisionEngine;
-        this.barcodeGeneratorService = barcodeGeneratorService;
-        this.tiffDownloadService = tiffDownloadService;
-        this.fesLoaderService = fesLoaderService;
         this.executionEngine = executionEngine;
         this.delayedSubmissionHandlerContext = delayedSubmissionHandlerContext;
+        this.submissionLeaseService = submissionLeaseService;
+        this.fesSubmissionPipeline = fesSubmissionPipeline;
+        this.tiffPrefetcher = tiffPrefetcher;
     }
 
     @Override
@@ -87,25 +74,56 @@ public class EventServiceImpl implements EventService {
 
     @Override
     public void processFiles() {
-        executionEngine.execute(decisionEngine.evaluateSubmissions(this.findSubmissionsByStatus(SubmissionStatus.SUBMITTED)));
+        final List<Submission> submissions = submissionLeaseService.claim(SubmissionStatus.SUBMITTED, maxQueuedMessages);
+        final SubmissionWriteSink sink = repository.openWriteSink();
+        try {
+            executionEngine.execute(decisionEngine.evaluateSubmissions(submissions), sink);
+        } finally {
+            try {
+                flush(sink);
+            } finally {
+                submissionLeaseService.release(submissions);
+            }
+        }
+    }
+
+    // a failed write is retried once; a submission whose write fails again keeps its status, and is logged so its
+    // emails are not mistaken for the ones sent when it is processed again
+    private void flush(final SubmissionWriteSink sink) {
+        SubmissionWriteSink.FlushResult result = sink.flush();
+        if (!result.failures().isEmpty()) {
+            result = sink.flush();
+        }
+        result.failures().forEach((submissionId, message) -> {
+            Map<String, Object> debug = new HashMap<>();
+            debug.put("submissionId", submissionId);
+            debug.put("error", message);
+            LOGGER.errorContext(submissionId, "Failed to write status of submission with id: [%s]".formatted(
+                submissionId), null, debug);
+        });
     }
 
+    /**
+     * Record a file's conversion outcome with a single atomic update of that file, then move the submission out of
+     * PROCESSING once none of its files awaits conversion. The transition is a conditional update, so when several
+     * files of a submission finish at once exactly one callback makes it (and sends any failure email).
+     */
     @Override
     public void updateConversionFileStatus(String submissionId, String fileId, FileConversionStatusApi fileConversionStatus) {
 
-        Submission submission = getSubmission(submissionId, fileId);
-        LocalDateTime now = currentTimestampGenerator.generateTimestamp();
+        LOGGER.debug(String.format("Updating file [%s] in submission [%s] "
+                                   + "with converted file id [%s] "
+                                   + "and conversion status [%s]", fileId, submissionId,
+            fileConversionStatus.getConvertedFileId(), fileConversionStatus.getConversionStatus()));
 
-        submission.getFormDetails().getFileDetailsList().stream()
-                .filter(file -> fileId.equals(file.getFileId()))
-                .forEach(file -> {
-                    file.setConversionStatus(FileConversionStatus.valueOf(fileConversionStatus.getConversionStatus().toString()));
-                    file.setConvertedFileId(fileConversionStatus.getConvertedFileId());
-                    file.setNumberOfPages(fileConversionStatus.getNumberOfPages());
-                    file.setLastModifiedAt(now);
-                });
+        Submission submission = repository.updateFileConversionStatus(submissionId, fileId,
+            FileConversionStatus.valueOf(fileConversionStatus.getConversionStatus().toString()),
+            fileConversionStatus.getConvertedFileId(), fileConversionStatus.getNumberOfPages());
 
-        Submission updatedSubmission = Submission.builder(submission).withLastModifiedAt(now).build();
+        if (submission == null) {
+            // the update matched nothing: report why, or that the file left QUEUED since being checked
+            throw incorrectStateException(submissionId, fileId);
+        }
 
         // have all files been converted or failed
         if (areAllFilesConvertedOrFailed(submission.getFormDetails().getFileDetailsList())) {
@@ -114,12 +132,13 @@ public class EventServiceImpl implements EventService {
                     .allMatch(file -> file.getConversionStatus().equals(FileConversionStatus.CONVERTED));
 
             if (allConverted) {
-                // set status to be READY_TO_SUBMIT
-                updatedSubmission = Submission.builder(submission).withStatus(SubmissionStatus.READY_TO_SUBMIT).build();
-            } else {
+                // set status to be READY_TO_SUBMIT, and start fetching its TIFFs ready for submitting to FES
+                if (repository.updateStatusOnConversionComplete(submissionId, SubmissionStatus.READY_TO_SUBMIT)) {
+                    tiffPrefetcher.prefetch(submission);
+                }
+            } else if (repository.updateStatusOnConversionComplete(submissionId,
+                SubmissionStatus.REJECTED_BY_DOCUMENT_CONVERTER)) {
                 // set status to be REJECTED_BY_DOCUMENT_CONVERTER
-                updatedSubmission = Submission.builder(submission).withStatus(SubmissionStatus.REJECTED_BY_DOCUMENT_CONVERTER).build();
-
                 try {
 
                     // send an internal failed document conversion email
@@ -136,72 +155,16 @@ public class EventServiceImpl implements EventService {
                 }
             }
         }
-
-        LOGGER.debug(String.format("Updating file [%s] in submission [%s] "
-                                   + "with converted file id [%s], "
-                                   + "conversion status [%s] "
-                                   + "and submission status [%s]", fileId, submissionId,
-            fileConversionStatus.getConvertedFileId(), fileConversionStatus.getConversionStatus(),
-            submission.getStatus()));
-
-        repository.updateSubmission(updatedSubmission);
     }
 
     @Override
     public void submitToFes() {
-        List<Submission> submissions = findSubmissionsByStatus(SubmissionStatus.READY_TO_SUBMIT);
-        submissions.forEach(submission -> {
-            try {
-                // generate barcode
-                String barcode = submission.getFormDetails().getBarcode();
-
-                LocalDateTime submittedAt = submission.getSubmittedAt() == null ? submission.getCreatedAt() : submission.getSubmittedAt();
-
-                if (barcode == null) {
-                    barcode = barcodeGeneratorService.getBarcode(submittedAt);
-                    LOGGER.debug(
-                        "Generated barcode for submission [%s]: %s".formatted(submission.getId(), barcode));
-                    submissionService.updateSubmissionBarcode(submission.getId(), barcode);
-                }
-
-                final String efsFormId = submission.getFormDetails().getFormType();
-                final FormTemplateApi formTemplate = formTemplateService.getFormTemplate(efsFormId);
-                
-                if (formTemplate == null) {
-                    throw new SubmissionIncorrectStateException(
-                        "Unrecognised form type '%s' in form details".formatted(efsFormId));
-                }
-                
-                final String fesDocType =
-                    Optional.ofNullable(formTemplate.getFesDocType()).orElseGet(formTemplate::getFormType);
-                LOGGER.debug("Submit to FES: [%s]".formatted(fesDocType));
-
-                // retrieve TIFF file
-                List<FesFileModel> tiffFiles = new ArrayList<>();
-                submission.getFormDetails().getFileDetailsList().forEach(
-                        file -> tiffFiles.add(
-                                new FesFileModel(
-                                        tiffDownloadService.downloadTiffFile(file.getConvertedFileId()), file.getNumberOfPages())));
-                LOGGER.debug("Retrieved [%d] files for submission [%s] from S3".formatted(tiffFiles.size(), submission.getId()));
-
-                // insert into FES DB
-
-                fesLoaderService.insertSubmission(
-                    new FesLoaderModel(barcode, submission.getCompany().getCompanyName(),
-                        submission.getCompany().getCompanyNumber(), fesDocType,
-                        formTemplate.isSameDay(), tiffFiles, submittedAt));
-                LOGGER.debug("Inserted submission details into FES DB for submission [%s], form [%s], same-day [%s]".formatted(
-                    submission.getId(), fesDocType, formTemplate.isSameDay() ? "Y" : "N"));
-
-                submissionService.updateSubmissionStatus(submission.getId(),
-                    SubmissionStatus.SENT_TO_FES);
-
-            }
-            catch (SubmissionIncorrectStateException | BarcodeException | TiffDownloadException | FesLoaderException | InvalidTiffException ex) {
-                LOGGER.errorContext(submission.getId(), "Unable to submit to fes" + ex.getMessage(),
-                    ex, null);
-            }
-        });
+        List<Submission> submissions = submissionLeaseService.claim(SubmissionStatus.READY_TO_SUBMIT, maxQueuedMessages);
+        try {
+            fesSubmissionPipeline.submit(submissions);
+        } finally {
+            submissionLeaseService.release(submissions);
+        }
     }
 
     @Override
@@ -220,7 +183,8 @@ public class EventServiceImpl implements EventService {
                 .getConversionStatus().equals(FileConversionStatus.FAILED));
     }
 
-    private Submission getSubmission(String submissionId, String fileId) {
+    // logs and returns the reason the submission's file could not be updated
+    private RuntimeException incorrectStateException(String submissionId, String fileId) {
         // get the submission
         Submission submission = repository.read(submissionId);
 
@@ -230,30 +194,28 @@ public class EventServiceImpl implements EventService {
         if (submission == null) {
             LOGGER.errorContext(submissionId,
                 SUBMISSION_NOT_FOUND_MESSAGE.formatted(submissionId), null, debug);
-            throw new SubmissionNotFoundException(SUBMISSION_NOT_FOUND_MESSAGE.formatted(submissionId));
+            return new SubmissionNotFoundException(SUBMISSION_NOT_FOUND_MESSAGE.formatted(submissionId));
         } else if (submission.getStatus() != SubmissionStatus.PROCESSING) {
             LOGGER.errorContext(submissionId,
                 SUBMISSION_INCORRECT_STATE_MESSAGE.formatted(submissionId,
                     SubmissionStatus.PROCESSING), null, debug);
-            throw new SubmissionIncorrectStateException(
+            return new SubmissionIncorrectStateException(
                 SUBMISSION_INCORRECT_STATE_MESSAGE.formatted(submissionId, SubmissionStatus.PROCESSING));
         }
 
         Optional<FileDetails> fileDetailsOpt = submission.getFormDetails().getFileDetailsList().stream()
                 .filter(file -> fileId.equals(file.getFileId())).findFirst();
 
-        if (fileDetailsOpt.isPresent()) {
-            if (fileDetailsOpt.get().getConversionStatus() != FileConversionStatus.QUEUED) {
-                LOGGER.errorContext(submissionId, FILE_INCORRECT_STATE_MESSAGE.formatted(fileId,
-                    FileConversionStatus.QUEUED, submissionId), null, debug);
-                throw new FileIncorrectStateException(
-                    FILE_INCORRECT_STATE_MESSAGE.formatted(fileId, FileConversionStatus.QUEUED, submissionId));
-            }
-        } else {
+        if (fileDetailsOpt.isEmpty()) {
             LOGGER.errorContext(submissionId, FILE_NOT_FOUND_MESSAGE.formatted(fileId,
                 submissionId), null, debug);
-            throw new FileNotFoundException(FILE_NOT_FOUND_MESSAGE.formatted(fileId, submissionId));
+            return new FileNotFoundException(FILE_NOT_FOUND_MESSAGE.formatted(fileId, submissionId));
         }
-        return submission;
+        // the file is not QUEUED, or only became QUEUED after the update was attempted
+        debug.put("conversionStatus", fileDetailsOpt.get().getConversionStatus());
+        LOGGER.errorContext(submissionId, FILE_INCORRECT_STATE_MESSAGE.formatted(fileId,
+            FileConversionStatus.QUEUED, submissionId), null, debug);
+        return new FileIncorrectStateException(
+            FILE_INCORRECT_STATE_MESSAGE.formatted(fileId, FileConversionStatus.QUEUED, submissionId));
     }
 }
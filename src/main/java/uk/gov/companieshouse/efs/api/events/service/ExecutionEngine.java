@@ -3,6 +3,8 @@ package uk.gov.companieshouse.efs.api.events.service;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
 import uk.gov.companieshouse.api.model.efs.submissions.SubmissionStatus;
@@ -14,7 +16,8 @@ import uk.gov.companieshouse.efs.api.events.service.model.Decision;
 import uk.gov.companieshouse.efs.api.events.service.model.DecisionResult;
 import uk.gov.companieshouse.efs.api.submissions.model.FileDetails;
 import uk.gov.companieshouse.efs.api.submissions.model.Submission;
-import uk.gov.companieshouse.efs.api.submissions.service.SubmissionService;
+import uk.gov.companieshouse.efs.api.submissions.repository.SubmissionRepository;
+import uk.gov.companieshouse.efs.api.submissions.repository.SubmissionWriteSink;
 import uk.gov.companieshouse.logging.Logger;
 import uk.gov.companieshouse.logging.LoggerFactory;
 
@@ -23,27 +26,35 @@ public class ExecutionEngine {
 
     private static final Logger LOGGER = LoggerFactory.getLogger("efs-submission-api");
 
-    private SubmissionService submissionService;
     private MessageService messageService;
     private EmailService emailService;
     private S3ClientService s3ClientService;
     private String fileBucketName;
+    private SubmissionRepository submissionRepository;
 
-    public ExecutionEngine(final SubmissionService submissionService, final MessageService messageService, final EmailService emailService, final S3ClientService s3ClientService,
-        @Qualifier("fileBucketName") final String fileBucketName) {
-        this.submissionService = submissionService;
+    public ExecutionEngine(final MessageService messageService, final EmailService emailService, final S3ClientService s3ClientService,
+        @Qualifier("fileBucketName") final String fileBucketName, final SubmissionRepository submissionRepository) {
         this.messageService = messageService;
         this.emailService = emailService;
         this.s3ClientService = s3ClientService;
         this.fileBucketName = fileBucketName;
+        this.submissionRepository = submissionRepository;
     }
 
-    public void execute(Map<DecisionResult, List<Decision>> decisionGroups) {
+    /**
+     * Act on the decisions. Submissions are marked queued as soon as SQS accepts their files, with one bulk write per
+     * batch of requests, so that conversion callbacks find them PROCESSING; the terminal status transitions are
+     * buffered in the sink rather than written individually.
+     *
+     * @param decisionGroups the decisions, grouped by result
+     * @param sink           buffers the submission writes
+     */
+    public void execute(Map<DecisionResult, List<Decision>> decisionGroups, SubmissionWriteSink sink) {
         handleNoDecision(decisionGroups.getOrDefault(DecisionResult.NO_DECISION, Collections.emptyList()));
         handleInvalidFormType(decisionGroups.getOrDefault(DecisionResult.FORM_TYPE_DOES_NOT_EXIST, Collections.emptyList()));
-        handleInfectedFiles(decisionGroups.getOrDefault(DecisionResult.NOT_CLEAN, Collections.emptyList()));
+        handleInfectedFiles(decisionGroups.getOrDefault(DecisionResult.NOT_CLEAN, Collections.emptyList()), sink);
         handleFesEnabledForms(decisionGroups.getOrDefault(DecisionResult.FES_ENABLED, Collections.emptyList()));
-        handleNonFesEnabledForms(decisionGroups.getOrDefault(DecisionResult.NOT_FES_ENABLED, Collections.emptyList()));
+        handleNonFesEnabledForms(decisionGroups.getOrDefault(DecisionResult.NOT_FES_ENABLED, Collections.emptyList()), sink);
     }
 
     private void handleNoDecision(List<Decision> decisions) {
@@ -60,31 +71,58 @@ public class ExecutionEngine {
         );
     }
 
-    private void handleInfectedFiles(List<Decision> decisions) {
+    private void handleInfectedFiles(List<Decision> decisions, SubmissionWriteSink sink) {
         decisions.forEach(decision -> {
             this.emailService.sendInternalFailedAV(new InternalAvFailedEmailModel(decision.getSubmission(), decision.getInfectedFiles()));
-            this.submissionService.updateSubmissionStatus(decision.getSubmission().getId(), SubmissionStatus.REJECTED_BY_VIRUS_SCAN);
+            sink.updateStatus(decision.getSubmission().getId(), SubmissionStatus.REJECTED_BY_VIRUS_SCAN);
         });
     }
 
     private void handleFesEnabledForms(List<Decision> decisions) {
         if (!decisions.isEmpty()) {
-            this.messageService.queueMessages(decisions);
-            decisions.forEach(decision -> submissionService.updateSubmissionQueued(decision.getSubmission()));
+            final Set<String> queuedIds = this.messageService.queueMessages(decisions, this::markQueued);
+            markNotQueued(decisions.stream()
+                .map(Decision::getSubmission)
+                .filter(submission -> !queuedIds.contains(submission.getId()))
+                .toList());
         }
     }
 
-    private void handleNonFesEnabledForms(List<Decision> decisions) {
-        decisions.forEach(this::sendInternalEmail);
+    // written before the converter can call back for any of the submissions' files
+    private Set<String> markQueued(final List<Submission> submissions) {
+        final Set<String> failed = submissionRepository.updateSubmissionsQueued(submissions);
+        return submissions.stream()
+            .map(Submission::getId)
+            .filter(id -> !failed.contains(id))
+            .collect(Collectors.toSet());
     }
 
-    private void sendInternalEmail(final Decision decision) {
+    // the files already accepted would otherwise suppress the next attempt as a duplicate
+    private void markNotQueued(final List<Submission> submissions) {
+        if (submissions.isEmpty()) {
+            return;
+        }
+        submissions.forEach(submission -> LOGGER.error(
+            "Failed to queue files of submission with id: [%s]; it will be queued again".formatted(submission.getId())));
+        try {
+            submissionRepository.updateQueueAttempts(submissions);
+        } catch (RuntimeException e) {
+            LOGGER.error("Failed to count queue attempt of [%d] submissions: %s".formatted(submissions.size(),
+                e.getMessage()));
+        }
+    }
+
+    private void handleNonFesEnabledForms(List<Decision> decisions, SubmissionWriteSink sink) {
+        decisions.forEach(decision -> sendInternalEmail(decision, sink));
+    }
+
+    private void sendInternalEmail(final Decision decision, final SubmissionWriteSink sink) {
 
         Submission submission = decision.getSubmission();
         InternalSubmissionEmailModel emailModel = new InternalSubmissionEmailModel(submission,
                 createEmailFileDetailsList(submission.getFormDetails().getFileDetailsList()));
         emailService.sendInternalSubmission(emailModel);
-        submissionService.updateSubmissionStatus(submission.getId(), SubmissionStatus.PROCESSED_BY_EMAIL);
+        sink.updateStatus(submission.getId(), SubmissionStatus.PROCESSED_BY_EMAIL);
         LOGGER.debug("Processed submission [%s] by email".formatted(submission.getId()));
     }
 
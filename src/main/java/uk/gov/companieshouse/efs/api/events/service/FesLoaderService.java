@@ -1,9 +1,20 @@
 package uk.gov.companieshouse.efs.api.events.service;
 
+import java.util.List;
+import java.util.Map;
 import uk.gov.companieshouse.efs.api.events.service.model.FesLoaderModel;
 
 public interface FesLoaderService {
 
     void insertSubmission(FesLoaderModel model);
 
+    /**
+     * Insert several submissions in one transaction, each behind its own savepoint, so that a submission failing to
+     * insert is rolled back and reported alone while the others are committed together.
+     *
+     * @param models the submissions
+     * @return the failure of each submission rolled back, keyed by its position in {@code models}
+     */
+    Map<Integer, RuntimeException> insertSubmissions(List<FesLoaderModel> models);
+
 }
@@ -1,20 +1,36 @@
 package uk.gov.companieshouse.efs.api.events.service;
 
+import com.google.common.collect.Lists;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import org.apache.commons.lang3.time.DurationFormatUtils;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.DataAccessException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionException;
 import org.springframework.transaction.TransactionTimedOutException;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.StopWatch;
 import uk.gov.companieshouse.efs.api.events.service.exception.FesLoaderException;
 import uk.gov.companieshouse.efs.api.events.service.fesloader.BatchDao;
 import uk.gov.companieshouse.efs.api.events.service.fesloader.EnvelopeDao;
+import uk.gov.companieshouse.efs.api.events.service.fesloader.FesLoaderMode;
 import uk.gov.companieshouse.efs.api.events.service.fesloader.FormDao;
 import uk.gov.companieshouse.efs.api.events.service.fesloader.ImageDao;
+import uk.gov.companieshouse.efs.api.events.service.fesloader.PlsqlSubmissionDao;
+import uk.gov.companieshouse.efs.api.events.service.model.FesFileModel;
 import uk.gov.companieshouse.efs.api.events.service.model.FesLoaderModel;
 import uk.gov.companieshouse.efs.api.events.service.model.FormModel;
+import uk.gov.companieshouse.efs.api.events.service.model.TiffStream;
 import uk.gov.companieshouse.efs.api.util.CurrentTimestampGenerator;
 import uk.gov.companieshouse.logging.Logger;
 import uk.gov.companieshouse.logging.LoggerFactory;
@@ -31,6 +47,12 @@ public class FesLoaderServiceImpl implements FesLoaderService {
     private ImageDao imageDao;
     private CurrentTimestampGenerator timestampGenerator;
     private FormDao formDao;
+    private TiffDownloadService tiffDownloadService;
+    private PlsqlSubmissionDao plsqlSubmissionDao;
+    private FesLoaderMode loaderMode;
+    private PlatformTransactionManager transactionManager;
+    private int transactionTimeout;
+    private int maxOpenImages;
 
     /**
      * Constructor.
@@ -40,14 +62,36 @@ public class FesLoaderServiceImpl implements FesLoaderService {
      * @param timestampGenerator    dependency
      * @param imageDao              dependency
      * @param formDao               dependency
+     * @param tiffDownloadService   dependency
+     * @param plsqlSubmissionDao    dependency
+     * @param loaderMode            whether records are inserted one statement at a time or in one PL/SQL block
+     * @param transactionManager    dependency
+     * @param transactionTimeout    the FES transaction timeout in seconds, per submission
+     * @param maxOpenImages         the most images of a submission open at once in DAO mode, each holding an S3
+     *                              connection when streamed; PLSQL mode binds every image in one call, so opens them
+     *                              all
      */
     public FesLoaderServiceImpl(final BatchDao batchDao, final EnvelopeDao envelopeDao, final CurrentTimestampGenerator timestampGenerator,
-                                final ImageDao imageDao, final FormDao formDao) {
+                                final ImageDao imageDao, final FormDao formDao, final TiffDownloadService tiffDownloadService,
+                                final PlsqlSubmissionDao plsqlSubmissionDao,
+                                @Value("${fes.loader.mode:DAO}") final FesLoaderMode loaderMode,
+                                @Qualifier("fesTransactionManager") final PlatformTransactionManager transactionManager,
+                                @Value("${fes.datasource.transaction.timeout:10}") final int transactionTimeout,
+                                @Value("${fes.loader.max-open-images:20}") final int maxOpenImages) {
+        if (maxOpenImages < 1) {
+            throw new IllegalArgumentException("fes.loader.max-open-images must be at least 1: " + maxOpenImages);
+        }
         this.batchDao = batchDao;
         this.envelopeDao = envelopeDao;
         this.timestampGenerator = timestampGenerator;
         this.imageDao = imageDao;
         this.formDao = formDao;
+        this.tiffDownloadService = tiffDownloadService;
+        this.plsqlSubmissionDao = plsqlSubmissionDao;
+        this.loaderMode = loaderMode;
+        this.transactionManager = transactionManager;
+        this.transactionTimeout = transactionTimeout;
+        this.maxOpenImages = maxOpenImages;
     }
 
     @Override
@@ -60,13 +104,13 @@ public class FesLoaderServiceImpl implements FesLoaderService {
             LOGGER.debug("Inserting records into FES DB for submission with barcode [%s]".formatted(model.getBarcode()));
             timer.start(FES_INSERT_TIMER_TASK_NAME);
 
-            long nextBatchId = insertBatchRecord();
-            long envelopeId = insertEnvelopeRecord(nextBatchId);
-            // image - batch ID (also used in form update)
-            model.getTiffFiles().forEach(file -> {
-                long imageId = insertImageRecord(file.getTiffFile());
-                insertFormRecord(model, envelopeId, imageId, file.getNumberOfPages());
-            });
+            if (loaderMode == FesLoaderMode.PLSQL) {
+                insertSubmissionBlock(model);
+            } else {
+                long nextBatchId = insertBatchRecord();
+                long envelopeId = insertEnvelopeRecord(nextBatchId);
+                insertImageAndFormRecords(model, envelopeId);
+            }
 
             timer.stop();
             final String timeToInsertAsString = DurationFormatUtils.formatDuration(
@@ -83,17 +127,108 @@ public class FesLoaderServiceImpl implements FesLoaderService {
         }
     }
 
-    private void insertFormRecord(FesLoaderModel model, long envelopeId, long imageId, Integer numberOfPages) {
-        //form
-        formDao.insertForm(mapToFormModel(model, envelopeId, imageId, numberOfPages));
-        LOGGER.debug("inserted form into DB");
+    @Override
+    public Map<Integer, RuntimeException> insertSubmissions(List<FesLoaderModel> models) {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        // the group shares one commit, so it is allowed the time its submissions would have had separately
+        transaction.setTimeout(transactionTimeout * Math.max(1, models.size()));
+        Map<Integer, RuntimeException> failures = new LinkedHashMap<>();
+
+        try {
+            transaction.executeWithoutResult(status -> {
+                for (int i = 0; i < models.size(); i++) {
+                    Object savepoint = status.createSavepoint();
+                    try {
+                        // self-invocation, so this runs within the group transaction rather than its own
+                        insertSubmission(models.get(i));
+                        status.releaseSavepoint(savepoint);
+                    } catch (RuntimeException ex) {
+                        status.rollbackToSavepoint(savepoint);
+                        failures.put(i, ex);
+                        LOGGER.debug("Rolled back submission with barcode [%s] to its savepoint".formatted(
+                            models.get(i).getBarcode()));
+                    }
+                }
+            });
+        } catch (DataAccessException | TransactionException ex) {
+            throw new FesLoaderException("Error committing [%d] submissions - message [%s]".formatted(models.size(),
+                ex.getMessage()), ex);
+        }
+        LOGGER.debug("Committed [%d] of [%d] submissions in one transaction".formatted(
+            models.size() - failures.size(), models.size()));
+        return failures;
     }
 
-    private long insertImageRecord(byte[] file) {
-        long imageId = imageDao.getNextImageId();
-        LOGGER.debug("image ID " + imageId);
-        imageDao.insertImage(imageId, file);
-        return imageId;
+    private void insertSubmissionBlock(FesLoaderModel model) {
+        long batchId = batchDao.getNextBatchId();
+        long envelopeId = envelopeDao.getNextEnvelopeId();
+        LocalDateTime currentDate = timestampGenerator.generateTimestamp();
+        List<FormModel> forms = new ArrayList<>();
+        List<TiffStream> images = new ArrayList<>();
+
+        try {
+            openImages(model, model.getTiffFiles(), envelopeId, forms, images);
+            String batchName = plsqlSubmissionDao.insertSubmission(batchId, getBatchNamePrefix(currentDate),
+                currentDate, envelopeId, forms, images);
+            LOGGER.debug("inserted batch [%s] with envelope ID %d and [%d] forms in one call".formatted(batchName,
+                envelopeId, forms.size()));
+        } finally {
+            closeAll(images);
+        }
+    }
+
+    private static void closeAll(List<TiffStream> images) {
+        for (TiffStream image : images) {
+            try {
+                image.close();
+            } catch (IOException ex) {
+                LOGGER.error("Failed to close TIFF stream", ex);
+            }
+        }
+    }
+
+    private void insertImageAndFormRecords(FesLoaderModel model, long envelopeId) {
+        List<FormModel> forms = new ArrayList<>();
+
+        // one batched statement for each maxOpenImages images, so that no more S3 streams are open at once, and one
+        // for all the forms, however many files there are
+        for (List<FesFileModel> files : Lists.partition(model.getTiffFiles(), maxOpenImages)) {
+            List<FormModel> filesForms = new ArrayList<>();
+            List<TiffStream> images = new ArrayList<>();
+            try {
+                openImages(model, files, envelopeId, filesForms, images);
+                imageDao.insertImages(filesForms.stream().map(FormModel::getImageId).toList(), images);
+                LOGGER.debug("inserted [%d] images into DB".formatted(images.size()));
+            } finally {
+                closeAll(images);
+            }
+            forms.addAll(filesForms);
+        }
+        formDao.insertForms(forms);
+        LOGGER.debug("inserted [%d] forms into DB".formatted(forms.size()));
+    }
+
+    // streamed TIFFs are read from S3 as the driver writes the BLOB, so they are never held in memory;
+    // streams opened before a failure are left in images for the caller to close
+    private void openImages(FesLoaderModel model, List<FesFileModel> files, long envelopeId, List<FormModel> forms,
+        List<TiffStream> images) {
+        files.forEach(file -> {
+            long imageId = imageDao.getNextImageId();
+            LOGGER.debug("image ID " + imageId);
+            images.add(openImage(file));
+            forms.add(mapToFormModel(model, envelopeId, imageId, file.getNumberOfPages()));
+        });
+    }
+
+    private TiffStream openImage(FesFileModel file) {
+        if (file.isStreamed()) {
+            return tiffDownloadService.openTiffFile(file.getConvertedFileId());
+        }
+        if (file.getTiffBuffer() != null) {
+            // read straight from the downloaded buffer, which is released by the caller once the transaction ends
+            return new TiffStream(file.getTiffBuffer().newInputStream(), file.getTiffBuffer().length());
+        }
+        return new TiffStream(new ByteArrayInputStream(file.getTiffFile()), file.getTiffFile().length);
     }
 
     private long insertEnvelopeRecord(long nextBatchId) {
@@ -109,8 +244,7 @@ public class FesLoaderServiceImpl implements FesLoaderService {
         LOGGER.debug("next batch id " + nextBatchId);
 
         LocalDateTime currentDate = timestampGenerator.generateTimestamp();
-        String formattedCurrentDate = currentDate.format(DateTimeFormatter.ofPattern("yyMMdd"));
-        String batchNamePrefix = "EFS_%s".formatted(formattedCurrentDate);
+        String batchNamePrefix = getBatchNamePrefix(currentDate);
         LOGGER.debug("Prefix " + batchNamePrefix);
         Long nextBatchNameId = batchDao.getBatchNameId(batchNamePrefix);
         LOGGER.debug("next batch name id " + nextBatchNameId);
@@ -121,6 +255,11 @@ public class FesLoaderServiceImpl implements FesLoaderService {
         return nextBatchId;
     }
 
+    private static String getBatchNamePrefix(LocalDateTime currentDate) {
+        String formattedCurrentDate = currentDate.format(DateTimeFormatter.ofPattern("yyMMdd"));
+        return "EFS_%s".formatted(formattedCurrentDate);
+    }
+
     private FormModel mapToFormModel(FesLoaderModel model, long envelopeId, long imageId, Integer numberOfPages) {
         return FormModel.builder()
                 .withBarcode(model.getBarcode())
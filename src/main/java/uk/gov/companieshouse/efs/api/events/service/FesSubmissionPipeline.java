@@ -0,0 +1,436 @@
+package uk.gov.companieshouse.efs.api.events.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import uk.gov.companieshouse.api.model.efs.formtemplates.FormTemplateApi;
+import uk.gov.companieshouse.api.model.efs.submissions.SubmissionStatus;
+import uk.gov.companieshouse.efs.api.email.EmailService;
+import uk.gov.companieshouse.efs.api.email.exception.EmailServiceException;
+import uk.gov.companieshouse.efs.api.email.model.InternalFailedConversionModel;
+import uk.gov.companieshouse.efs.api.events.service.exception.BarcodeException;
+import uk.gov.companieshouse.efs.api.events.service.exception.FesLoaderException;
+import uk.gov.companieshouse.efs.api.events.service.exception.InvalidTiffException;
+import uk.gov.companieshouse.efs.api.events.service.exception.TiffDownloadException;
+import uk.gov.companieshouse.efs.api.events.service.model.FesFileModel;
+import uk.gov.companieshouse.efs.api.events.service.model.FesLoaderModel;
+import uk.gov.companieshouse.efs.api.events.service.model.TiffBuffer;
+import uk.gov.companieshouse.efs.api.formtemplates.service.FormTemplateService;
+import uk.gov.companieshouse.efs.api.submissions.model.FileDetails;
+import uk.gov.companieshouse.efs.api.submissions.model.Submission;
+import uk.gov.companieshouse.efs.api.submissions.service.SubmissionService;
+import uk.gov.companieshouse.efs.api.submissions.service.exception.SubmissionIncorrectStateException;
+import uk.gov.companieshouse.logging.Logger;
+import uk.gov.companieshouse.logging.LoggerFactory;
+
+/**
+ * Submits READY_TO_SUBMIT submissions to FES through three stages, each with its own concurrency limit:
+ * <ol>
+ *     <li>prepare: allocate the barcode and look up the form template</li>
+ *     <li>download: fetch the converted TIFF files from S3, check them with the {@link TiffValidator} and re-encode
+ *     them with the {@link TiffRecompressor}, unless they are streamed into FES by the load stage, first reserving
+ *     the size of all the submission's TIFFs from the {@link TiffByteBudget} in one go, waiting while it is used up by
+ *     TIFFs not yet loaded; downloaded TIFFs are released back to the budget and the {@link TiffBufferPool} once their
+ *     submission leaves the load stage</li>
+ *     <li>load: insert into the FES database and mark the submission SENT_TO_FES</li>
+ * </ol>
+ * Submissions enter each stage in the order they leave the previous one, so the barcode allocation and downloads for
+ * later submissions overlap with the FES insert of earlier ones. A submission failing in any stage is logged and
+ * skipped without affecting the others; one with a corrupt TIFF, which would fail again however often it is
+ * submitted, is rejected as if its conversion had failed.
+ * <p>
+ * With a load group size above 1 the load stage group-commits: submissions waiting for the load stage are inserted
+ * up to that many at a time in one FES transaction, each behind its own savepoint. Groups only form while submissions
+ * queue for the load stage, so a backlog is worked through with fewer commits without delaying a lone submission.
+ * </p>
+ */
+@Component
+public class FesSubmissionPipeline {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger("efs-submission-api");
+
+    private record PreparedSubmission(Submission submission, String barcode, LocalDateTime submittedAt,
+                                      String fesDocType, boolean sameDay) {
+    }
+
+    private record LoadableSubmission(Submission submission, FesLoaderModel model,
+                                      TiffByteBudget.Reservation reservation) {
+    }
+
+    private record PendingLoad(LoadableSubmission loadable, CompletableFuture<Void> loaded) {
+    }
+
+    private final SubmissionService submissionService;
+    private final FormTemplateService formTemplateService;
+    private final BarcodeGeneratorService barcodeGeneratorService;
+    private final TiffDownloadService tiffDownloadService;
+    private final TiffByteBudget tiffByteBudget;
+    private final TiffValidator tiffValidator;
+    private final TiffRecompressor tiffRecompressor;
+    private final FesLoaderService fesLoaderService;
+    private final EmailService emailService;
+    private final Stage prepareStage;
+    private final Stage downloadStage;
+    private final Stage loadStage;
+    private final boolean streamTiffs;
+    private final int loadGroupSize;
+
+    /**
+     * Constructor.
+     *
+     * @param submissionService       dependency
+     * @param formTemplateService     dependency
+     * @param barcodeGeneratorService dependency
+     * @param tiffDownloadService     dependency
+     * @param tiffByteBudget          dependency
+     * @param tiffValidator           dependency
+     * @param tiffRecompressor        dependency
+     * @param fesLoaderService        dependency
+     * @param emailService            dependency
+     * @param meterRegistry           dependency
+     * @param prepareConcurrency      the number of submissions being prepared at once
+     * @param downloadConcurrency     the number of submissions having files downloaded at once
+     * @param loadConcurrency         the number of submissions being inserted into FES at once
+     * @param streamTiffs             whether TIFFs are streamed from S3 into FES rather than downloaded first
+     * @param loadGroupSize           the most submissions inserted into FES in one transaction
+     */
+    public FesSubmissionPipeline(final SubmissionService submissionService,
+        final FormTemplateService formTemplateService, final BarcodeGeneratorService barcodeGeneratorService,
+        final TiffDownloadService tiffDownloadService, final TiffByteBudget tiffByteBudget,
+        final TiffValidator tiffValidator, final TiffRecompressor tiffRecompressor,
+        final FesLoaderService fesLoaderService, final EmailService emailService, final MeterRegistry meterRegistry,
+        @Value("${fes.pipeline.prepare.concurrency:4}") final int prepareConcurrency,
+        @Value("${fes.pipeline.download.concurrency:4}") final int downloadConcurrency,
+        @Value("${fes.pipeline.load.concurrency:1}") final int loadConcurrency,
+        @Value("${fes.tiff.streaming.enabled:false}") final boolean streamTiffs,
+        @Value("${fes.loader.group.size:1}") final int loadGroupSize) {
+        if (loadGroupSize < 1) {
+            throw new IllegalArgumentException("FES load group size must be at least 1");
+        }
+        this.submissionService = submissionService;
+        this.formTemplateService = formTemplateService;
+        this.barcodeGeneratorService = barcodeGeneratorService;
+        this.tiffDownloadService = tiffDownloadService;
+        this.tiffByteBudget = tiffByteBudget;
+        this.tiffValidator = tiffValidator;
+        this.tiffRecompressor = tiffRecompressor;
+        this.fesLoaderService = fesLoaderService;
+        this.emailService = emailService;
+        this.prepareStage = new Stage("prepare", prepareConcurrency, meterRegistry);
+        this.downloadStage = new Stage("download", downloadConcurrency, meterRegistry);
+        this.loadStage = new Stage("load", loadConcurrency, meterRegistry);
+        this.streamTiffs = streamTiffs;
+        this.loadGroupSize = loadGroupSize;
+    }
+
+    /**
+     * Submit the submissions to FES, returning once every submission has left the pipeline.
+     *
+     * @param submissions the submissions, in the order they should enter the pipeline
+     */
+    public void submit(final List<Submission> submissions) {
+        if (submissions.isEmpty()) {
+            return;
+        }
+        final AtomicReference<RuntimeException> unexpected = new AtomicReference<>();
+        final Queue<PendingLoad> pendingLoads = new ConcurrentLinkedQueue<>();
+        final long startedAt = System.nanoTime();
+
+        try (final ExecutorService prepareExecutor = prepareStage.newExecutor();
+             final ExecutorService downloadExecutor = downloadStage.newExecutor();
+             final ExecutorService loadExecutor = loadStage.newExecutor()) {
+            final CompletableFuture<?>[] futures = submissions.stream()
+                .map(submission -> prepareStage.submit(() -> prepare(submission), prepareExecutor)
+                    .thenCompose(prepared -> downloadStage.submit(() -> download(prepared), downloadExecutor))
+                    .thenCompose(loadable -> (loadGroupSize == 1
+                        ? loadStage.submit(() -> load(loadable), loadExecutor)
+                        : enqueueLoad(loadable, pendingLoads, loadExecutor))
+                        .whenComplete((ignored, throwable) -> releaseTiffs(loadable.model().getTiffFiles(),
+                            loadable.reservation())))
+                    .exceptionally(throwable -> {
+                        handleFailure(submission, throwable, unexpected);
+                        return null;
+                    }))
+                .toArray(CompletableFuture[]::new);
+            CompletableFuture.allOf(futures).join();
+        }
+
+        LOGGER.debug("Submitted [%d] submissions through the FES pipeline in [%d] ms".formatted(submissions.size(),
+            (System.nanoTime() - startedAt) / 1_000_000));
+        if (unexpected.get() != null) {
+            throw unexpected.get();
+        }
+    }
+
+    private PreparedSubmission prepare(final Submission submission) {
+        String barcode = submission.getFormDetails().getBarcode();
+
+        LocalDateTime submittedAt =
+            submission.getSubmittedAt() == null ? submission.getCreatedAt() : submission.getSubmittedAt();
+
+        if (barcode == null) {
+            barcode = barcodeGeneratorService.getBarcode(submittedAt, submission.getId());
+            LOGGER.debug("Generated barcode for submission [%s]: %s".formatted(submission.getId(), barcode));
+            submissionService.updateSubmissionBarcode(submission.getId(), barcode);
+        }
+
+        final String efsFormId = submission.getFormDetails().getFormType();
+        final FormTemplateApi formTemplate = formTemplateService.getFormTemplate(efsFormId);
+
+        if (formTemplate == null) {
+            throw new SubmissionIncorrectStateException(
+                "Unrecognised form type '%s' in form details".formatted(efsFormId));
+        }
+
+        final String fesDocType =
+            Optional.ofNullable(formTemplate.getFesDocType()).orElseGet(formTemplate::getFormType);
+        LOGGER.debug("Submit to FES: [%s]".formatted(fesDocType));
+
+        return new PreparedSubmission(submission, barcode, submittedAt, fesDocType, formTemplate.isSameDay());
+    }
+
+    private LoadableSubmission download(final PreparedSubmission prepared) {
+        final Submission submission = prepared.submission();
+        final List<FileDetails> files = submission.getFormDetails().getFileDetailsList();
+        final List<FesFileModel> tiffFiles = new ArrayList<>();
+        if (streamTiffs) {
+            files.forEach(
+                file -> tiffFiles.add(FesFileModel.streamed(file.getConvertedFileId(), file.getNumberOfPages())));
+            return loadable(prepared, tiffFiles, null);
+        }
+
+        // reserved in one go, so the download never waits for budget while holding budget for its earlier files
+        final TiffByteBudget.Reservation reservation = tiffByteBudget.acquire(files.stream()
+            .mapToLong(file -> tiffDownloadService.getTiffFileLength(file.getConvertedFileId()))
+            .sum());
+        try {
+            for (final FileDetails file : files) {
+                final TiffBuffer tiff = tiffDownloadService.downloadTiffFile(file.getConvertedFileId());
+                final FesFileModel tiffFile = FesFileModel.buffered(tiff, file.getNumberOfPages());
+                tiffFiles.add(tiffFile);
+                tiffValidator.validate(file.getConvertedFileId(), tiff, file.getNumberOfPages());
+                tiffFile.setTiffBuffer(
+                    recompress(file.getConvertedFileId(), tiff, prepared.fesDocType(), reservation));
+            }
+        } catch (RuntimeException ex) {
+            releaseTiffs(tiffFiles, reservation);
+            throw ex;
+        }
+        LOGGER.debug(
+            "Retrieved [%d] files for submission [%s] from S3".formatted(tiffFiles.size(), submission.getId()));
+
+        return loadable(prepared, tiffFiles, reservation);
+    }
+
+    private static LoadableSubmission loadable(final PreparedSubmission prepared, final List<FesFileModel> tiffFiles,
+        final TiffByteBudget.Reservation reservation) {
+        final Submission submission = prepared.submission();
+        return new LoadableSubmission(submission,
+            new FesLoaderModel(prepared.barcode(), submission.getCompany().getCompanyName(),
+                submission.getCompany().getCompanyNumber(), prepared.fesDocType(), prepared.sameDay(), tiffFiles,
+                prepared.submittedAt()), reservation);
+    }
+
+    // swaps a TIFF for its re-encoding, if any, giving back the buffer and budget the download no longer needs
+    private TiffBuffer recompress(final String fileId, final TiffBuffer tiff, final String fesDocType,
+        final TiffByteBudget.Reservation reservation) {
+        final TiffBuffer recompressed = tiffRecompressor.recompress(fileId, tiff, fesDocType);
+        if (recompressed != tiff) {
+            reservation.reduce((long) tiff.length() - recompressed.length());
+            tiff.release();
+        }
+        return recompressed;
+    }
+
+    private Void load(final LoadableSubmission loadable) {
+        fesLoaderService.insertSubmission(loadable.model());
+        markSent(loadable);
+        return null;
+    }
+
+    private CompletableFuture<Void> enqueueLoad(final LoadableSubmission loadable,
+        final Queue<PendingLoad> pendingLoads, final ExecutorService loadExecutor) {
+        final PendingLoad pending = new PendingLoad(loadable, new CompletableFuture<>());
+        pendingLoads.add(pending);
+        // every submission queued schedules a group load, so none is left behind; a group load finding the queue
+        // already drained by an earlier one does nothing
+        loadStage.submit(() -> loadGroup(pendingLoads), loadExecutor);
+        return pending.loaded();
+    }
+
+    private Void loadGroup(final Queue<PendingLoad> pendingLoads) {
+        final List<PendingLoad> group = new ArrayList<>(loadGroupSize);
+        PendingLoad next;
+        while (group.size() < loadGroupSize && (next = pendingLoads.poll()) != null) {
+            group.add(next);
+        }
+        if (group.isEmpty()) {
+            return null;
+        }
+
+        final Map<Integer, RuntimeException> failures;
+        try {
+            failures = fesLoaderService.insertSubmissions(group.stream().map(p -> p.loadable().model()).toList());
+        } catch (RuntimeException ex) {
+            // the group commit failed, so none of its submissions were inserted
+            group.forEach(pending -> pending.loaded().completeExceptionally(ex));
+            return null;
+        }
+
+        for (int i = 0; i < group.size(); i++) {
+            final PendingLoad pending = group.get(i);
+            if (failures.containsKey(i)) {
+                pending.loaded().completeExceptionally(failures.get(i));
+                continue;
+            }
+            try {
+                markSent(pending.loadable());
+                pending.loaded().complete(null);
+            } catch (RuntimeException ex) {
+                pending.loaded().completeExceptionally(ex);
+            }
+        }
+        LOGGER.debug("Inserted group of [%d] submissions into FES DB with [%d] failures".formatted(group.size(),
+            failures.size()));
+        return null;
+    }
+
+    private void markSent(final LoadableSubmission loadable) {
+        final Submission submission = loadable.submission();
+        final FesLoaderModel model = loadable.model();
+
+        LOGGER.debug(
+            "Inserted submission details into FES DB for submission [%s], form [%s], same-day [%s]".formatted(
+                submission.getId(), model.getFormType(), model.isSameDay() ? "Y" : "N"));
+
+        submissionService.updateSubmissionStatus(submission.getId(), SubmissionStatus.SENT_TO_FES);
+    }
+
+    // returns the budget and buffers held by downloaded TIFFs once their submission no longer needs them, which is
+    // after its FES transaction has finished
+    private static void releaseTiffs(final List<FesFileModel> tiffFiles,
+        final TiffByteBudget.Reservation reservation) {
+        tiffFiles.stream()
+            .map(FesFileModel::getTiffBuffer)
+            .filter(Objects::nonNull)
+            .forEach(TiffBuffer::release);
+        if (reservation != null) {
+            reservation.release();
+        }
+    }
+
+    private void handleFailure(final Submission submission, final Throwable throwable,
+        final AtomicReference<RuntimeException> unexpected) {
+        final Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null
+            ? throwable.getCause()
+            : throwable;
+        switch (cause) {
+            case SubmissionIncorrectStateException ex -> logFailure(submission, ex);
+            case BarcodeException ex -> logFailure(submission, ex);
+            case TiffDownloadException ex -> logFailure(submission, ex);
+            case FesLoaderException ex -> logFailure(submission, ex);
+            case InvalidTiffException ex -> rejectInvalidTiff(submission, ex, unexpected);
+            case RuntimeException ex -> unexpected.compareAndSet(null, ex);
+            default -> unexpected.compareAndSet(null, new IllegalStateException(cause));
+        }
+    }
+
+    private static void logFailure(final Submission submission, final Exception ex) {
+        LOGGER.errorContext(submission.getId(), "Unable to submit to fes" + ex.getMessage(), ex, null);
+    }
+
+    // a submission left READY_TO_SUBMIT would only be downloaded and rejected again, so it is given the terminal
+    // status of a failed conversion, and the same internal email
+    private void rejectInvalidTiff(final Submission submission, final InvalidTiffException ex,
+        final AtomicReference<RuntimeException> unexpected) {
+        logFailure(submission, ex);
+        try {
+            submissionService.updateSubmissionStatus(submission.getId(),
+                SubmissionStatus.REJECTED_BY_DOCUMENT_CONVERTER);
+        } catch (RuntimeException e) {
+            unexpected.compareAndSet(null, e);
+            return;
+        }
+        try {
+            emailService.sendInternalFailedConversion(new InternalFailedConversionModel(submission,
+                submission.getFormDetails().getFileDetailsList().stream()
+                    .filter(file -> Objects.equals(file.getConvertedFileId(), ex.getFileId()))
+                    .map(FileDetails::getFileName)
+                    .toList()));
+        } catch (EmailServiceException e) {
+            LOGGER.errorContext(submission.getId(), "Failed to send failed conversion email for submission", null,
+                null);
+        }
+    }
+
+    /**
+     * A pipeline stage: bounds the number of submissions it works on at once and reports its throughput (as a timer)
+     * and the number of submissions queued for and being worked on by it (as gauges), tagged with the stage name.
+     */
+    static final class Stage {
+
+        private final String name;
+        private final int concurrency;
+        private final AtomicInteger queued = new AtomicInteger();
+        private final AtomicInteger active = new AtomicInteger();
+        private final Timer timer;
+
+        Stage(final String name, final int concurrency, final MeterRegistry meterRegistry) {
+            if (concurrency < 1) {
+                throw new IllegalArgumentException(
+                    "FES pipeline stage [%s] concurrency must be at least 1".formatted(name));
+            }
+            this.name = name;
+            this.concurrency = concurrency;
+            this.timer = Timer.builder("efs.fes.pipeline.stage")
+                .description("Time taken by a FES pipeline stage to process a submission")
+                .tag("stage", name)
+                .register(meterRegistry);
+            Gauge.builder("efs.fes.pipeline.stage.queued", queued, AtomicInteger::get)
+                .description("Submissions waiting for a FES pipeline stage")
+                .tag("stage", name)
+                .register(meterRegistry);
+            Gauge.builder("efs.fes.pipeline.stage.active", active, AtomicInteger::get)
+                .description("Submissions being processed by a FES pipeline stage")
+                .tag("stage", name)
+                .register(meterRegistry);
+        }
+
+        /**
+         * @return an executor running at most {@code concurrency} tasks at once, in the order they were submitted
+         */
+        ExecutorService newExecutor() {
+            return Executors.newFixedThreadPool(concurrency, Thread.ofVirtual().name("fes-" + name + "-", 0).factory());
+        }
+
+        <T> CompletableFuture<T> submit(final Supplier<T> work, final ExecutorService executor) {
+            queued.incrementAndGet();
+            return CompletableFuture.supplyAsync(() -> {
+                queued.decrementAndGet();
+                active.incrementAndGet();
+                try {
+                    return timer.record(work);
+                } finally {
+                    active.decrementAndGet();
+                }
+            }, executor);
+        }
+    }
+}
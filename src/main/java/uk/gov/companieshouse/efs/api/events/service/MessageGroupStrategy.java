@@ -0,0 +1,60 @@
+package uk.gov.companieshouse.efs.api.events.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Chooses the SQS FIFO message group for each file conversion request. Messages within a group are delivered strictly
+ * in order, one at a time; separate groups are consumed in parallel by the converters.
+ */
+@Component
+public class MessageGroupStrategy {
+
+    /**
+     * How file conversion requests are grouped.
+     */
+    public enum Mode {
+        /** One group for every request: the whole queue is consumed one message at a time. */
+        GLOBAL,
+        /** One group per submission: files within a submission keep their order. */
+        SUBMISSION,
+        /** One group per file: no ordering between the files of a submission. */
+        FILE,
+        /** Submissions hashed into a fixed number of groups: files within a submission keep their order. */
+        BUCKET
+    }
+
+    private static final String GROUP_PREFIX = SqsMessageService.EFS_NAMESPACE;
+
+    private final Mode mode;
+    private final int buckets;
+
+    /**
+     * Constructor.
+     *
+     * @param mode    the grouping mode
+     * @param buckets the number of groups used in {@link Mode#BUCKET} mode
+     */
+    public MessageGroupStrategy(@Value("${aws.sqs.message.group.mode:SUBMISSION}") final Mode mode,
+        @Value("${aws.sqs.message.group.buckets:16}") final int buckets) {
+        if (mode == Mode.BUCKET && buckets < 1) {
+            throw new IllegalArgumentException("aws.sqs.message.group.buckets must be at least 1: " + buckets);
+        }
+        this.mode = mode;
+        this.buckets = buckets;
+    }
+
+    /**
+     * @param submissionId the submission id
+     * @param fileId       the file id
+     * @return the message group id for the file's conversion request
+     */
+    public String getMessageGroupId(final String submissionId, final String fileId) {
+        return switch (mode) {
+            case GLOBAL -> GROUP_PREFIX;
+            case SUBMISSION -> GROUP_PREFIX + ":" + submissionId;
+            case FILE -> GROUP_PREFIX + ":" + submissionId + ":" + fileId;
+            case BUCKET -> GROUP_PREFIX + ":" + Math.floorMod(submissionId.hashCode(), buckets);
+        };
+    }
+}
@@ -1,9 +1,24 @@
 package uk.gov.companieshouse.efs.api.events.service;
 
 import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
 import uk.gov.companieshouse.efs.api.events.service.model.Decision;
+import uk.gov.companieshouse.efs.api.submissions.model.Submission;
 
 
 public interface MessageService {
-    void queueMessages(List<Decision> submissions);
+
+    /**
+     * Queue a conversion request for every file of the submissions.
+     *
+     * @param submissions the decisions holding the submissions
+     * @param onQueued    called once for the submissions of each batch of requests as soon as it completes, before
+     *                    the other batches complete, with those for which a request was accepted for every file;
+     *                    returns the ids of those it recorded as queued, and a submission it does not return, or
+     *                    throws for, is not queued
+     * @return the ids of the submissions for which a request was accepted for every file and recorded by
+     * {@code onQueued}; the others must be queued again with their next queue attempt
+     */
+    Set<String> queueMessages(List<Decision> submissions, Function<List<Submission>, Set<String>> onQueued);
 }
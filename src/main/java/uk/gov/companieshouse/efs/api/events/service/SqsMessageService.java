@@ -1,19 +1,35 @@
 package uk.gov.companieshouse.efs.api.events.service;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Iterables;
-import com.google.common.collect.Streams;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.SqsAsyncClient;
+import software.amazon.awssdk.services.sqs.model.BatchResultErrorEntry;
 import software.amazon.awssdk.services.sqs.model.MessageAttributeValue;
 import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequest;
 import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequestEntry;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchResponse;
 import uk.gov.companieshouse.efs.api.events.service.model.Decision;
+import uk.gov.companieshouse.efs.api.submissions.model.FileDetails;
 import uk.gov.companieshouse.efs.api.submissions.model.Submission;
 import uk.gov.companieshouse.efs.api.util.IdentifierGeneratable;
 
@@ -27,11 +43,29 @@ public class SqsMessageService implements MessageService {
     private static final String SUBMISSION_KEY = "submissionId";
     private static final String FILE_KEY = "fileId";
     private static final String STRING_DATA_TYPE = "String";
+    // SQS FIFO queues drop a message whose deduplication id was accepted within this interval
+    private static final Duration DEDUPLICATION_INTERVAL = Duration.ofMinutes(5);
+    private static final long MAX_RECENT_DEDUPLICATION_IDS = 100_000;
 
-    private SqsClient client;
+    private record SubmissionEntries(Submission submission, List<SendMessageBatchRequestEntry> entries) {
+    }
+
+    private record PartitionOutcome(Set<String> sentIds, List<SendMessageBatchRequestEntry> retries) {
+    }
+
+    private SqsAsyncClient client;
     private String queueUrl;
     private IdentifierGeneratable idGenerator;
     private int messagePartitionSize;
+    private MessageGroupStrategy messageGroupStrategy;
+    private final int maxSendAttempts;
+    private final long sendBackoffMillis;
+    private final Semaphore inFlightPartitions;
+    private final Counter duplicateCounter;
+    private final Cache<String, Boolean> recentDeduplicationIds = CacheBuilder.newBuilder()
+        .expireAfterWrite(DEDUPLICATION_INTERVAL)
+        .maximumSize(MAX_RECENT_DEDUPLICATION_IDS)
+        .build();
 
     /**
      * Constructor.
@@ -40,42 +74,242 @@ public class SqsMessageService implements MessageService {
      * @param idGenerator           dependency
      * @param queueUrl              dependency
      * @param messagePartitionSize  dependency
+     * @param messageGroupStrategy  dependency
+     * @param meterRegistry         dependency
+     * @param maxSendAttempts       the number of times a message is sent before giving up on it
+     * @param sendBackoffMillis     the delay before the first re-send, doubled for each subsequent attempt
+     * @param maxInFlightPartitions the most partitions sent, or waiting to be re-sent, at once
      */
-    public SqsMessageService(final SqsClient client, @Qualifier("idGenerator") final IdentifierGeneratable idGenerator,
-        @Value("${aws.sqs.queue.url}") final String queueUrl, @Value("${message.partition.size}") final int messagePartitionSize) {
+    public SqsMessageService(final SqsAsyncClient client, @Qualifier("idGenerator") final IdentifierGeneratable idGenerator,
+        @Value("${aws.sqs.queue.url}") final String queueUrl, @Value("${message.partition.size}") final int messagePartitionSize,
+        final MessageGroupStrategy messageGroupStrategy, final MeterRegistry meterRegistry,
+        @Value("${aws.sqs.send.max-attempts:3}") final int maxSendAttempts,
+        @Value("${aws.sqs.send.backoff.millis:200}") final long sendBackoffMillis,
+        @Value("${aws.sqs.send.max-in-flight:10}") final int maxInFlightPartitions) {
+        if (maxInFlightPartitions < 1) {
+            throw new IllegalArgumentException(
+                "aws.sqs.send.max-in-flight must be at least 1: " + maxInFlightPartitions);
+        }
         this.client = client;
         this.idGenerator = idGenerator;
         this.queueUrl = queueUrl;
         this.messagePartitionSize = messagePartitionSize;
+        this.messageGroupStrategy = messageGroupStrategy;
+        this.maxSendAttempts = maxSendAttempts;
+        this.sendBackoffMillis = sendBackoffMillis;
+        this.inFlightPartitions = new Semaphore(maxInFlightPartitions);
+        this.duplicateCounter = Counter.builder("efs.sqs.messages.duplicates")
+            .description("Conversion requests re-sent within the SQS deduplication interval and so suppressed")
+            .register(meterRegistry);
     }
 
+    /**
+     * Send the partitions concurrently, at most {@code maxInFlightPartitions} at once, re-sending entries that failed
+     * through no fault of the request with an exponential backoff. The files of a submission are sent in the same
+     * partition wherever they fit in one. A submission only counts as queued once a request has been accepted for all
+     * its files and {@code onQueued} has recorded it. The submissions of a partition are handed to it together as
+     * soon as the partition completes, without waiting for the other partitions, so each is recorded in one write.
+     * A submission that is not queued must be queued again with its next queue attempt, as SQS suppresses the
+     * requests already accepted for its files as duplicates for the deduplication interval.
+     */
     @Override
-    public void queueMessages(List<Decision> submissions) {
-        List<SendMessageBatchRequestEntry> entries = submissions
-                .stream()
+    public Set<String> queueMessages(List<Decision> submissions, Function<List<Submission>, Set<String>> onQueued) {
+        final List<SubmissionEntries> entriesBySubmission = submissions.stream()
                 .map(Decision::getSubmission)
-                .flatMap(this::getMessageBatchRequestEntries)
+                .map(submission -> new SubmissionEntries(submission,
+                    getMessageBatchRequestEntries(submission).toList()))
+                .toList();
+        final List<SendMessageBatchRequestEntry> entries = entriesBySubmission.stream()
+                .flatMap(submissionEntries -> submissionEntries.entries().stream())
                 .toList();
         entries.forEach(entry -> LOGGER.debug(
             "Sending message for submission [%s] and file [%s] with message id [%s]".formatted(
-                entry.messageAttributes().get(SUBMISSION_KEY).stringValue(),
-                entry.messageAttributes().get(FILE_KEY).stringValue(),
-                entry.id())));
+                getSubmissionId(entry), entry.messageAttributes().get(FILE_KEY).stringValue(), entry.id())));
+
+        final Map<String, CompletableFuture<Set<String>>> partitionsByEntryId = new HashMap<>();
+        partition(entriesBySubmission).forEach(partition -> {
+            final CompletableFuture<Set<String>> sent = sendWithPermit(partition);
+            partition.forEach(entry -> partitionsByEntryId.put(entry.id(), sent));
+        });
 
-        Streams.stream(Iterables.partition(entries, messagePartitionSize))
-                .forEach(partition -> client.sendMessageBatch(SendMessageBatchRequest.builder()
+        // submissions whose entries were sent in the same partitions are recorded together once those complete
+        final Map<List<CompletableFuture<Set<String>>>, List<SubmissionEntries>> submissionsByPartitions =
+            new LinkedHashMap<>();
+        entriesBySubmission.forEach(submissionEntries -> submissionsByPartitions.computeIfAbsent(
+                submissionEntries.entries().stream().map(entry -> partitionsByEntryId.get(entry.id())).distinct()
+                    .toList(), partitions -> new ArrayList<>())
+            .add(submissionEntries));
+
+        final Set<String> queuedSubmissionIds = submissionsByPartitions.entrySet().stream()
+                .map(group -> whenQueued(group.getKey(), group.getValue(), onQueued))
+                .toList()
+                .stream()
+                .map(CompletableFuture::join)
+                .flatMap(Set::stream)
+                .collect(Collectors.toSet());
+        LOGGER.debug("Queued %d of %d submissions to SQS".formatted(queuedSubmissionIds.size(), submissions.size()));
+        return queuedSubmissionIds;
+    }
+
+    /**
+     * @return a future of the ids of the submissions recorded as queued once the partitions holding their entries
+     * complete, leaving out those with an entry that was not accepted
+     */
+    private static CompletableFuture<Set<String>> whenQueued(final List<CompletableFuture<Set<String>>> partitions,
+        final List<SubmissionEntries> group, final Function<List<Submission>, Set<String>> onQueued) {
+        return CompletableFuture.allOf(partitions.toArray(CompletableFuture[]::new)).thenApply(done -> {
+            final Set<String> sentIds = partitions.stream()
+                    .flatMap(partition -> partition.join().stream())
+                    .collect(Collectors.toSet());
+            final List<Submission> accepted = group.stream()
+                    .filter(submissionEntries -> submissionEntries.entries().stream()
+                        .allMatch(entry -> sentIds.contains(entry.id())))
+                    .map(SubmissionEntries::submission)
+                    .toList();
+            return accepted.isEmpty() ? Set.of() : notifyQueued(accepted, onQueued);
+        });
+    }
+
+    // a submission's entries share a partition unless they do not fit in one, in which case they fill their own
+    private List<List<SendMessageBatchRequestEntry>> partition(final List<SubmissionEntries> entriesBySubmission) {
+        final List<List<SendMessageBatchRequestEntry>> partitions = new ArrayList<>();
+        List<SendMessageBatchRequestEntry> current = new ArrayList<>();
+        for (final SubmissionEntries submissionEntries : entriesBySubmission) {
+            final List<SendMessageBatchRequestEntry> entries = submissionEntries.entries();
+            if (!current.isEmpty() && current.size() + entries.size() > messagePartitionSize) {
+                partitions.add(current);
+                current = new ArrayList<>();
+            }
+            if (entries.size() > messagePartitionSize) {
+                Iterables.partition(entries, messagePartitionSize).forEach(partitions::add);
+            } else {
+                current.addAll(entries);
+            }
+        }
+        if (!current.isEmpty()) {
+            partitions.add(current);
+        }
+        return partitions;
+    }
+
+    // waits for a partition to complete once the maximum are in flight; the permit is held across re-sends
+    private CompletableFuture<Set<String>> sendWithPermit(final List<SendMessageBatchRequestEntry> partition) {
+        try {
+            inFlightPartitions.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.error("Interrupted before sending [%d] messages to SQS".formatted(partition.size()));
+            return CompletableFuture.completedFuture(Set.of());
+        }
+        try {
+            return sendPartition(partition, 1).whenComplete((sentIds, throwable) -> inFlightPartitions.release());
+        } catch (RuntimeException e) {
+            inFlightPartitions.release();
+            throw e;
+        }
+    }
+
+    // a submission that cannot be recorded as queued stays SUBMITTED, so it is not queued and must be sent again
+    // with its next queue attempt, which SQS does not suppress
+    private static Set<String> notifyQueued(final List<Submission> submissions,
+        final Function<List<Submission>, Set<String>> onQueued) {
+        try {
+            return onQueued.apply(submissions);
+        } catch (RuntimeException e) {
+            LOGGER.error("Failed to record queueing of [%d] submissions: %s".formatted(submissions.size(),
+                e.getMessage()));
+            return Set.of();
+        }
+    }
+
+    /**
+     * @return a future of the ids of the entries accepted by SQS; it does not complete exceptionally
+     */
+    private CompletableFuture<Set<String>> sendPartition(final List<SendMessageBatchRequestEntry> partition,
+        final int attempt) {
+        countDuplicates(partition);
+        return client.sendMessageBatch(SendMessageBatchRequest.builder()
                         .queueUrl(queueUrl)
                         .entries(partition)
-                        .build()));
-        LOGGER.debug("Sent %d messages to SQS".formatted(entries.size()));
+                        .build())
+                .handle((response, throwable) -> {
+                    if (throwable != null) {
+                        LOGGER.error("Failed to send [%d] messages to SQS on attempt [%d]: %s".formatted(
+                            partition.size(), attempt, throwable.getMessage()));
+                        return new PartitionOutcome(Set.of(), partition);
+                    }
+                    return getOutcome(partition, response, attempt);
+                })
+                .thenCompose(outcome -> {
+                    if (outcome.retries().isEmpty() || attempt >= maxSendAttempts) {
+                        outcome.retries().forEach(entry -> LOGGER.error(
+                            "Giving up sending message [%s] for submission [%s] after [%d] attempts".formatted(
+                                entry.id(), getSubmissionId(entry), attempt)));
+                        return CompletableFuture.completedFuture(outcome.sentIds());
+                    }
+                    final long delay = sendBackoffMillis << (attempt - 1);
+                    return CompletableFuture.supplyAsync(outcome::retries,
+                                    CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS))
+                            .thenCompose(retries -> sendPartition(retries, attempt + 1))
+                            .thenApply(retriedIds -> {
+                                final Set<String> sentIds = new HashSet<>(outcome.sentIds());
+                                sentIds.addAll(retriedIds);
+                                return sentIds;
+                            });
+                });
+    }
+
+    private PartitionOutcome getOutcome(final List<SendMessageBatchRequestEntry> partition,
+        final SendMessageBatchResponse response, final int attempt) {
+        final Map<String, SendMessageBatchRequestEntry> entriesById = partition.stream()
+                .collect(Collectors.toMap(SendMessageBatchRequestEntry::id, entry -> entry));
+        final Set<String> sentIds = new HashSet<>();
+        response.successful().forEach(result -> {
+            sentIds.add(result.id());
+            recentDeduplicationIds.put(entriesById.get(result.id()).messageDeduplicationId(), Boolean.TRUE);
+        });
+        final Set<String> retryIds = new HashSet<>();
+        for (final BatchResultErrorEntry error : response.failed()) {
+            LOGGER.error("SQS rejected message [%s] on attempt [%d] with code [%s]: %s".formatted(error.id(), attempt,
+                error.code(), error.message()));
+            // sender faults are caused by the request itself and fail again however often they are re-sent
+            if (!Boolean.TRUE.equals(error.senderFault())) {
+                retryIds.add(error.id());
+            }
+        }
+        return new PartitionOutcome(sentIds,
+            partition.stream().filter(entry -> retryIds.contains(entry.id())).toList());
+    }
+
+    private void countDuplicates(final List<SendMessageBatchRequestEntry> partition) {
+        partition.stream()
+                .filter(entry -> recentDeduplicationIds.getIfPresent(entry.messageDeduplicationId()) != null)
+                .forEach(entry -> {
+                    duplicateCounter.increment();
+                    LOGGER.debug("Message with deduplication id [%s] was sent recently and will be suppressed"
+                            .formatted(entry.messageDeduplicationId()));
+                });
+    }
+
+    private static String getSubmissionId(final SendMessageBatchRequestEntry entry) {
+        return entry.messageAttributes().get(SUBMISSION_KEY).stringValue();
     }
 
     private Stream<SendMessageBatchRequestEntry> getMessageBatchRequestEntries(Submission submission) {
         return submission.getFormDetails().getFileDetailsList().stream()
                 .map(file -> SendMessageBatchRequestEntry.builder()
                         .messageAttributes(getMessageAttributes(submission.getId(), file.getFileId()))
-                        .id(idGenerator.generateId()).messageBody(EFS_NAMESPACE).messageGroupId(EFS_NAMESPACE)
-                        .messageDeduplicationId(idGenerator.generateId()).build());
+                        .id(idGenerator.generateId()).messageBody(EFS_NAMESPACE)
+                        .messageGroupId(messageGroupStrategy.getMessageGroupId(submission.getId(), file.getFileId()))
+                        .messageDeduplicationId(getDeduplicationId(submission.getId(), file)).build());
+    }
+
+    /**
+     * The deduplication id is stable for a given queue attempt of a file, so re-sending a file that has not yet been
+     * marked QUEUED (e.g. when queue-files is retried) is dropped by SQS rather than converted twice.
+     */
+    private static String getDeduplicationId(final String submissionId, final FileDetails file) {
+        return "%s:%s:%d".formatted(submissionId, file.getFileId(), file.getNextQueueAttempt());
     }
 
     private Map<String, MessageAttributeValue> getMessageAttributes(String submissionId, String fileId) {
@@ -6,6 +6,8 @@ import java.time.format.DateTimeFormatter;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import org.springframework.beans.factory.annotation.Value;
@@ -89,10 +91,24 @@ public class StandardServiceDelayedHandler implements DelayedSubmissionHandlerSt
                     .collect(Collectors.groupingBy(
                         delayedSubmissionModel -> formCategoryToEmailAddressService.getEmailAddressForFormCategory(
                             delayedSubmissionModel.getFormType())));
-            delayedSubmissionBusinessModels.forEach(
-                (key, value) -> emailService.sendDelayedSubmissionBusinessEmail(
-                    new DelayedSubmissionBusinessEmailModel(value, key,
-                        (int) TimeUnit.HOURS.toMinutes(businessDelayInHours))));
+            // sent in parallel, then waited for so that a failure is still reported to the caller
+            final List<CompletableFuture<Void>> businessEmails = delayedSubmissionBusinessModels.entrySet().stream()
+                .map(entry -> emailService.sendDelayedSubmissionBusinessEmailAsync(
+                    new DelayedSubmissionBusinessEmailModel(entry.getValue(), entry.getKey(),
+                        (int) TimeUnit.HOURS.toMinutes(businessDelayInHours))))
+                .toList();
+            awaitAll(businessEmails);
+        }
+    }
+
+    private static void awaitAll(final List<CompletableFuture<Void>> emails) {
+        try {
+            CompletableFuture.allOf(emails.toArray(CompletableFuture[]::new)).join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw ex;
         }
     }
 }
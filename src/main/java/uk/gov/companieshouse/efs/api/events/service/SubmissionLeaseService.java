@@ -0,0 +1,60 @@
+package uk.gov.companieshouse.efs.api.events.service;
+
+import java.time.Duration;
+import java.util.List;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import uk.gov.companieshouse.api.model.efs.submissions.SubmissionStatus;
+import uk.gov.companieshouse.efs.api.submissions.model.Submission;
+import uk.gov.companieshouse.efs.api.submissions.repository.SubmissionRepository;
+import uk.gov.companieshouse.efs.api.util.IdentifierGeneratable;
+import uk.gov.companieshouse.logging.Logger;
+import uk.gov.companieshouse.logging.LoggerFactory;
+
+/**
+ * Claims batches of submissions on behalf of this instance so that several instances can poll the
+ * same statuses without processing a submission twice.
+ */
+@Component
+public class SubmissionLeaseService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger("efs-submission-api");
+    private static final String DEFAULT_OWNER_PREFIX = "efs-submission-api";
+
+    private final SubmissionRepository repository;
+    private final String leaseOwner;
+    private final Duration leaseDuration;
+
+    /**
+     * Constructor.
+     *
+     * @param repository            dependency
+     * @param idGenerator           used to make the lease owner unique to this instance
+     * @param ownerPrefix           prefix of the lease owner identity (defaults to the application name)
+     * @param leaseDurationSeconds  how long a claim is held before another instance may take it over
+     */
+    public SubmissionLeaseService(final SubmissionRepository repository,
+        @Qualifier("idGenerator") final IdentifierGeneratable idGenerator,
+        @Value("${submission.lease.owner.prefix:}") final String ownerPrefix,
+        @Value("${submission.lease.duration.seconds:300}") final long leaseDurationSeconds) {
+        this.repository = repository;
+        this.leaseOwner = "%s:%s".formatted(StringUtils.defaultIfBlank(ownerPrefix, DEFAULT_OWNER_PREFIX),
+            idGenerator.generateId());
+        this.leaseDuration = Duration.ofSeconds(leaseDurationSeconds);
+        LOGGER.info("Submission lease owner [%s] with lease duration [%s]".formatted(leaseOwner, leaseDuration));
+    }
+
+    public List<Submission> claim(final SubmissionStatus status, final int maxBatchSize) {
+        return repository.claimByStatusOrderByPriority(status, maxBatchSize, leaseOwner, leaseDuration);
+    }
+
+    public void release(final List<Submission> submissions) {
+        repository.releaseLeases(submissions.stream().map(Submission::getId).toList(), leaseOwner);
+    }
+
+    public String getLeaseOwner() {
+        return leaseOwner;
+    }
+}
@@ -0,0 +1,95 @@
+package uk.gov.companieshouse.efs.api.events.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import uk.gov.companieshouse.efs.api.events.service.model.TiffBuffer;
+
+/**
+ * Reuses off-heap buffers for downloaded TIFFs, so that multi-megabyte TIFFs are not allocated on the heap for each
+ * download, where they go straight into the old generation as humongous objects.
+ * <p>
+ * Up to the pool size, buffers are allocated as needed and returned to the pool when their TIFF is released. A TIFF
+ * larger than a buffer, or taken while every buffer is in use, is held on the heap instead. With a pool size of 0
+ * every TIFF is held on the heap, as before.
+ * </p>
+ */
+@Component
+public class TiffBufferPool {
+
+    private final int poolSize;
+    private final int bufferBytes;
+    private final Queue<ByteBuffer> idle = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger allocated = new AtomicInteger();
+    private final AtomicInteger inUse = new AtomicInteger();
+    private final Counter misses;
+
+    /**
+     * Constructor.
+     *
+     * @param meterRegistry dependency
+     * @param poolSize      the most off-heap buffers allocated, or 0 to hold every TIFF on the heap
+     * @param bufferMb      the size of each buffer in megabytes
+     */
+    public TiffBufferPool(final MeterRegistry meterRegistry,
+        @Value("${tiff.buffer.pool.size:0}") final int poolSize,
+        @Value("${tiff.buffer.size.mb:8}") final int bufferMb) {
+        if (poolSize < 0 || bufferMb < 1 || bufferMb > 1024) {
+            throw new IllegalArgumentException(
+                "TIFF buffer pool size [%d] must not be negative and buffer size [%d] MB must be 1 to 1024".formatted(
+                    poolSize, bufferMb));
+        }
+        this.poolSize = poolSize;
+        this.bufferBytes = bufferMb * 1024 * 1024;
+        Gauge.builder("efs.tiff.buffer.pool.allocated", allocated, AtomicInteger::get)
+            .description("Off-heap TIFF buffers allocated")
+            .register(meterRegistry);
+        Gauge.builder("efs.tiff.buffer.pool.used", inUse, AtomicInteger::get)
+            .description("Off-heap TIFF buffers holding a TIFF not yet released")
+            .register(meterRegistry);
+        this.misses = Counter.builder("efs.tiff.buffer.pool.misses")
+            .description("TIFFs held on the heap because they were too large or every buffer was in use")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Take a buffer for a TIFF, ready to be filled.
+     *
+     * @param length the TIFF length in bytes
+     * @return the buffer, which must be released once the TIFF is no longer needed
+     */
+    public TiffBuffer take(final long length) {
+        if (poolSize == 0) {
+            return heapBuffer(length);
+        }
+        ByteBuffer buffer = length <= bufferBytes ? idle.poll() : null;
+        if (buffer == null && length <= bufferBytes
+            && allocated.getAndUpdate(count -> count < poolSize ? count + 1 : count) < poolSize) {
+            buffer = ByteBuffer.allocateDirect(bufferBytes);
+        }
+        if (buffer == null) {
+            misses.increment();
+            return heapBuffer(length);
+        }
+
+        inUse.incrementAndGet();
+        buffer.clear().limit((int) length);
+        return new TiffBuffer(buffer, this::giveBack);
+    }
+
+    private void giveBack(final ByteBuffer buffer) {
+        inUse.decrementAndGet();
+        idle.add(buffer);
+    }
+
+    private static TiffBuffer heapBuffer(final long length) {
+        return new TiffBuffer(ByteBuffer.allocate(Math.toIntExact(length)), buffer -> {
+        });
+    }
+}
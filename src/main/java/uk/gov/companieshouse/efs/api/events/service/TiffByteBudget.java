@@ -0,0 +1,142 @@
+package uk.gov.companieshouse.efs.api.events.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import uk.gov.companieshouse.efs.api.events.service.exception.TiffDownloadException;
+
+/**
+ * Limits the TIFF bytes held in memory at once between being downloaded from S3 and inserted into FES.
+ * <p>
+ * A submission reserves the size of all its TIFFs at once before any is read, waiting while the budget is used up,
+ * and the reservation is released once the TIFFs are no longer needed. Reserving everything in one go means a
+ * submission never waits for budget while holding some, so submissions downloading at once cannot each hold part of
+ * the budget while waiting for the rest. The budget is counted in whole KiB. A reservation larger than the whole
+ * budget reserves all of it, so it waits for everything else to be released rather than waiting forever. With a
+ * budget of 0 nothing waits, but usage is still reported.
+ * </p>
+ */
+@Component
+public class TiffByteBudget {
+
+    private static final long BYTES_PER_PERMIT = 1024;
+
+    private final long budgetBytes;
+    private final int totalPermits;
+    private final Semaphore permits;
+    private final AtomicLong usedBytes = new AtomicLong();
+    private final Timer waitTimer;
+
+    /**
+     * Constructor.
+     *
+     * @param meterRegistry dependency
+     * @param budgetMb      the most TIFF megabytes held in memory at once, or 0 for no limit
+     */
+    public TiffByteBudget(final MeterRegistry meterRegistry,
+        @Value("${tiff.download.budget.mb:0}") final int budgetMb) {
+        if (budgetMb < 0) {
+            throw new IllegalArgumentException("TIFF download budget must not be negative");
+        }
+        this.budgetBytes = budgetMb * 1024L * 1024L;
+        this.totalPermits = (int) (budgetBytes / BYTES_PER_PERMIT);
+        this.permits = new Semaphore(totalPermits, true);
+        Gauge.builder("efs.tiff.budget.bytes", () -> budgetBytes)
+            .description("TIFF bytes that may be held in memory at once, 0 if unlimited")
+            .baseUnit("bytes")
+            .register(meterRegistry);
+        Gauge.builder("efs.tiff.budget.used.bytes", usedBytes, AtomicLong::get)
+            .description("TIFF bytes downloaded and not yet released")
+            .baseUnit("bytes")
+            .register(meterRegistry);
+        this.waitTimer = Timer.builder("efs.tiff.budget.wait")
+            .description("Time downloads waited for TIFF budget to be released")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Reserve budget, waiting until enough is released.
+     *
+     * @param bytes the size in bytes
+     * @return the reservation, which must be released once the bytes are no longer held
+     * @throws TiffDownloadException if interrupted while waiting
+     */
+    public Reservation acquire(final long bytes) {
+        final int needed = permitsFor(bytes);
+        if (needed > 0 && !permits.tryAcquire(needed)) {
+            final long startedAt = System.nanoTime();
+            try {
+                permits.acquire(needed);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new TiffDownloadException("Interrupted waiting for TIFF download budget", ex);
+            } finally {
+                waitTimer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+            }
+        }
+        usedBytes.addAndGet(bytes);
+        return new Reservation(bytes, needed);
+    }
+
+    private int permitsFor(final long bytes) {
+        if (totalPermits == 0 || bytes <= 0) {
+            return 0;
+        }
+        return (int) Math.min(totalPermits, (bytes + BYTES_PER_PERMIT - 1) / BYTES_PER_PERMIT);
+    }
+
+    /**
+     * Budget reserved by {@link #acquire(long)}, which gives back exactly the permits it took, however it is given
+     * back.
+     */
+    public final class Reservation {
+
+        // guarded by this
+        private long bytes;
+        private int reserved;
+        private boolean released;
+
+        private Reservation(final long bytes, final int reserved) {
+            this.bytes = bytes;
+            this.reserved = reserved;
+        }
+
+        /**
+         * Give back part of the reservation, such as when a TIFF shrinks, keeping the permits the rest still needs.
+         *
+         * @param bytes the bytes no longer held
+         */
+        public synchronized void reduce(final long bytes) {
+            if (released || bytes <= 0) {
+                return;
+            }
+            final long remaining = Math.max(0, this.bytes - bytes);
+            final int kept = Math.min(reserved, permitsFor(remaining));
+            usedBytes.addAndGet(remaining - this.bytes);
+            if (kept < reserved) {
+                permits.release(reserved - kept);
+            }
+            this.bytes = remaining;
+            this.reserved = kept;
+        }
+
+        /**
+         * Release the reservation; releasing it again does nothing.
+         */
+        public synchronized void release() {
+            if (released) {
+                return;
+            }
+            released = true;
+            usedBytes.addAndGet(-bytes);
+            if (reserved > 0) {
+                permits.release(reserved);
+            }
+        }
+    }
+}
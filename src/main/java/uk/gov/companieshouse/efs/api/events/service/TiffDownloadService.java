@@ -1,5 +1,37 @@
 package uk.gov.companieshouse.efs.api.events.service;
 
+import uk.gov.companieshouse.efs.api.events.service.model.TiffBuffer;
+import uk.gov.companieshouse.efs.api.events.service.model.TiffStream;
+
 public interface TiffDownloadService {
-    byte[] downloadTiffFile(String fileId);
+    /**
+     * Look up the size of the converted TIFF file without downloading it.
+     *
+     * @param fileId the converted file id
+     * @return the TIFF length in bytes
+     */
+    long getTiffFileLength(String fileId);
+
+    /**
+     * Download the converted TIFF file into a buffer.
+     *
+     * @param fileId the converted file id
+     * @return the TIFF, which the caller must release
+     */
+    TiffBuffer downloadTiffFile(String fileId);
+
+    /**
+     * Open a stream of the converted TIFF file rather than reading it into memory.
+     *
+     * @param fileId the converted file id
+     * @return the open stream, which the caller must close
+     */
+    TiffStream openTiffFile(String fileId);
+
+    /**
+     * Download the converted TIFF file into the local spool, ready to be downloaded or opened later.
+     *
+     * @param fileId the converted file id
+     */
+    void prefetchTiffFile(String fileId);
 }
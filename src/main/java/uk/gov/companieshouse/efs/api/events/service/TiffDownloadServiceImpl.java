@@ -1,41 +1,168 @@
 package uk.gov.companieshouse.efs.api.events.service;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.Optional;
+import java.util.OptionalLong;
 
 import org.apache.commons.io.IOUtils;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import software.amazon.awssdk.core.ResponseInputStream;
 import software.amazon.awssdk.core.exception.SdkException;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
 import uk.gov.companieshouse.efs.api.events.service.exception.TiffDownloadException;
+import uk.gov.companieshouse.efs.api.events.service.model.TiffBuffer;
+import uk.gov.companieshouse.efs.api.events.service.model.TiffStream;
+import uk.gov.companieshouse.logging.Logger;
+import uk.gov.companieshouse.logging.LoggerFactory;
 
 @Component
 public class TiffDownloadServiceImpl implements TiffDownloadService {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger("efs-submission-api");
+
     private S3Client s3;
 
     private String bucketName;
 
+    private TiffBufferPool bufferPool;
+
+    private TiffSpool spool;
+
     public TiffDownloadServiceImpl(final S3Client that,
-                                   @Value("${tiff.bucket.name}") final String bucketName) {
+                                   @Value("${tiff.bucket.name}") final String bucketName,
+                                   final TiffBufferPool bufferPool,
+                                   final TiffSpool spool) {
         this.s3 = that;
         this.bucketName = bucketName;
+        this.bufferPool = bufferPool;
+        this.spool = spool;
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * A TIFF prefetched into the {@link TiffSpool} is measured there rather than in S3; otherwise the size S3 reports
+     * for it, or 0 if it reports none.
+     */
     @Override
-    public byte[] downloadTiffFile(String fileId) {
+    public long getTiffFileLength(String fileId) {
+        final OptionalLong spooled = spool.lengthOf(fileId);
+        if (spooled.isPresent()) {
+            return spooled.getAsLong();
+        }
         try {
-            return IOUtils.toByteArray(s3.getObject(GetObjectRequest.builder()
+            return Optional.ofNullable(s3.headObject(HeadObjectRequest.builder()
                     .bucket(bucketName)
-                    .key("%s/%s".formatted("converted-tiffs", fileId))
-                    .build()));
+                    .key(key(fileId))
+                    .build()).contentLength()).orElse(0L);
+        } catch (SdkException se) {
+            throw new TiffDownloadException("Failed to look up TIFF", se);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The caller reserves the TIFF's size from the {@link TiffByteBudget} beforehand. A TIFF whose size is known is
+     * read into a buffer from the {@link TiffBufferPool}. A TIFF prefetched into the {@link TiffSpool} is read from
+     * there rather than S3.
+     */
+    @Override
+    public TiffBuffer downloadTiffFile(String fileId) {
+        final Optional<TiffSpool.SpooledTiff> spooled = spool.take(fileId);
+        if (spooled.isPresent()) {
+            try {
+                return readSpooled(spooled.get());
+            } catch (IOException ex) {
+                LOGGER.error("Failed to read spooled TIFF [%s], downloading it from S3".formatted(fileId), ex);
+            }
+        }
+
+        TiffBuffer tiff = null;
+        try (ResponseInputStream<GetObjectResponse> content = s3.getObject(getObjectRequest(fileId))) {
+            final long length = contentLength(content);
+            if (length < 0) {
+                // the size is only known once read
+                return TiffBuffer.wrap(IOUtils.toByteArray(content));
+            }
+            tiff = bufferPool.take(length);
+            tiff.readFrom(content);
+            return tiff;
         } catch (IOException ex) {
+            release(tiff);
             throw new TiffDownloadException("Failed to convert TIFF to byteArray", ex);
         } catch (SdkException se) {
+            release(tiff);
             throw new TiffDownloadException("Failed to download TIFF", se);
         }
     }
+
+    private static void release(TiffBuffer tiff) {
+        if (tiff != null) {
+            tiff.release();
+        }
+    }
+
+    private TiffBuffer readSpooled(TiffSpool.SpooledTiff spooled) throws IOException {
+        final TiffBuffer tiff = bufferPool.take(spooled.length());
+        try (spooled; InputStream content = spooled.open()) {
+            tiff.readFrom(content);
+            return tiff;
+        } catch (IOException ex) {
+            release(tiff);
+            throw ex;
+        }
+    }
+
+    @Override
+    public TiffStream openTiffFile(String fileId) {
+        final Optional<TiffSpool.SpooledTiff> spooled = spool.take(fileId);
+        if (spooled.isPresent()) {
+            try {
+                return new TiffStream(spooled.get().open(), spooled.get().length());
+            } catch (IOException ex) {
+                spooled.get().close();
+                LOGGER.error("Failed to open spooled TIFF [%s], streaming it from S3".formatted(fileId), ex);
+            }
+        }
+        try {
+            final ResponseInputStream<GetObjectResponse> content = s3.getObject(getObjectRequest(fileId));
+            return new TiffStream(content, contentLength(content));
+        } catch (SdkException se) {
+            throw new TiffDownloadException("Failed to download TIFF", se);
+        }
+    }
+
+    @Override
+    public void prefetchTiffFile(String fileId) {
+        try (ResponseInputStream<GetObjectResponse> content = s3.getObject(getObjectRequest(fileId))) {
+            spool.put(fileId, content);
+        } catch (IOException ex) {
+            throw new TiffDownloadException("Failed to spool TIFF", ex);
+        } catch (SdkException se) {
+            throw new TiffDownloadException("Failed to download TIFF", se);
+        }
+    }
+
+    private static long contentLength(ResponseInputStream<GetObjectResponse> content) {
+        return Optional.ofNullable(content.response()).map(GetObjectResponse::contentLength).orElse(-1L);
+    }
+
+    private GetObjectRequest getObjectRequest(String fileId) {
+        return GetObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key(fileId))
+                .build();
+    }
+
+    private static String key(String fileId) {
+        return "%s/%s".formatted("converted-tiffs", fileId);
+    }
 }
 
@@ -0,0 +1,82 @@
+package uk.gov.companieshouse.efs.api.events.service;
+
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import uk.gov.companieshouse.efs.api.submissions.model.FileDetails;
+import uk.gov.companieshouse.efs.api.submissions.model.Submission;
+import uk.gov.companieshouse.logging.Logger;
+import uk.gov.companieshouse.logging.LoggerFactory;
+
+/**
+ * Prefetches the converted TIFFs of a submission that has become READY_TO_SUBMIT into the {@link TiffSpool} in the
+ * background, so that they are already on local disk when the submission is submitted to FES.
+ * <p>
+ * A TIFF that fails to prefetch is logged and left to be downloaded from S3 when submitted. With the spool disabled
+ * nothing is prefetched.
+ * </p>
+ */
+@Component
+public class TiffPrefetcher {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger("efs-submission-api");
+
+    private final TiffDownloadService tiffDownloadService;
+    private final TiffSpool tiffSpool;
+    private final Semaphore permits;
+    private final Executor executor;
+
+    /**
+     * Constructor.
+     *
+     * @param tiffDownloadService dependency
+     * @param tiffSpool           dependency
+     * @param concurrency         the number of TIFFs prefetched at once
+     */
+    public TiffPrefetcher(final TiffDownloadService tiffDownloadService, final TiffSpool tiffSpool,
+        @Value("${tiff.spool.prefetch.concurrency:4}") final int concurrency) {
+        this(tiffDownloadService, tiffSpool, concurrency,
+            task -> Thread.ofVirtual().name("tiff-prefetch").start(task));
+    }
+
+    TiffPrefetcher(final TiffDownloadService tiffDownloadService, final TiffSpool tiffSpool, final int concurrency,
+        final Executor executor) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("TIFF prefetch concurrency must be at least 1");
+        }
+        this.tiffDownloadService = tiffDownloadService;
+        this.tiffSpool = tiffSpool;
+        this.permits = new Semaphore(concurrency);
+        this.executor = executor;
+    }
+
+    /**
+     * Start prefetching the submission's converted TIFFs not already spooled, returning without waiting for them.
+     *
+     * @param submission the submission
+     */
+    public void prefetch(final Submission submission) {
+        if (!tiffSpool.isEnabled()) {
+            return;
+        }
+        submission.getFormDetails().getFileDetailsList().stream()
+            .map(FileDetails::getConvertedFileId)
+            .filter(Objects::nonNull)
+            .filter(fileId -> !tiffSpool.contains(fileId))
+            .forEach(fileId -> executor.execute(() -> prefetch(submission.getId(), fileId)));
+    }
+
+    private void prefetch(final String submissionId, final String fileId) {
+        permits.acquireUninterruptibly();
+        try {
+            tiffDownloadService.prefetchTiffFile(fileId);
+            LOGGER.debug("Prefetched TIFF [%s] for submission [%s]".formatted(fileId, submissionId));
+        } catch (RuntimeException ex) {
+            LOGGER.errorContext(submissionId, "Failed to prefetch TIFF [%s]".formatted(fileId), ex, null);
+        } finally {
+            permits.release();
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package uk.gov.companieshouse.efs.api.events.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.awt.image.RenderedImage;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.stream.Collectors;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import uk.gov.companieshouse.efs.api.events.service.model.TiffBuffer;
+import uk.gov.companieshouse.logging.Logger;
+import uk.gov.companieshouse.logging.LoggerFactory;
+
+/**
+ * Re-encodes downloaded bilevel TIFFs with a stronger compression before they are inserted into FES, shrinking the
+ * IMAGE BLOB written to FES and the redo and network traffic that goes with it.
+ * <p>
+ * Only TIFFs of the opted-in FES form types are re-encoded, and only if every page is bilevel. The re-encoded TIFF
+ * keeps each page's metadata, such as its resolution, and is only used if it saves at least the minimum percentage of
+ * the original size; otherwise, or if re-encoding fails, the TIFF is inserted as downloaded. The TIFF is read
+ * in place from its buffer and re-encoded one page at a time straight into a buffer from the {@link TiffBufferPool}
+ * no larger than the original, so neither TIFF is copied onto the heap and only one decoded page is held at once;
+ * re-encoding stops as soon as it would not be smaller. With no form types opted in nothing is re-encoded.
+ * </p>
+ */
+@Component
+public class TiffRecompressor {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger("efs-submission-api");
+    private static final String RECOMPRESSED = "recompressed";
+
+    /**
+     * The compression applied to re-encoded TIFFs.
+     */
+    public enum Compression {
+        G4("CCITT T.6"), LZW("LZW");
+
+        private final String imageIoType;
+
+        Compression(final String imageIoType) {
+            this.imageIoType = imageIoType;
+        }
+    }
+
+    private final TiffBufferPool bufferPool;
+    private final Set<String> formTypes;
+    private final Compression compression;
+    private final int minSavingPercent;
+    private final MeterRegistry meterRegistry;
+    private final Counter savedBytes;
+
+    /**
+     * Constructor.
+     *
+     * @param meterRegistry    dependency
+     * @param bufferPool       dependency
+     * @param formTypes        comma separated FES form types whose TIFFs are re-encoded
+     * @param compression      the compression applied
+     * @param minSavingPercent the least saving, as a percentage of the original size, for the re-encoded TIFF to be used
+     */
+    public TiffRecompressor(final MeterRegistry meterRegistry, final TiffBufferPool bufferPool,
+        @Value("${fes.tiff.recompression.form-types:}") final String formTypes,
+        @Value("${fes.tiff.recompression.compression:G4}") final Compression compression,
+        @Value("${fes.tiff.recompression.min-saving.percent:10}") final int minSavingPercent) {
+        if (minSavingPercent < 0 || minSavingPercent > 100) {
+            throw new IllegalArgumentException(
+                "TIFF recompression minimum saving [%d] must be 0 to 100 percent".formatted(minSavingPercent));
+        }
+        this.bufferPool = bufferPool;
+        this.formTypes = Arrays.stream(formTypes.split(","))
+            .map(String::trim)
+            .filter(formType -> !formType.isEmpty())
+            .collect(Collectors.toUnmodifiableSet());
+        this.compression = compression;
+        this.minSavingPercent = minSavingPercent;
+        this.meterRegistry = meterRegistry;
+        this.savedBytes = Counter.builder("efs.tiff.recompression.saved")
+            .description("Bytes saved by re-encoding TIFFs before they are inserted into FES")
+            .baseUnit("bytes")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Re-encode a downloaded TIFF if its form type is opted in and it is worth it.
+     *
+     * @param fileId   the converted file id, for reporting
+     * @param tiff     the downloaded TIFF
+     * @param formType the FES form type of its submission
+     * @return the re-encoded TIFF, or {@code tiff} itself if it was not re-encoded; the caller releases both
+     */
+    public TiffBuffer recompress(final String fileId, final TiffBuffer tiff, final String formType) {
+        if (!formTypes.contains(formType)) {
+            return tiff;
+        }
+        final TiffBuffer reencoded = bufferPool.take(tiff.length());
+        final String outcome = reencode(fileId, tiff, reencoded);
+        count(outcome);
+        if (!outcome.equals(RECOMPRESSED)) {
+            reencoded.release();
+            return tiff;
+        }
+        final long saved = (long) tiff.length() - reencoded.length();
+        savedBytes.increment(saved);
+        LOGGER.debug("Re-encoded TIFF [%s] from [%d] to [%d] bytes".formatted(fileId, tiff.length(),
+            reencoded.length()));
+        return reencoded;
+    }
+
+    private String reencode(final String fileId, final TiffBuffer tiff, final TiffBuffer reencoded) {
+        try {
+            if (!reencode(tiff, reencoded)) {
+                return "not-bilevel";
+            }
+        } catch (IOException | RuntimeException ex) {
+            if (ex instanceof EOFException || ex.getCause() instanceof EOFException) {
+                // the re-encoding outgrew the original, which the writer may report as its own error
+                return "below-threshold";
+            }
+            LOGGER.error("Failed to re-encode TIFF [%s], inserting it as downloaded".formatted(fileId), ex);
+            return "failed";
+        }
+        final long saved = (long) tiff.length() - reencoded.length();
+        return saved * 100 < (long) tiff.length() * minSavingPercent || saved <= 0 ? "below-threshold"
+            : RECOMPRESSED;
+    }
+
+    // decodes and encodes one page at a time straight from and into the buffers, returning false as soon as a page
+    // is not bilevel
+    private boolean reencode(final TiffBuffer tiff, final TiffBuffer reencoded) throws IOException {
+        try (ImageInputStream input = tiff.newImageInputStream()) {
+            final Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                throw new IOException("No image reader for TIFF");
+            }
+            final ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, false, false);
+                return encode(reader, reencoded);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private boolean encode(final ImageReader reader, final TiffBuffer reencoded) throws IOException {
+        // the writer matching the reader understands the page metadata it reads
+        final ImageWriter writer = ImageIO.getImageWriter(reader);
+        if (writer == null) {
+            throw new IOException("No image writer for TIFF");
+        }
+        try (ImageOutputStream output = reencoded.newImageOutputStream()) {
+            writer.setOutput(output);
+            final ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionType(compression.imageIoType);
+            writer.prepareWriteSequence(null);
+            final int pageCount = reader.getNumImages(true);
+            for (int page = 0; page < pageCount; page++) {
+                final RenderedImage image = reader.read(page);
+                if (!isBilevel(image)) {
+                    return false;
+                }
+                writer.writeToSequence(new IIOImage(image, null, reader.getImageMetadata(page)), param);
+            }
+            writer.endWriteSequence();
+            return true;
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    private static boolean isBilevel(final RenderedImage image) {
+        return image.getSampleModel().getNumBands() == 1 && image.getSampleModel().getSampleSize(0) == 1;
+    }
+
+    private void count(final String outcome) {
+        Counter.builder("efs.tiff.recompression")
+            .description("TIFFs considered for re-encoding before they are inserted into FES, by outcome")
+            .tag("outcome", outcome)
+            .register(meterRegistry)
+            .increment();
+    }
+}
@@ -0,0 +1,303 @@
+package uk.gov.companieshouse.efs.api.events.service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import uk.gov.companieshouse.logging.Logger;
+import uk.gov.companieshouse.logging.LoggerFactory;
+
+/**
+ * A size-bounded local disk spool of converted TIFFs prefetched from S3, so that submitting to FES need not wait for
+ * S3.
+ * <p>
+ * Each spooled TIFF is taken at most once: taking it removes it from the spool, and the file is deleted once the
+ * taker closes it, whether or not it was read. A TIFF put once it has been taken, or once taking it found nothing, as
+ * when a prefetch finishes after its submission was submitted, is dropped rather than left in the spool unowned.
+ * When adding a TIFF takes the spool over its size, the least recently spooled TIFFs are evicted. A checksum is kept
+ * for each TIFF and checked when it is taken, so a TIFF corrupted on disk is discarded rather than inserted into FES.
+ * The spool is not kept across restarts: files left by an earlier run are removed before the application starts
+ * taking requests. With a size of 0 nothing is spooled.
+ * </p>
+ */
+@Component
+public class TiffSpool {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger("efs-submission-api");
+    private static final String SPOOL_SUFFIX = ".tiff";
+    private static final String PARTIAL_SUFFIX = ".part";
+    // a prefetch still running this long after its TIFF was taken has long since failed
+    private static final Duration TAKEN_RETENTION = Duration.ofHours(1);
+    private static final long MAX_TAKEN = 100_000;
+
+    /**
+     * A TIFF taken from the spool, which the taker must close once done with it.
+     *
+     * @param path   the spooled file
+     * @param length the TIFF length in bytes
+     */
+    public record SpooledTiff(Path path, long length) implements AutoCloseable {
+
+        /**
+         * Open the spooled file, which is deleted once the stream is closed.
+         *
+         * @return the stream, which the caller must close
+         * @throws IOException if the file cannot be opened
+         */
+        public InputStream open() throws IOException {
+            return Files.newInputStream(path, StandardOpenOption.READ, StandardOpenOption.DELETE_ON_CLOSE);
+        }
+
+        /**
+         * Delete the spooled file, if a stream of it has not already done so.
+         */
+        @Override
+        public void close() {
+            delete(path);
+        }
+    }
+
+    private record Entry(Path path, long length, long checksum) {
+    }
+
+    private final Path directory;
+    private final long maxBytes;
+    // in spooling order, guarded by this
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    private long spooledBytes;
+    // ids of the TIFFs taken, guarded by this along with the entries
+    private final Cache<String, Boolean> taken = CacheBuilder.newBuilder()
+        .expireAfterWrite(TAKEN_RETENTION)
+        .maximumSize(MAX_TAKEN)
+        .build();
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+    private final Counter checksumFailures;
+
+    /**
+     * Constructor.
+     *
+     * @param meterRegistry dependency
+     * @param directory     the directory TIFFs are spooled to, used by nothing else
+     * @param maxMb         the most megabytes spooled at once, or 0 to spool nothing
+     */
+    public TiffSpool(final MeterRegistry meterRegistry,
+        @Value("${tiff.spool.dir:${java.io.tmpdir}/efs-tiff-spool}") final String directory,
+        @Value("${tiff.spool.max.mb:0}") final int maxMb) {
+        if (maxMb < 0) {
+            throw new IllegalArgumentException("TIFF spool size must not be negative");
+        }
+        this.directory = Path.of(directory);
+        this.maxBytes = maxMb * 1024L * 1024L;
+        Gauge.builder("efs.tiff.spool.bytes", this, TiffSpool::getSpooledBytes)
+            .description("Bytes of TIFFs spooled and not yet taken")
+            .baseUnit("bytes")
+            .register(meterRegistry);
+        this.hits = Counter.builder("efs.tiff.spool.hits")
+            .description("TIFFs taken from the spool rather than downloaded from S3")
+            .register(meterRegistry);
+        this.misses = Counter.builder("efs.tiff.spool.misses")
+            .description("TIFFs downloaded from S3 because they were not spooled")
+            .register(meterRegistry);
+        this.evictions = Counter.builder("efs.tiff.spool.evictions")
+            .description("TIFFs evicted from the spool before being taken")
+            .register(meterRegistry);
+        this.checksumFailures = Counter.builder("efs.tiff.spool.checksum.failures")
+            .description("Spooled TIFFs discarded because their checksum no longer matched")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Create the spool directory and remove files left in it by an earlier run, before anything can be spooled.
+     */
+    @PostConstruct
+    public void prepareDirectory() {
+        if (!isEnabled()) {
+            return;
+        }
+        try {
+            Files.createDirectories(directory);
+            removeUnspooledFiles();
+        } catch (IOException ex) {
+            LOGGER.error("Failed to prepare TIFF spool directory [%s]".formatted(directory), ex);
+        }
+    }
+
+    public boolean isEnabled() {
+        return maxBytes > 0;
+    }
+
+    public synchronized boolean contains(final String fileId) {
+        return entries.containsKey(fileId);
+    }
+
+    /**
+     * @param fileId the converted file id
+     * @return the length in bytes of the TIFF spooled for the file, without taking it; empty if it is not spooled
+     */
+    public synchronized OptionalLong lengthOf(final String fileId) {
+        final Entry entry = entries.get(fileId);
+        return entry == null ? OptionalLong.empty() : OptionalLong.of(entry.length());
+    }
+
+    synchronized long getSpooledBytes() {
+        return spooledBytes;
+    }
+
+    /**
+     * Spool a TIFF, evicting the least recently spooled TIFFs if the spool is full.
+     *
+     * @param fileId  the converted file id
+     * @param content the TIFF content, which is not closed
+     * @throws IOException if the TIFF cannot be written
+     */
+    public void put(final String fileId, final InputStream content) throws IOException {
+        if (!isEnabled() || wasTaken(fileId)) {
+            return;
+        }
+        Files.createDirectories(directory);
+        // each TIFF gets a file of its own, so a taken TIFF being read is never replaced
+        final Path path = directory.resolve(UUID.randomUUID() + SPOOL_SUFFIX);
+        final Path partial = directory.resolve(path.getFileName() + PARTIAL_SUFFIX);
+        final CRC32C checksum = new CRC32C();
+        final long length;
+        try (OutputStream out = Files.newOutputStream(partial)) {
+            length = new CheckedInputStream(content, checksum).transferTo(out);
+        } catch (IOException ex) {
+            Files.deleteIfExists(partial);
+            throw ex;
+        }
+        if (length > maxBytes) {
+            Files.deleteIfExists(partial);
+            return;
+        }
+        Files.move(partial, path, StandardCopyOption.ATOMIC_MOVE);
+
+        final Entry spooled = new Entry(path, length, checksum.getValue());
+        final List<Entry> evicted = new ArrayList<>();
+        synchronized (this) {
+            if (wasTaken(fileId)) {
+                // taken while it was being written, so nothing would ever take it
+                evicted.add(spooled);
+            } else {
+                final Entry previous = entries.remove(fileId);
+                if (previous != null) {
+                    spooledBytes -= previous.length();
+                    evicted.add(previous);
+                }
+                entries.put(fileId, spooled);
+                spooledBytes += length;
+                final Iterator<Entry> eldest = entries.values().iterator();
+                while (spooledBytes > maxBytes) {
+                    final Entry entry = eldest.next();
+                    eldest.remove();
+                    spooledBytes -= entry.length();
+                    evicted.add(entry);
+                    evictions.increment();
+                }
+            }
+        }
+        evicted.forEach(entry -> delete(entry.path()));
+    }
+
+    private synchronized boolean wasTaken(final String fileId) {
+        return taken.getIfPresent(fileId) != null;
+    }
+
+    /**
+     * Take a spooled TIFF out of the spool.
+     *
+     * @param fileId the converted file id
+     * @return the spooled TIFF, which the caller must close; empty if the TIFF was not spooled or was corrupted
+     */
+    public Optional<SpooledTiff> take(final String fileId) {
+        if (!isEnabled()) {
+            return Optional.empty();
+        }
+        final Entry entry;
+        synchronized (this) {
+            taken.put(fileId, Boolean.TRUE);
+            entry = entries.remove(fileId);
+            if (entry != null) {
+                spooledBytes -= entry.length();
+            }
+        }
+        if (entry == null) {
+            misses.increment();
+            return Optional.empty();
+        }
+
+        try {
+            if (checksumOf(entry.path()) == entry.checksum()) {
+                hits.increment();
+                return Optional.of(new SpooledTiff(entry.path(), entry.length()));
+            }
+            checksumFailures.increment();
+            LOGGER.error("Spooled TIFF [%s] failed its checksum, discarding it".formatted(fileId));
+        } catch (IOException ex) {
+            LOGGER.error("Failed to check spooled TIFF [%s], discarding it".formatted(fileId), ex);
+        }
+        misses.increment();
+        delete(entry.path());
+        return Optional.empty();
+    }
+
+    private static long checksumOf(final Path path) throws IOException {
+        final CRC32C checksum = new CRC32C();
+        try (InputStream in = new CheckedInputStream(Files.newInputStream(path), checksum)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+        return checksum.getValue();
+    }
+
+    // files left by an earlier run are not in the spool, so would otherwise never be deleted; a prefetch whose
+    // partial file is deleted here just fails
+    private void removeUnspooledFiles() throws IOException {
+        final Set<Path> spooled;
+        synchronized (this) {
+            spooled = entries.values().stream().map(Entry::path).collect(Collectors.toSet());
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory,
+            "*{" + SPOOL_SUFFIX + "," + PARTIAL_SUFFIX + "}")) {
+            for (final Path file : files) {
+                if (!spooled.contains(file)) {
+                    delete(file);
+                }
+            }
+        }
+    }
+
+    private static void delete(final Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ex) {
+            LOGGER.error("Failed to delete spooled TIFF [%s]".formatted(path), ex);
+        }
+    }
+}
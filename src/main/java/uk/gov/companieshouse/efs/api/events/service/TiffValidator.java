@@ -0,0 +1,184 @@
+package uk.gov.companieshouse.efs.api.events.service;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.HashSet;
+import java.util.Set;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import uk.gov.companieshouse.efs.api.events.service.exception.InvalidTiffException;
+import uk.gov.companieshouse.efs.api.events.service.model.TiffBuffer;
+
+/**
+ * Checks a downloaded TIFF is well formed before it is inserted into FES, so that a corrupt TIFF is rejected without
+ * costing any FES database I/O.
+ * <p>
+ * Only the header and image file directories (IFDs) are read, never the image data: the IFD chain must stay within
+ * the file without looping, each IFD must give the image dimensions and strips or tiles that lie within the file, and
+ * the number of IFDs must match the number of pages the file was converted with.
+ * </p>
+ */
+@Component
+public class TiffValidator {
+
+    private static final int HEADER_LENGTH = 8;
+    private static final int ENTRY_LENGTH = 12;
+    private static final short LITTLE_ENDIAN_MARK = 0x4949;
+    private static final short BIG_ENDIAN_MARK = 0x4D4D;
+    private static final int TIFF_MAGIC = 42;
+    private static final int BIGTIFF_MAGIC = 43;
+
+    private static final int TAG_IMAGE_WIDTH = 256;
+    private static final int TAG_IMAGE_LENGTH = 257;
+    private static final int TAG_STRIP_OFFSETS = 273;
+    private static final int TAG_STRIP_BYTE_COUNTS = 279;
+    private static final int TAG_TILE_OFFSETS = 324;
+    private static final int TAG_TILE_BYTE_COUNTS = 325;
+
+    private static final int TYPE_SHORT = 3;
+    private static final int TYPE_LONG = 4;
+    // bytes per value of each field type, indexed by type; types unknown to TIFF 6.0 are 0 and skipped
+    private static final int[] TYPE_SIZES = {0, 1, 1, 2, 4, 8, 1, 1, 2, 4, 8, 4, 8};
+
+    private record Entry(int tag, int type, long count, int valuesAt) {
+    }
+
+    private final boolean enabled;
+
+    /**
+     * Constructor.
+     *
+     * @param enabled whether TIFFs are validated
+     */
+    public TiffValidator(@Value("${fes.tiff.validation.enabled:true}") final boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Check a downloaded TIFF is well formed.
+     *
+     * @param fileId        the converted file id, for reporting
+     * @param tiff          the downloaded TIFF
+     * @param numberOfPages the number of pages the TIFF should have, or null if not known
+     * @throws InvalidTiffException if the TIFF is not well formed or has a different number of pages
+     */
+    public void validate(final String fileId, final TiffBuffer tiff, final Integer numberOfPages) {
+        if (!enabled) {
+            return;
+        }
+        final int pages;
+        try {
+            pages = countPages(tiff.content());
+        } catch (InvalidTiffException ex) {
+            throw new InvalidTiffException(fileId, "Invalid TIFF [%s] - %s".formatted(fileId, ex.getMessage()), ex);
+        }
+        if (numberOfPages != null && pages != numberOfPages) {
+            throw new InvalidTiffException(fileId,
+                "Invalid TIFF [%s] - has [%d] pages but [%d] expected".formatted(fileId, pages, numberOfPages), null);
+        }
+    }
+
+    private static int countPages(final ByteBuffer content) {
+        require(content.limit() >= HEADER_LENGTH, "shorter than a TIFF header");
+        final short byteOrder = content.getShort(0);
+        if (byteOrder == LITTLE_ENDIAN_MARK) {
+            content.order(ByteOrder.LITTLE_ENDIAN);
+        } else {
+            require(byteOrder == BIG_ENDIAN_MARK, "no byte order mark");
+            content.order(ByteOrder.BIG_ENDIAN);
+        }
+        final int magic = unsignedShort(content, 2);
+        require(magic != BIGTIFF_MAGIC, "BigTIFF is not supported");
+        require(magic == TIFF_MAGIC, "bad magic number [%d]".formatted(magic));
+
+        final Set<Long> visited = new HashSet<>();
+        long ifdOffset = unsignedInt(content, 4);
+        require(ifdOffset != 0, "no image file directory");
+        int pages = 0;
+        while (ifdOffset != 0) {
+            require(visited.add(ifdOffset), "IFD chain loops back to offset [%d]".formatted(ifdOffset));
+            pages++;
+            ifdOffset = checkIfd(content, ifdOffset, pages);
+        }
+        return pages;
+    }
+
+    // checks the IFD describes an image whose strips or tiles lie within the file, returning the next IFD offset
+    private static long checkIfd(final ByteBuffer content, final long offset, final int page) {
+        require(offset >= HEADER_LENGTH && offset + 2 <= content.limit(),
+            "page [%d] IFD offset [%d] is outside the file".formatted(page, offset));
+        final int entryCount = unsignedShort(content, (int) offset);
+        final long nextOffsetAt = offset + 2 + (long) ENTRY_LENGTH * entryCount;
+        require(entryCount > 0 && nextOffsetAt + 4 <= content.limit(),
+            "page [%d] IFD with [%d] entries runs past the end of the file".formatted(page, entryCount));
+
+        long width = 0;
+        long height = 0;
+        Entry dataOffsets = null;
+        Entry dataByteCounts = null;
+        for (int i = 0; i < entryCount; i++) {
+            final Entry entry = readEntry(content, (int) (offset + 2 + (long) ENTRY_LENGTH * i), page);
+            switch (entry.tag()) {
+                case TAG_IMAGE_WIDTH -> width = value(content, entry, 0, page);
+                case TAG_IMAGE_LENGTH -> height = value(content, entry, 0, page);
+                case TAG_STRIP_OFFSETS, TAG_TILE_OFFSETS -> dataOffsets = entry;
+                case TAG_STRIP_BYTE_COUNTS, TAG_TILE_BYTE_COUNTS -> dataByteCounts = entry;
+                default -> {
+                    // not needed to check the image is well formed
+                }
+            }
+        }
+
+        require(width > 0 && height > 0, "page [%d] has no image dimensions".formatted(page));
+        require(dataOffsets != null && dataByteCounts != null && dataOffsets.count() == dataByteCounts.count()
+                && dataOffsets.count() > 0,
+            "page [%d] has no matching strip or tile offsets and byte counts".formatted(page));
+        for (int i = 0; i < dataOffsets.count(); i++) {
+            final long dataOffset = value(content, dataOffsets, i, page);
+            final long byteCount = value(content, dataByteCounts, i, page);
+            require(dataOffset + byteCount <= content.limit(),
+                "page [%d] image data at offset [%d] runs past the end of the file".formatted(page, dataOffset));
+        }
+        return unsignedInt(content, (int) nextOffsetAt);
+    }
+
+    private static Entry readEntry(final ByteBuffer content, final int entryAt, final int page) {
+        final int tag = unsignedShort(content, entryAt);
+        final int type = unsignedShort(content, entryAt + 2);
+        final long count = unsignedInt(content, entryAt + 4);
+        final int typeSize = type < TYPE_SIZES.length ? TYPE_SIZES[type] : 0;
+        final long valuesLength = typeSize * count;
+        if (valuesLength <= 4) {
+            // values that fit are held in the entry itself
+            return new Entry(tag, type, count, entryAt + 8);
+        }
+        final long valuesAt = unsignedInt(content, entryAt + 8);
+        require(valuesAt + valuesLength <= content.limit(),
+            "page [%d] tag [%d] values are outside the file".formatted(page, tag));
+        return new Entry(tag, type, count, (int) valuesAt);
+    }
+
+    private static long value(final ByteBuffer content, final Entry entry, final int index, final int page) {
+        return switch (entry.type()) {
+            case TYPE_SHORT -> unsignedShort(content, entry.valuesAt() + 2 * index);
+            case TYPE_LONG -> unsignedInt(content, entry.valuesAt() + 4 * index);
+            default -> throw new InvalidTiffException(
+                "page [%d] tag [%d] has type [%d] rather than SHORT or LONG".formatted(page, entry.tag(),
+                    entry.type()));
+        };
+    }
+
+    private static int unsignedShort(final ByteBuffer content, final int at) {
+        return Short.toUnsignedInt(content.getShort(at));
+    }
+
+    private static long unsignedInt(final ByteBuffer content, final int at) {
+        return Integer.toUnsignedLong(content.getInt(at));
+    }
+
+    private static void require(final boolean condition, final String problem) {
+        if (!condition) {
+            throw new InvalidTiffException(problem);
+        }
+    }
+}
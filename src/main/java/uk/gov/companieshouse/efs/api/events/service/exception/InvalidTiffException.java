@@ -1,11 +1,25 @@
 package uk.gov.companieshouse.efs.api.events.service.exception;
 
 public class InvalidTiffException extends RuntimeException {
+    private final String fileId;
+
     public InvalidTiffException(String message) {
-        super(message);
+        this(null, message, null);
     }
 
     public InvalidTiffException(String message, Throwable cause) {
+        this(null, message, cause);
+    }
+
+    public InvalidTiffException(String fileId, String message, Throwable cause) {
         super(message, cause);
+        this.fileId = fileId;
+    }
+
+    /**
+     * @return the converted file id of the invalid TIFF, or null if not known
+     */
+    public String getFileId() {
+        return fileId;
     }
 }
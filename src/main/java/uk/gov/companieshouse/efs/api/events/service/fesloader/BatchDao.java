@@ -9,18 +9,18 @@ import org.springframework.stereotype.Repository;
 @Repository
 public class BatchDao {
 
+    static final String BATCH_ID_SEQUENCE = "BATCH_ID_SEQ";
+
     private JdbcTemplate jdbc;
+    private SequenceAllocator sequenceAllocator;
 
-    public BatchDao(@Qualifier("fesJdbc") final JdbcTemplate jdbc) {
+    public BatchDao(@Qualifier("fesJdbc") final JdbcTemplate jdbc, final SequenceAllocator sequenceAllocator) {
         this.jdbc = jdbc;
+        this.sequenceAllocator = sequenceAllocator;
     }
 
     public long getNextBatchId() {
-        Long result = jdbc.queryForObject("SELECT BATCH_ID_SEQ.nextval from dual", Long.class);
-        if (result == null) {
-            throw new IllegalStateException("No value returned for next batch id");
-        }
-        return result;
+        return sequenceAllocator.next(BATCH_ID_SEQUENCE);
     }
 
     public long getBatchNameId(String batchNamePrefix) {
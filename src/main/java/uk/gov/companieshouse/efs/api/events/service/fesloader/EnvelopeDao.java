@@ -7,18 +7,18 @@ import org.springframework.stereotype.Repository;
 @Repository
 public class EnvelopeDao {
 
+    static final String ENVELOPE_ID_SEQUENCE = "ENVELOPE_ID_SEQ";
+
     private JdbcTemplate jdbc;
+    private SequenceAllocator sequenceAllocator;
 
-    public EnvelopeDao(@Qualifier("fesJdbc") final JdbcTemplate jdbc) {
+    public EnvelopeDao(@Qualifier("fesJdbc") final JdbcTemplate jdbc, final SequenceAllocator sequenceAllocator) {
         this.jdbc = jdbc;
+        this.sequenceAllocator = sequenceAllocator;
     }
 
     public long getNextEnvelopeId() {
-        Long result = jdbc.queryForObject("SELECT ENVELOPE_ID_SEQ.nextval FROM dual", Long.class);
-        if (result == null) {
-            throw new IllegalStateException("No value returned for next envelope id");
-        }
-        return result;
+        return sequenceAllocator.next(ENVELOPE_ID_SEQUENCE);
     }
 
     public void insertEnvelope(final long envelopeId, final long batchId) {
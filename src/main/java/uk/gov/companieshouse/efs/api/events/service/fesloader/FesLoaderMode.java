@@ -0,0 +1,15 @@
+package uk.gov.companieshouse.efs.api.events.service.fesloader;
+
+/**
+ * How a submission is inserted into the FES database.
+ */
+public enum FesLoaderMode {
+    /**
+     * One statement per batch, envelope, image and form record.
+     */
+    DAO,
+    /**
+     * The whole batch, envelope, images and forms graph in a single anonymous PL/SQL block.
+     */
+    PLSQL
+}
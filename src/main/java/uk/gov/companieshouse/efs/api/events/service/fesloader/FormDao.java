@@ -1,6 +1,7 @@
 package uk.gov.companieshouse.efs.api.events.service.fesloader;
 
 import java.sql.Timestamp;
+import java.util.List;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Repository;
@@ -35,8 +36,20 @@ public class FormDao {
         this.jdbc = jdbc;
     }
 
-    public void insertForm(final FormModel model) {
-        this.jdbc.update(FORM_INSERT_SQL,
+    /**
+     * Insert forms as one JDBC batch, so that any number of forms costs a single round trip.
+     *
+     * @param models the forms
+     */
+    public void insertForms(final List<FormModel> models) {
+        if (models.isEmpty()) {
+            return;
+        }
+        this.jdbc.batchUpdate(FORM_INSERT_SQL, models.stream().map(FormDao::toInsertArgs).toList());
+    }
+
+    private static Object[] toInsertArgs(final FormModel model) {
+        return new Object[]{
             model.getBarcode(),
             model.getCompanyNumber(),
             model.getCompanyName(),
@@ -50,6 +63,6 @@ public class FormDao {
             model.getCompanyNumber(),
             model.getBarcode(),
             Timestamp.valueOf(model.getBarcodeDate()),
-            model.getSameDayIndicator());
+            model.getSameDayIndicator()};
     }
 }
@@ -1,33 +1,76 @@
 package uk.gov.companieshouse.efs.api.events.service.fesloader;
 
+import java.io.InputStream;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Repository;
+import uk.gov.companieshouse.efs.api.events.service.model.TiffStream;
 
 @Repository
 public class ImageDao {
 
+    static final String IMAGE_ID_SEQUENCE = "IMAGE_ID_SEQ";
+
+    private static final String INSERT_IMAGE_SQL = """
+            INSERT INTO image(
+                IMAGE_ID,
+                IMAGE_IMAGE
+            )
+            VALUES(?, ?)
+            """;
+
     private JdbcTemplate jdbc;
+    private SequenceAllocator sequenceAllocator;
 
-    public ImageDao(@Qualifier("fesJdbc") final JdbcTemplate jdbc) {
+    public ImageDao(@Qualifier("fesJdbc") final JdbcTemplate jdbc, final SequenceAllocator sequenceAllocator) {
         this.jdbc = jdbc;
+        this.sequenceAllocator = sequenceAllocator;
     }
 
     public long getNextImageId() {
-        Long result = jdbc.queryForObject("SELECT IMAGE_ID_SEQ.nextval FROM dual", Long.class);
-        if (result == null) {
-            throw new IllegalStateException("No value returned for next image id");
+        return sequenceAllocator.next(IMAGE_ID_SEQUENCE);
+    }
+
+    /**
+     * Insert images as one JDBC batch, so that any number of images costs a single round trip. Each image stream is
+     * bound to the BLOB column so that the driver streams it to the database rather than the image being held in
+     * memory.
+     *
+     * @param imageIds the image ids
+     * @param images   the content of each image, in the same order as the ids
+     */
+    public void insertImages(final List<Long> imageIds, final List<TiffStream> images) {
+        if (imageIds.size() != images.size()) {
+            throw new IllegalArgumentException(
+                "[%d] image ids do not match [%d] images".formatted(imageIds.size(), images.size()));
         }
-        return result;
+        if (images.isEmpty()) {
+            return;
+        }
+        jdbc.batchUpdate(INSERT_IMAGE_SQL, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(final PreparedStatement ps, final int i) throws SQLException {
+                setImage(ps, imageIds.get(i), images.get(i).content(), images.get(i).length());
+            }
+
+            @Override
+            public int getBatchSize() {
+                return images.size();
+            }
+        });
     }
 
-    public void insertImage(final long imageId, final byte[] image) {
-        jdbc.update("""
-                INSERT INTO image(
-                    IMAGE_ID,
-                    IMAGE_IMAGE
-                )
-                VALUES(?, ?)
-                """, imageId, image);
+    private static void setImage(final PreparedStatement ps, final long imageId, final InputStream image,
+        final long length) throws SQLException {
+        ps.setLong(1, imageId);
+        if (length < 0) {
+            ps.setBinaryStream(2, image);
+        } else {
+            ps.setBinaryStream(2, image, length);
+        }
     }
 }
@@ -0,0 +1,180 @@
+package uk.gov.companieshouse.efs.api.events.service.fesloader;
+
+import java.sql.Array;
+import java.sql.CallableStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import oracle.jdbc.OracleConnection;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.jdbc.core.CallableStatementCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import uk.gov.companieshouse.efs.api.events.service.model.FormModel;
+import uk.gov.companieshouse.efs.api.events.service.model.TiffStream;
+
+/**
+ * Inserts the batch, envelope, image and form records of a submission with a single anonymous PL/SQL block, so the
+ * whole graph costs one round trip to FES rather than one per record.
+ * <p>
+ * The form image ids and page counts are bound as {@code SYS.ODCINUMBERLIST} arrays and the forms inserted with
+ * {@code FORALL}. Oracle has no built-in collection of BLOBs, so each image is bound as its own parameter.
+ * </p>
+ */
+@Repository
+public class PlsqlSubmissionDao {
+
+    static final String NUMBER_LIST_TYPE = "SYS.ODCINUMBERLIST";
+
+    private static final String DECLARE_BATCH = """
+        DECLARE
+            l_batch_id         batch.BATCH_ID%TYPE := ?;
+            l_scanned          batch.BATCH_SCANNED%TYPE := ?;
+            l_batch_prefix     VARCHAR2(32) := ?;
+            l_batch_ref        VARCHAR2(40);
+            l_batch_name       batch.BATCH_NAME%TYPE;
+            l_envelope_id      envelope.ENVELOPE_ID%TYPE := ?;
+        """;
+
+    private static final String DECLARE_FORMS = """
+            l_image_ids        SYS.ODCINUMBERLIST := ?;
+            l_page_counts      SYS.ODCINUMBERLIST := ?;
+            l_barcode          form.FORM_BARCODE%TYPE := ?;
+            l_company_number   form.FORM_INCORPORATION_NUMBER%TYPE := ?;
+            l_company_name     form.FORM_CORPORATE_BODY_NAME%TYPE := ?;
+            l_form_type        form.FORM_TYPE%TYPE := ?;
+            l_form_status      form.FORM_STATUS%TYPE := ?;
+            l_barcode_date     form.FORM_BARCODE_DATE%TYPE := ?;
+            l_same_day         form.FORM_SAME_DAY%TYPE := ?;
+        """;
+
+    private static final String INSERT_BATCH = """
+        BEGIN
+            l_batch_ref := TO_CHAR(fes_common_pkg.F_GETNEXTREFID(l_batch_prefix, 16));
+            l_batch_name := l_batch_prefix || '_' || LPAD(l_batch_ref, GREATEST(4, LENGTH(l_batch_ref)), '0');
+            INSERT INTO batch(BATCH_ID, BATCH_SCANNED, BATCH_STATUS_ID, BATCH_SCANNER_NAME, BATCH_SCAN_PERSON,
+                BATCH_NAME, BATCH_SCANNED_LOCATION)
+            VALUES(l_batch_id, l_scanned, 1, 'efs_batch', 'efs_filing', l_batch_name, 1);
+            INSERT INTO envelope(ENVELOPE_ID, ENVELOPE_BATCH_ID) VALUES(l_envelope_id, l_batch_id);
+        """;
+
+    private static final String INSERT_IMAGE = """
+            INSERT INTO image(IMAGE_ID, IMAGE_IMAGE) VALUES(l_image_ids(%d), ?);
+        """;
+
+    private static final String INSERT_FORMS = """
+            FORALL i IN 1 .. l_image_ids.COUNT
+                INSERT INTO form(FORM_ID, FORM_BARCODE, FORM_INCORPORATION_NUMBER, FORM_CORPORATE_BODY_NAME,
+                    FORM_TYPE, FORM_IMAGE_ID, FORM_ENVELOPE_ID, FORM_STATUS, FORM_PAGE_COUNT, FORM_OCR_FORM_TYPE,
+                    FORM_OCR_CORPORATE_BODY_NAME, FORM_OCR_INCORPORATION_NUMBER, FORM_OCR_BARCODE_1,
+                    FORM_BARCODE_DATE, FORM_SAME_DAY)
+                VALUES(FORM_ID_SEQ.nextval, l_barcode, l_company_number, l_company_name, l_form_type,
+                    l_image_ids(i), l_envelope_id, l_form_status, l_page_counts(i), l_form_type, l_company_name,
+                    l_company_number, l_barcode, l_barcode_date, l_same_day);
+        """;
+
+    private static final String RETURN_BATCH_NAME = """
+            ? := l_batch_name;
+        END;
+        """;
+
+    private JdbcTemplate jdbc;
+
+    public PlsqlSubmissionDao(@Qualifier("fesJdbc") final JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    /**
+     * Insert a submission's batch, envelope, images and forms in one call. The batch name is allocated in the same
+     * call, from the batch name prefix.
+     * <p>
+     * The forms of a submission differ only in their image id and page count, so the other form values are taken
+     * from the first form; the envelope id of the forms is ignored in favour of {@code envelopeId}.
+     * </p>
+     *
+     * @param batchId         the batch id
+     * @param batchNamePrefix the batch name prefix, e.g. {@code EFS_200501}
+     * @param scannedAt       the batch timestamp
+     * @param envelopeId      the envelope id
+     * @param forms           the forms, each with its image id
+     * @param images          the image content of each form, in the same order as the forms
+     * @return the batch name
+     */
+    public String insertSubmission(final long batchId, final String batchNamePrefix, final LocalDateTime scannedAt,
+        final long envelopeId, final List<FormModel> forms, final List<TiffStream> images) {
+        if (forms.size() != images.size()) {
+            throw new IllegalArgumentException(
+                "[%d] forms do not match [%d] images".formatted(forms.size(), images.size()));
+        }
+
+        return jdbc.execute(buildBlock(forms.size()), (CallableStatementCallback<String>) cs -> {
+            final List<Array> arrays = new ArrayList<>();
+            try {
+                int index = 1;
+                cs.setLong(index++, batchId);
+                cs.setTimestamp(index++, Timestamp.valueOf(scannedAt));
+                cs.setString(index++, batchNamePrefix);
+                cs.setLong(index++, envelopeId);
+                if (!forms.isEmpty()) {
+                    index = bindForms(cs, index, forms, arrays);
+                }
+                for (final TiffStream image : images) {
+                    if (image.length() < 0) {
+                        cs.setBinaryStream(index++, image.content());
+                    } else {
+                        cs.setBinaryStream(index++, image.content(), image.length());
+                    }
+                }
+                cs.registerOutParameter(index, Types.VARCHAR);
+                cs.execute();
+                return cs.getString(index);
+            } finally {
+                for (final Array array : arrays) {
+                    array.free();
+                }
+            }
+        });
+    }
+
+    private static int bindForms(final CallableStatement cs, final int firstIndex, final List<FormModel> forms,
+        final List<Array> arrays) throws SQLException {
+        final OracleConnection connection = cs.getConnection().unwrap(OracleConnection.class);
+        final Array imageIds = connection.createOracleArray(NUMBER_LIST_TYPE,
+            forms.stream().map(FormModel::getImageId).toArray(Long[]::new));
+        arrays.add(imageIds);
+        final Array pageCounts = connection.createOracleArray(NUMBER_LIST_TYPE,
+            forms.stream().map(FormModel::getNumberOfPages).toArray(Integer[]::new));
+        arrays.add(pageCounts);
+
+        final FormModel form = forms.getFirst();
+        int index = firstIndex;
+        cs.setArray(index++, imageIds);
+        cs.setArray(index++, pageCounts);
+        cs.setString(index++, form.getBarcode());
+        cs.setString(index++, form.getCompanyNumber());
+        cs.setString(index++, form.getCompanyName());
+        cs.setString(index++, form.getFormType());
+        cs.setObject(index++, form.getFormStatus());
+        cs.setTimestamp(index++, Timestamp.valueOf(form.getBarcodeDate()));
+        cs.setString(index++, form.getSameDayIndicator());
+        return index;
+    }
+
+    static String buildBlock(final int formCount) {
+        final StringBuilder block = new StringBuilder(DECLARE_BATCH);
+        if (formCount > 0) {
+            block.append(DECLARE_FORMS);
+        }
+        block.append(INSERT_BATCH);
+        for (int i = 1; i <= formCount; i++) {
+            block.append(INSERT_IMAGE.formatted(i));
+        }
+        if (formCount > 0) {
+            block.append(INSERT_FORMS);
+        }
+        return block.append(RETURN_BATCH_NAME).toString();
+    }
+}
@@ -0,0 +1,141 @@
+package uk.gov.companieshouse.efs.api.events.service.fesloader;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Pattern;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import uk.gov.companieshouse.logging.Logger;
+import uk.gov.companieshouse.logging.LoggerFactory;
+
+/**
+ * Hands out FES sequence values from blocks fetched in a single round trip, rather than selecting {@code nextval}
+ * once per id.
+ * <p>
+ * Every value comes from the Oracle sequence itself, so ids stay unique across pods; they are no longer allocated in
+ * strictly increasing order across pods. Values are taken from the current block without locking. When a block runs
+ * out, the thread that noticed fetches the next one; if several do so at once, one block is kept and the others
+ * contribute a single value each to their fetching thread, the remainder being counted as gaps. Values still cached
+ * when a pod stops are lost too, and are reported by the remaining gauge.
+ * </p>
+ */
+@Component
+public class SequenceAllocator {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger("efs-submission-api");
+    private static final Pattern SEQUENCE_NAME = Pattern.compile("[A-Z][A-Z0-9_]*");
+    private static final long EXHAUSTED = Long.MIN_VALUE;
+
+    private final JdbcTemplate jdbc;
+    private final MeterRegistry meterRegistry;
+    private final int blockSize;
+    private final ConcurrentMap<String, SequenceCache> caches = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor.
+     *
+     * @param jdbc          dependency
+     * @param meterRegistry dependency
+     * @param blockSize     the number of values fetched from a sequence in one round trip
+     */
+    public SequenceAllocator(@Qualifier("fesJdbc") final JdbcTemplate jdbc, final MeterRegistry meterRegistry,
+        @Value("${fes.sequence.block.size:20}") final int blockSize) {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("FES sequence block size must be at least 1");
+        }
+        this.jdbc = jdbc;
+        this.meterRegistry = meterRegistry;
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * Take the next value of a sequence.
+     *
+     * @param sequenceName the sequence name, e.g. {@code BATCH_ID_SEQ}
+     * @return the value
+     */
+    public long next(final String sequenceName) {
+        final SequenceCache cache = caches.computeIfAbsent(sequenceName, SequenceCache::new);
+        final Block current = cache.block.get();
+        final long value = current.take();
+        if (value != EXHAUSTED) {
+            return value;
+        }
+
+        final Block fetched = fetch(cache);
+        final long first = fetched.take();
+        if (!cache.block.compareAndSet(current, fetched)) {
+            // another thread replaced the block first: keep using theirs and give up the rest of this one
+            final int discarded = fetched.remaining();
+            cache.gaps.increment(discarded);
+            LOGGER.debug("Discarded [%d] values of sequence [%s]".formatted(discarded, sequenceName));
+        }
+        return first;
+    }
+
+    private Block fetch(final SequenceCache cache) {
+        final List<Long> values = blockSize == 1
+            ? jdbc.queryForList("SELECT %s.nextval FROM dual".formatted(cache.name), Long.class)
+            : jdbc.queryForList("SELECT %s.nextval FROM dual CONNECT BY LEVEL <= ?".formatted(cache.name),
+                Long.class, blockSize);
+        cache.fetches.increment();
+        if (values.isEmpty() || values.contains(null)) {
+            throw new IllegalStateException("No value returned for next %s".formatted(cache.name));
+        }
+        return new Block(values.stream().mapToLong(Long::longValue).toArray());
+    }
+
+    private final class SequenceCache {
+
+        private final String name;
+        private final AtomicReference<Block> block = new AtomicReference<>(new Block(new long[0]));
+        private final Counter fetches;
+        private final Counter gaps;
+
+        SequenceCache(final String name) {
+            if (!SEQUENCE_NAME.matcher(name).matches()) {
+                throw new IllegalArgumentException("Invalid sequence name [%s]".formatted(name));
+            }
+            this.name = name;
+            this.fetches = Counter.builder("efs.fes.sequence.fetches")
+                .description("Round trips fetching a block of FES sequence values")
+                .tag("sequence", name)
+                .register(meterRegistry);
+            this.gaps = Counter.builder("efs.fes.sequence.gaps")
+                .description("FES sequence values fetched but never used")
+                .tag("sequence", name)
+                .register(meterRegistry);
+            Gauge.builder("efs.fes.sequence.remaining", block, ref -> ref.get().remaining())
+                .description("FES sequence values fetched and not yet used")
+                .tag("sequence", name)
+                .register(meterRegistry);
+        }
+    }
+
+    private static final class Block {
+
+        private final long[] values;
+        private final AtomicInteger next = new AtomicInteger();
+
+        Block(final long[] values) {
+            this.values = values;
+        }
+
+        long take() {
+            final int index = next.getAndIncrement();
+            return index < values.length ? values[index] : EXHAUSTED;
+        }
+
+        int remaining() {
+            return Math.max(0, values.length - next.get());
+        }
+    }
+}
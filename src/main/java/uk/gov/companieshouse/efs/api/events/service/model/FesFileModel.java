@@ -6,6 +6,8 @@ import java.util.Objects;
 public class FesFileModel {
 
     private byte[] tiffFile;
+    private TiffBuffer tiffBuffer;
+    private String convertedFileId;
     private Integer numberOfPages;
 
     public FesFileModel(byte[] tiffFile, Integer numberOfPages) {
@@ -13,6 +15,32 @@ public class FesFileModel {
         this.numberOfPages = numberOfPages;
     }
 
+    /**
+     * Create a model of a file whose TIFF is streamed from S3 when it is inserted rather than held in memory.
+     *
+     * @param convertedFileId the converted file id
+     * @param numberOfPages   the number of pages
+     * @return the model
+     */
+    public static FesFileModel streamed(String convertedFileId, Integer numberOfPages) {
+        final FesFileModel model = new FesFileModel(null, numberOfPages);
+        model.setConvertedFileId(convertedFileId);
+        return model;
+    }
+
+    /**
+     * Create a model of a file whose TIFF has been downloaded into a buffer.
+     *
+     * @param tiffBuffer    the downloaded TIFF, released by whoever downloaded it once inserted
+     * @param numberOfPages the number of pages
+     * @return the model
+     */
+    public static FesFileModel buffered(TiffBuffer tiffBuffer, Integer numberOfPages) {
+        final FesFileModel model = new FesFileModel(null, numberOfPages);
+        model.setTiffBuffer(tiffBuffer);
+        return model;
+    }
+
     public byte[] getTiffFile() {
         return tiffFile;
     }
@@ -21,6 +49,26 @@ public class FesFileModel {
         this.tiffFile = tiffFile;
     }
 
+    public TiffBuffer getTiffBuffer() {
+        return tiffBuffer;
+    }
+
+    public void setTiffBuffer(TiffBuffer tiffBuffer) {
+        this.tiffBuffer = tiffBuffer;
+    }
+
+    public String getConvertedFileId() {
+        return convertedFileId;
+    }
+
+    public void setConvertedFileId(String convertedFileId) {
+        this.convertedFileId = convertedFileId;
+    }
+
+    public boolean isStreamed() {
+        return convertedFileId != null;
+    }
+
     public Integer getNumberOfPages() {
         return numberOfPages;
     }
@@ -39,12 +87,14 @@ public class FesFileModel {
         }
         final FesFileModel that = (FesFileModel) o;
         return Arrays.equals(getTiffFile(), that.getTiffFile()) && Objects
+            .equals(getTiffBuffer(), that.getTiffBuffer()) && Objects
+            .equals(getConvertedFileId(), that.getConvertedFileId()) && Objects
             .equals(getNumberOfPages(), that.getNumberOfPages());
     }
 
     @Override
     public int hashCode() {
-        int result = Objects.hash(getNumberOfPages());
+        int result = Objects.hash(getTiffBuffer(), getConvertedFileId(), getNumberOfPages());
         result = 31 * result + Arrays.hashCode(getTiffFile());
         return result;
     }
@@ -0,0 +1,97 @@
+package uk.gov.companieshouse.efs.api.events.service.model;
+
+import java.time.LocalDateTime;
+import java.util.Objects;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
+
+/**
+ * A barcode fetched from the barcode service for a received date, recorded before it is handed out so that it is
+ * neither lost nor reused if the service stops.
+ */
+@Document(collection = "barcode_pool")
+public class PooledBarcode {
+
+    /**
+     * Whether a barcode may still be handed out.
+     */
+    public enum Status {
+        AVAILABLE, ALLOCATED, EXPIRED
+    }
+
+    @Id
+    private String barcode;
+
+    @Field("date_received")
+    private int dateReceived;
+
+    @Field("status")
+    private Status status;
+
+    @Field("created_at")
+    private LocalDateTime createdAt;
+
+    @Field("allocated_at")
+    private LocalDateTime allocatedAt;
+
+    @Field("allocated_to")
+    private String allocatedTo;
+
+    public PooledBarcode() {
+        // required by Spring Data
+    }
+
+    public PooledBarcode(final String barcode, final int dateReceived, final Status status,
+        final LocalDateTime createdAt, final LocalDateTime allocatedAt, final String allocatedTo) {
+        this.barcode = barcode;
+        this.dateReceived = dateReceived;
+        this.status = status;
+        this.createdAt = createdAt;
+        this.allocatedAt = allocatedAt;
+        this.allocatedTo = allocatedTo;
+    }
+
+    public String getBarcode() {
+        return barcode;
+    }
+
+    public int getDateReceived() {
+        return dateReceived;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public LocalDateTime getAllocatedAt() {
+        return allocatedAt;
+    }
+
+    public String getAllocatedTo() {
+        return allocatedTo;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        final PooledBarcode that = (PooledBarcode) o;
+        return dateReceived == that.dateReceived && Objects.equals(barcode, that.barcode)
+            && status == that.status && Objects.equals(createdAt, that.createdAt)
+            && Objects.equals(allocatedAt, that.allocatedAt) && Objects.equals(allocatedTo, that.allocatedTo);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(barcode, dateReceived, status, createdAt, allocatedAt, allocatedTo);
+    }
+}
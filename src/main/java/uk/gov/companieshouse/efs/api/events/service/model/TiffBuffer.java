@@ -0,0 +1,264 @@
+package uk.gov.companieshouse.efs.api.events.service.model;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageInputStreamImpl;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.ImageOutputStreamImpl;
+
+/**
+ * A downloaded TIFF held in a buffer, which may be off-heap and pooled, and which must be released once the TIFF is
+ * no longer needed.
+ */
+public final class TiffBuffer {
+
+    private final ByteBuffer buffer;
+    private final Consumer<ByteBuffer> onRelease;
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    /**
+     * Constructor.
+     *
+     * @param buffer    the buffer, positioned at 0 with its limit at the TIFF length
+     * @param onRelease called with the buffer when the TIFF is released
+     */
+    public TiffBuffer(final ByteBuffer buffer, final Consumer<ByteBuffer> onRelease) {
+        this.buffer = buffer;
+        this.onRelease = onRelease;
+    }
+
+    /**
+     * Hold TIFF content already read onto the heap.
+     *
+     * @param tiff the TIFF content
+     * @return the buffer, whose release does nothing
+     */
+    public static TiffBuffer wrap(final byte[] tiff) {
+        return new TiffBuffer(ByteBuffer.wrap(tiff), buffer -> {
+        });
+    }
+
+    /**
+     * Fill the buffer up to the TIFF length.
+     *
+     * @param content the TIFF content, which is not closed
+     * @throws IOException if the content cannot be read or ends before the TIFF length
+     */
+    public void readFrom(final InputStream content) throws IOException {
+        // the channel copies through a small transfer array, so a direct buffer is filled without a heap copy of the
+        // whole TIFF
+        final ReadableByteChannel channel = Channels.newChannel(content);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException(
+                    "TIFF content ended after [%d] of [%d] bytes".formatted(buffer.position(), buffer.limit()));
+            }
+        }
+        buffer.flip();
+    }
+
+    public int length() {
+        return buffer.limit();
+    }
+
+    public boolean isDirect() {
+        return buffer.isDirect();
+    }
+
+    /**
+     * View the TIFF content without copying it; views are independent of each other.
+     *
+     * @return a read-only view of the content, positioned at 0
+     * @throws IllegalStateException if the TIFF has been released
+     */
+    public ByteBuffer content() {
+        if (released.get()) {
+            throw new IllegalStateException("TIFF buffer has been released");
+        }
+        return buffer.asReadOnlyBuffer();
+    }
+
+    /**
+     * Open a stream of the TIFF content; streams are independent of each other.
+     *
+     * @return the stream
+     * @throws IllegalStateException if the TIFF has been released
+     */
+    public InputStream newInputStream() {
+        final ByteBuffer content = content();
+        return new InputStream() {
+            @Override
+            public int read() {
+                return content.hasRemaining() ? content.get() & 0xFF : -1;
+            }
+
+            @Override
+            public int read(final byte[] bytes, final int offset, final int length) {
+                if (length == 0) {
+                    return 0;
+                }
+                if (!content.hasRemaining()) {
+                    return -1;
+                }
+                final int count = Math.min(length, content.remaining());
+                content.get(bytes, offset, count);
+                return count;
+            }
+
+            @Override
+            public int available() {
+                return content.remaining();
+            }
+        };
+    }
+
+    /**
+     * Open a seekable stream of the TIFF content for image readers, which reads the buffer in place rather than
+     * caching the content on the heap; streams are independent of each other.
+     *
+     * @return the stream, which the caller must close
+     * @throws IllegalStateException if the TIFF has been released
+     */
+    public ImageInputStream newImageInputStream() {
+        return new BufferInputStream(content());
+    }
+
+    /**
+     * Open a stream that encodes a TIFF straight into the buffer, so that no copy of it is held on the heap. The
+     * stream cannot write beyond the buffer's length, and once it is closed the TIFF length is the number of bytes
+     * written.
+     *
+     * @return the stream, which the caller must close; it fails with {@link EOFException} when the buffer is full
+     * @throws IllegalStateException if the TIFF has been released
+     */
+    public ImageOutputStream newImageOutputStream() {
+        if (released.get()) {
+            throw new IllegalStateException("TIFF buffer has been released");
+        }
+        return new BufferOutputStream();
+    }
+
+    /**
+     * Release the buffer; releasing it again does nothing.
+     */
+    public void release() {
+        if (released.compareAndSet(false, true)) {
+            onRelease.accept(buffer);
+        }
+    }
+
+    // reads at absolute indexes of its own view of the content
+    private static final class BufferInputStream extends ImageInputStreamImpl {
+
+        private final ByteBuffer content;
+
+        private BufferInputStream(final ByteBuffer content) {
+            this.content = content;
+        }
+
+        @Override
+        public int read() throws IOException {
+            checkClosed();
+            bitOffset = 0;
+            if (streamPos >= content.limit()) {
+                return -1;
+            }
+            return content.get((int) streamPos++) & 0xFF;
+        }
+
+        @Override
+        public int read(final byte[] bytes, final int offset, final int length) throws IOException {
+            checkClosed();
+            bitOffset = 0;
+            if (length == 0) {
+                return 0;
+            }
+            if (streamPos >= content.limit()) {
+                return -1;
+            }
+            final int count = (int) Math.min(length, content.limit() - streamPos);
+            content.get((int) streamPos, bytes, offset, count);
+            streamPos += count;
+            return count;
+        }
+
+        @Override
+        public long length() {
+            return content.limit();
+        }
+    }
+
+    // writes at absolute indexes, leaving the buffer positioned at 0 for the content views
+    private final class BufferOutputStream extends ImageOutputStreamImpl {
+
+        private final int capacity = buffer.limit();
+        private int written;
+
+        @Override
+        public int read() throws IOException {
+            checkClosed();
+            bitOffset = 0;
+            if (streamPos >= written) {
+                return -1;
+            }
+            return buffer.get((int) streamPos++) & 0xFF;
+        }
+
+        @Override
+        public int read(final byte[] bytes, final int offset, final int length) throws IOException {
+            checkClosed();
+            bitOffset = 0;
+            if (length == 0) {
+                return 0;
+            }
+            if (streamPos >= written) {
+                return -1;
+            }
+            final int count = (int) Math.min(length, written - streamPos);
+            buffer.get((int) streamPos, bytes, offset, count);
+            streamPos += count;
+            return count;
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            flushBits();
+            ensureRoom(1);
+            buffer.put((int) streamPos++, (byte) b);
+            written = (int) Math.max(written, streamPos);
+        }
+
+        @Override
+        public void write(final byte[] bytes, final int offset, final int length) throws IOException {
+            flushBits();
+            ensureRoom(length);
+            buffer.put((int) streamPos, bytes, offset, length);
+            streamPos += length;
+            written = (int) Math.max(written, streamPos);
+        }
+
+        @Override
+        public long length() {
+            return written;
+        }
+
+        @Override
+        public void close() throws IOException {
+            super.close();
+            buffer.limit(written);
+        }
+
+        private void ensureRoom(final int length) throws EOFException {
+            if (streamPos + length > capacity) {
+                throw new EOFException("TIFF does not fit in [%d] bytes".formatted(capacity));
+            }
+        }
+    }
+}
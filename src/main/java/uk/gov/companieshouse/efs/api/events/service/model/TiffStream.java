@@ -0,0 +1,19 @@
+package uk.gov.companieshouse.efs.api.events.service.model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An open stream of a converted TIFF file, which must be closed once read.
+ *
+ * @param content the TIFF content
+ * @param length  the length of the content in bytes, or -1 if it is not known
+ */
+public record TiffStream(InputStream content, long length) implements Closeable {
+
+    @Override
+    public void close() throws IOException {
+        content.close();
+    }
+}
@@ -1,22 +1,32 @@
 package uk.gov.companieshouse.efs.api.filetransfer;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import uk.gov.companieshouse.api.handler.filetransfer.InternalFileTransferClient;
 
+/**
+ * Hands out file transfer clients that are safe to share between threads.
+ * <p>
+ * One client is created per base path and never mutated after it is published, so concurrent
+ * callers no longer race on a shared base path.
+ * </p>
+ */
 @Component
 public class ApiClientUtil {
 
-    private final InternalFileTransferClient internalFileTransferClient;
+    private final Function<String, InternalFileTransferClient> clientFactory;
+    private final ConcurrentMap<String, InternalFileTransferClient> clients = new ConcurrentHashMap<>();
 
     @Autowired
-    public ApiClientUtil(InternalFileTransferClient internalFileTransferClient) {
-        this.internalFileTransferClient = internalFileTransferClient;
+    public ApiClientUtil(final Function<String, InternalFileTransferClient> clientFactory) {
+        this.clientFactory = clientFactory;
     }
 
-    public InternalFileTransferClient getInternalFileTransferClient(final String fileTransferApiUrl ) {
-        internalFileTransferClient.setBasePath( fileTransferApiUrl );
-        return internalFileTransferClient;
+    public InternalFileTransferClient getInternalFileTransferClient(final String fileTransferApiUrl) {
+        return clients.computeIfAbsent(fileTransferApiUrl, clientFactory);
     }
 
-}
\ No newline at end of file
+}
@@ -1,13 +1,19 @@
 package uk.gov.companieshouse.efs.api.kafka;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
 import org.apache.kafka.clients.producer.KafkaProducer;
 import org.apache.kafka.clients.producer.ProducerRecord;
 import org.apache.kafka.clients.producer.RecordMetadata;
 import uk.gov.companieshouse.kafka.message.Message;
+import uk.gov.companieshouse.kafka.producer.Acks;
 import uk.gov.companieshouse.kafka.producer.ProducerConfig;
 import uk.gov.companieshouse.kafka.producer.factory.KafkaProducerFactory;
 
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 
@@ -15,6 +21,8 @@ public class CHKafkaProducer {
 
     private KafkaProducer<String, byte[]> kafkaProducer;
 
+    private final MeterRegistry meterRegistry;
+
     /**
      * Instantiate the necessary configuration for producing and a producer for Kafka.
      * The {@link KafkaProducerFactory} will be used to create the producer.
@@ -32,6 +40,32 @@ public class CHKafkaProducer {
      * @param producerFactory Factory to create the producer
      */
     public CHKafkaProducer(ProducerConfig config, KafkaProducerFactory producerFactory) {
+        this(config, producerFactory, ProducerBatching.disabled(), Metrics.globalRegistry);
+    }
+
+    /**
+     * Instantiate the necessary configuration for producing and a producer for Kafka, batching records as configured.
+     * The {@link KafkaProducerFactory} will be used to create the producer.
+     *
+     * @param config Configuration for the producer
+     * @param batching How the producer batches records
+     * @param meterRegistry Registry for the send latency and error metrics
+     */
+    public CHKafkaProducer(ProducerConfig config, ProducerBatching batching, MeterRegistry meterRegistry) {
+        this(config, new KafkaProducerFactory(), batching, meterRegistry);
+    }
+
+    /**
+     * Instantiate the necessary configuration for producing and a producer for Kafka, batching records as configured.
+     *
+     * @param config Configuration for the producer
+     * @param producerFactory Factory to create the producer
+     * @param batching How the producer batches records
+     * @param meterRegistry Registry for the send latency and error metrics
+     */
+    public CHKafkaProducer(ProducerConfig config, KafkaProducerFactory producerFactory, ProducerBatching batching,
+            MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
         Properties props = new Properties();
 
         props.put("bootstrap.servers", String.join(",", config.getBrokerAddresses()));
@@ -41,12 +75,30 @@ public class CHKafkaProducer {
         props.put("retries", config.getRetries());
         props.put("max.block.ms", config.getMaxBlockMilliseconds());
         props.put("request.timeout.ms", config.getRequestTimeoutMilliseconds());
-        props.put("enable.idempotence", false);
+        props.put("enable.idempotence", batching.idempotence());
 
         if (config.isRoundRobinPartitioner()) {
             props.put("partition.assignment.strategy", "roundrobin");
         }
 
+        if (batching.idempotence()) {
+            // the broker only de-duplicates retried records it has acknowledged to every in-sync replica
+            if (config.getAcks() != Acks.WAIT_FOR_ALL) {
+                throw new IllegalArgumentException(
+                        "Kafka idempotence requires acks " + Acks.WAIT_FOR_ALL + ": " + config.getAcks());
+            }
+            if (config.getRetries() < 1) {
+                throw new IllegalArgumentException(
+                        "Kafka idempotence requires retries of at least 1: " + config.getRetries());
+            }
+        }
+
+        if (batching.enabled()) {
+            props.put("linger.ms", batching.lingerMs());
+            props.put("batch.size", batching.batchSize());
+            props.put("compression.type", batching.compressionType());
+        }
+
         kafkaProducer = producerFactory.getProducer(props);
     }
 
@@ -80,6 +132,56 @@ public class CHKafkaProducer {
         return kafkaProducer.send(producerRecord);
     }
 
+    /**
+     * Send a message to a topic in Kafka without waiting for the broker. The message joins the batch being filled for
+     * its partition, so many messages share each broker round trip.
+     *
+     * The returned future is completed on the producer's I/O thread; callers that block on its result should continue
+     * on their own executor. Send latency and errors are recorded per topic.
+     *
+     * @param msg the message
+     * @return the record's metadata once the broker acknowledges it, or failing with the send error
+     */
+    public CompletableFuture<RecordMetadata> sendAsync(Message msg) {
+
+        ProducerRecord<String, byte[]> producerRecord = getProducerRecordFromMessage(msg);
+        CompletableFuture<RecordMetadata> result = new CompletableFuture<>();
+        Timer.Sample sample = Timer.start(meterRegistry);
+
+        try {
+            kafkaProducer.send(producerRecord, (metadata, exception) -> {
+                recordOutcome(sample, msg.getTopic(), exception);
+                if (exception == null) {
+                    result.complete(metadata);
+                } else {
+                    result.completeExceptionally(exception);
+                }
+            });
+        } catch (RuntimeException ex) {
+            // thrown before the record was added to a batch, so the callback is never called
+            recordOutcome(sample, msg.getTopic(), ex);
+            result.completeExceptionally(ex);
+        }
+
+        return result;
+    }
+
+    private void recordOutcome(Timer.Sample sample, String topic, Exception exception) {
+        sample.stop(Timer.builder("efs.kafka.producer.send")
+                .description("Records sent to Kafka, from send until acknowledged")
+                .tag("topic", topic)
+                .tag("outcome", exception == null ? "success" : "failure")
+                .register(meterRegistry));
+        if (exception != null) {
+            Counter.builder("efs.kafka.producer.errors")
+                    .description("Records Kafka failed to send")
+                    .tag("topic", topic)
+                    .tag("error", exception.getClass().getSimpleName())
+                    .register(meterRegistry)
+                    .increment();
+        }
+    }
+
     private ProducerRecord<String, byte[]> getProducerRecordFromMessage(Message msg) {
 
         return new ProducerRecord<>(
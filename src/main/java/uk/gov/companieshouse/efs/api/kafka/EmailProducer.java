@@ -0,0 +1,135 @@
+package uk.gov.companieshouse.efs.api.kafka;
+
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.apache.avro.Schema;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import uk.gov.companieshouse.efs.api.email.EmailSerialiser;
+import uk.gov.companieshouse.efs.api.email.exception.EmailNotPublishedException;
+import uk.gov.companieshouse.efs.api.email.exception.EmailServiceException;
+import uk.gov.companieshouse.efs.api.email.model.EmailDocument;
+import uk.gov.companieshouse.efs.api.logging.LoggingUtils;
+import uk.gov.companieshouse.kafka.message.Message;
+import uk.gov.companieshouse.logging.Logger;
+
+/**
+ * Publishes Avro encoded email documents straight to the email-send topic, rather than posting them to the CHS Kafka
+ * API.
+ * <p>
+ * With the producer disabled, or when an email cannot be handed to the producer and the fallback is enabled, emails
+ * are sent over HTTP instead. An email the producer has taken is never sent over HTTP, as the producer goes on
+ * retrying it until its delivery timeout even after this gives up waiting: an email that times out here may still
+ * reach the topic, and sending it again, by any means, can duplicate it.
+ * </p>
+ */
+@Component
+public class EmailProducer {
+
+    private static final Logger LOGGER = LoggingUtils.getLogger();
+
+    private final CHKafkaProducer producer;
+    private final EmailSerialiser serialiser;
+    private final Schema schema;
+    private final boolean enabled;
+    private final boolean fallbackToHttp;
+    private final long sendTimeoutMs;
+    private final Executor executor;
+
+    /**
+     * Constructor.
+     *
+     * @param producer       dependency
+     * @param serialiser     dependency
+     * @param schema         the email-send Avro schema
+     * @param enabled        whether emails are published to Kafka rather than sent over HTTP
+     * @param fallbackToHttp whether an email that cannot be handed to the producer is sent over HTTP instead
+     * @param sendTimeoutMs  the milliseconds allowed for the broker to acknowledge an email
+     */
+    public EmailProducer(final CHKafkaProducer producer, final EmailSerialiser serialiser, final Schema schema,
+        @Value("${email.kafka.enabled:false}") final boolean enabled,
+        @Value("${email.kafka.fallback-to-http:true}") final boolean fallbackToHttp,
+        @Value("${email.kafka.send.timeout.ms:10000}") final long sendTimeoutMs) {
+        this(producer, serialiser, schema, enabled, fallbackToHttp, sendTimeoutMs,
+            Executors.newVirtualThreadPerTaskExecutor());
+    }
+
+    EmailProducer(final CHKafkaProducer producer, final EmailSerialiser serialiser, final Schema schema,
+        final boolean enabled, final boolean fallbackToHttp, final long sendTimeoutMs, final Executor executor) {
+        if (sendTimeoutMs < 1) {
+            throw new IllegalArgumentException("email.kafka.send.timeout.ms must be at least 1: " + sendTimeoutMs);
+        }
+        this.producer = producer;
+        this.serialiser = serialiser;
+        this.schema = schema;
+        this.enabled = enabled;
+        this.fallbackToHttp = fallbackToHttp;
+        this.sendTimeoutMs = sendTimeoutMs;
+        this.executor = executor;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean isFallbackToHttp() {
+        return fallbackToHttp;
+    }
+
+    /**
+     * Publish the email document to its topic, returning without waiting for the broker.
+     *
+     * @param document the email document
+     * @return completing once the broker acknowledges the email, or failing with {@link EmailServiceException}; with
+     *         {@link EmailNotPublishedException} if the email was never handed to the producer
+     */
+    public CompletableFuture<Void> send(final EmailDocument<?> document) {
+        final String topic = document.getTopic();
+        final CompletableFuture<RecordMetadata> acknowledged;
+        try {
+            final Message message = new Message();
+            message.setTopic(topic);
+            message.setValue(serialiser.serialize(document, schema));
+            message.setTimestamp(Instant.now().toEpochMilli());
+
+            LOGGER.debug("Publishing message to [%s]".formatted(topic));
+            acknowledged = producer.sendAsync(message);
+        } catch (final EmailServiceException ex) {
+            return CompletableFuture.failedFuture(new EmailNotPublishedException(ex.getMessage(), ex));
+        }
+        // the producer fails a send it rejects before it returns, so the record never left this instance
+        if (acknowledged.isCompletedExceptionally()) {
+            final Throwable cause = acknowledged.exceptionNow();
+            LOGGER.error("Error publishing email to [%s]: %s".formatted(topic, cause.getMessage()));
+            return CompletableFuture.failedFuture(
+                new EmailNotPublishedException("Error publishing email to Kafka topic [%s]".formatted(topic), cause));
+        }
+
+        // continues off the producer's I/O thread, as callers may block on the outcome
+        return acknowledged.orTimeout(sendTimeoutMs, TimeUnit.MILLISECONDS).handleAsync((metadata, failure) -> {
+            if (failure != null) {
+                final Throwable cause = failure instanceof CompletionException && failure.getCause() != null
+                    ? failure.getCause() : failure;
+                if (cause instanceof TimeoutException) {
+                    throw new EmailServiceException("Timed out publishing email to Kafka topic [%s]".formatted(topic),
+                        cause);
+                }
+                throw publishFailure(topic, cause);
+            }
+            LOGGER.info("Published '%s' email [%s] to [%s] (partition %d, offset %d)".formatted(
+                document.getMessageType(), document.getMessageId(), topic, metadata.partition(), metadata.offset()));
+            return null;
+        }, executor);
+    }
+
+    private static EmailServiceException publishFailure(final String topic, final Throwable cause) {
+        LOGGER.error("Error publishing email to [%s]: %s".formatted(topic, cause.getMessage()));
+        return new EmailServiceException("Error publishing email to Kafka topic [%s]".formatted(topic), cause);
+    }
+}
@@ -0,0 +1,31 @@
+package uk.gov.companieshouse.efs.api.kafka;
+
+/**
+ * How a {@link CHKafkaProducer} batches records. When disabled, the producer keeps the Kafka client defaults for
+ * batching; idempotence is applied either way.
+ *
+ * @param enabled         whether the linger, batch size and compression are applied
+ * @param lingerMs        the milliseconds a record may wait for others to fill its batch
+ * @param batchSize       the most bytes in a batch sent to one partition
+ * @param compressionType the compression applied to each batch: none, gzip, snappy, lz4 or zstd
+ * @param idempotence     whether the broker discards duplicates of retried records; requires acks from all replicas
+ *                        and at least one retry
+ */
+public record ProducerBatching(boolean enabled, int lingerMs, int batchSize, String compressionType,
+                               boolean idempotence) {
+
+    public ProducerBatching {
+        if (enabled && (lingerMs < 0 || batchSize < 1)) {
+            throw new IllegalArgumentException(
+                "Kafka linger must not be negative and batch size must be at least 1: %d, %d".formatted(lingerMs,
+                    batchSize));
+        }
+    }
+
+    /**
+     * @return batching settings that leave the producer as the Kafka client configures it by default
+     */
+    public static ProducerBatching disabled() {
+        return new ProducerBatching(false, 0, 0, "none", false);
+    }
+}
@@ -0,0 +1,162 @@
+package uk.gov.companieshouse.efs.api.submissions.index;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.PartialIndexFilter;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.stereotype.Component;
+import uk.gov.companieshouse.logging.Logger;
+import uk.gov.companieshouse.logging.LoggerFactory;
+
+/**
+ * Declares the indexes backing the query shapes of
+ * {@link uk.gov.companieshouse.efs.api.submissions.repository.SubmissionRepositoryImpl} and ensures them at startup.
+ * <p>
+ * Creating an index that already exists with the same specification is a no-op, so this is safe to run on every
+ * startup and from several instances at once. A failed build (e.g. duplicate barcodes blocking the unique index) is
+ * logged and recorded without preventing startup; progress is reported by {@link SubmissionIndexEndpoint}.
+ * </p>
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class SubmissionIndexBootstrapper implements ApplicationRunner {
+
+    public static final String PRIORITY_INDEX_NAME = "status_same_day_created_at";
+    static final String SUBMISSIONS_COLLECTION = "submissions";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger("efs-submission-api");
+    private static final String STATUS = "status";
+    private static final String BARCODE = "form.barcode";
+    private static final String FORM_TYPE = "form.form_type";
+    private static final String LAST_MODIFIED_AT = "last_modified_at";
+    private static final String CREATED_AT = "created_at";
+    private static final String SAME_DAY = "same_day";
+    private static final String SUBMITTED_AT = "submitted_at";
+    private static final String FEE_ON_SUBMISSION = "fee_on_submission";
+
+    /**
+     * Build state of a declared index.
+     */
+    public enum State {
+        PENDING, BUILDING, READY, FAILED, DISABLED
+    }
+
+    /**
+     * Progress of a declared index build.
+     *
+     * @param name        the index name
+     * @param keys        the index keys
+     * @param state       the build state
+     * @param startedAt   when the build was started, or null if not started
+     * @param completedAt when the build completed or failed, or null if not finished
+     * @param error       the failure message, or null unless failed
+     */
+    public record IndexBuild(String name, Document keys, State state, Instant startedAt, Instant completedAt,
+                             String error) {
+    }
+
+    private final MongoTemplate template;
+    private final Clock clock;
+    private final boolean enabled;
+    private final List<Index> indexes;
+    private final Map<String, IndexBuild> builds = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor.
+     *
+     * @param template dependency
+     * @param clock    dependency
+     * @param enabled  whether the indexes are ensured at startup
+     */
+    public SubmissionIndexBootstrapper(final MongoTemplate template, final Clock clock,
+        @Value("${submission.indexes.bootstrap.enabled:true}") final boolean enabled) {
+        this.template = template;
+        this.clock = clock;
+        this.enabled = enabled;
+        this.indexes = declaredIndexes();
+        final State initial = enabled ? State.PENDING : State.DISABLED;
+        indexes.forEach(index -> builds.put(nameOf(index),
+            new IndexBuild(nameOf(index), index.getIndexKeys(), initial, null, null, null)));
+    }
+
+    @Override
+    public void run(final ApplicationArguments args) {
+        if (!enabled) {
+            LOGGER.info("Submission index bootstrap disabled");
+            return;
+        }
+        indexes.forEach(this::ensureIndex);
+        final long failed = builds.values().stream().filter(b -> b.state() == State.FAILED).count();
+        LOGGER.info("Ensured [%d] submission indexes, [%d] failed".formatted(indexes.size() - failed, failed));
+    }
+
+    /**
+     * The progress of each declared index, in declaration order.
+     *
+     * @return the index builds
+     */
+    public List<IndexBuild> getIndexBuilds() {
+        return indexes.stream().map(index -> builds.get(nameOf(index))).toList();
+    }
+
+    private void ensureIndex(final Index index) {
+        final String name = nameOf(index);
+        final Instant started = clock.instant();
+        builds.put(name, new IndexBuild(name, index.getIndexKeys(), State.BUILDING, started, null, null));
+        LOGGER.debug("Ensuring submission index [%s]".formatted(name));
+        try {
+            template.indexOps(SUBMISSIONS_COLLECTION).createIndex(index);
+            builds.put(name,
+                new IndexBuild(name, index.getIndexKeys(), State.READY, started, clock.instant(), null));
+        } catch (DataAccessException e) {
+            LOGGER.error("Unable to ensure submission index [%s]: %s".formatted(name, e.getMessage()), e);
+            builds.put(name, new IndexBuild(name, index.getIndexKeys(), State.FAILED, started, clock.instant(),
+                e.getMessage()));
+        }
+    }
+
+    private static String nameOf(final Index index) {
+        return index.getIndexOptions().getString("name");
+    }
+
+    private static List<Index> declaredIndexes() {
+        return List.of(
+            new Index().on(STATUS, Sort.Direction.ASC)
+                .on(CREATED_AT, Sort.Direction.ASC)
+                .named("status_created_at"),
+            new Index().on(STATUS, Sort.Direction.ASC)
+                .on(SAME_DAY, Sort.Direction.DESC)
+                .on(CREATED_AT, Sort.Direction.ASC)
+                .named(PRIORITY_INDEX_NAME),
+            // barcodes are allocated after the submission is created, so only documents holding one are indexed
+            new Index().on(BARCODE, Sort.Direction.ASC)
+                .unique()
+                .partial(PartialIndexFilter.of(Criteria.where(BARCODE).exists(true)))
+                .named("form_barcode"),
+            new Index().on(STATUS, Sort.Direction.ASC)
+                .on(LAST_MODIFIED_AT, Sort.Direction.ASC)
+                .on(FORM_TYPE, Sort.Direction.ASC)
+                .named("status_last_modified_at_form_type"),
+            new Index().on(STATUS, Sort.Direction.ASC)
+                .on(SUBMITTED_AT, Sort.Direction.ASC)
+                .on(FORM_TYPE, Sort.Direction.ASC)
+                .named("status_submitted_at_form_type"),
+            new Index().on(STATUS, Sort.Direction.ASC)
+                .on(SUBMITTED_AT, Sort.Direction.ASC)
+                .on(FEE_ON_SUBMISSION, Sort.Direction.ASC)
+                .named("status_submitted_at_fee_on_submission"));
+    }
+}
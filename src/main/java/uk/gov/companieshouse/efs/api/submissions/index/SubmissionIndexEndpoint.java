@@ -0,0 +1,116 @@
+package uk.gov.companieshouse.efs.api.submissions.index;
+
+import com.mongodb.MongoException;
+import java.util.Date;
+import java.util.List;
+import org.bson.Document;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.stereotype.Component;
+import uk.gov.companieshouse.logging.Logger;
+import uk.gov.companieshouse.logging.LoggerFactory;
+
+/**
+ * Reports the startup build state of the submissions indexes, any index builds still running on the server and how
+ * often each index has been used since the server last restarted.
+ */
+@Component
+@Endpoint(id = "submissionindexes")
+public class SubmissionIndexEndpoint {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger("efs-submission-api");
+    private static final String ADMIN_DATABASE = "admin";
+    private static final AggregationOperation INDEX_STATS = context -> new Document("$indexStats", new Document());
+
+    /**
+     * Progress of an index build running on the server.
+     *
+     * @param description the server's progress message
+     * @param done        the number of documents processed
+     * @param total       the number of documents to process
+     */
+    public record ServerIndexBuild(String description, Number done, Number total) {
+    }
+
+    /**
+     * Usage of an index since the server last restarted.
+     *
+     * @param name  the index name
+     * @param ops   the number of operations that used the index
+     * @param since when the server started counting
+     */
+    public record IndexUsage(String name, Number ops, Date since) {
+    }
+
+    /**
+     * The index report.
+     *
+     * @param builds   the startup build state of each declared index
+     * @param building index builds currently running on the submissions collection
+     * @param usage    usage of every index on the submissions collection
+     */
+    public record SubmissionIndexReport(List<SubmissionIndexBootstrapper.IndexBuild> builds,
+                                        List<ServerIndexBuild> building, List<IndexUsage> usage) {
+    }
+
+    private final SubmissionIndexBootstrapper bootstrapper;
+    private final MongoTemplate template;
+
+    /**
+     * Constructor.
+     *
+     * @param bootstrapper dependency
+     * @param template     dependency
+     */
+    public SubmissionIndexEndpoint(final SubmissionIndexBootstrapper bootstrapper, final MongoTemplate template) {
+        this.bootstrapper = bootstrapper;
+        this.template = template;
+    }
+
+    /**
+     * Report on the submissions collection indexes. The server-side sections are left empty when the database user
+     * is not permitted to read them.
+     *
+     * @return {@link SubmissionIndexReport} containing details of the indexes
+     */
+    @ReadOperation(produces = "application/json")
+    public SubmissionIndexReport report() {
+        return new SubmissionIndexReport(bootstrapper.getIndexBuilds(), findRunningBuilds(), findUsage());
+    }
+
+    private List<ServerIndexBuild> findRunningBuilds() {
+        try {
+            final Document result = template.getMongoDatabaseFactory().getMongoDatabase(ADMIN_DATABASE).runCommand(
+                new Document("currentOp", true).append("command.createIndexes",
+                    SubmissionIndexBootstrapper.SUBMISSIONS_COLLECTION));
+
+            return result.getList("inprog", Document.class, List.of()).stream().map(op -> {
+                final Document progress = op.get("progress", new Document());
+                return new ServerIndexBuild(op.getString("msg"), progress.get("done", Number.class),
+                    progress.get("total", Number.class));
+            }).toList();
+        } catch (MongoException | DataAccessException e) {
+            LOGGER.debug("Unable to read running submission index builds: %s".formatted(e.getMessage()));
+            return List.of();
+        }
+    }
+
+    private List<IndexUsage> findUsage() {
+        try {
+            return template.aggregate(Aggregation.newAggregation(INDEX_STATS),
+                SubmissionIndexBootstrapper.SUBMISSIONS_COLLECTION, Document.class).getMappedResults().stream()
+                .map(stats -> {
+                    final Document accesses = stats.get("accesses", new Document());
+                    return new IndexUsage(stats.getString("name"), accesses.get("ops", Number.class),
+                        accesses.getDate("since"));
+                }).toList();
+        } catch (DataAccessException e) {
+            LOGGER.debug("Unable to read submission index usage: %s".formatted(e.getMessage()));
+            return List.of();
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package uk.gov.companieshouse.efs.api.submissions.migration;
+
+import java.util.regex.Pattern;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+import uk.gov.companieshouse.logging.Logger;
+import uk.gov.companieshouse.logging.LoggerFactory;
+
+/**
+ * Backfills the { same_day: boolean } field on submissions created before it was persisted. The index that uses it is
+ * ensured by {@link uk.gov.companieshouse.efs.api.submissions.index.SubmissionIndexBootstrapper}.
+ * <p>
+ * Only documents without the field are touched, so the migration is idempotent and safe to run on every
+ * startup and from several instances at once. Once every submission has the field, startup only probes for a single
+ * document without it rather than running the backfill updates.
+ * </p>
+ */
+@Component
+public class SameDayFlagMigration implements ApplicationRunner {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger("efs-submission-api");
+    private static final String SUBMISSIONS_COLLECTION = "submissions";
+    private static final String SAME_DAY = "same_day";
+    private static final String FORM_TYPE = "form.form_type";
+    private static final Pattern SAMEDAY_FORM_PATTERN = Pattern.compile("SAMEDAY$");
+
+    private final MongoTemplate template;
+    private final boolean enabled;
+
+    public SameDayFlagMigration(final MongoTemplate template,
+        @Value("${submission.migration.same-day.enabled:true}") final boolean enabled) {
+        this.template = template;
+        this.enabled = enabled;
+    }
+
+    @Override
+    public void run(final ApplicationArguments args) {
+        if (!enabled) {
+            LOGGER.info("Same day flag migration disabled");
+            return;
+        }
+        if (!template.exists(Query.query(Criteria.where(SAME_DAY).exists(false)).limit(1),
+            SUBMISSIONS_COLLECTION)) {
+            LOGGER.debug("Same day flag already backfilled");
+            return;
+        }
+        final long sameDay = backfill(
+            Criteria.where(SAME_DAY).exists(false).and(FORM_TYPE).regex(SAMEDAY_FORM_PATTERN), true);
+        final long notSameDay = backfill(Criteria.where(SAME_DAY).exists(false), false);
+        LOGGER.info("Backfilled same day flag on [%d] same day and [%d] other submissions".formatted(
+            sameDay, notSameDay));
+    }
+
+    private long backfill(final Criteria criteria, final boolean sameDay) {
+        return template.updateMulti(Query.query(criteria),
+            new Update().set(SAME_DAY, sameDay), SUBMISSIONS_COLLECTION).getModifiedCount();
+    }
+}
@@ -30,6 +30,9 @@ public class FileDetails {
     @Field("last_modified_at")
     private LocalDateTime lastModifiedAt;
 
+    @Field("queue_attempts")
+    private Integer queueAttempts;
+
     public FileDetails(String fileId, String fileName, Long fileSize, String convertedFileId, FileConversionStatus conversionStatus,
             Integer numberOfPages, LocalDateTime lastModifiedAt) {
         this.fileId = fileId;
@@ -97,10 +100,25 @@ public class FileDetails {
         this.lastModifiedAt = lastModifiedAt;
     }
 
+    public Integer getQueueAttempts() {
+        return queueAttempts;
+    }
+
+    public void setQueueAttempts(Integer queueAttempts) {
+        this.queueAttempts = queueAttempts;
+    }
+
+    /**
+     * @return the number of the next attempt to queue this file for conversion (the first attempt is 1)
+     */
+    public int getNextQueueAttempt() {
+        return Objects.requireNonNullElse(queueAttempts, 0) + 1;
+    }
+
     @Override
     public int hashCode() {
         return Objects.hash(conversionStatus, convertedFileId, fileId, fileName, fileSize, lastModifiedAt,
-                numberOfPages);
+                numberOfPages, queueAttempts);
     }
 
     @Override
@@ -118,7 +136,8 @@ public class FileDetails {
         return conversionStatus == other.conversionStatus && Objects.equals(convertedFileId, other.convertedFileId)
                 && Objects.equals(fileId, other.fileId) && Objects.equals(fileName, other.fileName)
                 && Objects.equals(fileSize, other.fileSize) && Objects.equals(lastModifiedAt, other.lastModifiedAt)
-                && Objects.equals(numberOfPages, other.numberOfPages);
+                && Objects.equals(numberOfPages, other.numberOfPages)
+                && Objects.equals(queueAttempts, other.queueAttempts);
     }
 
     public static Builder builder() {
@@ -133,6 +152,7 @@ public class FileDetails {
         private FileConversionStatus conversionStatus;
         private Integer numberOfPages;
         private LocalDateTime lastModifiedAt;
+        private Integer queueAttempts;
 
         public Builder withFileId(String fileId) {
             this.fileId = fileId;
@@ -169,9 +189,16 @@ public class FileDetails {
             return this;
         }
 
+        public Builder withQueueAttempts(Integer queueAttempts) {
+            this.queueAttempts = queueAttempts;
+            return this;
+        }
+
         public FileDetails build() {
-            return new FileDetails(fileId, fileName, fileSize, convertedFileId, conversionStatus, numberOfPages,
-                    lastModifiedAt);
+            final FileDetails fileDetails = new FileDetails(fileId, fileName, fileSize, convertedFileId,
+                    conversionStatus, numberOfPages, lastModifiedAt);
+            fileDetails.setQueueAttempts(queueAttempts);
+            return fileDetails;
         }
     }
 }
@@ -40,6 +40,12 @@ public class Submission {
     private Boolean confirmAuthorised;
     @Field("fee_on_submission")
     private String feeOnSubmission;
+    @Field("same_day")
+    private Boolean sameDay;
+    @Field("lease_owner")
+    private String leaseOwner;
+    @Field("lease_expires_at")
+    private LocalDateTime leaseExpiresAt;
 
     private Submission() {
         // no direct instantiation
@@ -97,6 +103,18 @@ public class Submission {
         return feeOnSubmission;
     }
 
+    public Boolean getSameDay() {
+        return sameDay;
+    }
+
+    public String getLeaseOwner() {
+        return leaseOwner;
+    }
+
+    public LocalDateTime getLeaseExpiresAt() {
+        return leaseExpiresAt;
+    }
+
     public static Builder builder() {
         return new Builder();
     }
@@ -115,7 +133,10 @@ public class Submission {
                 .withFormDetails(copy.getFormDetails())
                 .withChipsRejectReasons(copy.getChipsRejectReasons())
                 .withConfirmAuthorised(copy.getConfirmAuthorised())
-                .withFeeOnSubmission(copy.getFeeOnSubmission());
+                .withFeeOnSubmission(copy.getFeeOnSubmission())
+                .withSameDay(copy.getSameDay())
+                .withLeaseOwner(copy.getLeaseOwner())
+                .withLeaseExpiresAt(copy.getLeaseExpiresAt());
     }
 
     public static class Builder {
@@ -190,6 +211,21 @@ public class Submission {
             return this;
         }
 
+        public Submission.Builder withSameDay(Boolean sameDay) {
+            buildSteps.add(data -> data.sameDay = sameDay);
+            return this;
+        }
+
+        public Submission.Builder withLeaseOwner(String leaseOwner) {
+            buildSteps.add(data -> data.leaseOwner = leaseOwner);
+            return this;
+        }
+
+        public Submission.Builder withLeaseExpiresAt(LocalDateTime leaseExpiresAt) {
+            buildSteps.add(data -> data.leaseExpiresAt = leaseExpiresAt);
+            return this;
+        }
+
         public Submission build() {
             final Submission data = new Submission();
 
@@ -217,13 +253,14 @@ public class Submission {
             && Objects.equals(getFormDetails(), that.getFormDetails()) && Objects
             .equals(getChipsRejectReasons(), that.getChipsRejectReasons()) && Objects
             .equals(getConfirmAuthorised(), that.getConfirmAuthorised()) && Objects
-            .equals(getFeeOnSubmission(), that.getFeeOnSubmission());
+            .equals(getFeeOnSubmission(), that.getFeeOnSubmission()) && Objects
+            .equals(getSameDay(), that.getSameDay());
     }
 
     @Override
     public int hashCode() {
         return Objects.hash(getId(), getConfirmationReference(), getCreatedAt(), getSubmittedAt(), getLastModifiedAt(),
             getCompany(), getPresenter(), getStatus(), getPaymentSessions(), getFormDetails(), getChipsRejectReasons(),
-            getConfirmAuthorised(), getFeeOnSubmission());
+            getConfirmAuthorised(), getFeeOnSubmission(), getSameDay());
     }
 }
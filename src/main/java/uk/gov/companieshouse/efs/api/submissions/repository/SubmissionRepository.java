@@ -1,10 +1,13 @@
 package uk.gov.companieshouse.efs.api.submissions.repository;
 
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.Collection;
 import java.util.List;
+import java.util.Set;
 import uk.gov.companieshouse.api.model.efs.fes.FesSubmissionStatus;
+import uk.gov.companieshouse.api.model.efs.submissions.FileConversionStatus;
 import uk.gov.companieshouse.api.model.efs.submissions.SubmissionStatus;
 import uk.gov.companieshouse.efs.api.submissions.model.Submission;
 
@@ -12,6 +15,27 @@ public interface SubmissionRepository {
 
     List<Submission> findByStatusOrderByPriority(SubmissionStatus status, int maxBatchSize);
 
+    /**
+     * Atomically claim a batch of submissions with the given status for exclusive processing.
+     * Submissions already leased to another owner are skipped until their lease expires.
+     *
+     * @param status        submission status to match
+     * @param maxBatchSize  max. number of submissions to claim
+     * @param leaseOwner    identity of the claiming instance
+     * @param leaseDuration how long the claim is held before other instances may take it over
+     * @return the claimed submissions, ordered by priority
+     */
+    List<Submission> claimByStatusOrderByPriority(SubmissionStatus status, int maxBatchSize, String leaseOwner,
+        Duration leaseDuration);
+
+    /**
+     * Release leases held by the given owner on the given submissions.
+     *
+     * @param ids        the submission ids
+     * @param leaseOwner identity of the instance holding the leases
+     */
+    void releaseLeases(Collection<String> ids, String leaseOwner);
+
     Submission read(String id);
 
     void create(Submission submission);
@@ -20,6 +44,63 @@ public interface SubmissionRepository {
 
     void updateSubmission(Submission submission);
 
+    /**
+     * Atomically record the conversion outcome of a QUEUED file on a PROCESSING submission.
+     *
+     * @param id               the submission id
+     * @param fileId           the file id
+     * @param conversionStatus the file conversion status
+     * @param convertedFileId  the converted file id
+     * @param numberOfPages    the number of pages in the converted file
+     * @return the updated submission, or null if the submission or file was not in the expected state
+     */
+    Submission updateFileConversionStatus(String id, String fileId, FileConversionStatus conversionStatus,
+        String convertedFileId, Integer numberOfPages);
+
+    /**
+     * Record the conversion status of each file of the submissions as one unordered bulk write, leaving the rest of
+     * each document untouched.
+     *
+     * @param submissions the submissions holding the file statuses
+     * @return the ids of the submissions whose write failed
+     */
+    Set<String> updateFileConversionStatuses(Collection<Submission> submissions);
+
+    /**
+     * Move each SUBMITTED submission to PROCESSING with all its files QUEUED, counting the queue attempt against each
+     * file, as one unordered bulk write of conditional updates.
+     *
+     * @param submissions the submissions whose files were queued
+     * @return the ids of the submissions whose write failed
+     */
+    Set<String> updateSubmissionsQueued(Collection<Submission> submissions);
+
+    /**
+     * Count a queue attempt against each file of the SUBMITTED submissions whose files were not all queued, so that
+     * the next attempt is not suppressed as a duplicate of the requests already accepted. Written as one unordered
+     * bulk write.
+     *
+     * @param submissions the submissions whose files were not all queued
+     */
+    void updateQueueAttempts(Collection<Submission> submissions);
+
+    /**
+     * Atomically move a PROCESSING submission to the given status, provided none of its files is still awaiting
+     * conversion.
+     *
+     * @param id     the submission id
+     * @param status the new status
+     * @return true if this call made the transition
+     */
+    boolean updateStatusOnConversionComplete(String id, SubmissionStatus status);
+
+    /**
+     * Open a write-behind sink that buffers submission writes until flushed as a single bulk write.
+     *
+     * @return a new, empty sink
+     */
+    SubmissionWriteSink openWriteSink();
+
     void updateSubmissionStatusByBarcode(String barcode, FesSubmissionStatus fesSubmissionStatus);
 
     Submission readByBarcode(String barcode);
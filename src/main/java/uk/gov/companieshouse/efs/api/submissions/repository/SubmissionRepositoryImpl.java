@@ -10,23 +10,33 @@ import static uk.gov.companieshouse.api.model.efs.submissions.SubmissionStatus.S
 
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Sets;
+import com.mongodb.bulk.BulkWriteError;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.regex.Pattern;
-import java.util.stream.Stream;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Repository;
 import uk.gov.companieshouse.api.model.efs.fes.FesSubmissionStatus;
+import uk.gov.companieshouse.api.model.efs.submissions.FileConversionStatus;
 import uk.gov.companieshouse.api.model.efs.submissions.SubmissionStatus;
+import uk.gov.companieshouse.efs.api.submissions.model.FileDetails;
 import uk.gov.companieshouse.efs.api.submissions.model.Submission;
 import uk.gov.companieshouse.efs.api.util.CurrentTimestampGenerator;
 import uk.gov.companieshouse.logging.Logger;
@@ -41,9 +51,17 @@ public class SubmissionRepositoryImpl implements SubmissionRepository {
     private static final String FORM_TYPE = "form.form_type";
     private static final String LAST_MODIFIED_AT = "last_modified_at";
     private static final String CREATED_AT = "created_at";
+    private static final String SAME_DAY = "same_day";
     private static final String SUBMITTED_AT = "submitted_at";
     private static final String FEE_ON_SUBMISSION = "fee_on_submission";
-    private static final Pattern SAMEDAY_FORM_PATTERN = Pattern.compile("SAMEDAY$");
+    private static final String LEASE_OWNER = "lease_owner";
+    private static final String LEASE_EXPIRES_AT = "lease_expires_at";
+    private static final String FILE_DETAILS = "form.file_details";
+    private static final String FILE_ID = "file_id";
+    private static final String CONVERSION_STATUS = "conversion_status";
+    private static final String FILTERED_FILE = FILE_DETAILS + ".$[file].";
+    private static final String QUEUE_ATTEMPTS = "queue_attempts";
+    private static final Sort PRIORITY_ORDER = Sort.by(Sort.Order.desc(SAME_DAY), Sort.Order.asc(CREATED_AT));
     private MongoTemplate template;
     private CurrentTimestampGenerator timestampGenerator;
     private static final String SUBMISSIONS_COLLECTION = "submissions";
@@ -60,35 +78,93 @@ public class SubmissionRepositoryImpl implements SubmissionRepository {
 
     /**
      * Find submissions by status, with 'SAMEDAY' forms prioritised.<br/>
-     * Implemented as two queries for convenience to avoid complex aggregation operations.<br/>
-     * A better solution would involve adding a { same_day: boolean } document field from computing
-     * {@code $gt: [ { $indexOfCP: [ '$form.form_type', 'SAMEDAY' ] }, 0] }<br/>
-     * i.e. boolean of form.form_type field contains substring 'SAMEDAY', then sorting by same_day descending
+     * Relies on the persisted { same_day: boolean } field, set when the form type is chosen, so that a single
+     * indexed query sorted by same_day descending then created_at ascending returns the batch.
      * @param status submission status to match
      * @param maxBatchSize max. number of entities to return in all
-     * @return collection of matching entities ordered by ('SAMEDAY' DESC, created/submitted timestamp ASC)
+     * @return collection of matching entities ordered by ('SAMEDAY' DESC, created timestamp ASC)
      */
     @Override
     public List<Submission> findByStatusOrderByPriority(final SubmissionStatus status, final int maxBatchSize) {
+        return findPrioritised(status, maxBatchSize, Criteria.where(STATUS).is(status));
+    }
+
+    /**
+     * Claim submissions by status, with 'SAMEDAY' forms prioritised.<br/>
+     * Each submission is leased with its own findAndModify, sorted as for
+     * {@link #findByStatusOrderByPriority(SubmissionStatus, int)}, that takes the first one not currently leased to
+     * another owner, until the batch is full or none is left. Every claim is conditional, so concurrent instances
+     * always claim disjoint sets of submissions, and none waits on candidates another instance has taken.
+     * @param status submission status to match
+     * @param maxBatchSize max. number of entities to claim in all
+     * @param leaseOwner identity of the claiming instance
+     * @param leaseDuration how long the lease is held
+     * @return collection of claimed entities ordered by ('SAMEDAY' DESC, created/submitted timestamp ASC)
+     */
+    @Override
+    public List<Submission> claimByStatusOrderByPriority(final SubmissionStatus status, final int maxBatchSize,
+        final String leaseOwner, final Duration leaseDuration) {
+        final LocalDateTime now = timestampGenerator.generateTimestamp();
+        final LocalDateTime leaseExpiresAt = now.plus(leaseDuration);
+
+        final List<Submission> claimed = new ArrayList<>();
+        final List<String> claimedIds = new ArrayList<>();
+        while (claimed.size() < maxBatchSize) {
+            // the owner's own leases stay claimable, so those claimed already are left out
+            final Submission submission = template.findAndModify(
+                Query.query(claimableCriteria(status, leaseOwner, now).and(ID).nin(claimedIds)).with(PRIORITY_ORDER),
+                new Update().set(LEASE_OWNER, leaseOwner).set(LEASE_EXPIRES_AT, leaseExpiresAt),
+                FindAndModifyOptions.options().returnNew(true), Submission.class, SUBMISSIONS_COLLECTION);
+            if (submission == null) {
+                break;
+            }
+            claimed.add(submission);
+            claimedIds.add(submission.getId());
+        }
+        LOGGER.debug("Claimed [%d] submissions with status: [%s] for [%s]".formatted(claimed.size(), status,
+            leaseOwner));
+
+        return claimed;
+    }
+
+    @Override
+    public void releaseLeases(final Collection<String> ids, final String leaseOwner) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        template.updateMulti(Query.query(Criteria.where(ID).in(ids).and(LEASE_OWNER).is(leaseOwner)),
+            new Update().unset(LEASE_OWNER).unset(LEASE_EXPIRES_AT), String.class, SUBMISSIONS_COLLECTION);
+        LOGGER.debug("Released leases on [%d] submissions for [%s]".formatted(ids.size(), leaseOwner));
+    }
+
+    /**
+     * Find submissions matching the criteria, with 'SAMEDAY' forms prioritised.<br/>
+     * Served by the { status: 1, same_day: -1, created_at: 1 } index in a single query, see
+     * {@link uk.gov.companieshouse.efs.api.submissions.index.SubmissionIndexBootstrapper}.
+     * @param status submission status to match
+     * @param maxBatchSize max. number of entities to return in all
+     * @param criteria the criteria to match, including the status
+     * @return collection of matching entities ordered by ('SAMEDAY' DESC, created timestamp ASC)
+     */
+    private List<Submission> findPrioritised(final SubmissionStatus status, final int maxBatchSize,
+        final Criteria criteria) {
         LOGGER.debug("Fetching submissions with status: [%s]".formatted(status));
-        final Sort createdOrder = Sort.by(Sort.Direction.ASC, CREATED_AT);
-        List<Submission> samedayList = template.find(
-                Query.query(Criteria.where(STATUS).is(status).and(FORM_TYPE).regex(SAMEDAY_FORM_PATTERN))
-                        .with(createdOrder).limit(maxBatchSize), Submission.class, SUBMISSIONS_COLLECTION);
-        LOGGER.debug("Found [%d] SAMEDAY submissions with status: [%s]".formatted(samedayList.size(), status));
-        List<Submission> nonSamedayList = template.find(
-                Query.query(Criteria.where(STATUS).is(status).and(FORM_TYPE).not().regex(SAMEDAY_FORM_PATTERN))
-                        .with(createdOrder).limit(maxBatchSize - samedayList.size()), Submission.class,
+        final List<Submission> priorityList = template.find(
+                Query.query(criteria).with(PRIORITY_ORDER).limit(maxBatchSize), Submission.class,
                 SUBMISSIONS_COLLECTION);
-        LOGGER.debug(
-            "Found [%d] non-SAMEDAY submissions with status: [%s]".formatted(nonSamedayList.size(), status));
-        final var priorityList =
-                Stream.concat(samedayList.stream(), nonSamedayList.stream()).toList();
         LOGGER.debug("Found in all [%d] submissions with status: [%s]".formatted(priorityList.size(), status));
 
         return priorityList;
     }
 
+    private static Criteria claimableCriteria(final SubmissionStatus status, final String leaseOwner,
+        final LocalDateTime now) {
+        return Criteria.where(STATUS).is(status).orOperator(
+            Criteria.where(LEASE_EXPIRES_AT).exists(false),
+            Criteria.where(LEASE_EXPIRES_AT).lte(now),
+            Criteria.where(LEASE_OWNER).is(leaseOwner));
+    }
+
     @Override
     public Submission read(String id) {
         LOGGER.debug(String.format("Fetching submission with id: [%s] from repository", id));
@@ -116,6 +192,138 @@ public class SubmissionRepositoryImpl implements SubmissionRepository {
         template.save(submission);
     }
 
+    @Override
+    public Submission updateFileConversionStatus(final String id, final String fileId,
+        final FileConversionStatus conversionStatus, final String convertedFileId, final Integer numberOfPages) {
+        final LocalDateTime lastModified = timestampGenerator.generateTimestamp();
+
+        final Submission submission = template.findAndModify(Query.query(Criteria.where(ID).is(id)
+                .and(STATUS).is(PROCESSING)
+                .and(FILE_DETAILS).elemMatch(
+                    Criteria.where(FILE_ID).is(fileId).and(CONVERSION_STATUS).is(FileConversionStatus.QUEUED))),
+            new Update().set(FILTERED_FILE + CONVERSION_STATUS, conversionStatus)
+                .set(FILTERED_FILE + "converted_file_id", convertedFileId)
+                .set(FILTERED_FILE + "number_of_pages", numberOfPages)
+                .set(FILTERED_FILE + LAST_MODIFIED_AT, lastModified)
+                .set(LAST_MODIFIED_AT, lastModified)
+                .filterArray(Criteria.where("file." + FILE_ID).is(fileId)),
+            FindAndModifyOptions.options().returnNew(true), Submission.class, SUBMISSIONS_COLLECTION);
+        LOGGER.debug("Updated file [%s] conversion status [%s] in submission [%s]: %s".formatted(fileId,
+            conversionStatus, id, submission == null ? "not in expected state" : "updated"));
+        return submission;
+    }
+
+    @Override
+    public Set<String> updateFileConversionStatuses(final Collection<Submission> submissions) {
+        final LocalDateTime lastModified = timestampGenerator.generateTimestamp();
+
+        final Set<String> failed = bulkUpdate(submissions,
+            submission -> Query.query(Criteria.where(ID).is(submission.getId())), submission -> {
+                final Update update = new Update().set(LAST_MODIFIED_AT, lastModified);
+                forEachFile(submission, update, (file, path) -> update
+                    .set(path + CONVERSION_STATUS, file.getConversionStatus())
+                    .set(path + LAST_MODIFIED_AT, file.getLastModifiedAt()));
+                return update;
+            }).failed();
+        LOGGER.debug("Updated file conversion statuses in [%d] submissions with [%d] failures".formatted(
+            submissions.size(), failed.size()));
+        return failed;
+    }
+
+    @Override
+    public Set<String> updateSubmissionsQueued(final Collection<Submission> submissions) {
+        final LocalDateTime lastModified = timestampGenerator.generateTimestamp();
+
+        final BulkUpdateResult result = bulkUpdate(submissions,
+            submission -> Query.query(Criteria.where(ID).is(submission.getId()).and(STATUS).is(SUBMITTED)),
+            submission -> {
+                final Update update = new Update().set(STATUS, PROCESSING).set(LAST_MODIFIED_AT, lastModified);
+                forEachFile(submission, update, (file, path) -> update
+                    .set(path + CONVERSION_STATUS, FileConversionStatus.QUEUED)
+                    .set(path + LAST_MODIFIED_AT, lastModified)
+                    .set(path + QUEUE_ATTEMPTS, file.getNextQueueAttempt()));
+                return update;
+            });
+        LOGGER.debug("Updated [%d] of [%d] submissions status on queueing to [%s] with [%d] failures".formatted(
+            result.matched(), submissions.size(), PROCESSING, result.failed().size()));
+        return result.failed();
+    }
+
+    @Override
+    public void updateQueueAttempts(final Collection<Submission> submissions) {
+        // leaves last_modified_at alone, as it times how long the submission has been delayed
+        final Set<String> failed = bulkUpdate(submissions,
+            submission -> Query.query(Criteria.where(ID).is(submission.getId()).and(STATUS).is(SUBMITTED)),
+            submission -> {
+                final Update update = new Update();
+                forEachFile(submission, update,
+                    (file, path) -> update.set(path + QUEUE_ATTEMPTS, file.getNextQueueAttempt()));
+                return update;
+            }).failed();
+        LOGGER.debug("Updated queue attempts of files in [%d] submissions with [%d] failures".formatted(
+            submissions.size(), failed.size()));
+    }
+
+    private record BulkUpdateResult(int matched, Set<String> failed) {
+    }
+
+    // writes one update per submission as a single unordered bulk write, so that a failed write only fails its own
+    // submission; the errors carry the index of the failed operation, i.e. of its submission
+    private BulkUpdateResult bulkUpdate(final Collection<Submission> submissions,
+        final Function<Submission, Query> query, final Function<Submission, Update> update) {
+        if (submissions.isEmpty()) {
+            return new BulkUpdateResult(0, Set.of());
+        }
+        final List<Submission> ordered = List.copyOf(submissions);
+        final BulkOperations operations =
+            template.bulkOps(BulkOperations.BulkMode.UNORDERED, Submission.class, SUBMISSIONS_COLLECTION);
+        ordered.forEach(submission -> operations.updateOne(query.apply(submission), update.apply(submission)));
+
+        try {
+            return new BulkUpdateResult(operations.execute().getMatchedCount(), Set.of());
+        } catch (BulkOperationException e) {
+            final Set<String> failed = new LinkedHashSet<>();
+            for (final BulkWriteError error : e.getErrors()) {
+                final String id = ordered.get(error.getIndex()).getId();
+                failed.add(id);
+                LOGGER.error("Failed to write submission with id: [%s]: %s".formatted(id, error.getMessage()));
+            }
+            return new BulkUpdateResult(e.getResult().getMatchedCount(), failed);
+        }
+    }
+
+    // sets fields on each file through an array filter of its own, matching the file by id
+    private static void forEachFile(final Submission submission, final Update update,
+        final BiConsumer<FileDetails, String> setter) {
+        final List<FileDetails> files = submission.getFormDetails().getFileDetailsList();
+        for (int i = 0; i < files.size(); i++) {
+            final String identifier = "file" + i;
+            update.filterArray(Criteria.where(identifier + "." + FILE_ID).is(files.get(i).getFileId()));
+            setter.accept(files.get(i), FILE_DETAILS + ".$[" + identifier + "].");
+        }
+    }
+
+    @Override
+    public boolean updateStatusOnConversionComplete(final String id, final SubmissionStatus status) {
+        final LocalDateTime lastModified = timestampGenerator.generateTimestamp();
+
+        final long modified = template.updateFirst(Query.query(Criteria.where(ID).is(id)
+                    .and(STATUS).is(PROCESSING)
+                    .and(FILE_DETAILS).not().elemMatch(Criteria.where(CONVERSION_STATUS)
+                        .nin(FileConversionStatus.CONVERTED, FileConversionStatus.FAILED))),
+                new Update().set(STATUS, status).set(LAST_MODIFIED_AT, lastModified), String.class,
+                SUBMISSIONS_COLLECTION)
+            .getModifiedCount();
+        LOGGER.debug("Updated submission [%s] status on conversion complete to [%s]: %s".formatted(id, status,
+            modified == 1 ? "updated" : "already updated"));
+        return modified == 1;
+    }
+
+    @Override
+    public SubmissionWriteSink openWriteSink() {
+        return new SubmissionWriteSink(template, timestampGenerator);
+    }
+
     @Override
     public void updateSubmissionStatusByBarcode(String barcode, FesSubmissionStatus fesSubmissionStatus) {
         LOGGER.debug(
@@ -0,0 +1,120 @@
+package uk.gov.companieshouse.efs.api.submissions.repository;
+
+import com.mongodb.bulk.BulkWriteError;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import uk.gov.companieshouse.api.model.efs.submissions.SubmissionStatus;
+import uk.gov.companieshouse.efs.api.submissions.model.Submission;
+import uk.gov.companieshouse.efs.api.util.CurrentTimestampGenerator;
+import uk.gov.companieshouse.logging.Logger;
+import uk.gov.companieshouse.logging.LoggerFactory;
+
+/**
+ * Write-behind sink collecting the terminal status changes made while processing a batch, written to Mongo by
+ * {@link #flush()} as a single unordered bulk write of status-only updates.
+ * <p>
+ * At most one status change is held per submission, the latest replacing any earlier one, so the order in which the
+ * bulk write applies its operations does not matter. Transitions that other writers race against, such as queueing
+ * files for conversion, are written straight to the repository instead. Instances are thread-safe but intended for a
+ * single batch.
+ * </p>
+ */
+public class SubmissionWriteSink {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger("efs-submission-api");
+    private static final String ID = "_id";
+    private static final String STATUS = "status";
+    private static final String LAST_MODIFIED_AT = "last_modified_at";
+    private static final String SUBMISSIONS_COLLECTION = "submissions";
+
+    /**
+     * Outcome of a flush.
+     *
+     * @param written  the number of submissions written
+     * @param failures the error message for each submission id whose write failed
+     */
+    public record FlushResult(int written, Map<String, String> failures) {
+    }
+
+    private record StatusChange(SubmissionStatus status, LocalDateTime lastModifiedAt) {
+    }
+
+    private final MongoTemplate template;
+    private final CurrentTimestampGenerator timestampGenerator;
+    private final Map<String, StatusChange> pending = new LinkedHashMap<>();
+
+    /**
+     * Constructor.
+     *
+     * @param template           dependency
+     * @param timestampGenerator dependency
+     */
+    public SubmissionWriteSink(final MongoTemplate template, final CurrentTimestampGenerator timestampGenerator) {
+        this.template = template;
+        this.timestampGenerator = timestampGenerator;
+    }
+
+    /**
+     * Buffer a status change of the submission.
+     *
+     * @param id     the submission id
+     * @param status the new status
+     */
+    public synchronized void updateStatus(final String id, final SubmissionStatus status) {
+        pending.put(id, new StatusChange(status, timestampGenerator.generateTimestamp()));
+    }
+
+    /**
+     * @return the number of submissions with a buffered write
+     */
+    public synchronized int size() {
+        return pending.size();
+    }
+
+    /**
+     * Write the buffered transitions as one unordered bulk write and clear the buffer. A failed write is logged,
+     * reported against its submission and kept in the buffer for the next flush, without preventing the other writes.
+     * When the bulk write fails as a whole, every write is reported and kept; any other exception propagates with
+     * the buffer untouched.
+     *
+     * @return the outcome of the flush
+     */
+    public synchronized FlushResult flush() {
+        if (pending.isEmpty()) {
+            return new FlushResult(0, Map.of());
+        }
+        final List<String> ids = new ArrayList<>(pending.keySet());
+        final BulkOperations operations =
+            template.bulkOps(BulkOperations.BulkMode.UNORDERED, Submission.class, SUBMISSIONS_COLLECTION);
+        pending.forEach((id, change) -> operations.updateOne(Query.query(Criteria.where(ID).is(id)),
+            new Update().set(STATUS, change.status()).set(LAST_MODIFIED_AT, change.lastModifiedAt())));
+
+        final Map<String, String> failures = new LinkedHashMap<>();
+        try {
+            operations.execute();
+        } catch (BulkOperationException e) {
+            for (final BulkWriteError error : e.getErrors()) {
+                final String id = ids.get(error.getIndex());
+                failures.put(id, error.getMessage());
+                LOGGER.error("Failed to write submission with id: [%s]: %s".formatted(id, error.getMessage()));
+            }
+        } catch (DataAccessException e) {
+            // which writes were applied is unknown, and writing a status again is harmless
+            ids.forEach(id -> failures.put(id, e.getMessage()));
+            LOGGER.error("Failed to write [%d] submissions: %s".formatted(ids.size(), e.getMessage()));
+        }
+        pending.keySet().retainAll(failures.keySet());
+        LOGGER.debug("Flushed [%d] submission writes with [%d] failures".formatted(ids.size(), failures.size()));
+        return new FlushResult(ids.size() - failures.size(), failures);
+    }
+}
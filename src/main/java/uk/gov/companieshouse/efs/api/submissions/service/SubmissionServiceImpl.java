@@ -59,6 +59,8 @@ public class SubmissionServiceImpl implements SubmissionService {
     public static final ImmutableSet<SubmissionStatus> UPDATABLE_STATUSES =
         Sets.immutableEnumSet(SubmissionStatus.OPEN, SubmissionStatus.PAYMENT_REQUIRED, SubmissionStatus.PAYMENT_FAILED);
 
+    private static final String SAMEDAY_FORM_SUFFIX = "SAMEDAY";
+
     public static final ImmutableSet<SubmissionStatus> VALIDATABLE_STATUSES =
         Sets.immutableEnumSet(SubmissionStatus.OPEN, SubmissionStatus.PAYMENT_REQUIRED, SubmissionStatus.PAYMENT_FAILED,
             SubmissionStatus.SUBMITTED);
@@ -145,7 +147,8 @@ public class SubmissionServiceImpl implements SubmissionService {
             formDetails.setFormType(formType);
         }
         LOGGER.debug("Attempting to update fee for submission with id: [%s]".formatted(id));
-        Submission updatedSubmission = Submission.builder(submission).withFeeOnSubmission(getPaymentCharge(formType)).withFormDetails(formDetails).build();
+        Submission updatedSubmission = Submission.builder(submission).withFeeOnSubmission(getPaymentCharge(formType))
+            .withFormDetails(formDetails).withSameDay(isSameDayFormType(formType)).build();
         submissionRepository.updateSubmission(updatedSubmission);
         LOGGER.debug("Successfully updated form type for submission with id: [%s]".formatted(id));
         return new SubmissionResponseApi(id);
@@ -364,6 +367,14 @@ public class SubmissionServiceImpl implements SubmissionService {
         return submission;
     }
 
+    /**
+     * Same day forms are prioritised when fetching submissions for processing, see
+     * {@link SubmissionRepository#findByStatusOrderByPriority(SubmissionStatus, int)}.
+     */
+    private static boolean isSameDayFormType(final String formType) {
+        return formType != null && formType.endsWith(SAMEDAY_FORM_SUFFIX);
+    }
+
     private String getPaymentCharge(final String formType) {
         final FormTemplateApi formTemplate = formType != null ? formTemplateService.getFormTemplate(formType) : null;
         String result = null;
@@ -0,0 +1,193 @@
+package uk.gov.companieshouse.efs.api.client;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import tools.jackson.core.JacksonException;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.json.JsonMapper;
+import uk.gov.companieshouse.api.error.ApiError;
+import uk.gov.companieshouse.api.model.ApiResponse;
+import uk.gov.companieshouse.efs.api.client.exception.EmailClientException;
+import uk.gov.companieshouse.efs.api.email.model.EmailDocument;
+import uk.gov.companieshouse.efs.api.email.model.PaymentReportEmailData;
+
+@ExtendWith(MockitoExtension.class)
+class AsyncEmailClientTest {
+
+    private AsyncEmailClient emailClient;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    @Mock
+    private HttpClient httpClient;
+
+    @Mock
+    private HttpResponse<String> httpResponse;
+
+    @Captor
+    private ArgumentCaptor<HttpRequest> requestCaptor;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        emailClient = createClient(JsonMapper.builder().build(), 2);
+    }
+
+    @Test
+    void testPostsEmailToApiWithKeyAndTimeout() {
+        //given
+        when(httpResponse.statusCode()).thenReturn(200);
+        when(httpResponse.headers()).thenReturn(HttpHeaders.of(Map.of(), (name, value) -> true));
+        doReturn(CompletableFuture.completedFuture(httpResponse)).when(httpClient).sendAsync(any(), any());
+
+        //when
+        final ApiResponse<Void> response = emailClient.sendEmail(createEmailDocument()).join();
+
+        //then
+        assertThat(response.getStatusCode(), is(200));
+        verify(httpClient).sendAsync(requestCaptor.capture(), any());
+        final HttpRequest request = requestCaptor.getValue();
+        assertThat(request.uri(), is(URI.create("http://chs-kafka-api/send-email")));
+        assertThat(request.method(), is("POST"));
+        assertThat(request.timeout(), is(Optional.of(Duration.ofMillis(5000))));
+        assertThat(request.headers().firstValue("Authorization"),
+            is(Optional.of("Basic " + Base64.getEncoder().encodeToString("api-key:".getBytes()))));
+        assertThat(request.headers().firstValue("X-Request-Id").isPresent(), is(true));
+        assertThat(meterRegistry.get("efs.email.client.requests").tag("outcome", "success").timer().count(),
+            is(1L));
+    }
+
+    @Test
+    void testReturnsErrorsFromBodyOfUnsuccessfulAnswer() {
+        //given
+        when(httpResponse.statusCode()).thenReturn(400);
+        when(httpResponse.headers()).thenReturn(HttpHeaders.of(Map.of(), (name, value) -> true));
+        when(httpResponse.body()).thenReturn(
+            "{\"errors\":[{\"error\":\"invalid email\",\"location\":\"email_address\","
+                + "\"location_type\":\"json-path\",\"type\":\"ch:validation\"}]}");
+        doReturn(CompletableFuture.completedFuture(httpResponse)).when(httpClient).sendAsync(any(), any());
+
+        //when
+        final ApiResponse<Void> response = emailClient.sendEmail(createEmailDocument()).join();
+
+        //then
+        assertThat(response.getStatusCode(), is(400));
+        assertThat(response.getErrors().stream().map(ApiError::getError).toList(), is(List.of("invalid email")));
+        assertThat(response.getErrors().stream().map(ApiError::getLocationType).toList(),
+            is(List.of("json-path")));
+    }
+
+    @Test
+    void testFailsWithEmailClientExceptionWhenRequestTimesOut() {
+        //given
+        doReturn(CompletableFuture.failedFuture(new HttpTimeoutException("stub"))).when(httpClient)
+            .sendAsync(any(), any());
+
+        //when
+        final CompletionException expected = assertThrows(CompletionException.class,
+            () -> emailClient.sendEmail(createEmailDocument()).join());
+
+        //then
+        assertThat(expected.getCause(), is(instanceOf(EmailClientException.class)));
+        assertThat(expected.getCause().getMessage(), is("Timed out sending payload to CHS Kafka API: "));
+    }
+
+    @Test
+    void testHoldsRequestsBeyondInFlightLimitUntilOneFinishes() {
+        //given
+        emailClient = createClient(JsonMapper.builder().build(), 1);
+        when(httpResponse.statusCode()).thenReturn(200);
+        when(httpResponse.headers()).thenReturn(HttpHeaders.of(Map.of(), (name, value) -> true));
+        final CompletableFuture<HttpResponse<String>> first = new CompletableFuture<>();
+        doReturn(first, CompletableFuture.completedFuture(httpResponse)).when(httpClient).sendAsync(any(), any());
+
+        //when
+        final CompletableFuture<ApiResponse<Void>> firstSent = emailClient.sendEmail(createEmailDocument());
+        final CompletableFuture<ApiResponse<Void>> secondSent = emailClient.sendEmail(createEmailDocument());
+
+        //then
+        verify(httpClient, times(1)).sendAsync(any(), any());
+        assertThat(meterRegistry.get("efs.email.client.waiting").gauge().value(), is(1.0));
+        assertThat(secondSent.isDone(), is(false));
+
+        first.complete(httpResponse);
+
+        verify(httpClient, times(2)).sendAsync(any(), any());
+        assertThat(firstSent.join().getStatusCode(), is(200));
+        assertThat(secondSent.join().getStatusCode(), is(200));
+        assertThat(meterRegistry.get("efs.email.client.in-flight").gauge().value(), is(0.0));
+    }
+
+    @Test
+    void testFailsWithoutSendingWhenPayloadCannotBeCreated() {
+        //given
+        final ObjectMapper throwingMapper = new ObjectMapper() {
+            @Override
+            public String writeValueAsString(final Object value) throws JacksonException {
+                throw new JacksonException("Stubbed for test") {};
+            }
+        };
+        emailClient = createClient(throwingMapper, 2);
+
+        //when
+        final CompletionException expected = assertThrows(CompletionException.class,
+            () -> emailClient.sendEmail(createEmailDocument()).join());
+
+        //then
+        assertThat(expected.getCause().getMessage(), is("Error creating payload for CHS Kafka API: "));
+        verifyNoInteractions(httpClient);
+    }
+
+    @Test
+    void testRejectsInFlightLimitBelowOne() {
+        assertThrows(IllegalArgumentException.class, () -> createClient(JsonMapper.builder().build(), 0));
+    }
+
+    private AsyncEmailClient createClient(final ObjectMapper objectMapper, final int maxInFlight) {
+        return new AsyncEmailClient(httpClient, objectMapper, meterRegistry, true, "api-key", "http://chs-kafka-api",
+            5000, maxInFlight);
+    }
+
+    private static EmailDocument<PaymentReportEmailData> createEmailDocument() {
+        return EmailDocument.<PaymentReportEmailData>builder()
+            .withTopic("test-email-topic")
+            .withMessageId("message-id")
+            .withRecipientEmailAddress("unit-test@ch.gov.uk")
+            .withEmailTemplateAppId("email-template-app-id")
+            .withEmailTemplateMessageType("email-template-message-type")
+            .withData(new PaymentReportEmailData("unit@test.com", "My Payment Subject", "file://file-link",
+                "filename.pdf", false))
+            .withCreatedAt("2025-04-01T10:06:43.596087")
+            .build();
+    }
+}
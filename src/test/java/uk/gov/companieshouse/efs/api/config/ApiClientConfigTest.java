@@ -19,8 +19,8 @@ class ApiClientConfigTest {
     }
 
     @Test
-    void getInternalFileClientBuildsClientWithConfiguredApiKey() {
-        final var client = testConfig.getInternalFileClient();
+    void getInternalFileClientFactoryBuildsClientWithConfiguredApiKey() {
+        final var client = testConfig.getInternalFileClientFactory().apply("http://file-transfer-api");
 
         assertThat(client, isA(InternalFileTransferClient.class));
     }
@@ -21,7 +21,7 @@ import org.springframework.jdbc.datasource.DataSourceTransactionManager;
 import org.springframework.test.util.ReflectionTestUtils;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.presigner.S3Presigner;
-import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.SqsAsyncClient;
 import uk.gov.companieshouse.api.InternalApiClient;
 import uk.gov.companieshouse.efs.api.categorytemplates.service.CategoryTemplateService;
 import uk.gov.companieshouse.efs.api.email.config.ExternalConfirmationEmailConfig;
@@ -108,7 +108,7 @@ class ConfigTest {
 
     @Test
     void sqsClient() {
-        assertThat(testConfig.sqsClient(), isA(SqsClient.class));
+        assertThat(testConfig.sqsClient(), isA(SqsAsyncClient.class));
     }
 
     @Test
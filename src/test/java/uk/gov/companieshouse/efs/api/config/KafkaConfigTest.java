@@ -3,10 +3,12 @@ package uk.gov.companieshouse.efs.api.config;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.isA;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mockStatic;
 import static org.mockito.Mockito.when;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.apache.avro.Schema;
 import org.json.JSONObject;
 import org.junit.jupiter.api.BeforeEach;
@@ -49,11 +51,55 @@ class KafkaConfigTest {
         producerConfig.setBrokerAddresses(new String[] {"localhost:9092"});
         producerConfig.setAcks(Acks.WAIT_FOR_ALL);
 
-        final var producer = kafkaConfig.producer(producerConfig);
+        final var producer = kafkaConfig.producer(producerConfig, new SimpleMeterRegistry());
 
         assertThat(producer, isA(CHKafkaProducer.class));
     }
 
+    @Test
+    void producerCreatesBatchingProducerBeanWhenEnabled() {
+        ReflectionTestUtils.setField(kafkaConfig, "batchingEnabled", true);
+        ReflectionTestUtils.setField(kafkaConfig, "lingerMs", 20);
+        ReflectionTestUtils.setField(kafkaConfig, "batchSize", 65536);
+        ReflectionTestUtils.setField(kafkaConfig, "compressionType", "lz4");
+        ReflectionTestUtils.setField(kafkaConfig, "idempotence", true);
+        final var producerConfig = new ProducerConfig();
+        producerConfig.setBrokerAddresses(new String[] {"localhost:9092"});
+        producerConfig.setAcks(Acks.WAIT_FOR_ALL);
+        producerConfig.setRetries(7);
+
+        final var producer = kafkaConfig.producer(producerConfig, new SimpleMeterRegistry());
+
+        assertThat(producer, isA(CHKafkaProducer.class));
+    }
+
+    @Test
+    void producerRejectsIdempotenceWithoutAcksFromAllReplicas() {
+        ReflectionTestUtils.setField(kafkaConfig, "idempotence", true);
+        final var producerConfig = new ProducerConfig();
+        producerConfig.setBrokerAddresses(new String[] {"localhost:9092"});
+        producerConfig.setAcks(Acks.WAIT_FOR_LOCAL);
+        producerConfig.setRetries(7);
+        final var meterRegistry = new SimpleMeterRegistry();
+
+        assertThrows(IllegalArgumentException.class, () -> kafkaConfig.producer(producerConfig, meterRegistry));
+    }
+
+    @Test
+    void producerRejectsIdempotenceWithoutRetries() {
+        ReflectionTestUtils.setField(kafkaConfig, "idempotence", true);
+        final var producerConfig = new ProducerConfig();
+        producerConfig.setBrokerAddresses(new String[] {"localhost:9092"});
+        producerConfig.setAcks(Acks.WAIT_FOR_ALL);
+        producerConfig.setRetries(0);
+        final var meterRegistry = new SimpleMeterRegistry();
+
+        final var expected = assertThrows(IllegalArgumentException.class,
+            () -> kafkaConfig.producer(producerConfig, meterRegistry));
+
+        assertThat(expected.getMessage(), is("Kafka idempotence requires retries of at least 1: 0"));
+    }
+
     @Test
     void producerConfigAppliesConfiguredValues() {
         try (final var mockedStatic = mockStatic(ProducerConfigHelper.class)) {
@@ -0,0 +1,175 @@
+package uk.gov.companieshouse.efs.api.email;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import uk.gov.companieshouse.efs.api.email.exception.EmailServiceException;
+import uk.gov.companieshouse.efs.api.email.model.EmailDocument;
+import uk.gov.companieshouse.efs.api.email.model.OutboxEmail;
+
+@ExtendWith(MockitoExtension.class)
+class EmailOutboxDispatcherTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2020, 5, 2, 9, 0);
+
+    private EmailOutboxDispatcher dispatcher;
+
+    @Mock
+    private EmailOutbox emailOutbox;
+
+    @Mock
+    private EmailSender emailSender;
+
+    @BeforeEach
+    void setUp() {
+        dispatcher = new EmailOutboxDispatcher(emailOutbox, emailSender, 10, 2, 1000, 1000, Runnable::run);
+    }
+
+    @Test
+    void testSendsClaimedEmailsAndRemovesThem() throws InterruptedException {
+        //given
+        final OutboxEmail first = createEmail("first");
+        final OutboxEmail second = createEmail("second");
+        when(emailOutbox.claim(10)).thenReturn(List.of(first, second));
+
+        //when
+        final int dispatched = dispatcher.dispatch();
+
+        //then
+        assertThat(dispatched, is(2));
+        verify(emailSender).send(first.toEmailDocument());
+        verify(emailOutbox).sent(first);
+        verify(emailOutbox).sent(second);
+    }
+
+    @Test
+    void testRecordsFailureAndCarriesOnWithBatch() throws InterruptedException {
+        //given
+        final OutboxEmail first = createEmail("first");
+        final OutboxEmail second = createEmail("second");
+        final EmailServiceException failure = new EmailServiceException("stub");
+        when(emailOutbox.claim(10)).thenReturn(List.of(first, second));
+        doThrow(failure).when(emailSender).send(first.toEmailDocument());
+
+        //when
+        dispatcher.dispatch();
+
+        //then
+        verify(emailOutbox).failed(first, failure);
+        verify(emailOutbox, never()).sent(first);
+        verify(emailOutbox).sent(second);
+    }
+
+    @Test
+    void testCarriesOnWithBatchWhenOutcomeCannotBeRecorded() throws InterruptedException {
+        //given
+        final OutboxEmail first = createEmail("first");
+        final OutboxEmail second = createEmail("second");
+        when(emailOutbox.claim(10)).thenReturn(List.of(first, second));
+        doThrow(new IllegalStateException("stub")).when(emailOutbox).sent(first);
+
+        //when
+        dispatcher.dispatch();
+
+        //then
+        verify(emailOutbox).sent(second);
+        verify(emailOutbox, never()).failed(any(), any());
+    }
+
+    @Test
+    void testDispatchesNothingWhenOutboxEmpty() throws InterruptedException {
+        //given
+        when(emailOutbox.claim(10)).thenReturn(List.of());
+
+        //when
+        final int dispatched = dispatcher.dispatch();
+
+        //then
+        assertThat(dispatched, is(0));
+        verifyNoInteractions(emailSender);
+    }
+
+    @Test
+    void testDoesNotStartWhenOutboxDisabled() {
+        //when
+        dispatcher.run(null);
+
+        //then
+        verify(emailOutbox, never()).claim(10);
+    }
+
+    @Test
+    void testShutdownWaitsForEmailsBeingSent() throws Exception {
+        //given
+        final OutboxEmail email = createEmail("first");
+        final CountDownLatch sending = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        when(emailOutbox.claim(10)).thenReturn(List.of(email));
+        doAnswer(invocation -> {
+            sending.countDown();
+            release.await();
+            return null;
+        }).when(emailSender).send(email.toEmailDocument());
+        dispatcher = new EmailOutboxDispatcher(emailOutbox, emailSender, 10, 2, 1000, 5000,
+            task -> new Thread(task).start());
+        final Thread dispatching = new Thread(() -> {
+            try {
+                dispatcher.dispatch();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        dispatching.start();
+        sending.await();
+
+        //when
+        final Thread stopping = new Thread(() -> {
+            try {
+                dispatcher.destroy();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        stopping.start();
+        stopping.join(200);
+
+        //then
+        assertThat(stopping.isAlive(), is(true));
+        release.countDown();
+        stopping.join(5000);
+        assertThat(stopping.isAlive(), is(false));
+        verify(emailOutbox).sent(email);
+    }
+
+    @Test
+    void testRejectsConcurrencyBelowOne() {
+        assertThrows(IllegalArgumentException.class,
+            () -> new EmailOutboxDispatcher(emailOutbox, emailSender, 10, 0, 1000, 1000, Runnable::run));
+    }
+
+    private static OutboxEmail createEmail(final String id) {
+        final EmailDocument<Map<String, Object>> document = EmailDocument.<Map<String, Object>>builder()
+            .withMessageId(id)
+            .withRecipientEmailAddress("unit-test@ch.gov.uk")
+            .withData(Map.of("to", "unit-test@ch.gov.uk"))
+            .build();
+        return new OutboxEmail(id, document, OutboxEmail.Status.PENDING, 1, NOW, NOW, null);
+    }
+}
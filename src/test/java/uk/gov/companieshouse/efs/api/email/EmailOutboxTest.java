@@ -0,0 +1,231 @@
+package uk.gov.companieshouse.efs.api.email;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.mongodb.client.result.DeleteResult;
+import com.mongodb.client.result.UpdateResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+import tools.jackson.databind.json.JsonMapper;
+import uk.gov.companieshouse.efs.api.email.exception.EmailServiceException;
+import uk.gov.companieshouse.efs.api.email.model.EmailDocument;
+import uk.gov.companieshouse.efs.api.email.model.OutboxEmail;
+import uk.gov.companieshouse.efs.api.email.model.PaymentReportEmailData;
+import uk.gov.companieshouse.efs.api.util.CurrentTimestampGenerator;
+
+@ExtendWith(MockitoExtension.class)
+class EmailOutboxTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2020, 5, 2, 9, 0);
+
+    private EmailOutbox outbox;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    @Mock
+    private MongoTemplate template;
+
+    @Mock
+    private CurrentTimestampGenerator timestampGenerator;
+
+    @Captor
+    private ArgumentCaptor<OutboxEmail> emailCaptor;
+
+    @Captor
+    private ArgumentCaptor<Update> updateCaptor;
+
+    @Captor
+    private ArgumentCaptor<Query> queryCaptor;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        outbox = createOutbox(3);
+    }
+
+    @Test
+    void testEnqueuesSnapshotOfEmailData() {
+        //given
+        when(timestampGenerator.generateTimestamp()).thenReturn(NOW);
+        final PaymentReportEmailData data = PaymentReportEmailData.builder()
+            .withTo("unit@test.gov.uk")
+            .withSubject("My Subject Line")
+            .build();
+        final EmailDocument<PaymentReportEmailData> document = createEmailDocument(data);
+
+        //when
+        outbox.enqueue(document);
+        data.setTo("changed@test.gov.uk");
+
+        //then
+        verify(template).insert(emailCaptor.capture());
+        final OutboxEmail email = emailCaptor.getValue();
+        assertThat(email.getStatus(), is(OutboxEmail.Status.PENDING));
+        assertThat(email.getAttempts(), is(0));
+        assertThat(email.getNextAttemptAt(), is(NOW));
+        final EmailDocument<Map<String, Object>> queued = email.toEmailDocument();
+        assertThat(queued.getMessageId(), is("message-id"));
+        assertThat(queued.getEmailAddress(), is("unit-test@ch.gov.uk"));
+        assertThat(queued.getTopic(), is("test-email-topic"));
+        assertThat(queued.getData().get("to"), is("unit@test.gov.uk"));
+        assertThat(queued.getData().get("subject"), is("My Subject Line"));
+        assertThat(meterRegistry.get("efs.email.outbox.enqueued").counter().count(), is(1.0));
+    }
+
+    @Test
+    void testThrowsEmailServiceExceptionWhenEnqueueFails() {
+        //given
+        when(timestampGenerator.generateTimestamp()).thenReturn(NOW);
+        when(template.insert(any(OutboxEmail.class))).thenThrow(new DataAccessResourceFailureException("stub"));
+
+        //when
+        final EmailServiceException expected = assertThrows(EmailServiceException.class,
+            () -> outbox.enqueue(createEmailDocument(Map.of("to", "unit@test.gov.uk"))));
+
+        //then
+        assertThat(expected.getMessage(), is("Error adding email to outbox - message [stub]"));
+    }
+
+    @Test
+    void testClaimsDueEmailsUntilNoneLeft() {
+        //given
+        when(timestampGenerator.generateTimestamp()).thenReturn(NOW);
+        final OutboxEmail email = createEmail(1);
+        when(template.findAndModify(any(Query.class), any(UpdateDefinition.class), any(FindAndModifyOptions.class),
+            eq(OutboxEmail.class))).thenReturn(email, (OutboxEmail) null);
+
+        //when
+        final List<OutboxEmail> claimed = outbox.claim(5);
+
+        //then
+        assertThat(claimed, is(List.of(email)));
+    }
+
+    @Test
+    void testRemovesSentEmail() {
+        //given
+        when(template.remove(any(Query.class), eq(OutboxEmail.class))).thenReturn(DeleteResult.acknowledged(1));
+
+        //when
+        outbox.sent(createEmail(1));
+
+        //then
+        verify(template).remove(queryCaptor.capture(), eq(OutboxEmail.class));
+        assertThat(queryCaptor.getValue().getQueryObject(), is(new Document("_id", "id").append("attempts", 1)));
+        assertThat(meterRegistry.get("efs.email.outbox.sent").counter().count(), is(1.0));
+    }
+
+    @Test
+    void testLeavesSentEmailClaimedAgainSinceItsAttempt() {
+        //given
+        when(template.remove(any(Query.class), eq(OutboxEmail.class))).thenReturn(DeleteResult.acknowledged(0));
+
+        //when
+        outbox.sent(createEmail(1));
+
+        //then
+        assertThat(meterRegistry.get("efs.email.outbox.sent").counter().count(), is(0.0));
+    }
+
+    @Test
+    void testSchedulesRetryWithExponentialBackoff() {
+        //given
+        when(timestampGenerator.generateTimestamp()).thenReturn(NOW);
+        when(template.updateFirst(any(Query.class), any(Update.class), eq(OutboxEmail.class)))
+            .thenReturn(UpdateResult.acknowledged(1L, 1L, null));
+
+        //when
+        outbox.failed(createEmail(2), new EmailServiceException("stub"));
+
+        //then
+        verify(template).updateFirst(queryCaptor.capture(), updateCaptor.capture(), eq(OutboxEmail.class));
+        assertThat(queryCaptor.getValue().getQueryObject(), is(new Document("_id", "id").append("attempts", 2)));
+        final Document set = (Document) updateCaptor.getValue().getUpdateObject().get("$set");
+        assertThat(set.get("next_attempt_at"), is(NOW.plusSeconds(60)));
+        assertThat(set.get("last_error"), is("stub"));
+        assertThat(set.get("status"), is(nullValue()));
+        assertThat(meterRegistry.get("efs.email.outbox.retried").counter().count(), is(1.0));
+    }
+
+    @Test
+    void testDeadLettersEmailAfterMaxAttempts() {
+        //given
+        when(template.updateFirst(any(Query.class), any(Update.class), eq(OutboxEmail.class)))
+            .thenReturn(UpdateResult.acknowledged(1L, 1L, null));
+
+        //when
+        outbox.failed(createEmail(3), new EmailServiceException("stub"));
+
+        //then
+        verify(template).updateFirst(any(Query.class), updateCaptor.capture(), eq(OutboxEmail.class));
+        final Document set = (Document) updateCaptor.getValue().getUpdateObject().get("$set");
+        assertThat(set.get("status"), is(OutboxEmail.Status.DEAD_LETTER));
+        assertThat(set.get("next_attempt_at"), is(nullValue()));
+        assertThat(meterRegistry.get("efs.email.outbox.dead-lettered").counter().count(), is(1.0));
+    }
+
+    @Test
+    void testLeavesFailedEmailClaimedAgainSinceItsAttempt() {
+        //given
+        when(template.updateFirst(any(Query.class), any(Update.class), eq(OutboxEmail.class)))
+            .thenReturn(UpdateResult.acknowledged(0L, 0L, null));
+
+        //when
+        outbox.failed(createEmail(3), new EmailServiceException("stub"));
+
+        //then
+        assertThat(meterRegistry.get("efs.email.outbox.dead-lettered").counter().count(), is(0.0));
+    }
+
+    @Test
+    void testRejectsMaxBackoffBelowInitialBackoff() {
+        assertThrows(IllegalArgumentException.class,
+            () -> new EmailOutbox(template, timestampGenerator, JsonMapper.builder().build(), meterRegistry, true, 3,
+                30, 10, 300));
+    }
+
+    private EmailOutbox createOutbox(final int maxAttempts) {
+        return new EmailOutbox(template, timestampGenerator, JsonMapper.builder().build(), meterRegistry, true,
+            maxAttempts, 30, 3600, 300);
+    }
+
+    private static OutboxEmail createEmail(final int attempts) {
+        return new OutboxEmail("id", createEmailDocument(Map.<String, Object>of("to", "unit@test.gov.uk")),
+            OutboxEmail.Status.PENDING, attempts, NOW, NOW, null);
+    }
+
+    private static <T> EmailDocument<T> createEmailDocument(final T data) {
+        return EmailDocument.<T>builder()
+            .withTopic("test-email-topic")
+            .withMessageId("message-id")
+            .withRecipientEmailAddress("unit-test@ch.gov.uk")
+            .withEmailTemplateAppId("email-template-app-id")
+            .withEmailTemplateMessageType("email-template-message-type")
+            .withData(data)
+            .withCreatedAt("2025-04-01T10:06:43.596087")
+            .build();
+    }
+}
@@ -0,0 +1,178 @@
+package uk.gov.companieshouse.efs.api.email;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import uk.gov.companieshouse.api.model.ApiResponse;
+import uk.gov.companieshouse.efs.api.client.AsyncEmailClient;
+import uk.gov.companieshouse.efs.api.client.EmailClient;
+import uk.gov.companieshouse.efs.api.client.exception.EmailClientException;
+import uk.gov.companieshouse.efs.api.email.exception.EmailNotPublishedException;
+import uk.gov.companieshouse.efs.api.email.exception.EmailServiceException;
+import uk.gov.companieshouse.efs.api.email.model.EmailDocument;
+import uk.gov.companieshouse.efs.api.kafka.EmailProducer;
+
+@ExtendWith(MockitoExtension.class)
+class EmailSenderTest {
+
+    private EmailSender emailSender;
+
+    @Mock
+    private EmailClient emailClient;
+
+    @Mock
+    private AsyncEmailClient asyncEmailClient;
+
+    @Mock
+    private EmailProducer emailProducer;
+
+    private EmailDocument<Map<String, Object>> document;
+
+    @BeforeEach
+    void setUp() {
+        emailSender = new EmailSender(emailClient, asyncEmailClient, emailProducer);
+        document = EmailDocument.<Map<String, Object>>builder()
+            .withEmailTemplateAppId("email-template-app-id")
+            .withRecipientEmailAddress("unit-test@ch.gov.uk")
+            .withData(Map.of("to", "unit-test@ch.gov.uk"))
+            .build();
+    }
+
+    @Test
+    void testPublishesToKafkaWhenProducerEnabled() {
+        //given
+        when(emailProducer.isEnabled()).thenReturn(true);
+        when(emailProducer.send(document)).thenReturn(CompletableFuture.completedFuture(null));
+
+        //when
+        assertDoesNotThrow(() -> emailSender.send(document));
+
+        //then
+        verify(emailProducer).send(document);
+        verifyNoInteractions(emailClient, asyncEmailClient);
+    }
+
+    @Test
+    void testFallsBackToHttpWhenEmailCannotBeHandedToProducer() {
+        //given
+        when(emailProducer.isEnabled()).thenReturn(true);
+        when(emailProducer.isFallbackToHttp()).thenReturn(true);
+        when(emailProducer.send(document)).thenReturn(
+            CompletableFuture.failedFuture(new EmailNotPublishedException("stub", new IllegalStateException())));
+        when(emailClient.sendEmail(document)).thenReturn(new ApiResponse<>(200, Map.of()));
+
+        //when
+        assertDoesNotThrow(() -> emailSender.send(document));
+
+        //then
+        verify(emailClient).sendEmail(document);
+    }
+
+    @Test
+    void testThrowsKafkaFailureWithoutFallbackOnceProducerTookEmail() {
+        //given
+        final EmailServiceException failure = new EmailServiceException("Timed out");
+        when(emailProducer.isEnabled()).thenReturn(true);
+        when(emailProducer.isFallbackToHttp()).thenReturn(true);
+        when(emailProducer.send(document)).thenReturn(CompletableFuture.failedFuture(failure));
+
+        //when
+        final EmailServiceException expected = assertThrows(EmailServiceException.class,
+            () -> emailSender.send(document));
+
+        //then
+        assertThat(expected, is(failure));
+        verifyNoInteractions(emailClient, asyncEmailClient);
+    }
+
+    @Test
+    void testThrowsKafkaFailureWhenFallbackDisabled() {
+        //given
+        final EmailServiceException failure = new EmailServiceException("stub");
+        when(emailProducer.isEnabled()).thenReturn(true);
+        when(emailProducer.isFallbackToHttp()).thenReturn(false);
+        when(emailProducer.send(document)).thenReturn(CompletableFuture.failedFuture(failure));
+
+        //when
+        final EmailServiceException expected = assertThrows(EmailServiceException.class,
+            () -> emailSender.send(document));
+
+        //then
+        assertThat(expected, is(failure));
+        verifyNoInteractions(emailClient, asyncEmailClient);
+    }
+
+    @Test
+    void testSendsThroughAsyncClientWhenEnabled() {
+        //given
+        when(asyncEmailClient.isEnabled()).thenReturn(true);
+        when(asyncEmailClient.sendEmail(document)).thenReturn(
+            CompletableFuture.completedFuture(new ApiResponse<>(200, Map.of())));
+
+        //when
+        assertDoesNotThrow(() -> emailSender.send(document));
+
+        //then
+        verify(asyncEmailClient).sendEmail(document);
+        verifyNoInteractions(emailClient);
+    }
+
+    @Test
+    void testThrowsEmailServiceExceptionWhenAsyncClientFails() {
+        //given
+        when(asyncEmailClient.isEnabled()).thenReturn(true);
+        when(asyncEmailClient.sendEmail(document)).thenReturn(CompletableFuture.failedFuture(
+            new EmailClientException("Timed out sending payload to CHS Kafka API: ", new RuntimeException())));
+
+        //when
+        final EmailServiceException expected = assertThrows(EmailServiceException.class,
+            () -> emailSender.send(document));
+
+        //then
+        assertThat(expected.getMessage(), is("Error sending document to email client: "));
+        assertThat(expected.getCause(), is(instanceOf(EmailClientException.class)));
+    }
+
+    @Test
+    void testFailsAsyncSendWhenNotAccepted() {
+        //given
+        when(asyncEmailClient.isEnabled()).thenReturn(true);
+        when(asyncEmailClient.sendEmail(document)).thenReturn(
+            CompletableFuture.completedFuture(new ApiResponse<>(503, Map.of())));
+
+        //when
+        final CompletionException expected = assertThrows(CompletionException.class,
+            () -> emailSender.sendAsync(document).join());
+
+        //then
+        assertThat(expected.getCause(), is(instanceOf(EmailServiceException.class)));
+        assertThat(expected.getCause().getMessage(), is("Error sending request to CHS Kafka API: "));
+    }
+
+    @Test
+    void testSendsBeforeReturningWhenAsyncClientDisabled() {
+        //given
+        when(emailClient.sendEmail(document)).thenReturn(new ApiResponse<>(200, Map.of()));
+
+        //when
+        final CompletableFuture<Void> sent = emailSender.sendAsync(document);
+
+        //then
+        assertThat(sent.isDone() && !sent.isCompletedExceptionally(), is(true));
+        verify(emailClient).sendEmail(document);
+    }
+}
@@ -8,11 +8,13 @@ import org.mockito.Captor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import uk.gov.companieshouse.api.model.ApiResponse;
+import uk.gov.companieshouse.efs.api.client.AsyncEmailClient;
 import uk.gov.companieshouse.efs.api.client.EmailClient;
 import uk.gov.companieshouse.efs.api.client.exception.EmailClientException;
 import uk.gov.companieshouse.efs.api.email.exception.EmailServiceException;
 import uk.gov.companieshouse.efs.api.email.mapper.*;
 import uk.gov.companieshouse.efs.api.email.model.*;
+import uk.gov.companieshouse.efs.api.kafka.EmailProducer;
 import uk.gov.companieshouse.efs.api.submissions.model.Company;
 import uk.gov.companieshouse.efs.api.submissions.model.Submission;
 
@@ -20,6 +22,8 @@ import java.time.LocalDateTime;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
@@ -36,6 +40,15 @@ class EmailServiceImplTest {
     @Mock
     private EmailClient emailClient;
 
+    @Mock
+    private AsyncEmailClient asyncEmailClient;
+
+    @Mock
+    private EmailProducer emailProducer;
+
+    @Mock
+    private EmailOutbox emailOutbox;
+
     @Captor
     private ArgumentCaptor<EmailDocument<?>> emailDocumentCaptor;
 
@@ -107,7 +120,7 @@ class EmailServiceImplTest {
 
     @BeforeEach
     void setUp() {
-        this.emailService = new EmailServiceImpl(emailMapperFactory, emailClient);
+        this.emailService = new EmailServiceImpl(emailMapperFactory, new EmailSender(emailClient, asyncEmailClient, emailProducer), emailOutbox);
     }
 
     @Test
@@ -600,6 +613,75 @@ class EmailServiceImplTest {
         assertEquals("2025-04-01T10:06:43.596087", emailDocumentCaptor.getValue().getCreatedAt());
     }
 
+    @Test
+    void testEmailServiceSendsBusinessEmailAsynchronously() throws EmailServiceException {
+        //given
+        final DelayedSubmissionBusinessEmailData emailData = new DelayedSubmissionBusinessEmailData(
+            "unit@test.gov.uk",
+            "My Subject Line",
+            Collections.emptyList(),
+            20L
+        );
+
+        final EmailDocument<DelayedSubmissionBusinessEmailData> emailDocument = createEmailDocument(emailData);
+
+        when(emailMapperFactory.getDelayedSubmissionBusinessEmailMapper()).thenReturn(delayedSubmissionBusinessEmailMapper);
+        when(delayedSubmissionBusinessEmailMapper.map(delayedSubmissionBusinessEmailModel)).thenReturn(emailDocument);
+        when(asyncEmailClient.isEnabled()).thenReturn(true);
+        when(asyncEmailClient.sendEmail(emailDocument)).thenReturn(
+            CompletableFuture.completedFuture(new ApiResponse<>(200, Map.of())));
+
+        // when
+        final CompletableFuture<Void> sent =
+            this.emailService.sendDelayedSubmissionBusinessEmailAsync(delayedSubmissionBusinessEmailModel);
+
+        // then
+        assertThat(sent.isDone() && !sent.isCompletedExceptionally(), is(true));
+        verifyNoInteractions(emailClient);
+    }
+
+    @Test
+    void testEmailServiceFailsBusinessEmailWhenNotAccepted() throws EmailServiceException {
+        //given
+        final EmailDocument<DelayedSubmissionBusinessEmailData> emailDocument = createEmailDocument(
+            new DelayedSubmissionBusinessEmailData("unit@test.gov.uk", "My Subject Line", Collections.emptyList(),
+                20L));
+
+        when(emailMapperFactory.getDelayedSubmissionBusinessEmailMapper()).thenReturn(delayedSubmissionBusinessEmailMapper);
+        when(delayedSubmissionBusinessEmailMapper.map(delayedSubmissionBusinessEmailModel)).thenReturn(emailDocument);
+        when(emailClient.sendEmail(emailDocument)).thenReturn(new ApiResponse<>(400, Map.of()));
+
+        // when
+        final CompletableFuture<Void> sent =
+            this.emailService.sendDelayedSubmissionBusinessEmailAsync(delayedSubmissionBusinessEmailModel);
+
+        // then
+        final CompletionException expected = assertThrows(CompletionException.class, sent::join);
+        assertThat(expected.getCause().getMessage(), is("Error sending request to CHS Kafka API: "));
+    }
+
+    @Test
+    void testEmailServiceAddsMessageToOutboxWhenOutboxEnabled() throws EmailServiceException {
+        //given
+        final PaymentReportEmailData emailData = PaymentReportEmailData.builder()
+                .withTo("unit@test.gov.uk")
+                .withSubject("My Subject Line")
+                .build();
+
+        final EmailDocument<PaymentReportEmailData> emailDocument = createEmailDocument(emailData);
+
+        when(emailMapperFactory.getPaymentReportEmailMapper()).thenReturn(paymentReportEmailMapper);
+        when(paymentReportEmailMapper.map(paymentReportEmailModel)).thenReturn(emailDocument);
+        when(emailOutbox.isEnabled()).thenReturn(true);
+
+        // when
+        this.emailService.sendPaymentReportEmail(paymentReportEmailModel);
+
+        // then
+        verify(emailOutbox).enqueue(emailDocument);
+        verifyNoInteractions(emailClient);
+    }
+
     private <T> EmailDocument<T> createEmailDocument(final T data) {
         return EmailDocument.<T>builder()
                 .withTopic("test-email-topic")
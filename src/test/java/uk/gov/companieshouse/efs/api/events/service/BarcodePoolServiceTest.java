@@ -0,0 +1,266 @@
+package uk.gov.companieshouse.efs.api.events.service;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import com.mongodb.client.result.UpdateResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+import uk.gov.companieshouse.efs.api.events.service.exception.BarcodeException;
+import uk.gov.companieshouse.efs.api.events.service.model.PooledBarcode;
+import uk.gov.companieshouse.efs.api.util.CurrentTimestampGenerator;
+
+@ExtendWith(MockitoExtension.class)
+class BarcodePoolServiceTest {
+
+    private static final LocalDateTime DATE = LocalDateTime.of(2020, 5, 1, 8, 0);
+    private static final LocalDateTime NOW = LocalDateTime.of(2020, 5, 1, 9, 0);
+    private static final String SUBMISSION_ID = "1234abcd";
+    private static final String POOL_COUNTS = "barcode_pool_counts";
+
+    private BarcodePoolService poolService;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    @Mock
+    private BarcodeGeneratorServiceImpl barcodeGeneratorService;
+
+    @Mock
+    private MongoTemplate template;
+
+    @Mock
+    private CurrentTimestampGenerator timestampGenerator;
+
+    @Captor
+    private ArgumentCaptor<PooledBarcode> barcodeCaptor;
+
+    @Captor
+    private ArgumentCaptor<UpdateDefinition> updateCaptor;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        poolService = createPoolService(4, 2, Runnable::run);
+    }
+
+    @Test
+    void testFetchesBarcodeDirectlyWhenPoolDisabled() {
+        //given
+        poolService = createPoolService(0, 0, Runnable::run);
+        when(barcodeGeneratorService.getBarcode(DATE)).thenReturn("Y123");
+
+        //when
+        final String barcode = poolService.getBarcode(DATE, SUBMISSION_ID);
+
+        //then
+        assertThat(barcode, is("Y123"));
+        verifyNoInteractions(template);
+    }
+
+    @Test
+    void testTakesPooledBarcodeForSubmissionWithoutRefillingAboveLowWaterMark() {
+        //given
+        when(timestampGenerator.generateTimestamp()).thenReturn(NOW);
+        when(template.findAndModify(any(Query.class), updateCaptor.capture(), any(FindAndModifyOptions.class),
+            eq(PooledBarcode.class))).thenReturn(pooled("Y123"));
+        when(template.findOne(any(Query.class), eq(Document.class), eq(POOL_COUNTS))).thenReturn(counts(2));
+
+        //when
+        final String barcode = poolService.getBarcode(DATE, SUBMISSION_ID);
+
+        //then
+        assertThat(barcode, is("Y123"));
+        assertThat(updateCaptor.getValue().getUpdateObject().get("$set", Document.class).get("allocated_to"),
+            is(SUBMISSION_ID));
+        verify(template).updateFirst(any(Query.class), any(UpdateDefinition.class), eq(POOL_COUNTS));
+        verifyNoInteractions(barcodeGeneratorService);
+        verify(template, never()).insert(any(PooledBarcode.class));
+    }
+
+    @Test
+    void testReusesBarcodeAlreadyAllocatedToSubmission() {
+        //given
+        when(timestampGenerator.generateTimestamp()).thenReturn(NOW);
+        when(template.findOne(any(Query.class), eq(PooledBarcode.class))).thenReturn(pooled("Y123"));
+
+        //when
+        final String barcode = poolService.getBarcode(DATE, SUBMISSION_ID);
+
+        //then
+        assertThat(barcode, is("Y123"));
+        verify(template, never()).findAndModify(any(Query.class), any(UpdateDefinition.class),
+            any(FindAndModifyOptions.class), eq(PooledBarcode.class));
+        verifyNoInteractions(barcodeGeneratorService);
+    }
+
+    @Test
+    void testRefillsPoolBelowLowWaterMarkUntilNoPlaceCanBeReserved() {
+        //given
+        final UpdateResult reserved = UpdateResult.acknowledged(1L, 1L, null);
+        when(timestampGenerator.generateTimestamp()).thenReturn(NOW);
+        when(template.findAndModify(any(Query.class), any(UpdateDefinition.class), any(FindAndModifyOptions.class),
+            eq(PooledBarcode.class))).thenReturn(pooled("Y123"));
+        when(template.findOne(any(Query.class), eq(Document.class), eq(POOL_COUNTS))).thenReturn(counts(1));
+        when(template.upsert(any(Query.class), any(UpdateDefinition.class), eq(POOL_COUNTS)))
+            .thenReturn(reserved, reserved, reserved).thenThrow(new DuplicateKeyException("pool full"));
+        when(barcodeGeneratorService.getBarcode(DATE)).thenReturn("Y200", "Y201", "Y202");
+
+        //when
+        final String barcode = poolService.getBarcode(DATE, SUBMISSION_ID);
+
+        //then
+        assertThat(barcode, is("Y123"));
+        verify(template, times(3)).insert(barcodeCaptor.capture());
+        assertThat(barcodeCaptor.getAllValues(), is(List.of(
+            new PooledBarcode("Y200", 20200501, PooledBarcode.Status.AVAILABLE, NOW, null, null),
+            new PooledBarcode("Y201", 20200501, PooledBarcode.Status.AVAILABLE, NOW, null, null),
+            new PooledBarcode("Y202", 20200501, PooledBarcode.Status.AVAILABLE, NOW, null, null))));
+    }
+
+    @Test
+    void testReleasesReservedPlaceWhenRefillCannotFetchBarcode() {
+        //given
+        when(timestampGenerator.generateTimestamp()).thenReturn(NOW);
+        when(template.findAndModify(any(Query.class), any(UpdateDefinition.class), any(FindAndModifyOptions.class),
+            eq(PooledBarcode.class))).thenReturn(pooled("Y123"));
+        when(template.findOne(any(Query.class), eq(Document.class), eq(POOL_COUNTS))).thenReturn(counts(1));
+        when(barcodeGeneratorService.getBarcode(DATE)).thenThrow(new BarcodeException("stub"));
+
+        //when
+        final String barcode = poolService.getBarcode(DATE, SUBMISSION_ID);
+
+        //then
+        assertThat(barcode, is("Y123"));
+        verify(template).upsert(any(Query.class), any(UpdateDefinition.class), eq(POOL_COUNTS));
+        verify(template, times(2)).updateFirst(any(Query.class), any(UpdateDefinition.class), eq(POOL_COUNTS));
+        verify(template, never()).insert(any(PooledBarcode.class));
+    }
+
+    @Test
+    void testFetchesAndRecordsBarcodeDirectlyWhenPoolEmpty() {
+        //given
+        final List<Runnable> refills = new ArrayList<>();
+        poolService = createPoolService(4, 2, refills::add);
+        when(timestampGenerator.generateTimestamp()).thenReturn(NOW);
+        when(barcodeGeneratorService.getBarcode(DATE)).thenReturn("Y123");
+
+        //when
+        final String barcode = poolService.getBarcode(DATE, SUBMISSION_ID);
+
+        //then
+        assertThat(barcode, is("Y123"));
+        verify(template).insert(
+            new PooledBarcode("Y123", 20200501, PooledBarcode.Status.ALLOCATED, NOW, NOW, SUBMISSION_ID));
+        assertThat(refills.size(), is(1));
+        assertThat(meterRegistry.get("efs.barcode.pool.misses").counter().count(), is(1.0));
+    }
+
+    @Test
+    void testRefillsDateOnlyOnceAtATime() {
+        //given
+        final List<Runnable> refills = new ArrayList<>();
+        poolService = createPoolService(4, 2, refills::add);
+        when(timestampGenerator.generateTimestamp()).thenReturn(NOW);
+        when(template.findAndModify(any(Query.class), any(UpdateDefinition.class), any(FindAndModifyOptions.class),
+            eq(PooledBarcode.class))).thenReturn(pooled("Y123"), pooled("Y124"));
+        when(template.findOne(any(Query.class), eq(Document.class), eq(POOL_COUNTS))).thenReturn(counts(1));
+
+        //when
+        poolService.getBarcode(DATE, SUBMISSION_ID);
+        poolService.getBarcode(DATE, "5678efgh");
+
+        //then
+        assertThat(refills.size(), is(1));
+    }
+
+    @Test
+    void testDoesNotRefillPoolForPastDate() {
+        //given
+        final List<Runnable> refills = new ArrayList<>();
+        poolService = createPoolService(4, 2, refills::add);
+        when(timestampGenerator.generateTimestamp()).thenReturn(NOW.plusDays(1));
+        when(barcodeGeneratorService.getBarcode(DATE)).thenReturn("Y123");
+
+        //when
+        final String barcode = poolService.getBarcode(DATE, SUBMISSION_ID);
+
+        //then
+        assertThat(barcode, is("Y123"));
+        assertThat(refills.isEmpty(), is(true));
+        verify(template, never()).findOne(any(Query.class), eq(Document.class), eq(POOL_COUNTS));
+    }
+
+    @Test
+    void testExpiresPoolsForEarlierDatesOncePerDay() {
+        //given
+        when(timestampGenerator.generateTimestamp()).thenReturn(NOW);
+        when(template.findAndModify(any(Query.class), any(UpdateDefinition.class), any(FindAndModifyOptions.class),
+            eq(PooledBarcode.class))).thenReturn(pooled("Y123"), pooled("Y124"));
+        when(template.findOne(any(Query.class), eq(Document.class), eq(POOL_COUNTS))).thenReturn(counts(2));
+
+        //when
+        poolService.getBarcode(DATE, SUBMISSION_ID);
+        poolService.getBarcode(DATE, "5678efgh");
+
+        //then
+        verify(template).updateMulti(any(Query.class), updateCaptor.capture(), eq(PooledBarcode.class));
+        assertThat(updateCaptor.getValue().getUpdateObject().get("$set", Document.class).get("status"),
+            is(PooledBarcode.Status.EXPIRED));
+        verify(template).remove(any(Query.class), eq(POOL_COUNTS));
+    }
+
+    @Test
+    void testRejectsBarcodeAlreadyIssued() {
+        //given
+        when(timestampGenerator.generateTimestamp()).thenReturn(NOW);
+        when(template.findOne(any(Query.class), eq(Document.class), eq(POOL_COUNTS))).thenReturn(counts(2));
+        when(barcodeGeneratorService.getBarcode(DATE)).thenReturn("Y123");
+        when(template.insert(any(PooledBarcode.class))).thenThrow(new DuplicateKeyException("duplicate"));
+
+        //when
+        assertThrows(BarcodeException.class, () -> poolService.getBarcode(DATE, SUBMISSION_ID));
+    }
+
+    @Test
+    void testRejectsLowWaterMarkNotBelowPoolSize() {
+        assertThrows(IllegalArgumentException.class, () -> createPoolService(4, 4, Runnable::run));
+    }
+
+    private BarcodePoolService createPoolService(final int poolSize, final int lowWaterMark,
+        final Executor refillExecutor) {
+        return new BarcodePoolService(barcodeGeneratorService, template, timestampGenerator, meterRegistry, poolSize,
+            lowWaterMark, refillExecutor);
+    }
+
+    private static PooledBarcode pooled(final String barcode) {
+        return new PooledBarcode(barcode, 20200501, PooledBarcode.Status.ALLOCATED, NOW, NOW, SUBMISSION_ID);
+    }
+
+    private static Document counts(final long pooled) {
+        return new Document("pooled", pooled);
+    }
+}
@@ -11,7 +11,9 @@ import static org.mockito.Mockito.when;
 import java.time.LocalDateTime;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -28,7 +30,7 @@ import uk.gov.companieshouse.efs.api.formtemplates.repository.FormTemplateReposi
 import uk.gov.companieshouse.efs.api.submissions.model.FileDetails;
 import uk.gov.companieshouse.efs.api.submissions.model.FormDetails;
 import uk.gov.companieshouse.efs.api.submissions.model.Submission;
-import uk.gov.companieshouse.efs.api.submissions.service.SubmissionService;
+import uk.gov.companieshouse.efs.api.submissions.repository.SubmissionRepository;
 import uk.gov.companieshouse.efs.api.util.CurrentTimestampGenerator;
 
 @ExtendWith(MockitoExtension.class)
@@ -56,13 +58,14 @@ class DecisionEngineTest {
     private CurrentTimestampGenerator timestampGenerator;
 
     @Mock
-    private SubmissionService submissionService;
+    private SubmissionRepository submissionRepository;
     private FormTemplate formTemplate;
     private FormDetails formDetails;
 
     @BeforeEach
     void setUp() {
-        decisionEngine = new DecisionEngine(transferService, formTemplateRepository, timestampGenerator, submissionService);
+        decisionEngine = new DecisionEngine(transferService, formTemplateRepository, submissionRepository,
+            timestampGenerator, 1);
         formTemplate = FormTemplate
                            .builder()
                            .withFormType(FORM_TYPE)
@@ -119,7 +122,7 @@ class DecisionEngineTest {
         assertThat(fileDetails.getConversionStatus(), is(FileConversionStatus.FAILED_AV));
         verify(timestampGenerator).generateTimestamp();
         verify(transferService).getFileDetails(FILE_ID);
-        verify(submissionService).updateSubmission(submission);
+        verify(submissionRepository).updateFileConversionStatuses(List.of(submission));
     }
 
     @Test
@@ -140,7 +143,7 @@ class DecisionEngineTest {
 
         //then
         assertThat(actual.get(DecisionResult.NO_DECISION), hasSize(1));
-        verifyNoInteractions(timestampGenerator, submissionService);
+        verifyNoInteractions(timestampGenerator);
     }
 
     @Test
@@ -173,7 +176,32 @@ class DecisionEngineTest {
         assertThat(actual.get(DecisionResult.FES_ENABLED), hasSize(1));
         assertThat(fileDetails.getLastModifiedAt(), is(now));
         assertThat(fileDetails.getConversionStatus(), is(FileConversionStatus.CLEAN_AV));
-        verify(submissionService).updateSubmission(submission);
+        verify(submissionRepository).updateFileConversionStatuses(List.of(submission));
+    }
+
+    @Test
+    void testDecisionEngineReturnsNoDecisionIfFileStatusesCannotBeRecorded() {
+        //given
+        final var fileDetails = getExpectedFileDetailsWaiting(FILE_ID, FileConversionStatus.WAITING);
+        final var cleanFileDetailsApi = new FileDetailsApi(FILE_ID, AV_TIMESTAMP, AvStatus.CLEAN, FILE_CONTENT_TYPE,
+            FILE_SIZE, FILE_NAME, FILE_TIMESTAMP, null);
+
+        when(transferService.getFileDetails(FILE_ID)).thenReturn(Optional.of(cleanFileDetailsApi));
+        when(submission.getId()).thenReturn("123");
+        when(submission.getFormDetails()).thenReturn(FormDetails.builder()
+                .withFileDetailsList(Collections.singletonList(fileDetails))
+                .withFormType(FORM_TYPE)
+                .build());
+        when(timestampGenerator.generateTimestamp()).thenReturn(LocalDateTime.now());
+        when(formTemplateRepository.findById(FORM_TYPE)).thenReturn(Optional.of(formTemplate));
+        when(submissionRepository.updateFileConversionStatuses(List.of(submission))).thenReturn(Set.of("123"));
+
+        //when
+        final var actual = decisionEngine.evaluateSubmissions(Collections.singletonList(submission));
+
+        //then
+        assertThat(actual.get(DecisionResult.NO_DECISION), hasSize(1));
+        assertThat(actual.containsKey(DecisionResult.NOT_FES_ENABLED), is(false));
     }
 
     @Test
@@ -205,7 +233,7 @@ class DecisionEngineTest {
         assertThat(actual.get(DecisionResult.NOT_FES_ENABLED), hasSize(1));
         assertThat(fileDetails.getLastModifiedAt(), is(now));
         assertThat(fileDetails.getConversionStatus(), is(FileConversionStatus.CLEAN_AV));
-        verify(submissionService).updateSubmission(submission);
+        verify(submissionRepository).updateFileConversionStatuses(List.of(submission));
     }
 
     @Test
@@ -230,7 +258,7 @@ class DecisionEngineTest {
         assertThat(actual.get(DecisionResult.FORM_TYPE_DOES_NOT_EXIST), hasSize(1));
         assertThat(fileDetails.getLastModifiedAt(), is(now));
         assertThat(fileDetails.getConversionStatus(), is(FileConversionStatus.CLEAN_AV));
-        verify(submissionService).updateSubmission(submission);
+        verify(submissionRepository).updateFileConversionStatuses(List.of(submission));
     }
 
     @Test
@@ -269,6 +297,66 @@ class DecisionEngineTest {
         assertThat(exception.getMessage(), is("unexpected file transfer status"));
     }
 
+    @Test
+    void testDecisionEngineEvaluatesSubmissionsConcurrentlyWhenParallelismConfigured() {
+        //given
+        final var parallelEngine = new DecisionEngine(transferService, formTemplateRepository, submissionRepository,
+            timestampGenerator, 4);
+        final var cleanFileDetailsApi = new FileDetailsApi(FILE_ID, AV_TIMESTAMP, AvStatus.CLEAN, FILE_CONTENT_TYPE,
+            FILE_SIZE, FILE_NAME, FILE_TIMESTAMP, null);
+        final var infectedFileDetailsApi = new FileDetailsApi("infected-file-id", AV_TIMESTAMP, AvStatus.INFECTED,
+            FILE_CONTENT_TYPE, FILE_SIZE, FILE_NAME, FILE_TIMESTAMP, null);
+        final var cleanSubmission = Submission.builder().withId("clean").withFormDetails(
+            FormDetails.builder().withFormType(FORM_TYPE).withFileDetailsList(
+                Collections.singletonList(getExpectedFileDetailsWaiting(FILE_ID, FileConversionStatus.WAITING)))
+                .build()).build();
+        final var infectedSubmission = Submission.builder().withId("infected").withFormDetails(
+            FormDetails.builder().withFormType(FORM_TYPE).withFileDetailsList(
+                Collections.singletonList(
+                    getExpectedFileDetailsWaiting("infected-file-id", FileConversionStatus.WAITING))).build())
+            .build();
+
+        when(transferService.getFileDetails(FILE_ID)).thenReturn(Optional.of(cleanFileDetailsApi));
+        when(transferService.getFileDetails("infected-file-id")).thenReturn(Optional.of(infectedFileDetailsApi));
+        when(timestampGenerator.generateTimestamp()).thenReturn(LocalDateTime.now());
+        when(formTemplateRepository.findById(FORM_TYPE)).thenReturn(Optional.of(formTemplate));
+
+        //when
+        final var actual = parallelEngine.evaluateSubmissions(Arrays.asList(cleanSubmission, infectedSubmission));
+
+        //then
+        assertThat(actual.get(DecisionResult.NOT_FES_ENABLED), hasSize(1));
+        assertThat(actual.get(DecisionResult.NOT_FES_ENABLED).getFirst().getSubmission(), is(cleanSubmission));
+        assertThat(actual.get(DecisionResult.NOT_CLEAN), hasSize(1));
+        assertThat(actual.get(DecisionResult.NOT_CLEAN).getFirst().getSubmission(), is(infectedSubmission));
+        verify(submissionRepository).updateFileConversionStatuses(List.of(cleanSubmission, infectedSubmission));
+    }
+
+    @Test
+    void testDecisionEngineRethrowsFailureFromConcurrentEvaluation() {
+        //given
+        final var parallelEngine = new DecisionEngine(transferService, formTemplateRepository, submissionRepository,
+            timestampGenerator, 4);
+        final var failing = Submission.builder().withId("failing").withFormDetails(
+            FormDetails.builder().withFormType(FORM_TYPE).withFileDetailsList(
+                Collections.singletonList(getExpectedFileDetailsWaiting(FILE_ID, FileConversionStatus.WAITING)))
+                .build()).build();
+        final var other = Submission.builder().withId("other").withFormDetails(
+            FormDetails.builder().withFormType(FORM_TYPE).withFileDetailsList(
+                Collections.singletonList(getExpectedFileDetailsWaiting(FILE_ID, FileConversionStatus.WAITING)))
+                .build()).build();
+
+        when(transferService.getFileDetails(FILE_ID)).thenThrow(new FileDetailsException("unexpected file transfer status"));
+
+        //when
+        final var submissions = Arrays.asList(failing, other);
+        final var exception = assertThrows(FileDetailsException.class,
+            () -> parallelEngine.evaluateSubmissions(submissions));
+
+        //then
+        assertThat(exception.getMessage(), is("unexpected file transfer status"));
+    }
+
     private FileDetails getExpectedFileDetailsWaiting(final String fileId, final FileConversionStatus conversionStatus) {
         return FileDetails.builder()
                 .withFileId(fileId)
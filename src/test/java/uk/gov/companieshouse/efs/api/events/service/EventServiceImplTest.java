@@ -3,22 +3,19 @@ package uk.gov.companieshouse.efs.api.events.service;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyString;
-import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoInteractions;
-import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
 import java.time.LocalDateTime;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -26,35 +23,24 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.api.function.Executable;
-import org.junit.jupiter.params.ParameterizedTest;
-import org.junit.jupiter.params.provider.ValueSource;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
-import org.springframework.transaction.TransactionTimedOutException;
 import uk.gov.companieshouse.api.model.efs.events.FileConversionResultStatusApi;
 import uk.gov.companieshouse.api.model.efs.events.FileConversionStatusApi;
-import uk.gov.companieshouse.api.model.efs.formtemplates.FormTemplateApi;
 import uk.gov.companieshouse.api.model.efs.submissions.FileConversionStatus;
 import uk.gov.companieshouse.api.model.efs.submissions.SubmissionStatus;
 import uk.gov.companieshouse.efs.api.email.EmailService;
 import uk.gov.companieshouse.efs.api.email.exception.EmailServiceException;
 import uk.gov.companieshouse.efs.api.email.model.DelayedSubmissionSupportEmailModel;
 import uk.gov.companieshouse.efs.api.email.model.InternalFailedConversionModel;
-import uk.gov.companieshouse.efs.api.events.service.exception.BarcodeException;
-import uk.gov.companieshouse.efs.api.events.service.exception.FesLoaderException;
-import uk.gov.companieshouse.efs.api.events.service.exception.InvalidTiffException;
-import uk.gov.companieshouse.efs.api.events.service.exception.TiffDownloadException;
 import uk.gov.companieshouse.efs.api.events.service.model.Decision;
 import uk.gov.companieshouse.efs.api.events.service.model.DecisionResult;
-import uk.gov.companieshouse.efs.api.events.service.model.FesFileModel;
-import uk.gov.companieshouse.efs.api.events.service.model.FesLoaderModel;
-import uk.gov.companieshouse.efs.api.formtemplates.service.FormTemplateService;
-import uk.gov.companieshouse.efs.api.submissions.model.Company;
 import uk.gov.companieshouse.efs.api.submissions.model.FileDetails;
 import uk.gov.companieshouse.efs.api.submissions.model.FormDetails;
 import uk.gov.companieshouse.efs.api.submissions.model.Submission;
 import uk.gov.companieshouse.efs.api.submissions.repository.SubmissionRepository;
-import uk.gov.companieshouse.efs.api.submissions.service.SubmissionService;
+import uk.gov.companieshouse.efs.api.submissions.repository.SubmissionWriteSink;
 import uk.gov.companieshouse.efs.api.submissions.service.exception.FileIncorrectStateException;
 import uk.gov.companieshouse.efs.api.submissions.service.exception.FileNotFoundException;
 import uk.gov.companieshouse.efs.api.submissions.service.exception.SubmissionIncorrectStateException;
@@ -78,18 +64,6 @@ class EventServiceImplTest {
     @Mock
     private Submission submission;
 
-    @Mock
-    private Submission failedSubmission;
-
-    @Mock
-    private Company company;
-
-    @Mock
-    private SubmissionService submissionService;
-    
-    @Mock
-    private FormTemplateService formTemplateService;
-
     @Mock
     private FormDetails formDetails;
 
@@ -105,15 +79,6 @@ class EventServiceImplTest {
     @Mock
     private DecisionEngine decisionEngine;
 
-    @Mock
-    private BarcodeGeneratorService barcodeGeneratorService;
-
-    @Mock
-    private TiffDownloadService tiffDownloadService;
-
-    @Mock
-    private FesLoaderService fesLoaderService;
-
     @Mock
     private ExecutionEngine executionEngine;
 
@@ -129,12 +94,24 @@ class EventServiceImplTest {
     @Mock
     private DelayedSubmissionHandlerStrategy sameDayStrategy;
 
+    @Mock
+    private SubmissionLeaseService submissionLeaseService;
+
+    @Mock
+    private SubmissionWriteSink sink;
+
+    @Mock
+    private FesSubmissionPipeline fesSubmissionPipeline;
+
+    @Mock
+    private TiffPrefetcher tiffPrefetcher;
+
     @BeforeEach
     void setUp() {
         eventService =
-            new EventServiceImpl(submissionService, formTemplateService, emailService, repository,
-                currentTimestampGenerator, 50, decisionEngine, barcodeGeneratorService,
-                tiffDownloadService, fesLoaderService, executionEngine, delayedSubmissionHandlerContext);
+            new EventServiceImpl(emailService, repository, currentTimestampGenerator, 50, decisionEngine,
+                executionEngine, delayedSubmissionHandlerContext, submissionLeaseService, fesSubmissionPipeline,
+                tiffPrefetcher);
     }
 
     @Test
@@ -155,13 +132,13 @@ class EventServiceImplTest {
         //given
         FileDetails details = FileDetails.builder()
                 .withFileId("abc")
-                .withConversionStatus(FileConversionStatus.QUEUED)
+                .withConversionStatus(FileConversionStatus.CONVERTED)
                 .build();
-        when(repository.read(anyString())).thenReturn(submission);
-        when(currentTimestampGenerator.generateTimestamp()).thenReturn(NOW);
+        when(repository.updateFileConversionStatus("123", "abc", FileConversionStatus.CONVERTED, "999",
+                NUMBER_OF_PAGES)).thenReturn(submission);
         when(submission.getFormDetails()).thenReturn(FormDetails.builder()
                 .withFileDetailsList(Collections.singletonList(details)).build());
-        when(submission.getStatus()).thenReturn(SubmissionStatus.PROCESSING);
+        when(repository.updateStatusOnConversionComplete("123", SubmissionStatus.READY_TO_SUBMIT)).thenReturn(true);
         FileConversionStatusApi fileConversionStatusApi = new FileConversionStatusApi("999",
                 FileConversionResultStatusApi.CONVERTED, NUMBER_OF_PAGES);
 
@@ -169,12 +146,32 @@ class EventServiceImplTest {
         eventService.updateConversionFileStatus("123", "abc", fileConversionStatusApi);
 
         //then
-        assertEquals(FileConversionStatus.CONVERTED, details.getConversionStatus());
-        assertEquals(NUMBER_OF_PAGES, details.getNumberOfPages());
-        assertEquals("999", details.getConvertedFileId());
-        verify(repository).updateSubmission(argThat(s->s.getStatus().equals(SubmissionStatus.READY_TO_SUBMIT)));
-        verify(currentTimestampGenerator).generateTimestamp();
-        verifyNoInteractions(emailService);
+        verify(repository).updateStatusOnConversionComplete("123", SubmissionStatus.READY_TO_SUBMIT);
+        verify(repository, never()).read(anyString());
+        verify(tiffPrefetcher).prefetch(submission);
+        verifyNoInteractions(emailService, currentTimestampGenerator);
+    }
+
+    @Test
+    void testUpdateFileConversionStatusLastFileConvertedAlreadyReadyToSubmit() {
+        //given
+        FileDetails details = FileDetails.builder()
+                .withFileId("abc")
+                .withConversionStatus(FileConversionStatus.CONVERTED)
+                .build();
+        when(repository.updateFileConversionStatus("123", "abc", FileConversionStatus.CONVERTED, "999",
+                NUMBER_OF_PAGES)).thenReturn(submission);
+        when(submission.getFormDetails()).thenReturn(FormDetails.builder()
+                .withFileDetailsList(Collections.singletonList(details)).build());
+        when(repository.updateStatusOnConversionComplete("123", SubmissionStatus.READY_TO_SUBMIT)).thenReturn(false);
+        FileConversionStatusApi fileConversionStatusApi = new FileConversionStatusApi("999",
+                FileConversionResultStatusApi.CONVERTED, NUMBER_OF_PAGES);
+
+        //when
+        eventService.updateConversionFileStatus("123", "abc", fileConversionStatusApi);
+
+        //then
+        verifyNoInteractions(tiffPrefetcher);
     }
 
     @Test
@@ -186,13 +183,12 @@ class EventServiceImplTest {
                 .build();
         FileDetails otherDetails = FileDetails.builder()
                 .withFileId("abd")
-                .withConversionStatus(FileConversionStatus.QUEUED)
+                .withConversionStatus(FileConversionStatus.CONVERTED)
                 .build();
-        when(repository.read(anyString())).thenReturn(submission);
-        when(currentTimestampGenerator.generateTimestamp()).thenReturn(NOW);
+        when(repository.updateFileConversionStatus("123", "abd", FileConversionStatus.CONVERTED, "999",
+                NUMBER_OF_PAGES)).thenReturn(submission);
         when(submission.getFormDetails()).thenReturn(FormDetails.builder()
                 .withFileDetailsList(Arrays.asList(details, otherDetails)).build());
-        when(submission.getStatus()).thenReturn(SubmissionStatus.PROCESSING);
         FileConversionStatusApi fileConversionStatusApi = new FileConversionStatusApi("999",
                 FileConversionResultStatusApi.CONVERTED, NUMBER_OF_PAGES);
 
@@ -200,11 +196,7 @@ class EventServiceImplTest {
         eventService.updateConversionFileStatus("123", "abd", fileConversionStatusApi);
 
         //then
-        assertEquals(FileConversionStatus.CONVERTED, otherDetails.getConversionStatus());
-        assertEquals(NUMBER_OF_PAGES, otherDetails.getNumberOfPages());
-        assertEquals("999", otherDetails.getConvertedFileId());
-        verify(repository).updateSubmission(argThat(s->s.getStatus().equals(SubmissionStatus.PROCESSING)));
-        verify(currentTimestampGenerator).generateTimestamp();
+        verify(repository, never()).updateStatusOnConversionComplete(anyString(), any());
         verifyNoInteractions(emailService);
     }
 
@@ -213,13 +205,14 @@ class EventServiceImplTest {
         //given
         FileDetails details = FileDetails.builder()
                 .withFileId("abc")
-                .withConversionStatus(FileConversionStatus.QUEUED)
+                .withConversionStatus(FileConversionStatus.FAILED)
                 .build();
-        when(repository.read(anyString())).thenReturn(submission);
+        when(repository.updateFileConversionStatus("123", "abc", FileConversionStatus.FAILED, null, null))
+                .thenReturn(submission);
         when(submission.getFormDetails()).thenReturn(FormDetails.builder()
                 .withFileDetailsList(Collections.singletonList(details)).build());
-        when(currentTimestampGenerator.generateTimestamp()).thenReturn(NOW);
-        when(submission.getStatus()).thenReturn(SubmissionStatus.PROCESSING);
+        when(repository.updateStatusOnConversionComplete("123", SubmissionStatus.REJECTED_BY_DOCUMENT_CONVERTER))
+                .thenReturn(true);
         FileConversionStatusApi fileConversionStatusApi = new FileConversionStatusApi(null, FileConversionResultStatusApi.FAILED,
                 null);
 
@@ -227,12 +220,8 @@ class EventServiceImplTest {
         eventService.updateConversionFileStatus("123", "abc", fileConversionStatusApi);
 
         //then
-        assertEquals(FileConversionStatus.FAILED, details.getConversionStatus());
-        assertNull(details.getConvertedFileId());
-        assertNull(details.getNumberOfPages());
-        verify(repository).updateSubmission(argThat(s->s.getStatus().equals(SubmissionStatus.REJECTED_BY_DOCUMENT_CONVERTER)));
+        verify(repository).updateStatusOnConversionComplete("123", SubmissionStatus.REJECTED_BY_DOCUMENT_CONVERTER);
         verify(emailService).sendInternalFailedConversion(any(InternalFailedConversionModel.class));
-        verify(currentTimestampGenerator).generateTimestamp();
     }
 
     @Test
@@ -244,13 +233,14 @@ class EventServiceImplTest {
                 .build();
         FileDetails otherDetails = FileDetails.builder()
                 .withFileId("abd")
-                .withConversionStatus(FileConversionStatus.QUEUED)
+                .withConversionStatus(FileConversionStatus.FAILED)
                 .build();
-        when(repository.read(anyString())).thenReturn(submission);
+        when(repository.updateFileConversionStatus("123", "abd", FileConversionStatus.FAILED, null, null))
+                .thenReturn(submission);
         when(submission.getFormDetails()).thenReturn(FormDetails.builder()
                 .withFileDetailsList(Arrays.asList(details, otherDetails)).build());
-        when(submission.getStatus()).thenReturn(SubmissionStatus.PROCESSING);
-        when(currentTimestampGenerator.generateTimestamp()).thenReturn(NOW);
+        when(repository.updateStatusOnConversionComplete("123", SubmissionStatus.REJECTED_BY_DOCUMENT_CONVERTER))
+                .thenReturn(true);
         FileConversionStatusApi fileConversionStatusApi = new FileConversionStatusApi(null, FileConversionResultStatusApi.FAILED,
                 null);
 
@@ -258,12 +248,8 @@ class EventServiceImplTest {
         eventService.updateConversionFileStatus("123", "abd", fileConversionStatusApi);
 
         //then
-        assertEquals(FileConversionStatus.FAILED, otherDetails.getConversionStatus());
-        assertNull(details.getNumberOfPages());
-        assertNull(details.getConvertedFileId());
-        verify(repository).updateSubmission(argThat(s->s.getStatus().equals(SubmissionStatus.REJECTED_BY_DOCUMENT_CONVERTER)));
+        verify(repository).updateStatusOnConversionComplete("123", SubmissionStatus.REJECTED_BY_DOCUMENT_CONVERTER);
         verify(emailService).sendInternalFailedConversion(any(InternalFailedConversionModel.class));
-        verify(currentTimestampGenerator).generateTimestamp();
     }
 
     @Test
@@ -275,13 +261,12 @@ class EventServiceImplTest {
                 .build();
         FileDetails otherDetails = FileDetails.builder()
                 .withFileId("abd")
-                .withConversionStatus(FileConversionStatus.QUEUED)
+                .withConversionStatus(FileConversionStatus.FAILED)
                 .build();
-        when(repository.read(anyString())).thenReturn(submission);
-        when(submission.getStatus()).thenReturn(SubmissionStatus.PROCESSING);
+        when(repository.updateFileConversionStatus("123", "abd", FileConversionStatus.FAILED, null, null))
+                .thenReturn(submission);
         when(submission.getFormDetails()).thenReturn(FormDetails.builder()
                 .withFileDetailsList(Arrays.asList(details, otherDetails)).build());
-        when(currentTimestampGenerator.generateTimestamp()).thenReturn(NOW);
         FileConversionStatusApi fileConversionStatusApi = new FileConversionStatusApi(null, FileConversionResultStatusApi.FAILED,
                 null);
 
@@ -289,25 +274,45 @@ class EventServiceImplTest {
         eventService.updateConversionFileStatus("123", "abd", fileConversionStatusApi);
 
         //then
-        assertEquals(FileConversionStatus.FAILED, otherDetails.getConversionStatus());
-        assertNull(details.getNumberOfPages());
-        assertNull(details.getConvertedFileId());
-        verify(repository).updateSubmission(argThat(s->s.getStatus().equals(SubmissionStatus.PROCESSING)));
+        verify(repository, never()).updateStatusOnConversionComplete(anyString(), any());
+        verifyNoInteractions(emailService);
+    }
+
+    @Test
+    void testUpdateFileConversionStatusDoesNotEmailWhenTransitionAlreadyMade() {
+        //given
+        FileDetails details = FileDetails.builder()
+                .withFileId("abc")
+                .withConversionStatus(FileConversionStatus.FAILED)
+                .build();
+        when(repository.updateFileConversionStatus("123", "abc", FileConversionStatus.FAILED, null, null))
+                .thenReturn(submission);
+        when(submission.getFormDetails()).thenReturn(FormDetails.builder()
+                .withFileDetailsList(Collections.singletonList(details)).build());
+        when(repository.updateStatusOnConversionComplete("123", SubmissionStatus.REJECTED_BY_DOCUMENT_CONVERTER))
+                .thenReturn(false);
+        FileConversionStatusApi fileConversionStatusApi = new FileConversionStatusApi(null, FileConversionResultStatusApi.FAILED,
+                null);
+
+        //when
+        eventService.updateConversionFileStatus("123", "abc", fileConversionStatusApi);
+
+        //then
         verifyNoInteractions(emailService);
-        verify(currentTimestampGenerator).generateTimestamp();
     }
 
     @Test
     void testUpdateFileConversionStatusLastFileConvertedHasFailedAndEmailServiceThrowsException() {
         // given
-        FileDetails details = FileDetails.builder().withFileId("abc").withConversionStatus(FileConversionStatus.QUEUED)
+        FileDetails details = FileDetails.builder().withFileId("abc").withConversionStatus(FileConversionStatus.FAILED)
                 .build();
 
-        when(repository.read(anyString())).thenReturn(submission);
+        when(repository.updateFileConversionStatus("123", "abc", FileConversionStatus.FAILED, null, null))
+                .thenReturn(submission);
         when(submission.getFormDetails())
                 .thenReturn(FormDetails.builder().withFileDetailsList(Collections.singletonList(details)).build());
-        when(currentTimestampGenerator.generateTimestamp()).thenReturn(NOW);
-        when(submission.getStatus()).thenReturn(SubmissionStatus.PROCESSING);
+        when(repository.updateStatusOnConversionComplete("123", SubmissionStatus.REJECTED_BY_DOCUMENT_CONVERTER))
+                .thenReturn(true);
         FileConversionStatusApi fileConversionStatusApi = new FileConversionStatusApi(null,
                 FileConversionResultStatusApi.FAILED, null);
         doThrow(EmailServiceException.class).when(emailService).sendInternalFailedConversion(any());
@@ -316,12 +321,8 @@ class EventServiceImplTest {
         eventService.updateConversionFileStatus("123", "abc", fileConversionStatusApi);
 
         // then
-        assertEquals(FileConversionStatus.FAILED, details.getConversionStatus());
-        assertNull(details.getNumberOfPages());
-        assertNull(details.getConvertedFileId());
-        verify(repository).updateSubmission(argThat(s->s.getStatus().equals(SubmissionStatus.REJECTED_BY_DOCUMENT_CONVERTER)));
+        verify(repository).updateStatusOnConversionComplete("123", SubmissionStatus.REJECTED_BY_DOCUMENT_CONVERTER);
         verify(emailService).sendInternalFailedConversion(any(InternalFailedConversionModel.class));
-        verify(currentTimestampGenerator).generateTimestamp();
     }
 
     @Test
@@ -398,337 +399,107 @@ class EventServiceImplTest {
         verify(repository).read("123");
     }
 
-    @ParameterizedTest(name = "sameDayIndicator: {0}")
-    @ValueSource(strings = {"N", "Y"})
-    void testSubmitToFes(final String sameDayIndicator) {
-        //given
-        String convertedFileId = "1234";
-        boolean sameDay = "Y".equalsIgnoreCase(sameDayIndicator);
-        when(barcodeGeneratorService.getBarcode(any())).thenReturn("Y123XYZ");
-        when(submission.getId()).thenReturn("1234abcd");
-        when(repository.findByStatusOrderByPriority(any(), anyInt())).thenReturn(Collections.singletonList(submission));
-        when(submission.getFormDetails()).thenReturn(formDetails);
-        when(submission.getCompany()).thenReturn(company);
-        when(submission.getSubmittedAt()).thenReturn(NOW);
-        when(company.getCompanyName()).thenReturn("abc");
-        when(company.getCompanyNumber()).thenReturn("1223456");
-        when(formDetails.getFileDetailsList()).thenReturn(Collections.singletonList(fileDetails));
-        when(formDetails.getFormType()).thenReturn("SH01");
-        when(fileDetails.getConvertedFileId()).thenReturn(convertedFileId);
-        when(formTemplateService.getFormTemplate("SH01")).thenReturn(
-            new FormTemplateApi("SH01", "formName", "category", "", false, true, null, sameDay,
-                null));
-
-        //when
-        eventService.submitToFes();
-
-        //then
-        verify(submissionService).updateSubmissionBarcode("1234abcd", "Y123XYZ");
-        verify(repository).findByStatusOrderByPriority(SubmissionStatus.READY_TO_SUBMIT, 50);
-        verify(barcodeGeneratorService, times(1)).getBarcode(NOW);
-        verify(tiffDownloadService).downloadTiffFile(convertedFileId);
-        verify(fesLoaderService).insertSubmission(new FesLoaderModel("Y123XYZ", "abc", "1223456",
-                "SH01", sameDay, Collections.singletonList(new FesFileModel(null, 0)), NOW));
-        verify(submissionService).updateSubmissionStatus(submission.getId(), SubmissionStatus.SENT_TO_FES);
-    }
-
-    @Test
-    void testSubmitToFesWithMappedFesDocType() {
-        //given
-        String convertedFileId = "1234";
-        when(barcodeGeneratorService.getBarcode(any())).thenReturn("Y123XYZ");
-        when(submission.getId()).thenReturn("1234abcd");
-        when(repository.findByStatusOrderByPriority(any(), anyInt())).thenReturn(Collections.singletonList(submission));
-        when(submission.getFormDetails()).thenReturn(formDetails);
-        when(submission.getCompany()).thenReturn(company);
-        when(submission.getSubmittedAt()).thenReturn(NOW);
-        when(company.getCompanyName()).thenReturn("abc");
-        when(company.getCompanyNumber()).thenReturn("1223456");
-        when(formDetails.getFileDetailsList()).thenReturn(Collections.singletonList(fileDetails));
-        when(formDetails.getFormType()).thenReturn("SH01");
-        when(fileDetails.getConvertedFileId()).thenReturn(convertedFileId);
-        when(formTemplateService.getFormTemplate("SH01")).thenReturn(
-            new FormTemplateApi("SH01", "formName", "category", "", false, true, "FES-DOC-TYPE", false, null));
-
-        //when
-        eventService.submitToFes();
-
-        //then
-        verify(submissionService).updateSubmissionBarcode("1234abcd", "Y123XYZ");
-        verify(repository).findByStatusOrderByPriority(SubmissionStatus.READY_TO_SUBMIT, 50);
-        verify(barcodeGeneratorService, times(1)).getBarcode(NOW);
-        verify(tiffDownloadService).downloadTiffFile(convertedFileId);
-        verify(fesLoaderService).insertSubmission(new FesLoaderModel("Y123XYZ", "abc", "1223456",
-                "FES-DOC-TYPE", false, Collections.singletonList(new FesFileModel(null, 0)), NOW));
-        verify(submissionService).updateSubmissionStatus(submission.getId(), SubmissionStatus.SENT_TO_FES);
-    }
-
     @Test
-    void testSubmitToFesWhenNoSubmittedAtDate() {
-        //given
-        String convertedFileId = "1234";
-        when(barcodeGeneratorService.getBarcode(any())).thenReturn("Y123XYZ");
-        when(submission.getId()).thenReturn("1234abcd");
-        when(repository.findByStatusOrderByPriority(any(), anyInt())).thenReturn(Collections.singletonList(submission));
-        when(submission.getFormDetails()).thenReturn(formDetails);
-        when(submission.getCompany()).thenReturn(company);
-        when(submission.getCreatedAt()).thenReturn(NOW);
-        when(submission.getSubmittedAt()).thenReturn(null);
-        when(company.getCompanyName()).thenReturn("abc");
-        when(company.getCompanyNumber()).thenReturn("1223456");
-        when(formDetails.getFileDetailsList()).thenReturn(Collections.singletonList(fileDetails));
-        when(formDetails.getFormType()).thenReturn("SH01");
-        when(fileDetails.getConvertedFileId()).thenReturn(convertedFileId);
-        when(formTemplateService.getFormTemplate("SH01")).thenReturn(
-            new FormTemplateApi("SH01", "formName", "category", "", false, true, null, false, null));
-
-        //when
-        eventService.submitToFes();
-
-        //then
-        verify(submissionService).updateSubmissionBarcode("1234abcd", "Y123XYZ");
-        verify(repository).findByStatusOrderByPriority(SubmissionStatus.READY_TO_SUBMIT, 50);
-        verify(barcodeGeneratorService, times(1)).getBarcode(NOW);
-        verify(tiffDownloadService).downloadTiffFile(convertedFileId);
-        verify(fesLoaderService).insertSubmission(new FesLoaderModel("Y123XYZ", "abc", "1223456",
-                "SH01", false, Collections.singletonList(new FesFileModel(null, 0)), NOW));
-        verify(submissionService).updateSubmissionStatus(submission.getId(), SubmissionStatus.SENT_TO_FES);
-    }
-
+    void testUpdateFileConversionStatusThrowsFileIncorrectStateExceptionWhenFileUpdatedConcurrently() {
+        // given
+        FileConversionStatusApi fileConversionStatusApi = new FileConversionStatusApi("999",
+                FileConversionResultStatusApi.CONVERTED, NUMBER_OF_PAGES);
 
-    @Test
-    void testGetBarcodeException() {
-        //given
-        when(repository.findByStatusOrderByPriority(any(), anyInt())).thenReturn(Collections.singletonList(submission));
+        when(submission.getStatus()).thenReturn(SubmissionStatus.PROCESSING);
         when(submission.getFormDetails()).thenReturn(formDetails);
-        when(barcodeGeneratorService.getBarcode(any())).thenThrow(BarcodeException.class);
-
-        //when
-        eventService.submitToFes();
+        when(formDetails.getFileDetailsList()).thenReturn(Collections.singletonList(
+                FileDetails.builder().withFileId("abc").withConversionStatus(FileConversionStatus.QUEUED).build()));
+        when(repository.read("123")).thenReturn(submission);
+        // when
+        Executable actual = () -> eventService.updateConversionFileStatus("123", "abc", fileConversionStatusApi);
 
-        //then
-        verifyNoInteractions(submissionService, fesLoaderService, tiffDownloadService);
+        // then
+        FileIncorrectStateException ex = assertThrows(FileIncorrectStateException.class, actual);
+        assertEquals("Status for file with id [abc] wasn't [QUEUED] on submission with id [123], couldn't update",
+                ex.getMessage());
+        verify(repository).updateFileConversionStatus("123", "abc", FileConversionStatus.CONVERTED, "999",
+                NUMBER_OF_PAGES);
     }
 
     @Test
-    void testTiffDownloadException() {
+    void testSubmitToFes() {
         //given
-        when(repository.findByStatusOrderByPriority(any(), anyInt())).thenReturn(Collections.singletonList(submission));
-        when(submission.getId()).thenReturn("1234abcd");
-        when(submission.getFormDetails()).thenReturn(formDetails);
-        when(formDetails.getFormType()).thenReturn("SH01");
-        when(formTemplateService.getFormTemplate("SH01")).thenReturn(
-            new FormTemplateApi("SH01", "formName", "category", "", false, true, null, false, null));
-        when(barcodeGeneratorService.getBarcode(any())).thenReturn("Y123XYZ");
-        when(tiffDownloadService.downloadTiffFile(any())).thenThrow(TiffDownloadException.class);
-        when(formDetails.getFileDetailsList()).thenReturn(Collections.singletonList(fileDetails));
+        when(submissionLeaseService.claim(any(), anyInt())).thenReturn(Collections.singletonList(submission));
 
         //when
         eventService.submitToFes();
 
         //then
-        verify(repository).findByStatusOrderByPriority(SubmissionStatus.READY_TO_SUBMIT, 50);
-        verify(submissionService).updateSubmissionBarcode(submission.getId(), "Y123XYZ");
-        verifyNoInteractions(fesLoaderService);
-        verifyNoMoreInteractions(submissionService);
+        verify(submissionLeaseService).claim(SubmissionStatus.READY_TO_SUBMIT, 50);
+        final InOrder inOrder = inOrder(fesSubmissionPipeline, submissionLeaseService);
+        inOrder.verify(fesSubmissionPipeline).submit(Collections.singletonList(submission));
+        inOrder.verify(submissionLeaseService).release(Collections.singletonList(submission));
     }
 
     @Test
-    void formTemplateMissing() {
+    void testSubmitToFesReleasesLeasesWhenPipelineFails() {
         //given
-        when(repository.findByStatusOrderByPriority(any(), anyInt())).thenReturn(Collections.singletonList(submission));
-        when(submission.getId()).thenReturn("1234abcd");
-        when(submission.getFormDetails()).thenReturn(formDetails);
-        when(formDetails.getFormType()).thenReturn("SH01");
-        when(barcodeGeneratorService.getBarcode(any())).thenReturn("Y123XYZ");
+        when(submissionLeaseService.claim(any(), anyInt())).thenReturn(Collections.singletonList(submission));
+        doThrow(new IllegalStateException("stub")).when(fesSubmissionPipeline).submit(any());
 
         //when
-        eventService.submitToFes();
+        assertThrows(IllegalStateException.class, () -> eventService.submitToFes());
 
         //then
-        verify(repository).findByStatusOrderByPriority(SubmissionStatus.READY_TO_SUBMIT, 50);
-        verify(submissionService).updateSubmissionBarcode(submission.getId(), "Y123XYZ");
-        verifyNoInteractions(fesLoaderService, tiffDownloadService);
-        verifyNoMoreInteractions(submissionService);
+        verify(submissionLeaseService).release(Collections.singletonList(submission));
     }
 
     @Test
-    void testHandlesFesLoaderException() {
-        //given
-        String convertedFileId = "1234";
-        when(barcodeGeneratorService.getBarcode(any())).thenReturn("Y123XYZ");
-        when(repository.findByStatusOrderByPriority(any(), anyInt())).thenReturn(Collections.singletonList(submission));
-        when(submission.getFormDetails()).thenReturn(formDetails);
-
-        when(submission.getCompany()).thenReturn(company);
-        when(company.getCompanyName()).thenReturn("abc");
-        when(company.getCompanyNumber()).thenReturn("1223456");
-
-
-        when(formDetails.getFileDetailsList()).thenReturn(Collections.singletonList(fileDetails));
-        when(formDetails.getFormType()).thenReturn("SH01");
-        when(formTemplateService.getFormTemplate("SH01")).thenReturn(
-            new FormTemplateApi("SH01", "formName", "category", "", false, true, null, false, null));
-
-        when(fileDetails.getConvertedFileId()).thenReturn(convertedFileId);
-
-        doThrow(FesLoaderException.class).when(fesLoaderService).insertSubmission(any());
-
-        // when
-        eventService.submitToFes();
-
-        // then
-        verify(repository).findByStatusOrderByPriority(SubmissionStatus.READY_TO_SUBMIT, 50);
-        verify(submissionService).updateSubmissionBarcode(submission.getId(), "Y123XYZ");
-        verify(fesLoaderService).insertSubmission(any());
-        verifyNoMoreInteractions(submissionService);
-    }
-
-    @Test
-    void testHandlesInvalidTiffException() {
-        // given
-        String convertedFileId = "1234";
-        when(submission.getId()).thenReturn("1234abcd");
-        when(submission.getFormDetails()).thenReturn(formDetails);
-        when(formDetails.getFileDetailsList()).thenReturn(Collections.singletonList(fileDetails));
-        when(formDetails.getFormType()).thenReturn("SH01");
-        when(formTemplateService.getFormTemplate("SH01")).thenReturn(
-            new FormTemplateApi("SH01", "formName", "category", "", false, true, null, false, null));
-        when(fileDetails.getConvertedFileId()).thenReturn(convertedFileId);
-        when(barcodeGeneratorService.getBarcode(any())).thenReturn("Y123XYZ");
-        when(repository.findByStatusOrderByPriority(any(), anyInt())).thenReturn(Collections.singletonList(submission));
-        when(submission.getCompany()).thenReturn(company);
-        when(company.getCompanyName()).thenReturn("abc");
-        when(company.getCompanyNumber()).thenReturn("1223456");
-
-        doThrow(InvalidTiffException.class).when(fesLoaderService).insertSubmission(any());
-        // when
-        eventService.submitToFes();
-
-        // then
-        verify(repository).findByStatusOrderByPriority(SubmissionStatus.READY_TO_SUBMIT, 50);
-        verify(submissionService).updateSubmissionBarcode("1234abcd", "Y123XYZ");
-        verify(fesLoaderService).insertSubmission(any());
-        verifyNoMoreInteractions(submissionService);
-    }
-
-    @Test
-    void testHandlesMultipleSubmissionsWhenOneFailsWithBarcodeException() {
-        // given
-        String convertedFileId = "1234";
-
-        when(repository.findByStatusOrderByPriority(any(), anyInt())).thenReturn(getSubmissionList());
-        when(submission.getId()).thenReturn("1234abcd");
-        when(barcodeGeneratorService.getBarcode(any())).thenReturn("Y123XYZ").thenThrow(BarcodeException.class);
-
-        when(submission.getFormDetails()).thenReturn(formDetails);
-        when(failedSubmission.getFormDetails()).thenReturn(formDetails);
-        when(formDetails.getFileDetailsList()).thenReturn(Collections.singletonList(fileDetails));
-        when(formDetails.getFormType()).thenReturn("SH01");
-        when(formTemplateService.getFormTemplate("SH01")).thenReturn(
-            new FormTemplateApi("SH01", "formName", "category", "", false, true, null, false, null));
-        when(fileDetails.getConvertedFileId()).thenReturn(convertedFileId);
-
-        when(submission.getSubmittedAt()).thenReturn(NOW);
-        when(submission.getCompany()).thenReturn(company);
-        when(company.getCompanyName()).thenReturn("abc");
-        when(company.getCompanyNumber()).thenReturn("1223456");
-
-        // when
-        eventService.submitToFes();
-
-        // then
-        verify(repository).findByStatusOrderByPriority(SubmissionStatus.READY_TO_SUBMIT, 50);
-        verify(barcodeGeneratorService, times(2)).getBarcode(any());
-        verify(submissionService, times(1)).updateSubmissionBarcode("1234abcd", "Y123XYZ");
-        verify(tiffDownloadService, times(1)).downloadTiffFile(convertedFileId);
-        verify(fesLoaderService, times(1)).insertSubmission(
-                new FesLoaderModel("Y123XYZ", "abc", "1223456", "SH01", false,
-                    Collections.singletonList(new FesFileModel(null, 0)), NOW));
-        verify(submissionService, times(1)).updateSubmissionStatus(submission.getId(), SubmissionStatus.SENT_TO_FES);
-    }
-
-    @Test
-    void testControllerDoesNotCallBarcodeServiceAgainIfSubmissionAlreadyHasBarcode() {
+    void testProcessSubmissions() {
         //given
-        String convertedFileId = "1234";
-        when(submission.getId()).thenReturn("1234abcd");
-        when(repository.findByStatusOrderByPriority(any(), anyInt())).thenReturn(Collections.singletonList(submission));
-        when(submission.getFormDetails()).thenReturn(formDetails);
-        when(submission.getSubmittedAt()).thenReturn(NOW);
-        when(submission.getCompany()).thenReturn(company);
-        when(company.getCompanyName()).thenReturn("abc");
-        when(company.getCompanyNumber()).thenReturn("1223456");
-
-        when(formDetails.getFileDetailsList()).thenReturn(Collections.singletonList(fileDetails));
-        when(formDetails.getFormType()).thenReturn("SH01");
-        when(formDetails.getBarcode()).thenReturn("Y9999999");
-        when(formTemplateService.getFormTemplate("SH01")).thenReturn(
-            new FormTemplateApi("SH01", "formName", "category", "", false, true, null, false, null));
-
-        when(fileDetails.getConvertedFileId()).thenReturn(convertedFileId);
+        when(submissionLeaseService.claim(any(), anyInt())).thenReturn(Collections.singletonList(submission));
+        when(repository.openWriteSink()).thenReturn(sink);
+        when(decisionEngine.evaluateSubmissions(any())).thenReturn(Collections.singletonMap(DecisionResult.FES_ENABLED, Collections.singletonList(decision)));
+        when(sink.flush()).thenReturn(new SubmissionWriteSink.FlushResult(1, Collections.emptyMap()));
 
         //when
-        eventService.submitToFes();
+        eventService.processFiles();
 
         //then
-        verify(submissionService, times(0)).updateSubmissionBarcode(any(), any());
-        verify(repository).findByStatusOrderByPriority(SubmissionStatus.READY_TO_SUBMIT, 50);
-        verifyNoInteractions(barcodeGeneratorService);
-        verify(tiffDownloadService).downloadTiffFile(convertedFileId);
-        verify(fesLoaderService).insertSubmission(new FesLoaderModel("Y9999999", "abc", "1223456",
-                "SH01", false, Collections.singletonList(new FesFileModel(null, 0)), NOW));
-        verify(submissionService).updateSubmissionStatus(submission.getId(), SubmissionStatus.SENT_TO_FES);
+        verify(submissionLeaseService).claim(SubmissionStatus.SUBMITTED, 50);
+        verify(decisionEngine).evaluateSubmissions(Collections.singletonList(submission));
+        verify(executionEngine).execute(Collections.singletonMap(DecisionResult.FES_ENABLED, Collections.singletonList(decision)), sink);
+        final InOrder inOrder = inOrder(sink, submissionLeaseService);
+        inOrder.verify(sink).flush();
+        inOrder.verify(submissionLeaseService).release(Collections.singletonList(submission));
     }
 
     @Test
-    void handleFesDatasourceTransactionTimeout() {
+    void testProcessSubmissionsRetriesFailedStatusWritesOnce() {
         //given
-        String convertedFileId = "1234";
-        when(barcodeGeneratorService.getBarcode(any())).thenReturn("Y123XYZ");
-        when(submission.getId()).thenReturn("1234abcd");
-        when(repository.findByStatusOrderByPriority(any(), anyInt())).thenReturn(Collections.singletonList(submission));
-        when(submission.getFormDetails()).thenReturn(formDetails);
-        when(submission.getCompany()).thenReturn(company);
-        when(submission.getSubmittedAt()).thenReturn(NOW);
-        when(company.getCompanyName()).thenReturn("abc");
-        when(company.getCompanyNumber()).thenReturn("1223456");
-        when(formDetails.getFileDetailsList()).thenReturn(Collections.singletonList(fileDetails));
-        when(formDetails.getFormType()).thenReturn("SH01");
-        when(fileDetails.getConvertedFileId()).thenReturn(convertedFileId);
-        when(formTemplateService.getFormTemplate("SH01")).thenReturn(
-                new FormTemplateApi("SH01", "formName", "category", "", false, true, null, false,
-                        null));
-        doThrow(new FesLoaderException("stub exception"), new TransactionTimedOutException("stub timeout")).when(
-                fesLoaderService).insertSubmission(any(FesLoaderModel.class));
+        when(submissionLeaseService.claim(any(), anyInt())).thenReturn(Collections.singletonList(submission));
+        when(repository.openWriteSink()).thenReturn(sink);
+        when(decisionEngine.evaluateSubmissions(any())).thenReturn(Collections.emptyMap());
+        when(sink.flush()).thenReturn(new SubmissionWriteSink.FlushResult(0, Collections.singletonMap("123", "stub")));
 
         //when
-        eventService.submitToFes();
+        eventService.processFiles();
 
         //then
-        verify(submissionService).updateSubmissionBarcode("1234abcd", "Y123XYZ");
-        verify(repository).findByStatusOrderByPriority(SubmissionStatus.READY_TO_SUBMIT, 50);
-        verify(barcodeGeneratorService, times(1)).getBarcode(NOW);
-        verify(tiffDownloadService).downloadTiffFile(convertedFileId);
-        verify(fesLoaderService).insertSubmission(new FesLoaderModel("Y123XYZ", "abc", "1223456",
-                "SH01", false, Collections.singletonList(new FesFileModel(null, 0)), NOW));
-        verify(submissionService, never()).updateSubmissionStatus(submission.getId(), SubmissionStatus.SENT_TO_FES);
-        verifyNoMoreInteractions(submissionService, tiffDownloadService, fesLoaderService, repository);
+        verify(sink, times(2)).flush();
+        verify(submissionLeaseService).release(Collections.singletonList(submission));
     }
 
     @Test
-    void testProcessSubmissions() {
+    void testProcessSubmissionsReleasesLeasesWhenExecutionFails() {
         //given
-        when(repository.findByStatusOrderByPriority(any(), anyInt())).thenReturn(Collections.singletonList(submission));
-        when(decisionEngine.evaluateSubmissions(any())).thenReturn(Collections.singletonMap(DecisionResult.FES_ENABLED, Collections.singletonList(decision)));
+        when(submissionLeaseService.claim(any(), anyInt())).thenReturn(Collections.singletonList(submission));
+        when(repository.openWriteSink()).thenReturn(sink);
+        when(decisionEngine.evaluateSubmissions(any())).thenThrow(new IllegalStateException("stub"));
+        when(sink.flush()).thenReturn(new SubmissionWriteSink.FlushResult(0, Collections.emptyMap()));
 
         //when
-        eventService.processFiles();
+        assertThrows(IllegalStateException.class, () -> eventService.processFiles());
 
         //then
-        verify(repository).findByStatusOrderByPriority(SubmissionStatus.SUBMITTED, 50);
-        verify(decisionEngine).evaluateSubmissions(Collections.singletonList(submission));
-        verify(executionEngine).execute(Collections.singletonMap(DecisionResult.FES_ENABLED, Collections.singletonList(decision)));
+        verify(sink).flush();
+        verify(submissionLeaseService).release(Collections.singletonList(submission));
+        verifyNoInteractions(executionEngine);
     }
 
     @Test
@@ -759,11 +530,4 @@ class EventServiceImplTest {
         verify(sameDayStrategy).buildAndSendEmails(Collections.emptyList(), NOW);
         verifyNoInteractions(standaryStrategy);
     }
-
-    private List<Submission> getSubmissionList() {
-        List<Submission> submissions = new ArrayList<>();
-        submissions.add(submission);
-        submissions.add(failedSubmission);
-        return submissions;
-    }
 }
@@ -15,12 +15,21 @@ import uk.gov.companieshouse.efs.api.events.service.model.DecisionResult;
 import uk.gov.companieshouse.efs.api.submissions.model.FileDetails;
 import uk.gov.companieshouse.efs.api.submissions.model.FormDetails;
 import uk.gov.companieshouse.efs.api.submissions.model.Submission;
-import uk.gov.companieshouse.efs.api.submissions.service.SubmissionService;
+import uk.gov.companieshouse.efs.api.submissions.repository.SubmissionRepository;
+import uk.gov.companieshouse.efs.api.submissions.repository.SubmissionWriteSink;
 
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
 
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
@@ -33,7 +42,10 @@ class ExecutionEngineTest {
     private ExecutionEngine executionEngine;
 
     @Mock
-    private SubmissionService submissionService;
+    private SubmissionWriteSink sink;
+
+    @Mock
+    private SubmissionRepository submissionRepository;
 
     @Mock
     private MessageService messageService;
@@ -58,7 +70,8 @@ class ExecutionEngineTest {
 
     @BeforeEach
     void setUp() {
-        this.executionEngine = new ExecutionEngine(submissionService, messageService, emailService, s3ClientService, BUCKET_NAME);
+        this.executionEngine = new ExecutionEngine(messageService, emailService, s3ClientService, BUCKET_NAME,
+            submissionRepository);
     }
 
     @Test
@@ -68,10 +81,10 @@ class ExecutionEngineTest {
         when(submission.getId()).thenReturn("123");
 
         //when
-        this.executionEngine.execute(Collections.singletonMap(DecisionResult.NO_DECISION, Collections.singletonList(decision)));
+        this.executionEngine.execute(Collections.singletonMap(DecisionResult.NO_DECISION, Collections.singletonList(decision)), sink);
 
         //then
-        verifyNoInteractions(submissionService);
+        verifyNoInteractions(sink);
         verifyNoInteractions(messageService);
         verifyNoInteractions(emailService);
         verifyNoInteractions(s3ClientService);
@@ -86,10 +99,10 @@ class ExecutionEngineTest {
         when(formDetails.getFormType()).thenReturn("IN01");
 
         //when
-        this.executionEngine.execute(Collections.singletonMap(DecisionResult.FORM_TYPE_DOES_NOT_EXIST, Collections.singletonList(decision)));
+        this.executionEngine.execute(Collections.singletonMap(DecisionResult.FORM_TYPE_DOES_NOT_EXIST, Collections.singletonList(decision)), sink);
 
         //then
-        verifyNoInteractions(submissionService);
+        verifyNoInteractions(sink);
         verifyNoInteractions(messageService);
         verifyNoInteractions(emailService);
         verifyNoInteractions(s3ClientService);
@@ -103,10 +116,10 @@ class ExecutionEngineTest {
         when(submission.getId()).thenReturn("123");
 
         //when
-        executionEngine.execute(Collections.singletonMap(DecisionResult.NOT_CLEAN, Collections.singletonList(decision)));
+        executionEngine.execute(Collections.singletonMap(DecisionResult.NOT_CLEAN, Collections.singletonList(decision)), sink);
 
         //then
-        verify(submissionService).updateSubmissionStatus("123", SubmissionStatus.REJECTED_BY_VIRUS_SCAN);
+        verify(sink).updateStatus("123", SubmissionStatus.REJECTED_BY_VIRUS_SCAN);
         verify(emailService).sendInternalFailedAV(new InternalAvFailedEmailModel(submission, Collections.singletonList("infected.pdf")));
         verifyNoInteractions(messageService);
         verifyNoInteractions(s3ClientService);
@@ -116,18 +129,80 @@ class ExecutionEngineTest {
     void testExecutionEngineHandlesFesEnabledForms() {
         // given
         when(decision.getSubmission()).thenReturn(submission);
+        when(submission.getId()).thenReturn("123");
         List<Decision> expectedDecisions = Collections.singletonList(decision);
+        when(messageService.queueMessages(eq(expectedDecisions), any())).thenAnswer(
+            invocation -> invocation.<Function<List<Submission>, Set<String>>>getArgument(1).apply(List.of(submission)));
+        when(submissionRepository.updateSubmissionsQueued(List.of(submission))).thenReturn(Set.of());
 
         // when
-        executionEngine.execute(Collections.singletonMap(DecisionResult.FES_ENABLED, expectedDecisions));
+        executionEngine.execute(Collections.singletonMap(DecisionResult.FES_ENABLED, expectedDecisions), sink);
 
         // then
-        verify(submissionService).updateSubmissionQueued(submission);
-        verify(messageService).queueMessages(expectedDecisions);
+        verify(submissionRepository).updateSubmissionsQueued(List.of(submission));
+        verify(submissionRepository, never()).updateQueueAttempts(any());
+        verifyNoInteractions(sink);
         verifyNoInteractions(emailService);
         verifyNoInteractions(s3ClientService);
     }
 
+    @Test
+    void testExecutionEngineCountsQueueAttemptOfSubmissionsWhoseQueuedWriteFailed() {
+        // given
+        when(decision.getSubmission()).thenReturn(submission);
+        when(submission.getId()).thenReturn("123");
+        List<Decision> expectedDecisions = Collections.singletonList(decision);
+        when(messageService.queueMessages(eq(expectedDecisions), any())).thenAnswer(
+            invocation -> invocation.<Function<List<Submission>, Set<String>>>getArgument(1).apply(List.of(submission)));
+        when(submissionRepository.updateSubmissionsQueued(List.of(submission))).thenReturn(Set.of("123"));
+
+        // when
+        executionEngine.execute(Collections.singletonMap(DecisionResult.FES_ENABLED, expectedDecisions), sink);
+
+        // then
+        verify(submissionRepository).updateQueueAttempts(List.of(submission));
+    }
+
+    @Test
+    void testExecutionEngineCountsQueueAttemptOfSubmissionsThatWereNotQueued() {
+        // given
+        when(decision.getSubmission()).thenReturn(submission);
+        when(submission.getId()).thenReturn("123");
+        List<Decision> expectedDecisions = Collections.singletonList(decision);
+        when(messageService.queueMessages(eq(expectedDecisions), any())).thenReturn(Set.of());
+
+        // when
+        executionEngine.execute(Collections.singletonMap(DecisionResult.FES_ENABLED, expectedDecisions), sink);
+
+        // then
+        verify(submissionRepository).updateQueueAttempts(List.of(submission));
+        verifyNoInteractions(sink);
+        verifyNoInteractions(emailService);
+    }
+
+    @Test
+    void testExecutionEngineCarriesOnWhenQueueAttemptsCannotBeCounted() {
+        // given
+        final Decision other = mock(Decision.class);
+        final Submission otherSubmission = mock(Submission.class);
+        when(decision.getSubmission()).thenReturn(submission);
+        when(other.getSubmission()).thenReturn(otherSubmission);
+        when(submission.getId()).thenReturn("123");
+        when(otherSubmission.getId()).thenReturn("456");
+        when(otherSubmission.getFormDetails()).thenReturn(formDetails);
+        when(formDetails.getFileDetailsList()).thenReturn(Collections.emptyList());
+        when(messageService.queueMessages(eq(List.of(decision)), any())).thenReturn(Set.of());
+        doThrow(new IllegalStateException("stub")).when(submissionRepository)
+            .updateQueueAttempts(List.of(submission));
+
+        // when
+        executionEngine.execute(Map.of(DecisionResult.FES_ENABLED, List.of(decision),
+            DecisionResult.NOT_FES_ENABLED, List.of(other)), sink);
+
+        // then
+        verify(sink).updateStatus("456", SubmissionStatus.PROCESSED_BY_EMAIL);
+    }
+
     @Test
     void testExecutionEngineHandlesNonFesEnabledForm() {
         // given
@@ -140,10 +215,10 @@ class ExecutionEngineTest {
         when(s3ClientService.generateFileLink(anyString(), anyString())).thenReturn("http://chs-dev.internal:4001");
 
         // when
-        executionEngine.execute(Collections.singletonMap(DecisionResult.NOT_FES_ENABLED, expectedDecisions));
+        executionEngine.execute(Collections.singletonMap(DecisionResult.NOT_FES_ENABLED, expectedDecisions), sink);
 
         // then
-        verify(submissionService).updateSubmissionStatus("123", SubmissionStatus.PROCESSED_BY_EMAIL);
+        verify(sink).updateStatus("123", SubmissionStatus.PROCESSED_BY_EMAIL);
         verify(emailService).sendInternalSubmission(new InternalSubmissionEmailModel(submission, Collections.singletonList(new EmailFileDetails(fileDetails, "http://chs-dev.internal:4001"))));
         verify(s3ClientService).generateFileLink("abc123", BUCKET_NAME);
         verifyNoInteractions(messageService);
@@ -1,15 +1,27 @@
 package uk.gov.companieshouse.efs.api.events.service;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.time.LocalDateTime;
 import java.time.Month;
 import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import org.apache.commons.io.IOUtils;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -22,15 +34,24 @@ import org.mockito.Captor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.dao.DuplicateKeyException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.TransactionSystemException;
 import org.springframework.transaction.TransactionTimedOutException;
 import uk.gov.companieshouse.efs.api.events.service.exception.FesLoaderException;
+import uk.gov.companieshouse.efs.api.events.service.exception.TiffDownloadException;
 import uk.gov.companieshouse.efs.api.events.service.fesloader.BatchDao;
 import uk.gov.companieshouse.efs.api.events.service.fesloader.EnvelopeDao;
+import uk.gov.companieshouse.efs.api.events.service.fesloader.FesLoaderMode;
 import uk.gov.companieshouse.efs.api.events.service.fesloader.FormDao;
 import uk.gov.companieshouse.efs.api.events.service.fesloader.ImageDao;
+import uk.gov.companieshouse.efs.api.events.service.fesloader.PlsqlSubmissionDao;
 import uk.gov.companieshouse.efs.api.events.service.model.FesFileModel;
 import uk.gov.companieshouse.efs.api.events.service.model.FesLoaderModel;
 import uk.gov.companieshouse.efs.api.events.service.model.FormModel;
+import uk.gov.companieshouse.efs.api.events.service.model.TiffBuffer;
+import uk.gov.companieshouse.efs.api.events.service.model.TiffStream;
 import uk.gov.companieshouse.efs.api.util.CurrentTimestampGenerator;
 
 @ExtendWith(MockitoExtension.class)
@@ -68,13 +89,29 @@ class FesLoaderServiceImplTest {
     private FesLoaderModel model;
     @Mock
     private FormModel formModel;
+    @Mock
+    private TiffDownloadService tiffDownloadService;
+    @Mock
+    private PlsqlSubmissionDao plsqlSubmissionDao;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+    @Mock
+    private TransactionStatus transactionStatus;
 
     @Captor
-    private ArgumentCaptor<FormModel> formModelCaptor;
+    private ArgumentCaptor<List<FormModel>> formModelsCaptor;
+    @Captor
+    private ArgumentCaptor<List<TiffStream>> imagesCaptor;
 
     @BeforeEach
     void setup() {
-        this.fesLoaderService = new FesLoaderServiceImpl(batchDao, envelopeDao, dateGenerator, imageDao, formDao);
+        this.fesLoaderService = new FesLoaderServiceImpl(batchDao, envelopeDao, dateGenerator, imageDao, formDao,
+            tiffDownloadService, plsqlSubmissionDao, FesLoaderMode.DAO, transactionManager, 10, 20);
+    }
+
+    private void usePlsqlMode() {
+        this.fesLoaderService = new FesLoaderServiceImpl(batchDao, envelopeDao, dateGenerator, imageDao, formDao,
+            tiffDownloadService, plsqlSubmissionDao, FesLoaderMode.PLSQL, transactionManager, 10, 20);
     }
 
     @ParameterizedTest(name = "sameDayIndicator: {0}")
@@ -111,14 +148,137 @@ class FesLoaderServiceImplTest {
         verify(envelopeDao).insertEnvelope(ENVELOPE_ID, BATCH_ID);
 
         verify(imageDao).getNextImageId();
-        verify(imageDao).insertImage(IMAGE_ID, myTiff.getTiffFile());
+        verify(imageDao).insertImages(eq(List.of(IMAGE_ID)), imagesCaptor.capture());
+        assertArrayEquals(myTiff.getTiffFile(), imagesCaptor.getValue().getFirst().content().readAllBytes());
 
-        verify(formDao).insertForm(formModelCaptor.capture());
-        assertEquals(BARCODE, formModelCaptor.getValue().getBarcode());
-        assertEquals(COMPANY_NAME, formModelCaptor.getValue().getCompanyName());
-        assertEquals(COMPANY_NUMBER, formModelCaptor.getValue().getCompanyNumber());
-        assertEquals(FORM_TYPE, formModelCaptor.getValue().getFormType());
-        assertEquals(sameDayIndicator, formModelCaptor.getValue().getSameDayIndicator());
+        verify(formDao).insertForms(formModelsCaptor.capture());
+        FormModel form = formModelsCaptor.getValue().getFirst();
+        assertEquals(BARCODE, form.getBarcode());
+        assertEquals(COMPANY_NAME, form.getCompanyName());
+        assertEquals(COMPANY_NUMBER, form.getCompanyNumber());
+        assertEquals(FORM_TYPE, form.getFormType());
+        assertEquals(sameDayIndicator, form.getSameDayIndicator());
+    }
+
+    @Test
+    void testInsertSubmissionBatchesImagesAndFormsOfAllFiles() {
+        // given
+        when(batchDao.getNextBatchId()).thenReturn(BATCH_ID);
+        when(dateGenerator.generateTimestamp()).thenReturn(LocalDateTime.of(2020, Month.MAY, 1, 12, 0));
+        when(batchDao.getBatchNameId(any())).thenReturn(BATCH_NAME_ID);
+        when(envelopeDao.getNextEnvelopeId()).thenReturn(ENVELOPE_ID);
+        when(model.getTiffFiles()).thenReturn(
+            List.of(new FesFileModel("one".getBytes(), 1), new FesFileModel("two".getBytes(), 2),
+                new FesFileModel("three".getBytes(), 3)));
+        when(imageDao.getNextImageId()).thenReturn(IMAGE_ID, IMAGE_ID + 1, IMAGE_ID + 2);
+
+        // when
+        fesLoaderService.insertSubmission(model);
+
+        // then
+        verify(imageDao).insertImages(eq(List.of(IMAGE_ID, IMAGE_ID + 1, IMAGE_ID + 2)), imagesCaptor.capture());
+        assertEquals(List.of(3L, 3L, 5L), imagesCaptor.getValue().stream().map(TiffStream::length).toList());
+        verify(formDao).insertForms(formModelsCaptor.capture());
+        assertEquals(List.of(IMAGE_ID, IMAGE_ID + 1, IMAGE_ID + 2),
+            formModelsCaptor.getValue().stream().map(FormModel::getImageId).toList());
+        assertEquals(List.of(1, 2, 3), formModelsCaptor.getValue().stream().map(FormModel::getNumberOfPages).toList());
+    }
+
+    @Test
+    void testInsertSubmissionOpensAtMostMaxOpenImagesAtOnce() {
+        // given
+        this.fesLoaderService = new FesLoaderServiceImpl(batchDao, envelopeDao, dateGenerator, imageDao, formDao,
+            tiffDownloadService, plsqlSubmissionDao, FesLoaderMode.DAO, transactionManager, 10, 2);
+        when(batchDao.getNextBatchId()).thenReturn(BATCH_ID);
+        when(dateGenerator.generateTimestamp()).thenReturn(LocalDateTime.of(2020, Month.MAY, 1, 12, 0));
+        when(batchDao.getBatchNameId(any())).thenReturn(BATCH_NAME_ID);
+        when(envelopeDao.getNextEnvelopeId()).thenReturn(ENVELOPE_ID);
+        when(model.getTiffFiles()).thenReturn(
+            List.of(new FesFileModel("one".getBytes(), 1), new FesFileModel("two".getBytes(), 2),
+                new FesFileModel("three".getBytes(), 3)));
+        when(imageDao.getNextImageId()).thenReturn(IMAGE_ID, IMAGE_ID + 1, IMAGE_ID + 2);
+
+        // when
+        fesLoaderService.insertSubmission(model);
+
+        // then
+        verify(imageDao).insertImages(eq(List.of(IMAGE_ID, IMAGE_ID + 1)), anyList());
+        verify(imageDao).insertImages(eq(List.of(IMAGE_ID + 2)), anyList());
+        verify(formDao).insertForms(formModelsCaptor.capture());
+        assertEquals(List.of(IMAGE_ID, IMAGE_ID + 1, IMAGE_ID + 2),
+            formModelsCaptor.getValue().stream().map(FormModel::getImageId).toList());
+    }
+
+    @Test
+    void testRejectsMaxOpenImagesBelowOne() {
+        assertThrows(IllegalArgumentException.class, () -> new FesLoaderServiceImpl(batchDao, envelopeDao,
+            dateGenerator, imageDao, formDao, tiffDownloadService, plsqlSubmissionDao, FesLoaderMode.DAO,
+            transactionManager, 10, 0));
+    }
+
+    @Test
+    void testInsertSubmissionReadsImageFromTiffBuffer() throws IOException {
+        // given
+        when(batchDao.getNextBatchId()).thenReturn(BATCH_ID);
+        when(dateGenerator.generateTimestamp()).thenReturn(LocalDateTime.of(2020, Month.MAY, 1, 12, 0));
+        when(batchDao.getBatchNameId(any())).thenReturn(BATCH_NAME_ID);
+        when(envelopeDao.getNextEnvelopeId()).thenReturn(ENVELOPE_ID);
+        when(model.getTiffFiles()).thenReturn(
+            Collections.singletonList(FesFileModel.buffered(TiffBuffer.wrap("Hello".getBytes()), 4)));
+        when(imageDao.getNextImageId()).thenReturn(IMAGE_ID);
+
+        // when
+        fesLoaderService.insertSubmission(model);
+
+        // then
+        verify(imageDao).insertImages(eq(List.of(IMAGE_ID)), imagesCaptor.capture());
+        assertEquals(5L, imagesCaptor.getValue().getFirst().length());
+        assertArrayEquals("Hello".getBytes(), imagesCaptor.getValue().getFirst().content().readAllBytes());
+    }
+
+    @Test
+    void testInsertSubmissionStreamsTiffIntoImage() throws IOException {
+        // given
+        LocalDateTime someDate = LocalDateTime.of(2020, Month.MAY, 1, 12, 0);
+        ByteArrayInputStream content = new ByteArrayInputStream("Hello".getBytes());
+
+        when(batchDao.getNextBatchId()).thenReturn(BATCH_ID);
+        when(dateGenerator.generateTimestamp()).thenReturn(someDate);
+        when(batchDao.getBatchNameId(any())).thenReturn(BATCH_NAME_ID);
+        when(envelopeDao.getNextEnvelopeId()).thenReturn(ENVELOPE_ID);
+        when(model.getTiffFiles()).thenReturn(Collections.singletonList(FesFileModel.streamed("converted", 4)));
+        when(imageDao.getNextImageId()).thenReturn(IMAGE_ID);
+        when(tiffDownloadService.openTiffFile("converted")).thenReturn(new TiffStream(content, 5L));
+
+        // when
+        fesLoaderService.insertSubmission(model);
+
+        // then
+        verify(imageDao).insertImages(eq(List.of(IMAGE_ID)), imagesCaptor.capture());
+        assertEquals(content, imagesCaptor.getValue().getFirst().content());
+        assertEquals(5L, imagesCaptor.getValue().getFirst().length());
+        verify(formDao).insertForms(formModelsCaptor.capture());
+        assertEquals(Long.valueOf(IMAGE_ID), formModelsCaptor.getValue().getFirst().getImageId());
+        assertEquals(Integer.valueOf(4), formModelsCaptor.getValue().getFirst().getNumberOfPages());
+    }
+
+    @Test
+    void testInsertSubmissionPropagatesTiffDownloadExceptionWhenStreamCannotBeOpened() {
+        // given
+        when(batchDao.getNextBatchId()).thenReturn(BATCH_ID);
+        when(dateGenerator.generateTimestamp()).thenReturn(LocalDateTime.of(2020, Month.MAY, 1, 12, 0));
+        when(batchDao.getBatchNameId(any())).thenReturn(BATCH_NAME_ID);
+        when(envelopeDao.getNextEnvelopeId()).thenReturn(ENVELOPE_ID);
+        when(model.getTiffFiles()).thenReturn(Collections.singletonList(FesFileModel.streamed("converted", 4)));
+        when(imageDao.getNextImageId()).thenReturn(IMAGE_ID);
+        when(tiffDownloadService.openTiffFile("converted")).thenThrow(new TiffDownloadException("stub"));
+
+        // when
+        Executable actual = () -> fesLoaderService.insertSubmission(model);
+
+        // then
+        assertThrows(TiffDownloadException.class, actual);
+        verifyNoInteractions(formDao);
     }
 
     @Test
@@ -147,4 +307,137 @@ class FesLoaderServiceImplTest {
         assertEquals("Error inserting submission - message [stub timeout]", exception.getMessage());
     }
 
+    @Test
+    void testInsertSubmissionInOnePlsqlCall() {
+        // given
+        usePlsqlMode();
+        LocalDateTime someDate = LocalDateTime.of(2020, Month.MAY, 1, 12, 0);
+        FesFileModel myTiff = new FesFileModel("Hello".getBytes(), 4);
+
+        when(batchDao.getNextBatchId()).thenReturn(BATCH_ID);
+        when(envelopeDao.getNextEnvelopeId()).thenReturn(ENVELOPE_ID);
+        when(dateGenerator.generateTimestamp()).thenReturn(someDate);
+        when(model.getTiffFiles()).thenReturn(Collections.singletonList(myTiff));
+        when(imageDao.getNextImageId()).thenReturn(IMAGE_ID);
+        when(model.getBarcode()).thenReturn(BARCODE);
+        when(model.getFormType()).thenReturn(FORM_TYPE);
+
+        // when
+        fesLoaderService.insertSubmission(model);
+
+        // then
+        verify(plsqlSubmissionDao).insertSubmission(eq(BATCH_ID), eq("EFS_200501"), eq(someDate), eq(ENVELOPE_ID),
+            formModelsCaptor.capture(), imagesCaptor.capture());
+        FormModel form = formModelsCaptor.getValue().getFirst();
+        assertEquals(BARCODE, form.getBarcode());
+        assertEquals(FORM_TYPE, form.getFormType());
+        assertEquals(Long.valueOf(IMAGE_ID), form.getImageId());
+        assertEquals(Long.valueOf(ENVELOPE_ID), form.getEnvelopeId());
+        assertEquals(Integer.valueOf(4), form.getNumberOfPages());
+        assertEquals(5L, imagesCaptor.getValue().getFirst().length());
+        verifyNoInteractions(formDao);
+        verify(batchDao, never()).getBatchNameId(any());
+        verify(batchDao, never()).insertBatch(anyLong(), any(), any());
+    }
+
+    @Test
+    void testInsertSubmissionInOnePlsqlCallStreamsTiffAndClosesIt() throws IOException {
+        // given
+        usePlsqlMode();
+        InputStream content = mock(InputStream.class);
+        TiffStream tiff = new TiffStream(content, 5L);
+
+        when(batchDao.getNextBatchId()).thenReturn(BATCH_ID);
+        when(envelopeDao.getNextEnvelopeId()).thenReturn(ENVELOPE_ID);
+        when(dateGenerator.generateTimestamp()).thenReturn(LocalDateTime.of(2020, Month.MAY, 1, 12, 0));
+        when(model.getTiffFiles()).thenReturn(Collections.singletonList(FesFileModel.streamed("converted", 4)));
+        when(imageDao.getNextImageId()).thenReturn(IMAGE_ID);
+        when(tiffDownloadService.openTiffFile("converted")).thenReturn(tiff);
+
+        // when
+        fesLoaderService.insertSubmission(model);
+
+        // then
+        verify(plsqlSubmissionDao).insertSubmission(eq(BATCH_ID), eq("EFS_200501"), any(), eq(ENVELOPE_ID),
+            anyList(), imagesCaptor.capture());
+        assertEquals(List.of(tiff), imagesCaptor.getValue());
+        verify(content).close();
+        verify(imageDao, never()).insertImages(anyList(), anyList());
+    }
+
+    @Test
+    void testInsertSubmissionInOnePlsqlCallThrowsFesLoadExceptionIfDAOThrowsADataAccessException() {
+        // given
+        usePlsqlMode();
+        when(dateGenerator.generateTimestamp()).thenReturn(LocalDateTime.of(2020, Month.MAY, 1, 12, 0));
+        when(model.getTiffFiles()).thenReturn(Collections.emptyList());
+        when(plsqlSubmissionDao.insertSubmission(anyLong(), any(), any(), anyLong(), anyList(), anyList()))
+            .thenThrow(new DuplicateKeyException("oops"));
+
+        // when
+        Executable actual = () -> fesLoaderService.insertSubmission(model);
+
+        // then
+        FesLoaderException exception = assertThrows(FesLoaderException.class, actual);
+        assertEquals("Error inserting submission - message [oops]", exception.getMessage());
+    }
+
+    @Test
+    void testInsertSubmissionsRollsBackFailedSubmissionToItsSavepoint() {
+        // given
+        Object firstSavepoint = new Object();
+        Object secondSavepoint = new Object();
+        DuplicateKeyException failure = new DuplicateKeyException("oops");
+        when(transactionManager.getTransaction(any())).thenReturn(transactionStatus);
+        when(transactionStatus.createSavepoint()).thenReturn(firstSavepoint, secondSavepoint);
+        when(dateGenerator.generateTimestamp()).thenReturn(LocalDateTime.of(2020, Month.MAY, 1, 12, 0));
+        when(batchDao.getNextBatchId()).thenReturn(BATCH_ID).thenThrow(failure);
+        when(batchDao.getBatchNameId(any())).thenReturn(BATCH_NAME_ID);
+        when(envelopeDao.getNextEnvelopeId()).thenReturn(ENVELOPE_ID);
+        when(model.getTiffFiles()).thenReturn(Collections.emptyList());
+
+        // when
+        Map<Integer, RuntimeException> failures = fesLoaderService.insertSubmissions(List.of(model, model));
+
+        // then
+        assertEquals(1, failures.size());
+        assertEquals(failure, failures.get(1).getCause());
+        verify(transactionStatus).releaseSavepoint(firstSavepoint);
+        verify(transactionStatus).rollbackToSavepoint(secondSavepoint);
+        verify(transactionStatus, never()).rollbackToSavepoint(firstSavepoint);
+        verify(transactionManager).commit(transactionStatus);
+        verify(batchDao).insertBatch(BATCH_ID, "EFS_200501_0432", LocalDateTime.of(2020, Month.MAY, 1, 12, 0));
+    }
+
+    @Test
+    void testInsertSubmissionsAllowsGroupTheTimeoutOfEachSubmission() {
+        // given
+        ArgumentCaptor<TransactionDefinition> definitionCaptor = ArgumentCaptor.forClass(TransactionDefinition.class);
+        when(transactionManager.getTransaction(definitionCaptor.capture())).thenReturn(transactionStatus);
+
+        // when
+        fesLoaderService.insertSubmissions(List.of());
+
+        // then
+        assertEquals(10, definitionCaptor.getValue().getTimeout());
+        verify(transactionManager).commit(transactionStatus);
+    }
+
+    @Test
+    void testInsertSubmissionsThrowsFesLoadExceptionIfGroupCommitFails() {
+        // given
+        when(transactionManager.getTransaction(any())).thenReturn(transactionStatus);
+        when(transactionStatus.createSavepoint()).thenReturn(new Object());
+        when(dateGenerator.generateTimestamp()).thenReturn(LocalDateTime.of(2020, Month.MAY, 1, 12, 0));
+        when(model.getTiffFiles()).thenReturn(Collections.emptyList());
+        doThrow(new TransactionSystemException("stub commit")).when(transactionManager).commit(transactionStatus);
+
+        // when
+        Executable actual = () -> fesLoaderService.insertSubmissions(List.of(model));
+
+        // then
+        FesLoaderException exception = assertThrows(FesLoaderException.class, actual);
+        assertEquals("Error committing [1] submissions - message [stub commit]", exception.getMessage());
+    }
+
 }
@@ -0,0 +1,814 @@
+package uk.gov.companieshouse.efs.api.events.service;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.TransactionTimedOutException;
+import uk.gov.companieshouse.api.model.efs.formtemplates.FormTemplateApi;
+import uk.gov.companieshouse.api.model.efs.submissions.SubmissionStatus;
+import uk.gov.companieshouse.efs.api.email.EmailService;
+import uk.gov.companieshouse.efs.api.email.model.InternalFailedConversionModel;
+import uk.gov.companieshouse.efs.api.events.service.exception.BarcodeException;
+import uk.gov.companieshouse.efs.api.events.service.exception.FesLoaderException;
+import uk.gov.companieshouse.efs.api.events.service.exception.InvalidTiffException;
+import uk.gov.companieshouse.efs.api.events.service.exception.TiffDownloadException;
+import uk.gov.companieshouse.efs.api.events.service.model.FesFileModel;
+import uk.gov.companieshouse.efs.api.events.service.model.FesLoaderModel;
+import uk.gov.companieshouse.efs.api.events.service.model.TiffBuffer;
+import uk.gov.companieshouse.efs.api.formtemplates.service.FormTemplateService;
+import uk.gov.companieshouse.efs.api.submissions.model.Company;
+import uk.gov.companieshouse.efs.api.submissions.model.FileDetails;
+import uk.gov.companieshouse.efs.api.submissions.model.FormDetails;
+import uk.gov.companieshouse.efs.api.submissions.model.Submission;
+import uk.gov.companieshouse.efs.api.submissions.service.SubmissionService;
+
+@ExtendWith(MockitoExtension.class)
+class FesSubmissionPipelineTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.now();
+
+    private FesSubmissionPipeline pipeline;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private TiffByteBudget tiffByteBudget;
+
+    @Mock
+    private Submission submission;
+
+    @Mock
+    private Submission failedSubmission;
+
+    @Mock
+    private Company company;
+
+    @Mock
+    private SubmissionService submissionService;
+
+    @Mock
+    private FormTemplateService formTemplateService;
+
+    @Mock
+    private FormDetails formDetails;
+
+    @Mock
+    private FileDetails fileDetails;
+
+    @Mock
+    private BarcodeGeneratorService barcodeGeneratorService;
+
+    @Mock
+    private TiffDownloadService tiffDownloadService;
+
+    @Mock
+    private TiffValidator tiffValidator;
+
+    @Mock
+    private TiffRecompressor tiffRecompressor;
+
+    @Mock
+    private FesLoaderService fesLoaderService;
+
+    @Mock
+    private EmailService emailService;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        tiffByteBudget = new TiffByteBudget(meterRegistry, 1);
+        lenient().when(tiffRecompressor.recompress(any(), any(), any())).thenAnswer(
+            invocation -> invocation.getArgument(1));
+        pipeline = createPipeline(1, 1, 1, false);
+    }
+
+    @ParameterizedTest(name = "sameDayIndicator: {0}")
+    @ValueSource(strings = {"N", "Y"})
+    void testSubmitToFes(final String sameDayIndicator) {
+        //given
+        String convertedFileId = "1234";
+        boolean sameDay = "Y".equalsIgnoreCase(sameDayIndicator);
+        when(barcodeGeneratorService.getBarcode(any(), any())).thenReturn("Y123XYZ");
+        when(submission.getId()).thenReturn("1234abcd");
+        when(submission.getFormDetails()).thenReturn(formDetails);
+        when(submission.getCompany()).thenReturn(company);
+        when(submission.getSubmittedAt()).thenReturn(NOW);
+        when(company.getCompanyName()).thenReturn("abc");
+        when(company.getCompanyNumber()).thenReturn("1223456");
+        when(formDetails.getFileDetailsList()).thenReturn(Collections.singletonList(fileDetails));
+        when(formDetails.getFormType()).thenReturn("SH01");
+        when(fileDetails.getConvertedFileId()).thenReturn(convertedFileId);
+        when(formTemplateService.getFormTemplate("SH01")).thenReturn(
+            new FormTemplateApi("SH01", "formName", "category", "", false, true, null, sameDay,
+                null));
+
+        //when
+        pipeline.submit(Collections.singletonList(submission));
+
+        //then
+        verify(submissionService).updateSubmissionBarcode("1234abcd", "Y123XYZ");
+        verify(barcodeGeneratorService, times(1)).getBarcode(NOW, "1234abcd");
+        verify(tiffDownloadService).downloadTiffFile(convertedFileId);
+        verify(fesLoaderService).insertSubmission(new FesLoaderModel("Y123XYZ", "abc", "1223456",
+                "SH01", sameDay, Collections.singletonList(new FesFileModel(null, 0)), NOW));
+        verify(submissionService).updateSubmissionStatus(submission.getId(), SubmissionStatus.SENT_TO_FES);
+    }
+
+    @Test
+    void testSubmitToFesWithMappedFesDocType() {
+        //given
+        String convertedFileId = "1234";
+        when(barcodeGeneratorService.getBarcode(any(), any())).thenReturn("Y123XYZ");
+        when(submission.getId()).thenReturn("1234abcd");
+        when(submission.getFormDetails()).thenReturn(formDetails);
+        when(submission.getCompany()).thenReturn(company);
+        when(submission.getSubmittedAt()).thenReturn(NOW);
+        when(company.getCompanyName()).thenReturn("abc");
+        when(company.getCompanyNumber()).thenReturn("1223456");
+        when(formDetails.getFileDetailsList()).thenReturn(Collections.singletonList(fileDetails));
+        when(formDetails.getFormType()).thenReturn("SH01");
+        when(fileDetails.getConvertedFileId()).thenReturn(convertedFileId);
+        when(formTemplateService.getFormTemplate("SH01")).thenReturn(
+            new FormTemplateApi("SH01", "formName", "category", "", false, true, "FES-DOC-TYPE", false, null));
+
+        //when
+        pipeline.submit(Collections.singletonList(submission));
+
+        //then
+        verify(submissionService).updateSubmissionBarcode("1234abcd", "Y123XYZ");
+        verify(barcodeGeneratorService, times(1)).getBarcode(NOW, "1234abcd");
+        verify(tiffDownloadService).downloadTiffFile(convertedFileId);
+        verify(fesLoaderService).insertSubmission(new FesLoaderModel("Y123XYZ", "abc", "1223456",
+                "FES-DOC-TYPE", false, Collections.singletonList(new FesFileModel(null, 0)), NOW));
+        verify(submissionService).updateSubmissionStatus(submission.getId(), SubmissionStatus.SENT_TO_FES);
+    }
+
+    @Test
+    void testSubmitToFesWhenNoSubmittedAtDate() {
+        //given
+        String convertedFileId = "1234";
+        when(barcodeGeneratorService.getBarcode(any(), any())).thenReturn("Y123XYZ");
+        when(submission.getId()).thenReturn("1234abcd");
+        when(submission.getFormDetails()).thenReturn(formDetails);
+        when(submission.getCompany()).thenReturn(company);
+        when(submission.getCreatedAt()).thenReturn(NOW);
+        when(submission.getSubmittedAt()).thenReturn(null);
+        when(company.getCompanyName()).thenReturn("abc");
+        when(company.getCompanyNumber()).thenReturn("1223456");
+        when(formDetails.getFileDetailsList()).thenReturn(Collections.singletonList(fileDetails));
+        when(formDetails.getFormType()).thenReturn("SH01");
+        when(fileDetails.getConvertedFileId()).thenReturn(convertedFileId);
+        when(formTemplateService.getFormTemplate("SH01")).thenReturn(
+            new FormTemplateApi("SH01", "formName", "category", "", false, true, null, false, null));
+
+        //when
+        pipeline.submit(Collections.singletonList(submission));
+
+        //then
+        verify(submissionService).updateSubmissionBarcode("1234abcd", "Y123XYZ");
+        verify(barcodeGeneratorService, times(1)).getBarcode(NOW, "1234abcd");
+        verify(tiffDownloadService).downloadTiffFile(convertedFileId);
+        verify(fesLoaderService).insertSubmission(new FesLoaderModel("Y123XYZ", "abc", "1223456",
+                "SH01", false, Collections.singletonList(new FesFileModel(null, 0)), NOW));
+        verify(submissionService).updateSubmissionStatus(submission.getId(), SubmissionStatus.SENT_TO_FES);
+    }
+
+
+    @Test
+    void testGetBarcodeException() {
+        //given
+        when(submission.getFormDetails()).thenReturn(formDetails);
+        when(barcodeGeneratorService.getBarcode(any(), any())).thenThrow(BarcodeException.class);
+
+        //when
+        pipeline.submit(Collections.singletonList(submission));
+
+        //then
+        verifyNoInteractions(submissionService, fesLoaderService, tiffDownloadService);
+    }
+
+    @Test
+    void testTiffDownloadException() {
+        //given
+        when(submission.getId()).thenReturn("1234abcd");
+        when(submission.getFormDetails()).thenReturn(formDetails);
+        when(formDetails.getFormType()).thenReturn("SH01");
+        when(formTemplateService.getFormTemplate("SH01")).thenReturn(
+            new FormTemplateApi("SH01", "formName", "category", "", false, true, null, false, null));
+        when(barcodeGeneratorService.getBarcode(any(), any())).thenReturn("Y123XYZ");
+        when(tiffDownloadService.downloadTiffFile(any())).thenThrow(TiffDownloadException.class);
+        when(formDetails.getFileDetailsList()).thenReturn(Collections.singletonList(fileDetails));
+
+        //when
+        pipeline.submit(Collections.singletonList(submission));
+
+        //then
+        verify(submissionService).updateSubmissionBarcode(submission.getId(), "Y123XYZ");
+        verifyNoInteractions(fesLoaderService);
+        verifyNoMoreInteractions(submissionService);
+    }
+
+    @Test
+    void formTemplateMissing() {
+        //given
+        when(submission.getId()).thenReturn("1234abcd");
+        when(submission.getFormDetails()).thenReturn(formDetails);
+        when(formDetails.getFormType()).thenReturn("SH01");
+        when(barcodeGeneratorService.getBarcode(any(), any())).thenReturn("Y123XYZ");
+
+        //when
+        pipeline.submit(Collections.singletonList(submission));
+
+        //then
+        verify(submissionService).updateSubmissionBarcode(submission.getId(), "Y123XYZ");
+        verifyNoInteractions(fesLoaderService, tiffDownloadService);
+        verifyNoMoreInteractions(submissionService);
+    }
+
+    @Test
+    void testHandlesFesLoaderException() {
+        //given
+        String convertedFileId = "1234";
+        when(barcodeGeneratorService.getBarcode(any(), any())).thenReturn("Y123XYZ");
+        when(submission.getFormDetails()).thenReturn(formDetails);
+
+        when(submission.getCompany()).thenReturn(company);
+        when(company.getCompanyName()).thenReturn("abc");
+        when(company.getCompanyNumber()).thenReturn("1223456");
+
+
+        when(formDetails.getFileDetailsList()).thenReturn(Collections.singletonList(fileDetails));
+        when(formDetails.getFormType()).thenReturn("SH01");
+        when(formTemplateService.getFormTemplate("SH01")).thenReturn(
+            new FormTemplateApi("SH01", "formName", "category", "", false, true, null, false, null));
+
+        when(fileDetails.getConvertedFileId()).thenReturn(convertedFileId);
+
+        doThrow(FesLoaderException.class).when(fesLoaderService).insertSubmission(any());
+
+        // when
+        pipeline.submit(Collections.singletonList(submission));
+
+        // then
+        verify(submissionService).updateSubmissionBarcode(submission.getId(), "Y123XYZ");
+        verify(fesLoaderService).insertSubmission(any());
+        verifyNoMoreInteractions(submissionService);
+    }
+
+    @Test
+    void testHandlesInvalidTiffException() {
+        // given
+        String convertedFileId = "1234";
+        when(submission.getId()).thenReturn("1234abcd");
+        when(submission.getFormDetails()).thenReturn(formDetails);
+        when(formDetails.getFileDetailsList()).thenReturn(Collections.singletonList(fileDetails));
+        when(formDetails.getFormType()).thenReturn("SH01");
+        when(formTemplateService.getFormTemplate("SH01")).thenReturn(
+            new FormTemplateApi("SH01", "formName", "category", "", false, true, null, false, null));
+        when(fileDetails.getConvertedFileId()).thenReturn(convertedFileId);
+        when(barcodeGeneratorService.getBarcode(any(), any())).thenReturn("Y123XYZ");
+        when(submission.getCompany()).thenReturn(company);
+        when(company.getCompanyName()).thenReturn("abc");
+        when(company.getCompanyNumber()).thenReturn("1223456");
+
+        doThrow(InvalidTiffException.class).when(fesLoaderService).insertSubmission(any());
+        // when
+        pipeline.submit(Collections.singletonList(submission));
+
+        // then
+        verify(submissionService).updateSubmissionBarcode("1234abcd", "Y123XYZ");
+        verify(fesLoaderService).insertSubmission(any());
+        verify(submissionService).updateSubmissionStatus("1234abcd", SubmissionStatus.REJECTED_BY_DOCUMENT_CONVERTER);
+        verify(emailService).sendInternalFailedConversion(new InternalFailedConversionModel(submission, List.of()));
+        verifyNoMoreInteractions(submissionService);
+    }
+
+    @Test
+    void testHandlesMultipleSubmissionsWhenOneFailsWithBarcodeException() {
+        // given
+        String convertedFileId = "1234";
+        when(submission.getId()).thenReturn("1234abcd");
+        when(barcodeGeneratorService.getBarcode(any(), any())).thenReturn("Y123XYZ").thenThrow(BarcodeException.class);
+
+        when(submission.getFormDetails()).thenReturn(formDetails);
+        when(failedSubmission.getFormDetails()).thenReturn(formDetails);
+        when(formDetails.getFileDetailsList()).thenReturn(Collections.singletonList(fileDetails));
+        when(formDetails.getFormType()).thenReturn("SH01");
+        when(formTemplateService.getFormTemplate("SH01")).thenReturn(
+            new FormTemplateApi("SH01", "formName", "category", "", false, true, null, false, null));
+        when(fileDetails.getConvertedFileId()).thenReturn(convertedFileId);
+
+        when(submission.getSubmittedAt()).thenReturn(NOW);
+        when(submission.getCompany()).thenReturn(company);
+        when(company.getCompanyName()).thenReturn("abc");
+        when(company.getCompanyNumber()).thenReturn("1223456");
+
+        // when
+        pipeline.submit(getSubmissionList());
+
+        // then
+        verify(barcodeGeneratorService, times(2)).getBarcode(any(), any());
+        verify(submissionService, times(1)).updateSubmissionBarcode("1234abcd", "Y123XYZ");
+        verify(tiffDownloadService, times(1)).downloadTiffFile(convertedFileId);
+        verify(fesLoaderService, times(1)).insertSubmission(
+                new FesLoaderModel("Y123XYZ", "abc", "1223456", "SH01", false,
+                    Collections.singletonList(new FesFileModel(null, 0)), NOW));
+        verify(submissionService, times(1)).updateSubmissionStatus(submission.getId(), SubmissionStatus.SENT_TO_FES);
+    }
+
+    @Test
+    void testControllerDoesNotCallBarcodeServiceAgainIfSubmissionAlreadyHasBarcode() {
+        //given
+        String convertedFileId = "1234";
+        when(submission.getId()).thenReturn("1234abcd");
+        when(submission.getFormDetails()).thenReturn(formDetails);
+        when(submission.getSubmittedAt()).thenReturn(NOW);
+        when(submission.getCompany()).thenReturn(company);
+        when(company.getCompanyName()).thenReturn("abc");
+        when(company.getCompanyNumber()).thenReturn("1223456");
+
+        when(formDetails.getFileDetailsList()).thenReturn(Collections.singletonList(fileDetails));
+        when(formDetails.getFormType()).thenReturn("SH01");
+        when(formDetails.getBarcode()).thenReturn("Y9999999");
+        when(formTemplateService.getFormTemplate("SH01")).thenReturn(
+            new FormTemplateApi("SH01", "formName", "category", "", false, true, null, false, null));
+
+        when(fileDetails.getConvertedFileId()).thenReturn(convertedFileId);
+
+        //when
+        pipeline.submit(Collections.singletonList(submission));
+
+        //then
+        verify(submissionService, times(0)).updateSubmissionBarcode(any(), any());
+        verifyNoInteractions(barcodeGeneratorService);
+        verify(tiffDownloadService).downloadTiffFile(convertedFileId);
+        verify(fesLoaderService).insertSubmission(new FesLoaderModel("Y9999999", "abc", "1223456",
+                "SH01", false, Collections.singletonList(new FesFileModel(null, 0)), NOW));
+        verify(submissionService).updateSubmissionStatus(submission.getId(), SubmissionStatus.SENT_TO_FES);
+    }
+
+    @Test
+    void handleFesDatasourceTransactionTimeout() {
+        //given
+        String convertedFileId = "1234";
+        when(barcodeGeneratorService.getBarcode(any(), any())).thenReturn("Y123XYZ");
+        when(submission.getId()).thenReturn("1234abcd");
+        when(submission.getFormDetails()).thenReturn(formDetails);
+        when(submission.getCompany()).thenReturn(company);
+        when(submission.getSubmittedAt()).thenReturn(NOW);
+        when(company.getCompanyName()).thenReturn("abc");
+        when(company.getCompanyNumber()).thenReturn("1223456");
+        when(formDetails.getFileDetailsList()).thenReturn(Collections.singletonList(fileDetails));
+        when(formDetails.getFormType()).thenReturn("SH01");
+        when(fileDetails.getConvertedFileId()).thenReturn(convertedFileId);
+        when(formTemplateService.getFormTemplate("SH01")).thenReturn(
+                new FormTemplateApi("SH01", "formName", "category", "", false, true, null, false,
+                        null));
+        doThrow(new FesLoaderException("stub exception"), new TransactionTimedOutException("stub timeout")).when(
+                fesLoaderService).insertSubmission(any(FesLoaderModel.class));
+
+        //when
+        pipeline.submit(Collections.singletonList(submission));
+
+        //then
+        verify(submissionService).updateSubmissionBarcode("1234abcd", "Y123XYZ");
+        verify(barcodeGeneratorService, times(1)).getBarcode(NOW, "1234abcd");
+        verify(tiffDownloadService).downloadTiffFile(convertedFileId);
+        verify(fesLoaderService).insertSubmission(new FesLoaderModel("Y123XYZ", "abc", "1223456",
+                "SH01", false, Collections.singletonList(new FesFileModel(null, 0)), NOW));
+        verify(submissionService, never()).updateSubmissionStatus(submission.getId(), SubmissionStatus.SENT_TO_FES);
+        verifyNoMoreInteractions(submissionService, tiffDownloadService, fesLoaderService);
+    }
+
+    @Test
+    void testSubmitWithNoSubmissions() {
+        //when
+        pipeline.submit(Collections.emptyList());
+
+        //then
+        verifyNoInteractions(barcodeGeneratorService, formTemplateService, tiffDownloadService, fesLoaderService,
+            submissionService);
+    }
+
+    @Test
+    void testPreparesLaterSubmissionsWhileEarlierSubmissionIsLoading() {
+        //given
+        final List<Submission> submissions = createSubmissions(3);
+        final CountDownLatch lastPrepared = new CountDownLatch(1);
+        final AtomicBoolean overlapped = new AtomicBoolean();
+        when(formTemplateService.getFormTemplate("SH01")).thenReturn(
+            new FormTemplateApi("SH01", "formName", "category", "", false, true, null, false, null));
+        when(barcodeGeneratorService.getBarcode(any(), any())).thenReturn("Y1", "Y2", "Y3");
+        doAnswer(invocation -> {
+            if (((String) invocation.getArgument(1)).equals("Y3")) {
+                lastPrepared.countDown();
+            }
+            return null;
+        }).when(submissionService).updateSubmissionBarcode(any(), any());
+        doAnswer(invocation -> {
+            if (((FesLoaderModel) invocation.getArgument(0)).getBarcode().equals("Y1")) {
+                overlapped.set(lastPrepared.await(5, TimeUnit.SECONDS));
+            }
+            return null;
+        }).when(fesLoaderService).insertSubmission(any());
+
+        //when
+        createPipeline(4, 4, 1, false).submit(submissions);
+
+        //then
+        assertThat(overlapped.get(), is(true));
+        verify(fesLoaderService, times(3)).insertSubmission(any());
+        verify(submissionService, times(3)).updateSubmissionStatus(any(), any());
+    }
+
+    @Test
+    void testLoadStageConcurrencyIsLimited() {
+        //given
+        final List<Submission> submissions = createSubmissions(6);
+        final AtomicInteger inserting = new AtomicInteger();
+        final AtomicInteger maxInserting = new AtomicInteger();
+        when(formTemplateService.getFormTemplate("SH01")).thenReturn(
+            new FormTemplateApi("SH01", "formName", "category", "", false, true, null, false, null));
+        when(barcodeGeneratorService.getBarcode(any(), any())).thenReturn("Y123XYZ");
+        doAnswer(invocation -> {
+            maxInserting.accumulateAndGet(inserting.incrementAndGet(), Math::max);
+            Thread.sleep(20);
+            inserting.decrementAndGet();
+            return null;
+        }).when(fesLoaderService).insertSubmission(any());
+
+        //when
+        createPipeline(4, 4, 2, false).submit(submissions);
+
+        //then
+        assertThat(maxInserting.get() <= 2, is(true));
+        verify(fesLoaderService, times(6)).insertSubmission(any());
+    }
+
+    @Test
+    void testReportsStageMetrics() {
+        //given
+        final List<Submission> submissions = createSubmissions(2);
+        when(formTemplateService.getFormTemplate("SH01")).thenReturn(
+            new FormTemplateApi("SH01", "formName", "category", "", false, true, null, false, null));
+        when(barcodeGeneratorService.getBarcode(any(), any())).thenReturn("Y123XYZ");
+
+        //when
+        pipeline.submit(submissions);
+
+        //then
+        for (final String stage : List.of("prepare", "download", "load")) {
+            assertThat(meterRegistry.get("efs.fes.pipeline.stage").tag("stage", stage).timer().count(), is(2L));
+            assertThat(meterRegistry.get("efs.fes.pipeline.stage.queued").tag("stage", stage).gauge().value(),
+                is(0.0));
+            assertThat(meterRegistry.get("efs.fes.pipeline.stage.active").tag("stage", stage).gauge().value(),
+                is(0.0));
+        }
+    }
+
+    @Test
+    void testRethrowsUnexpectedExceptionAfterOtherSubmissionsComplete() {
+        //given
+        final List<Submission> submissions = createSubmissions(2);
+        when(formTemplateService.getFormTemplate("SH01")).thenReturn(
+            new FormTemplateApi("SH01", "formName", "category", "", false, true, null, false, null));
+        when(barcodeGeneratorService.getBarcode(any(), any())).thenReturn("Y123XYZ");
+        doThrow(new IllegalStateException("stub")).doNothing().when(fesLoaderService).insertSubmission(any());
+
+        //when
+        assertThrows(IllegalStateException.class, () -> pipeline.submit(submissions));
+
+        //then
+        verify(fesLoaderService, times(2)).insertSubmission(any());
+        verify(submissionService).updateSubmissionStatus("id1", SubmissionStatus.SENT_TO_FES);
+    }
+
+    @Test
+    void testStreamsTiffsIntoFesInsteadOfDownloadingThem() {
+        //given
+        final List<Submission> submissions = createSubmissions(1);
+        when(formTemplateService.getFormTemplate("SH01")).thenReturn(
+            new FormTemplateApi("SH01", "formName", "category", "", false, true, null, false, null));
+        when(barcodeGeneratorService.getBarcode(any(), any())).thenReturn("Y123XYZ");
+
+        //when
+        createPipeline(1, 1, 1, true).submit(submissions);
+
+        //then
+        verifyNoInteractions(tiffDownloadService);
+        verify(fesLoaderService).insertSubmission(new FesLoaderModel("Y123XYZ", "abc", "1223456", "SH01", false,
+            Collections.singletonList(FesFileModel.streamed("converted0", null)), NOW));
+    }
+
+    @Test
+    void testRejectsConcurrencyBelowOne() {
+        assertThrows(IllegalArgumentException.class, () -> createPipeline(1, 0, 1, false));
+    }
+
+    @Test
+    void testGroupCommitReportsFailedSubmissionAlone() {
+        //given
+        final List<Submission> submissions = createSubmissions(3);
+        final List<String> inserted = Collections.synchronizedList(new ArrayList<>());
+        when(formTemplateService.getFormTemplate("SH01")).thenReturn(
+            new FormTemplateApi("SH01", "formName", "category", "", false, true, null, false, null));
+        when(barcodeGeneratorService.getBarcode(any(), any())).thenReturn("Y1", "Y2", "Y3");
+        when(fesLoaderService.insertSubmissions(any())).thenAnswer(invocation -> {
+            final List<FesLoaderModel> models = invocation.getArgument(0);
+            final Map<Integer, RuntimeException> failures = new HashMap<>();
+            for (int i = 0; i < models.size(); i++) {
+                inserted.add(models.get(i).getBarcode());
+                if (models.get(i).getBarcode().equals("Y2")) {
+                    failures.put(i, new FesLoaderException("stub"));
+                }
+            }
+            return failures;
+        });
+
+        //when
+        createPipeline(1, 1, 1, false, 3).submit(submissions);
+
+        //then
+        assertThat(inserted, is(List.of("Y1", "Y2", "Y3")));
+        verify(fesLoaderService, never()).insertSubmission(any());
+        verify(submissionService).updateSubmissionStatus("id0", SubmissionStatus.SENT_TO_FES);
+        verify(submissionService, never()).updateSubmissionStatus("id1", SubmissionStatus.SENT_TO_FES);
+        verify(submissionService).updateSubmissionStatus("id2", SubmissionStatus.SENT_TO_FES);
+    }
+
+    @Test
+    void testGroupCommitInsertsSubmissionsQueuedWhileLoadStageIsBusy() {
+        //given
+        final List<Submission> submissions = createSubmissions(3);
+        final List<Integer> groupSizes = Collections.synchronizedList(new ArrayList<>());
+        when(formTemplateService.getFormTemplate("SH01")).thenReturn(
+            new FormTemplateApi("SH01", "formName", "category", "", false, true, null, false, null));
+        when(barcodeGeneratorService.getBarcode(any(), any())).thenReturn("Y123XYZ");
+        when(fesLoaderService.insertSubmissions(any())).thenAnswer(invocation -> {
+            if (groupSizes.isEmpty()) {
+                // hold the first group until the submissions behind it are waiting for the load stage
+                final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+                while (meterRegistry.get("efs.fes.pipeline.stage.queued").tag("stage", "load").gauge().value() < 2
+                    && System.nanoTime() < deadline) {
+                    Thread.sleep(5);
+                }
+            }
+            groupSizes.add(((List<?>) invocation.getArgument(0)).size());
+            return Map.of();
+        });
+
+        //when
+        createPipeline(4, 4, 1, false, 3).submit(submissions);
+
+        //then
+        assertThat(groupSizes.stream().mapToInt(Integer::intValue).sum(), is(3));
+        assertThat(groupSizes.size() < 3, is(true));
+        verify(submissionService, times(3)).updateSubmissionStatus(any(), any());
+    }
+
+    @Test
+    void testGroupCommitFailureFailsWholeGroup() {
+        //given
+        final List<Submission> submissions = createSubmissions(2);
+        when(formTemplateService.getFormTemplate("SH01")).thenReturn(
+            new FormTemplateApi("SH01", "formName", "category", "", false, true, null, false, null));
+        when(barcodeGeneratorService.getBarcode(any(), any())).thenReturn("Y123XYZ");
+        when(fesLoaderService.insertSubmissions(any())).thenThrow(new FesLoaderException("stub commit"));
+
+        //when
+        createPipeline(1, 1, 1, false, 2).submit(submissions);
+
+        //then
+        verify(submissionService, never()).updateSubmissionStatus(any(), any());
+    }
+
+    @Test
+    void testReleasesTiffBudgetOnceSubmissionLoaded() {
+        //given
+        final List<Submission> submissions = createSubmissions(2);
+        final List<Double> usedWhileLoading = Collections.synchronizedList(new ArrayList<>());
+        when(formTemplateService.getFormTemplate("SH01")).thenReturn(
+            new FormTemplateApi("SH01", "formName", "category", "", false, true, null, false, null));
+        when(barcodeGeneratorService.getBarcode(any(), any())).thenReturn("Y123XYZ");
+        when(tiffDownloadService.getTiffFileLength(any())).thenReturn(100L);
+        when(tiffDownloadService.downloadTiffFile(any())).thenAnswer(invocation -> TiffBuffer.wrap(new byte[100]));
+        doAnswer(invocation -> {
+            usedWhileLoading.add(meterRegistry.get("efs.tiff.budget.used.bytes").gauge().value());
+            return null;
+        }).when(fesLoaderService).insertSubmission(any());
+        doThrow(new FesLoaderException("stub")).doNothing().when(submissionService)
+            .updateSubmissionStatus(any(), any());
+
+        //when
+        pipeline.submit(submissions);
+
+        //then
+        assertThat(usedWhileLoading.getFirst() >= 100.0, is(true));
+        assertThat(meterRegistry.get("efs.tiff.budget.used.bytes").gauge().value(), is(0.0));
+    }
+
+    @Test
+    void testReleasesTiffBuffersAfterFesTransaction() {
+        //given
+        final List<Submission> submissions = createSubmissions(2);
+        final AtomicInteger released = new AtomicInteger();
+        final List<Integer> releasedWhileLoading = Collections.synchronizedList(new ArrayList<>());
+        when(formTemplateService.getFormTemplate("SH01")).thenReturn(
+            new FormTemplateApi("SH01", "formName", "category", "", false, true, null, false, null));
+        when(barcodeGeneratorService.getBarcode(any(), any())).thenReturn("Y123XYZ");
+        when(tiffDownloadService.downloadTiffFile(any())).thenAnswer(
+            invocation -> new TiffBuffer(ByteBuffer.allocate(100), buffer -> released.incrementAndGet()));
+        doAnswer(invocation -> {
+            releasedWhileLoading.add(released.get());
+            return null;
+        }).doThrow(new FesLoaderException("stub")).when(fesLoaderService).insertSubmission(any());
+
+        //when
+        pipeline.submit(submissions);
+
+        //then
+        assertThat(releasedWhileLoading, is(List.of(0)));
+        assertThat(released.get(), is(2));
+    }
+
+    @Test
+    void testRejectsInvalidTiffBeforeFesInsert() {
+        //given
+        final List<Submission> submissions = createSubmissions(1);
+        final AtomicInteger released = new AtomicInteger();
+        final TiffBuffer tiff = new TiffBuffer(ByteBuffer.allocate(100), buffer -> released.incrementAndGet());
+        when(formTemplateService.getFormTemplate("SH01")).thenReturn(
+            new FormTemplateApi("SH01", "formName", "category", "", false, true, null, false, null));
+        when(barcodeGeneratorService.getBarcode(any(), any())).thenReturn("Y123XYZ");
+        when(tiffDownloadService.downloadTiffFile("converted0")).thenReturn(tiff);
+        doThrow(new InvalidTiffException("converted0", "stub", null)).when(tiffValidator)
+            .validate("converted0", tiff, null);
+
+        //when
+        pipeline.submit(submissions);
+
+        //then
+        verifyNoInteractions(fesLoaderService);
+        verify(submissionService).updateSubmissionStatus("id0", SubmissionStatus.REJECTED_BY_DOCUMENT_CONVERTER);
+        verify(submissionService, never()).updateSubmissionStatus("id0", SubmissionStatus.SENT_TO_FES);
+        verify(emailService).sendInternalFailedConversion(
+            new InternalFailedConversionModel(submissions.getFirst(), List.of("file0.pdf")));
+        assertThat(released.get(), is(1));
+    }
+
+    @Test
+    void testInsertsRecompressedTiffReleasingDownloadedOne() {
+        //given
+        final List<Submission> submissions = createSubmissions(1);
+        final AtomicInteger released = new AtomicInteger();
+        final TiffBuffer downloaded = new TiffBuffer(ByteBuffer.allocate(1000), buffer -> released.incrementAndGet());
+        final TiffBuffer recompressed = TiffBuffer.wrap(new byte[100]);
+        final List<Double> usedWhileLoading = Collections.synchronizedList(new ArrayList<>());
+        when(formTemplateService.getFormTemplate("SH01")).thenReturn(
+            new FormTemplateApi("SH01", "formName", "category", "", false, true, null, false, null));
+        when(barcodeGeneratorService.getBarcode(any(), any())).thenReturn("Y123XYZ");
+        when(tiffDownloadService.getTiffFileLength("converted0")).thenReturn(1000L);
+        when(tiffDownloadService.downloadTiffFile("converted0")).thenReturn(downloaded);
+        when(tiffRecompressor.recompress("converted0", downloaded, "SH01")).thenReturn(recompressed);
+        doAnswer(invocation -> {
+            usedWhileLoading.add(meterRegistry.get("efs.tiff.budget.used.bytes").gauge().value());
+            return null;
+        }).when(fesLoaderService).insertSubmission(any());
+
+        //when
+        pipeline.submit(submissions);
+
+        //then
+        verify(fesLoaderService).insertSubmission(new FesLoaderModel("Y123XYZ", "abc", "1223456", "SH01", false,
+            Collections.singletonList(FesFileModel.buffered(recompressed, null)), NOW));
+        assertThat(usedWhileLoading, is(List.of(100.0)));
+        assertThat(released.get(), is(1));
+        assertThat(meterRegistry.get("efs.tiff.budget.used.bytes").gauge().value(), is(0.0));
+    }
+
+    @Test
+    void testReleasesTiffBudgetOfEarlierFilesWhenLaterDownloadFails() {
+        //given
+        when(formTemplateService.getFormTemplate("SH01")).thenReturn(
+            new FormTemplateApi("SH01", "formName", "category", "", false, true, null, false, null));
+        when(barcodeGeneratorService.getBarcode(any(), any())).thenReturn("Y123XYZ");
+        when(tiffDownloadService.getTiffFileLength(any())).thenReturn(100L);
+        when(tiffDownloadService.downloadTiffFile("id0-converted0")).thenReturn(TiffBuffer.wrap(new byte[100]));
+        when(tiffDownloadService.downloadTiffFile("id0-converted1")).thenThrow(new TiffDownloadException("stub"));
+
+        //when
+        createPipeline(1, 1, 1, false).submit(List.of(createTwoFileSubmission("id0")));
+
+        //then
+        verifyNoInteractions(fesLoaderService);
+        assertThat(meterRegistry.get("efs.tiff.budget.used.bytes").gauge().value(), is(0.0));
+    }
+
+    @Test
+    void testReservesTiffBudgetForAllFilesOfSubmissionBeforeDownloading() {
+        //given
+        final List<Double> usedWhileLoading = Collections.synchronizedList(new ArrayList<>());
+        when(formTemplateService.getFormTemplate("SH01")).thenReturn(
+            new FormTemplateApi("SH01", "formName", "category", "", false, true, null, false, null));
+        when(barcodeGeneratorService.getBarcode(any(), any())).thenReturn("Y123XYZ");
+        when(tiffDownloadService.getTiffFileLength(any())).thenReturn(600 * 1024L);
+        when(tiffDownloadService.downloadTiffFile(any())).thenAnswer(invocation -> TiffBuffer.wrap(new byte[1]));
+        doAnswer(invocation -> {
+            usedWhileLoading.add(meterRegistry.get("efs.tiff.budget.used.bytes").gauge().value());
+            return null;
+        }).when(fesLoaderService).insertSubmission(any());
+
+        //when
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> createPipeline(1, 2, 1, false).submit(
+            List.of(createTwoFileSubmission("id0"), createTwoFileSubmission("id1"))));
+
+        //then
+        assertThat(usedWhileLoading, is(List.of(1200.0 * 1024, 1200.0 * 1024)));
+        assertThat(meterRegistry.get("efs.tiff.budget.used.bytes").gauge().value(), is(0.0));
+    }
+
+    @Test
+    void testRejectsLoadGroupSizeBelowOne() {
+        assertThrows(IllegalArgumentException.class, () -> createPipeline(1, 1, 1, false, 0));
+    }
+
+    private FesSubmissionPipeline createPipeline(final int prepareConcurrency, final int downloadConcurrency,
+        final int loadConcurrency, final boolean streamTiffs) {
+        return createPipeline(prepareConcurrency, downloadConcurrency, loadConcurrency, streamTiffs, 1);
+    }
+
+    private FesSubmissionPipeline createPipeline(final int prepareConcurrency, final int downloadConcurrency,
+        final int loadConcurrency, final boolean streamTiffs, final int loadGroupSize) {
+        return new FesSubmissionPipeline(submissionService, formTemplateService, barcodeGeneratorService,
+            tiffDownloadService, tiffByteBudget, tiffValidator, tiffRecompressor, fesLoaderService, emailService,
+            meterRegistry, prepareConcurrency, downloadConcurrency, loadConcurrency, streamTiffs, loadGroupSize);
+    }
+
+    private static Submission createTwoFileSubmission(final String id) {
+        return Submission.builder()
+            .withId(id)
+            .withSubmittedAt(NOW)
+            .withCompany(new Company("1223456", "abc"))
+            .withFormDetails(FormDetails.builder()
+                .withFormType("SH01")
+                .withFileDetailsList(List.of(FileDetails.builder().withConvertedFileId(id + "-converted0").build(),
+                    FileDetails.builder().withConvertedFileId(id + "-converted1").build()))
+                .build())
+            .build();
+    }
+
+    private List<Submission> createSubmissions(final int count) {
+        final List<Submission> submissions = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            submissions.add(Submission.builder()
+                .withId("id" + i)
+                .withSubmittedAt(NOW)
+                .withCompany(new Company("1223456", "abc"))
+                .withFormDetails(FormDetails.builder()
+                    .withFormType("SH01")
+                    .withFileDetailsList(Collections.singletonList(FileDetails.builder().withConvertedFileId(
+                        "converted" + i).withFileName("file" + i + ".pdf").build()))
+                    .build())
+                .build());
+        }
+        return submissions;
+    }
+
+    private List<Submission> getSubmissionList() {
+        List<Submission> submissions = new ArrayList<>();
+        submissions.add(submission);
+        submissions.add(failedSubmission);
+        return submissions;
+    }
+}
@@ -0,0 +1,38 @@
+package uk.gov.companieshouse.efs.api.events.service;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+class MessageGroupStrategyTest {
+
+    @ParameterizedTest
+    @CsvSource({
+        "GLOBAL, efs-submission-api",
+        "SUBMISSION, efs-submission-api:abc123",
+        "FILE, efs-submission-api:abc123:file1"})
+    void getMessageGroupId(final MessageGroupStrategy.Mode mode, final String expected) {
+        final var strategy = new MessageGroupStrategy(mode, 4);
+
+        assertThat(strategy.getMessageGroupId("abc123", "file1"), is(expected));
+    }
+
+    @Test
+    void getMessageGroupIdHashesSubmissionIntoBucket() {
+        final var strategy = new MessageGroupStrategy(MessageGroupStrategy.Mode.BUCKET, 4);
+        final String expected = "efs-submission-api:" + Math.floorMod("abc123".hashCode(), 4);
+
+        assertThat(strategy.getMessageGroupId("abc123", "file1"), is(expected));
+        assertThat(strategy.getMessageGroupId("abc123", "file2"), is(expected));
+    }
+
+    @Test
+    void constructorRejectsNonPositiveBucketCount() {
+        assertThrows(IllegalArgumentException.class,
+            () -> new MessageGroupStrategy(MessageGroupStrategy.Mode.BUCKET, 0));
+    }
+}
@@ -1,15 +1,29 @@
 package uk.gov.companieshouse.efs.api.events.service;
 
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -17,10 +31,14 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
-import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.services.sqs.SqsAsyncClient;
+import software.amazon.awssdk.services.sqs.model.BatchResultErrorEntry;
 import software.amazon.awssdk.services.sqs.model.MessageAttributeValue;
 import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequest;
 import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequestEntry;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchResponse;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchResultEntry;
 import uk.gov.companieshouse.efs.api.events.service.model.Decision;
 import uk.gov.companieshouse.efs.api.submissions.model.FileDetails;
 import uk.gov.companieshouse.efs.api.submissions.model.FormDetails;
@@ -33,14 +51,24 @@ class SqsMessageServiceTest {
     private SqsMessageService messageService;
 
     @Mock
-    private SqsClient client;
+    private SqsAsyncClient client;
 
     @Mock
     private IdentifierGeneratable idGenerator;
 
+    private SimpleMeterRegistry meterRegistry;
+
+    private List<Submission> notified;
+
+    private List<List<Submission>> notifications;
+
     @BeforeEach
     void setUp() {
-        this.messageService = new SqsMessageService(client, idGenerator, "queue", 2);
+        this.meterRegistry = new SimpleMeterRegistry();
+        this.notified = new ArrayList<>();
+        this.notifications = new ArrayList<>();
+        this.messageService = new SqsMessageService(client, idGenerator, "queue", 2,
+            new MessageGroupStrategy(MessageGroupStrategy.Mode.GLOBAL, 1), meterRegistry, 3, 0, 10);
     }
 
     @Test
@@ -74,29 +102,378 @@ class SqsMessageServiceTest {
         when(decisionSingleFile.getSubmission()).thenReturn(submissionSingleFile);
         when(decisionMultiFile.getSubmission()).thenReturn(submissionMultiFile);
         List<Decision> completedSubmissions = Arrays.asList(decisionSingleFile, decisionMultiFile);
-        when(idGenerator.generateId()).thenReturn("id1", "deduplicationId1", "id2", "deduplicationId2", "id3",
-                "deduplicationId3");
+        when(idGenerator.generateId()).thenReturn("id1", "id2", "id3");
+        when(client.sendMessageBatch(any(SendMessageBatchRequest.class))).thenAnswer(invocation -> acceptAll(
+                invocation.getArgument(0)));
 
         //when
-        messageService.queueMessages(completedSubmissions);
+        Set<String> queued = messageService.queueMessages(completedSubmissions, this::recordQueued);
 
         //then
+        assertThat(queued, is(Set.of("abc123", "abc124")));
+        assertThat(notified, containsInAnyOrder(submissionSingleFile, submissionMultiFile));
         verify(client).sendMessageBatch(expectedSendMessageBatchRequestPart1());
         verify(client).sendMessageBatch(expectedSendMessageBatchRequestPart2());
     }
 
+    @Test
+    void testSqsMessageServiceGroupsMessagesBySubmission() {
+        //given
+        final var groupedService = new SqsMessageService(client, idGenerator, "queue", 2,
+            new MessageGroupStrategy(MessageGroupStrategy.Mode.SUBMISSION, 1), meterRegistry, 3, 0, 10);
+        Submission submission = Submission.builder()
+                .withId("abc123")
+                .withFormDetails(new FormDetails(null, null, Collections.singletonList(
+                        new FileDetails("1234-5678-9012-3456", "out.txt", 5L, null, null, null, null))))
+                .build();
+        Decision decision = mock(Decision.class);
+        when(decision.getSubmission()).thenReturn(submission);
+        when(idGenerator.generateId()).thenReturn("id1");
+        when(client.sendMessageBatch(any(SendMessageBatchRequest.class))).thenAnswer(invocation -> acceptAll(
+                invocation.getArgument(0)));
+
+        //when
+        groupedService.queueMessages(Collections.singletonList(decision), this::recordQueued);
+
+        //then
+        verify(client).sendMessageBatch(SendMessageBatchRequest.builder()
+                .queueUrl("queue")
+                .entries(SendMessageBatchRequestEntry.builder()
+                        .id("id1")
+                        .messageBody("efs-submission-api")
+                        .messageAttributes(expectedEntries("abc123", "1234-5678-9012-3456"))
+                        .messageGroupId("efs-submission-api:abc123")
+                        .messageDeduplicationId("abc123:1234-5678-9012-3456:1")
+                        .build())
+                .build());
+    }
+
+    @Test
+    void testSqsMessageServiceDerivesDeduplicationIdFromQueueAttempt() {
+        //given
+        FileDetails file = FileDetails.builder().withFileId("1234-5678-9012-3456").withQueueAttempts(2).build();
+        Submission submission = Submission.builder()
+                .withId("abc123")
+                .withFormDetails(new FormDetails(null, null, Collections.singletonList(file)))
+                .build();
+        Decision decision = mock(Decision.class);
+        when(decision.getSubmission()).thenReturn(submission);
+        when(idGenerator.generateId()).thenReturn("id1");
+        when(client.sendMessageBatch(any(SendMessageBatchRequest.class))).thenAnswer(invocation -> acceptAll(
+                invocation.getArgument(0)));
+
+        //when
+        messageService.queueMessages(Collections.singletonList(decision), this::recordQueued);
+
+        //then
+        verify(client).sendMessageBatch(SendMessageBatchRequest.builder()
+                .queueUrl("queue")
+                .entries(SendMessageBatchRequestEntry.builder()
+                        .id("id1")
+                        .messageBody("efs-submission-api")
+                        .messageAttributes(expectedEntries("abc123", "1234-5678-9012-3456"))
+                        .messageGroupId("efs-submission-api")
+                        .messageDeduplicationId("abc123:1234-5678-9012-3456:3")
+                        .build())
+                .build());
+    }
+
+    @Test
+    void testSqsMessageServiceCountsDuplicatesSentWithinDeduplicationInterval() {
+        //given
+        Submission submission = Submission.builder()
+                .withId("abc123")
+                .withFormDetails(new FormDetails(null, null, Collections.singletonList(
+                        new FileDetails("1234-5678-9012-3456", "out.txt", 5L, null, null, null, null))))
+                .build();
+        Decision decision = mock(Decision.class);
+        when(decision.getSubmission()).thenReturn(submission);
+        when(idGenerator.generateId()).thenReturn("id1", "id2");
+        when(client.sendMessageBatch(any(SendMessageBatchRequest.class))).thenAnswer(invocation -> acceptAll(
+                invocation.getArgument(0)));
+
+        //when
+        messageService.queueMessages(Collections.singletonList(decision), this::recordQueued);
+        messageService.queueMessages(Collections.singletonList(decision), this::recordQueued);
+
+        //then
+        assertThat(meterRegistry.counter("efs.sqs.messages.duplicates").count(), is(1.0));
+    }
+
+    @Test
+    void testSqsMessageServiceDoesNotCountFirstSendAsDuplicate() {
+        //given
+        Submission submission = Submission.builder()
+                .withId("abc123")
+                .withFormDetails(new FormDetails(null, null, Collections.singletonList(
+                        new FileDetails("1234-5678-9012-3456", "out.txt", 5L, null, null, null, null))))
+                .build();
+        Decision decision = mock(Decision.class);
+        when(decision.getSubmission()).thenReturn(submission);
+        when(idGenerator.generateId()).thenReturn("id1");
+        when(client.sendMessageBatch(any(SendMessageBatchRequest.class))).thenAnswer(invocation -> acceptAll(
+                invocation.getArgument(0)));
+
+        //when
+        messageService.queueMessages(Collections.singletonList(decision), this::recordQueued);
+
+        //then
+        assertThat(meterRegistry.counter("efs.sqs.messages.duplicates").count(), is(0.0));
+    }
+
+    @Test
+    void testSqsMessageServiceResendsEntriesThatFailedThroughNoFaultOfTheRequest() {
+        //given
+        Decision decision = singleFileDecision("abc123", "1234-5678-9012-3456");
+        when(idGenerator.generateId()).thenReturn("id1");
+        when(client.sendMessageBatch(any(SendMessageBatchRequest.class))).thenReturn(
+                CompletableFuture.completedFuture(SendMessageBatchResponse.builder()
+                        .failed(BatchResultErrorEntry.builder().id("id1").code("InternalError").senderFault(false)
+                                .build())
+                        .build()))
+                .thenAnswer(invocation -> acceptAll(invocation.getArgument(0)));
+
+        //when
+        Set<String> queued = messageService.queueMessages(Collections.singletonList(decision), this::recordQueued);
+
+        //then
+        assertThat(queued, is(Set.of("abc123")));
+        verify(client, times(2)).sendMessageBatch(any(SendMessageBatchRequest.class));
+    }
+
+    @Test
+    void testSqsMessageServiceResendsPartitionWhenRequestFails() {
+        //given
+        Decision decision = singleFileDecision("abc123", "1234-5678-9012-3456");
+        when(idGenerator.generateId()).thenReturn("id1");
+        when(client.sendMessageBatch(any(SendMessageBatchRequest.class))).thenReturn(
+                CompletableFuture.failedFuture(SdkClientException.create("connection reset")))
+                .thenAnswer(invocation -> acceptAll(invocation.getArgument(0)));
+
+        //when
+        Set<String> queued = messageService.queueMessages(Collections.singletonList(decision), this::recordQueued);
+
+        //then
+        assertThat(queued, is(Set.of("abc123")));
+        verify(client, times(2)).sendMessageBatch(any(SendMessageBatchRequest.class));
+    }
+
+    @Test
+    void testSqsMessageServiceDoesNotResendSenderFaults() {
+        //given
+        Decision decision = singleFileDecision("abc123", "1234-5678-9012-3456");
+        when(idGenerator.generateId()).thenReturn("id1");
+        when(client.sendMessageBatch(any(SendMessageBatchRequest.class))).thenReturn(
+                CompletableFuture.completedFuture(SendMessageBatchResponse.builder()
+                        .failed(BatchResultErrorEntry.builder().id("id1").code("InvalidParameterValue")
+                                .senderFault(true).build())
+                        .build()));
+
+        //when
+        Set<String> queued = messageService.queueMessages(Collections.singletonList(decision), this::recordQueued);
+
+        //then
+        assertThat(queued, is(Set.of()));
+        verify(client).sendMessageBatch(any(SendMessageBatchRequest.class));
+    }
+
+    @Test
+    void testSqsMessageServiceGivesUpAfterMaxAttempts() {
+        //given
+        Decision decision = singleFileDecision("abc123", "1234-5678-9012-3456");
+        when(idGenerator.generateId()).thenReturn("id1");
+        when(client.sendMessageBatch(any(SendMessageBatchRequest.class))).thenReturn(
+                CompletableFuture.failedFuture(SdkClientException.create("connection reset")));
+
+        //when
+        Set<String> queued = messageService.queueMessages(Collections.singletonList(decision), this::recordQueued);
+
+        //then
+        assertThat(queued, is(Set.of()));
+        verify(client, times(3)).sendMessageBatch(any(SendMessageBatchRequest.class));
+    }
+
+    @Test
+    void testSqsMessageServiceOnlyReportsSubmissionsWithEveryFileQueued() {
+        //given
+        Submission submission = Submission.builder()
+                .withId("abc124")
+                .withFormDetails(new FormDetails(null, null, Arrays.asList(
+                        new FileDetails("1234-5678-9012-3457", "1.txt", 5L, null, null, null, null),
+                        new FileDetails("1234-5678-9012-3458", "2.txt", 6L, null, null, null, null))))
+                .build();
+        Decision multiFileDecision = mock(Decision.class);
+        when(multiFileDecision.getSubmission()).thenReturn(submission);
+        Decision singleFileDecision = singleFileDecision("abc123", "1234-5678-9012-3456");
+        when(idGenerator.generateId()).thenReturn("id1", "id2", "id3");
+        when(client.sendMessageBatch(any(SendMessageBatchRequest.class))).thenAnswer(invocation -> {
+            SendMessageBatchRequest request = invocation.getArgument(0);
+            if (request.entries().getFirst().id().equals("id1")) {
+                return CompletableFuture.completedFuture(SendMessageBatchResponse.builder()
+                        .successful(SendMessageBatchResultEntry.builder().id("id1").build())
+                        .failed(BatchResultErrorEntry.builder().id("id2").code("InvalidParameterValue")
+                                .senderFault(true).build())
+                        .build());
+            }
+            return acceptAll(request);
+        });
+
+        //when
+        Set<String> queued = messageService.queueMessages(Arrays.asList(multiFileDecision, singleFileDecision),
+                this::recordQueued);
+
+        //then
+        assertThat(queued, is(Set.of("abc123")));
+        assertThat(notified, contains(singleFileDecision.getSubmission()));
+    }
+
+    @Test
+    void testSqsMessageServiceReportsSubmissionNotQueuedWhenRecordingItFails() {
+        //given
+        Decision decision = singleFileDecision("abc123", "1234-5678-9012-3456");
+        when(idGenerator.generateId()).thenReturn("id1");
+        when(client.sendMessageBatch(any(SendMessageBatchRequest.class))).thenAnswer(invocation -> acceptAll(
+                invocation.getArgument(0)));
+
+        //when
+        Set<String> queued = messageService.queueMessages(Collections.singletonList(decision), submissions -> {
+            throw new IllegalStateException("stub");
+        });
+
+        //then
+        assertThat(queued, is(Set.of()));
+    }
+
+    @Test
+    void testSqsMessageServiceReportsOnlySubmissionsRecordedAsQueued() {
+        //given
+        List<Decision> decisions = Arrays.asList(singleFileDecision("abc123", "1234-5678-9012-3456"),
+                singleFileDecision("abc124", "1234-5678-9012-3457"));
+        when(idGenerator.generateId()).thenReturn("id1", "id2");
+        when(client.sendMessageBatch(any(SendMessageBatchRequest.class))).thenAnswer(invocation -> acceptAll(
+                invocation.getArgument(0)));
+
+        //when
+        Set<String> queued = messageService.queueMessages(decisions, submissions -> Set.of("abc124"));
+
+        //then
+        assertThat(queued, is(Set.of("abc124")));
+    }
+
+    @Test
+    void testSqsMessageServiceRecordsSubmissionsOfAPartitionTogether() {
+        //given
+        Decision first = singleFileDecision("abc123", "1234-5678-9012-3456");
+        Decision second = singleFileDecision("abc124", "1234-5678-9012-3457");
+        Decision third = singleFileDecision("abc125", "1234-5678-9012-3458");
+        when(idGenerator.generateId()).thenReturn("id1", "id2", "id3");
+        when(client.sendMessageBatch(any(SendMessageBatchRequest.class))).thenAnswer(invocation -> acceptAll(
+                invocation.getArgument(0)));
+
+        //when
+        Set<String> queued = messageService.queueMessages(Arrays.asList(first, second, third), this::recordQueued);
+
+        //then
+        assertThat(queued, is(Set.of("abc123", "abc124", "abc125")));
+        assertThat(notifications, containsInAnyOrder(List.of(first.getSubmission(), second.getSubmission()),
+                List.of(third.getSubmission())));
+    }
+
+    @Test
+    void testSqsMessageServiceSplitsSubmissionWithMoreFilesThanFitInOnePartition() {
+        //given
+        Submission submission = Submission.builder()
+                .withId("abc124")
+                .withFormDetails(new FormDetails(null, null, Arrays.asList(
+                        new FileDetails("1234-5678-9012-3457", "1.txt", 5L, null, null, null, null),
+                        new FileDetails("1234-5678-9012-3458", "2.txt", 6L, null, null, null, null),
+                        new FileDetails("1234-5678-9012-3459", "3.txt", 7L, null, null, null, null))))
+                .build();
+        Decision decision = mock(Decision.class);
+        when(decision.getSubmission()).thenReturn(submission);
+        when(idGenerator.generateId()).thenReturn("id1", "id2", "id3");
+        when(client.sendMessageBatch(any(SendMessageBatchRequest.class))).thenAnswer(invocation -> acceptAll(
+                invocation.getArgument(0)));
+
+        //when
+        Set<String> queued = messageService.queueMessages(Collections.singletonList(decision), this::recordQueued);
+
+        //then
+        assertThat(queued, is(Set.of("abc124")));
+        verify(client, times(2)).sendMessageBatch(any(SendMessageBatchRequest.class));
+    }
+
+    @Test
+    void testSqsMessageServiceLimitsPartitionsInFlight() {
+        //given
+        final var limitedService = new SqsMessageService(client, idGenerator, "queue", 1,
+            new MessageGroupStrategy(MessageGroupStrategy.Mode.GLOBAL, 1), meterRegistry, 3, 0, 1);
+        List<Decision> decisions = Arrays.asList(singleFileDecision("abc123", "1234-5678-9012-3456"),
+                singleFileDecision("abc124", "1234-5678-9012-3457"),
+                singleFileDecision("abc125", "1234-5678-9012-3458"));
+        when(idGenerator.generateId()).thenReturn("id1", "id2", "id3");
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        when(client.sendMessageBatch(any(SendMessageBatchRequest.class))).thenAnswer(invocation -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            return CompletableFuture.supplyAsync(() -> {
+                inFlight.decrementAndGet();
+                return acceptAll(invocation.getArgument(0)).join();
+            }, CompletableFuture.delayedExecutor(20, TimeUnit.MILLISECONDS));
+        });
+
+        //when
+        Set<String> queued = limitedService.queueMessages(decisions, this::recordQueued);
+
+        //then
+        assertThat(queued, is(Set.of("abc123", "abc124", "abc125")));
+        assertThat(maxInFlight.get(), is(1));
+    }
+
+    @Test
+    void testSqsMessageServiceRejectsMaxInFlightBelowOne() {
+        assertThrows(IllegalArgumentException.class, () -> new SqsMessageService(client, idGenerator, "queue", 2,
+            new MessageGroupStrategy(MessageGroupStrategy.Mode.GLOBAL, 1), meterRegistry, 3, 0, 0));
+    }
+
     @Test
     void testSqsMessageServiceWithEmptySubmissionList() {
         //given
         List<Decision> completedSubmissions = Collections.emptyList();
 
         //when
-        messageService.queueMessages(completedSubmissions);
+        Set<String> queued = messageService.queueMessages(completedSubmissions, this::recordQueued);
 
         //then
+        assertThat(queued, is(Set.of()));
         verifyNoInteractions(client);
     }
 
+    private Set<String> recordQueued(List<Submission> submissions) {
+        notifications.add(submissions);
+        notified.addAll(submissions);
+        return submissions.stream().map(Submission::getId).collect(Collectors.toSet());
+    }
+
+    private Decision singleFileDecision(String submissionId, String fileId) {
+        Submission submission = Submission.builder()
+                .withId(submissionId)
+                .withFormDetails(new FormDetails(null, null, Collections.singletonList(
+                        new FileDetails(fileId, "out.txt", 5L, null, null, null, null))))
+                .build();
+        Decision decision = mock(Decision.class);
+        when(decision.getSubmission()).thenReturn(submission);
+        return decision;
+    }
+
+    private static CompletableFuture<SendMessageBatchResponse> acceptAll(SendMessageBatchRequest request) {
+        return CompletableFuture.completedFuture(SendMessageBatchResponse.builder()
+                .successful(request.entries().stream()
+                        .map(entry -> SendMessageBatchResultEntry.builder().id(entry.id()).build())
+                        .toList())
+                .build());
+    }
+
     private SendMessageBatchRequest expectedSendMessageBatchRequestPart1() {
         return SendMessageBatchRequest.builder()
                 .queueUrl("queue")
@@ -105,13 +482,7 @@ class SqsMessageServiceTest {
                         .messageBody("efs-submission-api")
                         .messageAttributes(expectedEntries("abc123", "1234-5678-9012-3456"))
                         .messageGroupId("efs-submission-api")
-                        .messageDeduplicationId("deduplicationId1")
-                        .build(), SendMessageBatchRequestEntry.builder()
-                        .id("id2")
-                        .messageBody("efs-submission-api")
-                        .messageAttributes(expectedEntries("abc124", "1234-5678-9012-3457"))
-                        .messageGroupId("efs-submission-api")
-                        .messageDeduplicationId("deduplicationId2")
+                        .messageDeduplicationId("abc123:1234-5678-9012-3456:1")
                         .build())
                 .build();
     }
@@ -120,11 +491,17 @@ class SqsMessageServiceTest {
         return SendMessageBatchRequest.builder()
                 .queueUrl("queue")
                 .entries(SendMessageBatchRequestEntry.builder()
+                        .id("id2")
+                        .messageBody("efs-submission-api")
+                        .messageAttributes(expectedEntries("abc124", "1234-5678-9012-3457"))
+                        .messageGroupId("efs-submission-api")
+                        .messageDeduplicationId("abc124:1234-5678-9012-3457:1")
+                        .build(), SendMessageBatchRequestEntry.builder()
                         .id("id3")
                         .messageBody("efs-submission-api")
                         .messageAttributes(expectedEntries("abc124", "1234-5678-9012-3458"))
                         .messageGroupId("efs-submission-api")
-                        .messageDeduplicationId("deduplicationId3")
+                        .messageDeduplicationId("abc124:1234-5678-9012-3458:1")
                         .build())
                 .build();
     }
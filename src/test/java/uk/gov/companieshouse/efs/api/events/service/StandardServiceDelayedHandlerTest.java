@@ -1,7 +1,11 @@
 package uk.gov.companieshouse.efs.api.events.service;
 
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
@@ -14,6 +18,7 @@ import java.time.format.DateTimeFormatter;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -22,6 +27,7 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import uk.gov.companieshouse.api.model.efs.submissions.SubmissionStatus;
 import uk.gov.companieshouse.efs.api.email.EmailService;
 import uk.gov.companieshouse.efs.api.email.FormCategoryToEmailAddressService;
+import uk.gov.companieshouse.efs.api.email.exception.EmailServiceException;
 import uk.gov.companieshouse.efs.api.email.model.DelayedSubmissionBusinessEmailModel;
 import uk.gov.companieshouse.efs.api.email.model.DelayedSubmissionBusinessModel;
 import uk.gov.companieshouse.efs.api.email.model.DelayedSubmissionSupportEmailModel;
@@ -154,6 +160,8 @@ class StandardServiceDelayedHandlerTest {
         when(submission.getSubmittedAt()).thenReturn(delayedFrom.minusSeconds(5));
         when(formCategoryToEmailAddressService.getEmailAddressForFormCategory("CC01")).thenReturn(
             "cc@ch.gov.uk");
+        when(emailService.sendDelayedSubmissionBusinessEmailAsync(any())).thenReturn(
+            CompletableFuture.completedFuture(null));
 
         // when
         testHandler.buildAndSendEmails(submissions, NOW);
@@ -165,7 +173,7 @@ class StandardServiceDelayedHandlerTest {
                     .format(FORMATTER),
                     submission.getPresenter().getEmail(),
                     submission.getCompany().getCompanyNumber())), SUPPORT_DELAY * 60));
-        verify(emailService).sendDelayedSubmissionBusinessEmail(
+        verify(emailService).sendDelayedSubmissionBusinessEmailAsync(
             new DelayedSubmissionBusinessEmailModel(
                 Collections.singletonList(createBusinessModel(delayedFrom, "CC01")), "cc@ch.gov.uk",
                 BUSINESS_DELAY * 60));
@@ -195,6 +203,8 @@ class StandardServiceDelayedHandlerTest {
             "cc@ch.gov.uk");
         when(formCategoryToEmailAddressService.getEmailAddressForFormCategory("RP03")).thenReturn(
             "rp@ch.gov.uk");
+        when(emailService.sendDelayedSubmissionBusinessEmailAsync(any())).thenReturn(
+            CompletableFuture.completedFuture(null));
 
         // when
         testHandler.buildAndSendEmails(submissions, NOW);
@@ -208,11 +218,11 @@ class StandardServiceDelayedHandlerTest {
         verify(emailService).sendDelayedSubmissionSupportEmail(
             new DelayedSubmissionSupportEmailModel(
                 Arrays.asList(supportModel, supportModel, supportModel), SUPPORT_DELAY * 60));
-        verify(emailService).sendDelayedSubmissionBusinessEmail(
+        verify(emailService).sendDelayedSubmissionBusinessEmailAsync(
             new DelayedSubmissionBusinessEmailModel(
                 Arrays.asList(createBusinessModel(delayedFrom, "CC01"),
                     createBusinessModel(delayedFrom, "CC03")), "cc@ch.gov.uk", BUSINESS_DELAY * 60));
-        verify(emailService).sendDelayedSubmissionBusinessEmail(
+        verify(emailService).sendDelayedSubmissionBusinessEmailAsync(
             new DelayedSubmissionBusinessEmailModel(
                 Collections.singletonList(createBusinessModel(delayedFrom, "RP03")), "rp@ch.gov.uk",
                 BUSINESS_DELAY * 60));
@@ -221,6 +231,38 @@ class StandardServiceDelayedHandlerTest {
         verifyNoMoreInteractions(emailService, formCategoryToEmailAddressService);
     }
 
+    @Test
+    void buildAndSendEmailsSendsEveryBusinessEmailBeforeReportingFailure() {
+        //given
+        final LocalDateTime delayedFrom = NOW.minusHours(BUSINESS_DELAY);
+        final List<Submission> submissions = Arrays.asList(submission, submission);
+        final EmailServiceException failure = new EmailServiceException("stub");
+
+        when(submission.getId()).thenReturn("123abd");
+        when(submission.getConfirmationReference()).thenReturn("345efg");
+        when(submission.getCompany()).thenReturn(new Company("00000007", "RITCHIE GROUP"));
+        when(submission.getFormDetails()).thenReturn(
+            FormDetails.builder().withFormType("CC01").build())
+            .thenReturn(FormDetails.builder().withFormType("RP03").build());
+        when(submission.getPresenter()).thenReturn(new Presenter("demo@ch.gov.uk"));
+        when(submission.getLastModifiedAt()).thenReturn(delayedFrom.minusSeconds(1));
+        when(submission.getSubmittedAt()).thenReturn(delayedFrom.minusSeconds(5));
+        when(formCategoryToEmailAddressService.getEmailAddressForFormCategory("CC01")).thenReturn(
+            "cc@ch.gov.uk");
+        when(formCategoryToEmailAddressService.getEmailAddressForFormCategory("RP03")).thenReturn(
+            "rp@ch.gov.uk");
+        when(emailService.sendDelayedSubmissionBusinessEmailAsync(any())).thenReturn(
+            CompletableFuture.failedFuture(failure), CompletableFuture.completedFuture(null));
+
+        // when
+        final EmailServiceException actual = assertThrows(EmailServiceException.class,
+            () -> testHandler.buildAndSendEmails(submissions, NOW));
+
+        // then
+        assertThat(actual, is(sameInstance(failure)));
+        verify(emailService, times(2)).sendDelayedSubmissionBusinessEmailAsync(any());
+    }
+
     private DelayedSubmissionBusinessModel createBusinessModel(final LocalDateTime delayedFrom,
         final String formType) {
         return new DelayedSubmissionBusinessModel("345efg", "00000007", formType, "demo@ch.gov.uk",
@@ -0,0 +1,70 @@
+package uk.gov.companieshouse.efs.api.events.service;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import uk.gov.companieshouse.api.model.efs.submissions.SubmissionStatus;
+import uk.gov.companieshouse.efs.api.submissions.model.Submission;
+import uk.gov.companieshouse.efs.api.submissions.repository.SubmissionRepository;
+import uk.gov.companieshouse.efs.api.util.IdentifierGeneratable;
+
+@ExtendWith(MockitoExtension.class)
+class SubmissionLeaseServiceTest {
+
+    private static final String INSTANCE_ID = "instance-id";
+
+    private SubmissionLeaseService testService;
+
+    @Mock
+    private SubmissionRepository repository;
+
+    @Mock
+    private IdentifierGeneratable idGenerator;
+
+    @BeforeEach
+    void setUp() {
+        when(idGenerator.generateId()).thenReturn(INSTANCE_ID);
+        testService = new SubmissionLeaseService(repository, idGenerator, "", 60);
+    }
+
+    @Test
+    void leaseOwnerDefaultsToApplicationNameAndInstanceId() {
+        assertThat(testService.getLeaseOwner(), is("efs-submission-api:" + INSTANCE_ID));
+    }
+
+    @Test
+    void leaseOwnerUsesConfiguredPrefix() {
+        final var service = new SubmissionLeaseService(repository, idGenerator, "pod-1", 60);
+
+        assertThat(service.getLeaseOwner(), is("pod-1:" + INSTANCE_ID));
+    }
+
+    @Test
+    void claimDelegatesToRepositoryWithOwnerAndDuration() {
+        final List<Submission> claimed = Collections.singletonList(Submission.builder().withId("1").build());
+        when(repository.claimByStatusOrderByPriority(SubmissionStatus.SUBMITTED, 10,
+            "efs-submission-api:" + INSTANCE_ID, Duration.ofSeconds(60))).thenReturn(claimed);
+
+        final var result = testService.claim(SubmissionStatus.SUBMITTED, 10);
+
+        assertThat(result, is(claimed));
+    }
+
+    @Test
+    void releaseReleasesLeasesOnSubmissionIds() {
+        testService.release(List.of(Submission.builder().withId("1").build(),
+            Submission.builder().withId("2").build()));
+
+        verify(repository).releaseLeases(List.of("1", "2"), "efs-submission-api:" + INSTANCE_ID);
+    }
+}
@@ -0,0 +1,129 @@
+package uk.gov.companieshouse.efs.api.events.service;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import javax.imageio.stream.ImageInputStream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import uk.gov.companieshouse.efs.api.events.service.model.TiffBuffer;
+
+class TiffBufferPoolTest {
+
+    private static final int MB = 1024 * 1024;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @Test
+    void testReusesReleasedBuffer() throws IOException {
+        //given
+        final TiffBufferPool pool = new TiffBufferPool(meterRegistry, 1, 1);
+        final TiffBuffer first = pool.take(5);
+        first.readFrom(new ByteArrayInputStream("Hello".getBytes()));
+        first.release();
+
+        //when
+        final TiffBuffer second = pool.take(3);
+        second.readFrom(new ByteArrayInputStream("Bye".getBytes()));
+
+        //then
+        assertThat(second.isDirect(), is(true));
+        assertThat(new String(second.newInputStream().readAllBytes()), is("Bye"));
+        assertThat(meterRegistry.get("efs.tiff.buffer.pool.allocated").gauge().value(), is(1.0));
+        assertThat(meterRegistry.get("efs.tiff.buffer.pool.used").gauge().value(), is(1.0));
+    }
+
+    @Test
+    void testHoldsTiffOnHeapWhenEveryBufferInUse() {
+        //given
+        final TiffBufferPool pool = new TiffBufferPool(meterRegistry, 1, 1);
+        pool.take(5);
+
+        //when
+        final TiffBuffer overflow = pool.take(5);
+
+        //then
+        assertThat(overflow.isDirect(), is(false));
+        assertThat(meterRegistry.get("efs.tiff.buffer.pool.misses").counter().count(), is(1.0));
+        overflow.release();
+        assertThat(meterRegistry.get("efs.tiff.buffer.pool.used").gauge().value(), is(1.0));
+    }
+
+    @Test
+    void testHoldsTiffLargerThanBufferOnHeap() {
+        //given
+        final TiffBufferPool pool = new TiffBufferPool(meterRegistry, 1, 1);
+
+        //when
+        final TiffBuffer large = pool.take(MB + 1L);
+
+        //then
+        assertThat(large.isDirect(), is(false));
+        assertThat(large.length(), is(MB + 1));
+        assertThat(meterRegistry.get("efs.tiff.buffer.pool.allocated").gauge().value(), is(0.0));
+    }
+
+    @Test
+    void testHoldsEveryTiffOnHeapWhenPoolDisabled() {
+        //given
+        final TiffBufferPool pool = new TiffBufferPool(meterRegistry, 0, 1);
+
+        //when
+        final TiffBuffer tiff = pool.take(5);
+
+        //then
+        assertThat(tiff.isDirect(), is(false));
+        assertThat(meterRegistry.get("efs.tiff.buffer.pool.misses").counter().count(), is(0.0));
+    }
+
+    @Test
+    void testReleasingTwiceReturnsBufferOnce() {
+        //given
+        final TiffBufferPool pool = new TiffBufferPool(meterRegistry, 1, 1);
+        final TiffBuffer tiff = pool.take(5);
+
+        //when
+        tiff.release();
+        tiff.release();
+
+        //then
+        assertThat(meterRegistry.get("efs.tiff.buffer.pool.used").gauge().value(), is(0.0));
+        assertThrows(IllegalStateException.class, tiff::newInputStream);
+    }
+
+    @Test
+    void testImageInputStreamReadsPooledBufferInPlace() throws IOException {
+        //given
+        final TiffBufferPool pool = new TiffBufferPool(meterRegistry, 1, 1);
+        final TiffBuffer tiff = pool.take(5);
+        tiff.readFrom(new ByteArrayInputStream("Hello".getBytes()));
+
+        //when
+        try (ImageInputStream input = tiff.newImageInputStream()) {
+            input.seek(1);
+            final byte[] bytes = new byte[8];
+            final int count = input.read(bytes);
+
+            //then
+            assertThat(input.length(), is(5L));
+            assertThat(new String(bytes, 0, count), is("ello"));
+            assertThat(input.read(), is(-1));
+        }
+        assertThat(tiff.isDirect(), is(true));
+        assertThat(new String(tiff.newInputStream().readAllBytes()), is("Hello"));
+    }
+
+    @Test
+    void testRejectsNegativePoolSize() {
+        assertThrows(IllegalArgumentException.class, () -> new TiffBufferPool(meterRegistry, -1, 8));
+    }
+}
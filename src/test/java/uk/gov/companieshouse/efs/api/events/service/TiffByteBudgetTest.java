@@ -0,0 +1,131 @@
+package uk.gov.companieshouse.efs.api.events.service;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class TiffByteBudgetTest {
+
+    private static final long MB = 1024L * 1024L;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @Test
+    void testReportsBudgetAndUsage() {
+        //given
+        final TiffByteBudget budget = new TiffByteBudget(meterRegistry, 2);
+
+        //when
+        final TiffByteBudget.Reservation reservation = budget.acquire(1500);
+
+        //then
+        assertThat(meterRegistry.get("efs.tiff.budget.bytes").gauge().value(), is(2.0 * MB));
+        assertThat(meterRegistry.get("efs.tiff.budget.used.bytes").gauge().value(), is(1500.0));
+        reservation.release();
+        assertThat(meterRegistry.get("efs.tiff.budget.used.bytes").gauge().value(), is(0.0));
+        assertThat(meterRegistry.get("efs.tiff.budget.wait").timer().count(), is(0L));
+    }
+
+    @Test
+    void testWaitsUntilBudgetReleased() throws Exception {
+        //given
+        final TiffByteBudget budget = new TiffByteBudget(meterRegistry, 1);
+        final TiffByteBudget.Reservation reservation = budget.acquire(MB);
+
+        //when
+        final CompletableFuture<Void> waiting = CompletableFuture.runAsync(() -> budget.acquire(1));
+        Thread.sleep(50);
+
+        //then
+        assertThat(waiting.isDone(), is(false));
+        reservation.release();
+        waiting.get(5, TimeUnit.SECONDS);
+        assertThat(meterRegistry.get("efs.tiff.budget.wait").timer().count(), is(1L));
+    }
+
+    @Test
+    void testTiffLargerThanBudgetReservesWholeBudget() throws Exception {
+        //given
+        final TiffByteBudget budget = new TiffByteBudget(meterRegistry, 1);
+
+        //when
+        final TiffByteBudget.Reservation reservation = budget.acquire(3 * MB);
+        final CompletableFuture<Void> waiting = CompletableFuture.runAsync(() -> budget.acquire(1));
+        Thread.sleep(50);
+
+        //then
+        assertThat(waiting.isDone(), is(false));
+        reservation.release();
+        waiting.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void testReleasingReservationGivesBackOnlyWhatItTookOnce() throws Exception {
+        //given
+        final TiffByteBudget budget = new TiffByteBudget(meterRegistry, 1);
+        final TiffByteBudget.Reservation reservation = budget.acquire(3 * MB);
+
+        //when
+        reservation.release();
+        reservation.release();
+        final TiffByteBudget.Reservation held = budget.acquire(MB);
+        final CompletableFuture<Void> waiting = CompletableFuture.runAsync(() -> budget.acquire(1));
+        Thread.sleep(50);
+
+        //then
+        assertThat(waiting.isDone(), is(false));
+        assertThat(meterRegistry.get("efs.tiff.budget.used.bytes").gauge().value(), is((double) MB));
+        held.release();
+        waiting.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void testReducingReservationGivesBackPermitsNoLongerNeeded() throws Exception {
+        //given
+        final TiffByteBudget budget = new TiffByteBudget(meterRegistry, 1);
+        final TiffByteBudget.Reservation reservation = budget.acquire(3 * MB);
+
+        //when
+        reservation.reduce(3 * MB - MB / 2);
+        budget.acquire(MB / 2);
+        final CompletableFuture<Void> waiting = CompletableFuture.runAsync(() -> budget.acquire(1));
+        Thread.sleep(50);
+
+        //then
+        assertThat(waiting.isDone(), is(false));
+        assertThat(meterRegistry.get("efs.tiff.budget.used.bytes").gauge().value(), is((double) MB));
+        reservation.release();
+        reservation.release();
+        waiting.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void testDoesNotWaitWhenUnlimited() {
+        //given
+        final TiffByteBudget budget = new TiffByteBudget(meterRegistry, 0);
+
+        //when
+        budget.acquire(10 * MB);
+        budget.acquire(10 * MB);
+
+        //then
+        assertThat(meterRegistry.get("efs.tiff.budget.used.bytes").gauge().value(), is(20.0 * MB));
+        assertThat(meterRegistry.get("efs.tiff.budget.wait").timer().count(), is(0L));
+    }
+
+    @Test
+    void testRejectsNegativeBudget() {
+        assertThrows(IllegalArgumentException.class, () -> new TiffByteBudget(meterRegistry, -1));
+    }
+}
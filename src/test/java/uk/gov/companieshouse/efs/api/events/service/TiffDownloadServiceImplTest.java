@@ -2,17 +2,28 @@ package uk.gov.companieshouse.efs.api.events.service;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.OptionalLong;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.api.function.Executable;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import software.amazon.awssdk.core.ResponseInputStream;
@@ -20,8 +31,12 @@ import software.amazon.awssdk.http.AbortableInputStream;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.GetObjectRequest;
 import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
 import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
 import uk.gov.companieshouse.efs.api.events.service.exception.TiffDownloadException;
+import uk.gov.companieshouse.efs.api.events.service.model.TiffBuffer;
+import uk.gov.companieshouse.efs.api.events.service.model.TiffStream;
 
 @ExtendWith(MockitoExtension.class)
 class TiffDownloadServiceImplTest {
@@ -33,19 +48,28 @@ class TiffDownloadServiceImplTest {
 
     private String bucket = "test-bucket";
 
+    private SimpleMeterRegistry meterRegistry;
+
     @Mock
     private GetObjectResponse resp;
 
     @Mock
     private ResponseInputStream<GetObjectResponse> responseInputStream;
 
+    @Mock
+    private TiffSpool spool;
+
+    @TempDir
+    private Path spoolDirectory;
+
     @BeforeEach
     public void setUp() {
-        service = new TiffDownloadServiceImpl(s3Client, bucket);
+        meterRegistry = new SimpleMeterRegistry();
+        service = new TiffDownloadServiceImpl(s3Client, bucket, new TiffBufferPool(meterRegistry, 1, 1), spool);
     }
 
     @Test
-    void downloadTiffFileSuccessTest() {
+    void downloadTiffFileSuccessTest() throws IOException {
         //given
         String fileId = "87878787";
 
@@ -55,10 +79,10 @@ class TiffDownloadServiceImplTest {
                 .thenReturn(new ResponseInputStream<>(resp, ais));
 
         // when
-        byte[] actual = service.downloadTiffFile(fileId);
+        TiffBuffer actual = service.downloadTiffFile(fileId);
 
         // then
-        assertArrayEquals("Hello".getBytes(), actual);
+        assertArrayEquals("Hello".getBytes(), actual.newInputStream().readAllBytes());
         verify(s3Client).getObject(GetObjectRequest.builder().bucket(bucket)
                 .key("%s/%s".formatted("converted-tiffs", fileId)).build());
     }
@@ -91,4 +115,219 @@ class TiffDownloadServiceImplTest {
         assertEquals("Failed to convert TIFF to byteArray", exception.getMessage());
     }
 
+    @Test
+    void getTiffFileLengthLooksUpContentLengthInS3() {
+        //given
+        when(spool.lengthOf("87878787")).thenReturn(OptionalLong.empty());
+        when(s3Client.headObject(any(HeadObjectRequest.class))).thenReturn(
+                HeadObjectResponse.builder().contentLength(5L).build());
+
+        //when
+        long actual = service.getTiffFileLength("87878787");
+
+        //then
+        assertEquals(5L, actual);
+        verify(s3Client).headObject(HeadObjectRequest.builder().bucket(bucket)
+                .key("%s/%s".formatted("converted-tiffs", "87878787")).build());
+    }
+
+    @Test
+    void getTiffFileLengthUsesSpooledLengthWithoutS3() {
+        //given
+        when(spool.lengthOf("87878787")).thenReturn(OptionalLong.of(5L));
+
+        //when
+        long actual = service.getTiffFileLength("87878787");
+
+        //then
+        assertEquals(5L, actual);
+        verifyNoInteractions(s3Client);
+    }
+
+    @Test
+    void getTiffFileLengthThrowAwsExceptionTest() {
+        //given
+        when(spool.lengthOf("87878787")).thenReturn(OptionalLong.empty());
+        when(s3Client.headObject(any(HeadObjectRequest.class))).thenThrow(NoSuchKeyException.class);
+
+        //when
+        Executable actual = () -> service.getTiffFileLength("87878787");
+
+        //then
+        TiffDownloadException exception = assertThrows(TiffDownloadException.class, actual);
+        assertEquals("Failed to look up TIFF", exception.getMessage());
+    }
+
+    @Test
+    void downloadTiffFileReadsContentOfKnownLengthIntoPooledBuffer() throws IOException {
+        //given
+        when(s3Client.getObject(any(GetObjectRequest.class))).thenReturn(new ResponseInputStream<>(
+                GetObjectResponse.builder().contentLength(5L).build(),
+                AbortableInputStream.create(new ByteArrayInputStream("Hello".getBytes()))));
+
+        //when
+        TiffBuffer actual = service.downloadTiffFile("87878787");
+
+        //then
+        assertTrue(actual.isDirect());
+        assertEquals(5, actual.length());
+        assertEquals(1.0, meterRegistry.get("efs.tiff.buffer.pool.used").gauge().value());
+        actual.release();
+        assertEquals(0.0, meterRegistry.get("efs.tiff.buffer.pool.used").gauge().value());
+    }
+
+    @Test
+    void downloadTiffFileReleasesBufferWhenContentShorterThanLength() {
+        //given
+        when(s3Client.getObject(any(GetObjectRequest.class))).thenReturn(new ResponseInputStream<>(
+                GetObjectResponse.builder().contentLength(10L).build(),
+                AbortableInputStream.create(new ByteArrayInputStream("Hello".getBytes()))));
+
+        //when
+        Executable actual = () -> service.downloadTiffFile("87878787");
+
+        //then
+        assertThrows(TiffDownloadException.class, actual);
+        assertEquals(0.0, meterRegistry.get("efs.tiff.buffer.pool.used").gauge().value());
+    }
+
+    @Test
+    void openTiffFileReturnsResponseStreamWithContentLength() {
+        //given
+        String fileId = "87878787";
+        ResponseInputStream<GetObjectResponse> content = new ResponseInputStream<>(
+                GetObjectResponse.builder().contentLength(5L).build(),
+                AbortableInputStream.create(new ByteArrayInputStream("Hello".getBytes())));
+        when(s3Client.getObject(any(GetObjectRequest.class))).thenReturn(content);
+
+        //when
+        TiffStream actual = service.openTiffFile(fileId);
+
+        //then
+        assertSame(content, actual.content());
+        assertEquals(5L, actual.length());
+        verify(s3Client).getObject(GetObjectRequest.builder().bucket(bucket)
+                .key("%s/%s".formatted("converted-tiffs", fileId)).build());
+    }
+
+    @Test
+    void openTiffFileReturnsUnknownLengthWhenContentLengthMissing() {
+        //given
+        when(s3Client.getObject(any(GetObjectRequest.class))).thenReturn(new ResponseInputStream<>(
+                GetObjectResponse.builder().build(),
+                AbortableInputStream.create(new ByteArrayInputStream("Hello".getBytes()))));
+
+        //when
+        TiffStream actual = service.openTiffFile("87878787");
+
+        //then
+        assertEquals(-1L, actual.length());
+    }
+
+    @Test
+    void downloadTiffFileReadsSpooledTiffWithoutS3() throws IOException {
+        //given
+        Path spooled = Files.write(spoolDirectory.resolve("spooled.tiff"), "Hello".getBytes());
+        when(spool.take("87878787")).thenReturn(Optional.of(new TiffSpool.SpooledTiff(spooled, 5L)));
+
+        //when
+        TiffBuffer actual = service.downloadTiffFile("87878787");
+
+        //then
+        assertArrayEquals("Hello".getBytes(), actual.newInputStream().readAllBytes());
+        assertFalse(Files.exists(spooled));
+        verifyNoInteractions(s3Client);
+    }
+
+    @Test
+    void downloadTiffFileDownloadsFromS3WhenSpooledTiffUnreadable() throws IOException {
+        //given
+        when(spool.take("87878787")).thenReturn(
+                Optional.of(new TiffSpool.SpooledTiff(spoolDirectory.resolve("missing.tiff"), 5L)));
+        when(s3Client.getObject(any(GetObjectRequest.class))).thenReturn(new ResponseInputStream<>(
+                GetObjectResponse.builder().contentLength(5L).build(),
+                AbortableInputStream.create(new ByteArrayInputStream("Hello".getBytes()))));
+
+        //when
+        TiffBuffer actual = service.downloadTiffFile("87878787");
+
+        //then
+        assertArrayEquals("Hello".getBytes(), actual.newInputStream().readAllBytes());
+    }
+
+    @Test
+    void downloadTiffFileDeletesSpooledTiffThatCannotBeRead() throws IOException {
+        //given
+        Path spooled = Files.write(spoolDirectory.resolve("spooled.tiff"), "Hello".getBytes());
+        when(spool.take("87878787")).thenReturn(Optional.of(new TiffSpool.SpooledTiff(spooled, 10L)));
+        when(s3Client.getObject(any(GetObjectRequest.class))).thenReturn(new ResponseInputStream<>(
+                GetObjectResponse.builder().contentLength(5L).build(),
+                AbortableInputStream.create(new ByteArrayInputStream("Hello".getBytes()))));
+
+        //when
+        TiffBuffer actual = service.downloadTiffFile("87878787");
+
+        //then
+        assertArrayEquals("Hello".getBytes(), actual.newInputStream().readAllBytes());
+        assertFalse(Files.exists(spooled));
+    }
+
+    @Test
+    void openTiffFileOpensSpooledTiff() throws IOException {
+        //given
+        Path spooled = Files.write(spoolDirectory.resolve("spooled.tiff"), "Hello".getBytes());
+        when(spool.take("87878787")).thenReturn(Optional.of(new TiffSpool.SpooledTiff(spooled, 5L)));
+
+        //when
+        TiffStream actual = service.openTiffFile("87878787");
+
+        //then
+        assertEquals(5L, actual.length());
+        assertArrayEquals("Hello".getBytes(), actual.content().readAllBytes());
+        actual.close();
+        assertFalse(Files.exists(spooled));
+        verifyNoInteractions(s3Client);
+    }
+
+    @Test
+    void prefetchTiffFileSpoolsS3Content() throws IOException {
+        //given
+        ResponseInputStream<GetObjectResponse> content = new ResponseInputStream<>(
+                GetObjectResponse.builder().contentLength(5L).build(),
+                AbortableInputStream.create(new ByteArrayInputStream("Hello".getBytes())));
+        when(s3Client.getObject(any(GetObjectRequest.class))).thenReturn(content);
+
+        //when
+        service.prefetchTiffFile("87878787");
+
+        //then
+        verify(spool).put("87878787", content);
+    }
+
+    @Test
+    void prefetchTiffFileThrowsTiffDownloadExceptionIfSpoolingFails() throws IOException {
+        //given
+        when(s3Client.getObject(any(GetObjectRequest.class))).thenReturn(responseInputStream);
+        doThrow(IOException.class).when(spool).put("87878787", responseInputStream);
+
+        //when
+        Executable actual = () -> service.prefetchTiffFile("87878787");
+
+        //then
+        TiffDownloadException exception = assertThrows(TiffDownloadException.class, actual);
+        assertEquals("Failed to spool TIFF", exception.getMessage());
+    }
+
+    @Test
+    void openTiffFileThrowAwsExceptionTest() {
+        //given
+        when(s3Client.getObject(any(GetObjectRequest.class))).thenThrow(NoSuchKeyException.class);
+
+        //when
+        Executable actual = () -> service.openTiffFile("87878787");
+
+        //then
+        TiffDownloadException exception = assertThrows(TiffDownloadException.class, actual);
+        assertEquals("Failed to download TIFF", exception.getMessage());
+    }
 }
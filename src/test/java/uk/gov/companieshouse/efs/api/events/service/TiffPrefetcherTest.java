@@ -0,0 +1,90 @@
+package uk.gov.companieshouse.efs.api.events.service;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import uk.gov.companieshouse.efs.api.events.service.exception.TiffDownloadException;
+import uk.gov.companieshouse.efs.api.submissions.model.FileDetails;
+import uk.gov.companieshouse.efs.api.submissions.model.FormDetails;
+import uk.gov.companieshouse.efs.api.submissions.model.Submission;
+
+@ExtendWith(MockitoExtension.class)
+class TiffPrefetcherTest {
+
+    private TiffPrefetcher prefetcher;
+
+    @Mock
+    private TiffDownloadService tiffDownloadService;
+
+    @Mock
+    private TiffSpool tiffSpool;
+
+    @BeforeEach
+    void setUp() {
+        prefetcher = new TiffPrefetcher(tiffDownloadService, tiffSpool, 1, Runnable::run);
+    }
+
+    @Test
+    void testPrefetchesConvertedFilesNotAlreadySpooled() {
+        //given
+        when(tiffSpool.isEnabled()).thenReturn(true);
+        when(tiffSpool.contains("converted0")).thenReturn(false);
+        when(tiffSpool.contains("converted1")).thenReturn(true);
+
+        //when
+        prefetcher.prefetch(submission("converted0", "converted1"));
+
+        //then
+        verify(tiffDownloadService).prefetchTiffFile("converted0");
+        verify(tiffDownloadService, never()).prefetchTiffFile("converted1");
+    }
+
+    @Test
+    void testCarriesOnPrefetchingWhenOneFileFails() {
+        //given
+        when(tiffSpool.isEnabled()).thenReturn(true);
+        doThrow(new TiffDownloadException("stub")).when(tiffDownloadService).prefetchTiffFile("converted0");
+
+        //when
+        prefetcher.prefetch(submission("converted0", "converted1"));
+
+        //then
+        verify(tiffDownloadService).prefetchTiffFile("converted1");
+    }
+
+    @Test
+    void testPrefetchesNothingWhenSpoolDisabled() {
+        //when
+        prefetcher.prefetch(submission("converted0"));
+
+        //then
+        verifyNoInteractions(tiffDownloadService);
+    }
+
+    @Test
+    void testRejectsConcurrencyBelowOne() {
+        assertThrows(IllegalArgumentException.class,
+            () -> new TiffPrefetcher(tiffDownloadService, tiffSpool, 0, Runnable::run));
+    }
+
+    private static Submission submission(final String... convertedFileIds) {
+        return Submission.builder()
+            .withId("id")
+            .withFormDetails(FormDetails.builder()
+                .withFileDetailsList(List.of(convertedFileIds).stream()
+                    .map(fileId -> FileDetails.builder().withConvertedFileId(fileId).build())
+                    .toList())
+                .build())
+            .build();
+    }
+}
@@ -0,0 +1,234 @@
+package uk.gov.companieshouse.efs.api.events.service;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import uk.gov.companieshouse.efs.api.events.service.model.TiffBuffer;
+
+class TiffRecompressorTest {
+
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @Test
+    void testRecompressesBilevelTiffOfOptedInFormType() throws IOException {
+        //given
+        final TiffBuffer tiff = TiffBuffer.wrap(uncompressedTiff(BufferedImage.TYPE_BYTE_BINARY, 2));
+        final TiffRecompressor recompressor = createRecompressor(TiffRecompressor.Compression.G4, 10);
+
+        //when
+        final TiffBuffer actual = recompressor.recompress("converted", tiff, "SH01");
+
+        //then
+        assertThat(actual, is(not(sameInstance(tiff))));
+        assertThat(actual.length() < tiff.length(), is(true));
+        assertDoesNotThrow(() -> new TiffValidator(true).validate("converted", actual, 2));
+        assertThat(meterRegistry.get("efs.tiff.recompression.saved").counter().count(),
+            is((double) tiff.length() - actual.length()));
+        assertThat(meterRegistry.get("efs.tiff.recompression").tag("outcome", "recompressed").counter().count(),
+            is(1.0));
+    }
+
+    @Test
+    void testWritesRecompressedTiffIntoPooledBuffer() throws IOException {
+        //given
+        final TiffBuffer tiff = TiffBuffer.wrap(uncompressedTiff(BufferedImage.TYPE_BYTE_BINARY, 1));
+        final TiffRecompressor recompressor = createRecompressor(TiffRecompressor.Compression.G4, 10, 1);
+
+        //when
+        final TiffBuffer actual = recompressor.recompress("converted", tiff, "SH01");
+
+        //then
+        assertThat(actual.isDirect(), is(true));
+        assertDoesNotThrow(() -> new TiffValidator(true).validate("converted", actual, 1));
+        assertThat(meterRegistry.get("efs.tiff.buffer.pool.used").gauge().value(), is(1.0));
+        actual.release();
+        assertThat(meterRegistry.get("efs.tiff.buffer.pool.used").gauge().value(), is(0.0));
+    }
+
+    @Test
+    void testGivesBackPooledBufferWhenRecompressedTiffNotUsed() throws IOException {
+        //given
+        final TiffBuffer tiff = TiffBuffer.wrap(uncompressedTiff(BufferedImage.TYPE_BYTE_BINARY, 1));
+
+        //when
+        final TiffBuffer actual =
+            createRecompressor(TiffRecompressor.Compression.G4, 100, 1).recompress("converted", tiff, "SH01");
+
+        //then
+        assertThat(actual, is(sameInstance(tiff)));
+        assertThat(meterRegistry.get("efs.tiff.buffer.pool.used").gauge().value(), is(0.0));
+    }
+
+    @Test
+    void testRecompressesWithLzw() throws IOException {
+        //given
+        final TiffBuffer tiff = TiffBuffer.wrap(uncompressedTiff(BufferedImage.TYPE_BYTE_BINARY, 1));
+
+        //when
+        final TiffBuffer actual =
+            createRecompressor(TiffRecompressor.Compression.LZW, 10).recompress("converted", tiff, "AR01");
+
+        //then
+        assertThat(actual.length() < tiff.length(), is(true));
+    }
+
+    @Test
+    void testLeavesTiffOfOtherFormTypeAlone() throws IOException {
+        //given
+        final TiffBuffer tiff = TiffBuffer.wrap(uncompressedTiff(BufferedImage.TYPE_BYTE_BINARY, 1));
+
+        //when
+        final TiffBuffer actual =
+            createRecompressor(TiffRecompressor.Compression.G4, 10).recompress("converted", tiff, "CS01");
+
+        //then
+        assertThat(actual, is(sameInstance(tiff)));
+        assertThat(meterRegistry.find("efs.tiff.recompression").counter(), is(nullValue()));
+    }
+
+    @Test
+    void testLeavesTiffWithColourPageAlone() throws IOException {
+        //given
+        final TiffBuffer tiff = TiffBuffer.wrap(uncompressedTiff(BufferedImage.TYPE_INT_RGB, 1));
+
+        //when
+        final TiffBuffer actual =
+            createRecompressor(TiffRecompressor.Compression.G4, 10).recompress("converted", tiff, "SH01");
+
+        //then
+        assertThat(actual, is(sameInstance(tiff)));
+        assertThat(meterRegistry.get("efs.tiff.recompression").tag("outcome", "not-bilevel").counter().count(),
+            is(1.0));
+    }
+
+    @Test
+    void testLeavesTiffAloneWhenSavingBelowThreshold() throws IOException {
+        //given
+        final TiffBuffer tiff = TiffBuffer.wrap(uncompressedTiff(BufferedImage.TYPE_BYTE_BINARY, 1));
+
+        //when
+        final TiffBuffer actual =
+            createRecompressor(TiffRecompressor.Compression.G4, 100).recompress("converted", tiff, "SH01");
+
+        //then
+        assertThat(actual, is(sameInstance(tiff)));
+        assertThat(meterRegistry.get("efs.tiff.recompression").tag("outcome", "below-threshold").counter().count(),
+            is(1.0));
+    }
+
+    @Test
+    void testLeavesTiffAloneWhenReencodingOutgrowsIt() throws IOException {
+        //given
+        final BufferedImage noise = new BufferedImage(800, 600, BufferedImage.TYPE_BYTE_BINARY);
+        final Random random = new Random(1);
+        for (int x = 0; x < 800; x++) {
+            for (int y = 0; y < 600; y++) {
+                noise.setRGB(x, y, random.nextBoolean() ? Color.WHITE.getRGB() : Color.BLACK.getRGB());
+            }
+        }
+        final TiffBuffer tiff = TiffBuffer.wrap(uncompressedTiff(noise));
+
+        //when
+        final TiffBuffer actual =
+            createRecompressor(TiffRecompressor.Compression.G4, 0, 1).recompress("converted", tiff, "SH01");
+
+        //then
+        assertThat(actual, is(sameInstance(tiff)));
+        assertThat(meterRegistry.get("efs.tiff.recompression").tag("outcome", "below-threshold").counter().count(),
+            is(1.0));
+        assertThat(meterRegistry.get("efs.tiff.buffer.pool.used").gauge().value(), is(0.0));
+    }
+
+    @Test
+    void testLeavesTiffAloneWhenItCannotBeDecoded() {
+        //given
+        final TiffBuffer tiff = TiffBuffer.wrap(new byte[] {'I', 'I', 42, 0, 8, 0, 0, 0});
+
+        //when
+        final TiffBuffer actual =
+            createRecompressor(TiffRecompressor.Compression.G4, 10).recompress("converted", tiff, "SH01");
+
+        //then
+        assertThat(actual, is(sameInstance(tiff)));
+        assertThat(meterRegistry.get("efs.tiff.recompression").tag("outcome", "failed").counter().count(),
+            is(1.0));
+    }
+
+    @Test
+    void testRejectsSavingThresholdAboveOneHundredPercent() {
+        assertThrows(IllegalArgumentException.class,
+            () -> createRecompressor(TiffRecompressor.Compression.G4, 101));
+    }
+
+    private TiffRecompressor createRecompressor(final TiffRecompressor.Compression compression,
+        final int minSavingPercent) {
+        return createRecompressor(compression, minSavingPercent, 0);
+    }
+
+    private TiffRecompressor createRecompressor(final TiffRecompressor.Compression compression,
+        final int minSavingPercent, final int bufferPoolSize) {
+        return new TiffRecompressor(meterRegistry, new TiffBufferPool(meterRegistry, bufferPoolSize, 1),
+            "SH01, AR01", compression, minSavingPercent);
+    }
+
+    private static byte[] uncompressedTiff(final int imageType, final int pages) throws IOException {
+        final BufferedImage[] images = new BufferedImage[pages];
+        for (int page = 0; page < pages; page++) {
+            images[page] = page(imageType, page);
+        }
+        return uncompressedTiff(images);
+    }
+
+    private static byte[] uncompressedTiff(final BufferedImage... pages) throws IOException {
+        final ImageWriter writer = ImageIO.getImageWritersByFormatName("tiff").next();
+        final ByteArrayOutputStream tiff = new ByteArrayOutputStream();
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(tiff)) {
+            writer.setOutput(output);
+            final ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_DISABLED);
+            writer.prepareWriteSequence(null);
+            for (final BufferedImage page : pages) {
+                writer.writeToSequence(new IIOImage(page, null, null), param);
+            }
+            writer.endWriteSequence();
+        } finally {
+            writer.dispose();
+        }
+        return tiff.toByteArray();
+    }
+
+    private static BufferedImage page(final int imageType, final int page) {
+        final BufferedImage image = new BufferedImage(800, 600, imageType);
+        final Graphics2D graphics = image.createGraphics();
+        graphics.setColor(Color.WHITE);
+        graphics.fillRect(0, 0, 800, 600);
+        graphics.setColor(Color.BLACK);
+        graphics.drawString("Page " + page, 100, 100);
+        graphics.dispose();
+        return image;
+    }
+}
@@ -0,0 +1,205 @@
+package uk.gov.companieshouse.efs.api.events.service;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class TiffSpoolTest {
+
+    private static final int MB = 1024 * 1024;
+
+    @TempDir
+    private Path directory;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private TiffSpool spool;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        spool = new TiffSpool(meterRegistry, directory.toString(), 1);
+    }
+
+    @Test
+    void testTakesSpooledTiffOnce() throws IOException {
+        //given
+        spool.put("converted", content("Hello".getBytes()));
+
+        //when
+        final Optional<TiffSpool.SpooledTiff> spooled = spool.take("converted");
+
+        //then
+        assertThat(spooled.isPresent(), is(true));
+        assertThat(spooled.get().length(), is(5L));
+        try (InputStream content = spooled.get().open()) {
+            assertThat(new String(content.readAllBytes()), is("Hello"));
+        }
+        assertThat(Files.exists(spooled.get().path()), is(false));
+        assertThat(spool.take("converted").isPresent(), is(false));
+        assertThat(meterRegistry.get("efs.tiff.spool.hits").counter().count(), is(1.0));
+        assertThat(meterRegistry.get("efs.tiff.spool.misses").counter().count(), is(1.0));
+        assertThat(meterRegistry.get("efs.tiff.spool.bytes").gauge().value(), is(0.0));
+    }
+
+    @Test
+    void testReportsLengthOfSpooledTiffWithoutTakingIt() throws IOException {
+        //given
+        spool.put("converted", content("Hello".getBytes()));
+
+        //when
+        final OptionalLong length = spool.lengthOf("converted");
+
+        //then
+        assertThat(length, is(OptionalLong.of(5L)));
+        assertThat(spool.lengthOf("missing"), is(OptionalLong.empty()));
+        assertThat(spool.contains("converted"), is(true));
+    }
+
+    @Test
+    void testDeletesTakenTiffClosedWithoutBeingOpened() throws IOException {
+        //given
+        spool.put("converted", content("Hello".getBytes()));
+        final TiffSpool.SpooledTiff spooled = spool.take("converted").orElseThrow();
+
+        //when
+        spooled.close();
+
+        //then
+        assertThat(Files.exists(spooled.path()), is(false));
+        assertThat(spooledFiles(), is(0L));
+    }
+
+    @Test
+    void testEvictsLeastRecentlySpooledTiffWhenFull() throws IOException {
+        //given
+        spool.put("first", content(new byte[MB / 2]));
+        spool.put("second", content(new byte[MB / 2]));
+
+        //when
+        spool.put("third", content(new byte[MB / 4]));
+
+        //then
+        assertThat(spool.contains("first"), is(false));
+        assertThat(spool.contains("second"), is(true));
+        assertThat(spool.contains("third"), is(true));
+        assertThat(meterRegistry.get("efs.tiff.spool.bytes").gauge().value(), is(0.75 * MB));
+        assertThat(meterRegistry.get("efs.tiff.spool.evictions").counter().count(), is(1.0));
+        assertThat(spooledFiles(), is(2L));
+    }
+
+    @Test
+    void testDoesNotSpoolTiffLargerThanSpool() throws IOException {
+        //when
+        spool.put("large", content(new byte[MB + 1]));
+
+        //then
+        assertThat(spool.contains("large"), is(false));
+        assertThat(spooledFiles(), is(0L));
+    }
+
+    @Test
+    void testDiscardsSpooledTiffFailingChecksum() throws IOException {
+        //given
+        spool.put("converted", content("Hello".getBytes()));
+        try (Stream<Path> files = Files.list(directory)) {
+            Files.write(files.findFirst().orElseThrow(), "Jello".getBytes());
+        }
+
+        //when
+        final Optional<TiffSpool.SpooledTiff> spooled = spool.take("converted");
+
+        //then
+        assertThat(spooled.isPresent(), is(false));
+        assertThat(meterRegistry.get("efs.tiff.spool.checksum.failures").counter().count(), is(1.0));
+        assertThat(spooledFiles(), is(0L));
+    }
+
+    @Test
+    void testDropsTiffPutAfterItWasTaken() throws IOException {
+        //given
+        assertThat(spool.take("converted").isPresent(), is(false));
+
+        //when
+        spool.put("converted", content("Hello".getBytes()));
+
+        //then
+        assertThat(spool.contains("converted"), is(false));
+        assertThat(spooledFiles(), is(0L));
+    }
+
+    @Test
+    void testDropsTiffTakenWhileItWasBeingPut() throws IOException {
+        //given
+        final InputStream content = new ByteArrayInputStream("Hello".getBytes()) {
+            @Override
+            public synchronized int read(final byte[] bytes, final int offset, final int length) {
+                spool.take("converted");
+                return super.read(bytes, offset, length);
+            }
+        };
+
+        //when
+        spool.put("converted", content);
+
+        //then
+        assertThat(spool.contains("converted"), is(false));
+        assertThat(meterRegistry.get("efs.tiff.spool.bytes").gauge().value(), is(0.0));
+        assertThat(spooledFiles(), is(0L));
+    }
+
+    @Test
+    void testRemovesFilesLeftByEarlierRun() throws IOException {
+        //given
+        Files.write(directory.resolve("left-over.tiff"), "Hello".getBytes());
+        spool.put("converted", content("Hello".getBytes()));
+
+        //when
+        spool.prepareDirectory();
+
+        //then
+        assertThat(spooledFiles(), is(1L));
+        assertThat(spool.take("converted").isPresent(), is(true));
+    }
+
+    @Test
+    void testSpoolsNothingWhenDisabled() throws IOException {
+        //given
+        spool = new TiffSpool(meterRegistry, directory.resolve("disabled").toString(), 0);
+
+        //when
+        spool.put("converted", content("Hello".getBytes()));
+
+        //then
+        assertThat(spool.take("converted").isPresent(), is(false));
+        assertThat(Files.exists(directory.resolve("disabled")), is(false));
+    }
+
+    @Test
+    void testRejectsNegativeSize() {
+        assertThrows(IllegalArgumentException.class, () -> new TiffSpool(meterRegistry, directory.toString(), -1));
+    }
+
+    private long spooledFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+
+    private static InputStream content(final byte[] bytes) {
+        return new ByteArrayInputStream(bytes);
+    }
+}
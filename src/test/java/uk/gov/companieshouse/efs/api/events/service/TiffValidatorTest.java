@@ -0,0 +1,156 @@
+package uk.gov.companieshouse.efs.api.events.service;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import uk.gov.companieshouse.efs.api.events.service.exception.InvalidTiffException;
+import uk.gov.companieshouse.efs.api.events.service.model.TiffBuffer;
+
+class TiffValidatorTest {
+
+    private static final int DATA_LENGTH = 4;
+    private static final int IFD_LENGTH = 2 + 4 * 12 + 4;
+
+    private TiffValidator validator;
+
+    @BeforeEach
+    void setUp() {
+        validator = new TiffValidator(true);
+    }
+
+    @Test
+    void testAcceptsConvertedTiff() throws IOException {
+        //given
+        final byte[] tiff = IOUtils.toByteArray(getClass().getClassLoader().getResourceAsStream("Hello World.tiff"));
+
+        //then
+        assertDoesNotThrow(() -> validator.validate("converted", TiffBuffer.wrap(tiff), 1));
+    }
+
+    @Test
+    void testAcceptsMultiPageTiffWithExpectedPageCount() {
+        assertDoesNotThrow(() -> validator.validate("converted", TiffBuffer.wrap(tiff(3).array()), 3));
+    }
+
+    @Test
+    void testAcceptsTiffWhenPageCountNotKnown() {
+        assertDoesNotThrow(() -> validator.validate("converted", TiffBuffer.wrap(tiff(2).array()), null));
+    }
+
+    @Test
+    void testRejectsTiffWithDifferentPageCount() {
+        //when
+        final InvalidTiffException exception = assertThrows(InvalidTiffException.class,
+            () -> validator.validate("converted", TiffBuffer.wrap(tiff(2).array()), 3));
+
+        //then
+        assertThat(exception.getMessage(), containsString("has [2] pages but [3] expected"));
+        assertThat(exception.getFileId(), is("converted"));
+    }
+
+    @Test
+    void testRejectsFileWithoutByteOrderMark() {
+        //given
+        final ByteBuffer tiff = tiff(1);
+        tiff.put(0, (byte) 'P').put(1, (byte) 'K');
+
+        //when
+        final InvalidTiffException exception = assertThrows(InvalidTiffException.class,
+            () -> validator.validate("converted", TiffBuffer.wrap(tiff.array()), 1));
+
+        //then
+        assertThat(exception.getMessage(), containsString("Invalid TIFF [converted] - no byte order mark"));
+    }
+
+    @Test
+    void testRejectsTruncatedTiff() {
+        //given
+        final byte[] truncated = new byte[8 + DATA_LENGTH + IFD_LENGTH - 10];
+        System.arraycopy(tiff(1).array(), 0, truncated, 0, truncated.length);
+
+        //when
+        final InvalidTiffException exception = assertThrows(InvalidTiffException.class,
+            () -> validator.validate("converted", TiffBuffer.wrap(truncated), 1));
+
+        //then
+        assertThat(exception.getMessage(), containsString("runs past the end of the file"));
+    }
+
+    @Test
+    void testRejectsIfdChainLoop() {
+        //given
+        final ByteBuffer tiff = tiff(2);
+        // point the second IFD back at the first
+        tiff.putInt(tiff.limit() - 4, ifdOffset(0));
+
+        //when
+        final InvalidTiffException exception = assertThrows(InvalidTiffException.class,
+            () -> validator.validate("converted", TiffBuffer.wrap(tiff.array()), 2));
+
+        //then
+        assertThat(exception.getMessage(), containsString("IFD chain loops back"));
+    }
+
+    @Test
+    void testRejectsStripOutsideFile() {
+        //given
+        final ByteBuffer tiff = tiff(1);
+        // the strip byte count entry is the fourth entry of the IFD
+        tiff.putInt(ifdOffset(0) + 2 + 3 * 12 + 8, 1000);
+
+        //when
+        final InvalidTiffException exception = assertThrows(InvalidTiffException.class,
+            () -> validator.validate("converted", TiffBuffer.wrap(tiff.array()), 1));
+
+        //then
+        assertThat(exception.getMessage(), containsString("page [1] image data"));
+    }
+
+    @Test
+    void testDoesNotValidateWhenDisabled() {
+        //given
+        validator = new TiffValidator(false);
+
+        //then
+        assertDoesNotThrow(() -> validator.validate("converted", TiffBuffer.wrap(new byte[] {1, 2}), 1));
+    }
+
+    // a little-endian TIFF whose pages each have a strip of image data followed by their IFD
+    private static ByteBuffer tiff(final int pages) {
+        final ByteBuffer tiff = ByteBuffer.allocate(8 + pages * (DATA_LENGTH + IFD_LENGTH))
+            .order(ByteOrder.LITTLE_ENDIAN);
+        tiff.put((byte) 'I').put((byte) 'I').putShort((short) 42).putInt(ifdOffset(0));
+        for (int page = 0; page < pages; page++) {
+            tiff.putInt(0);
+            tiff.putShort((short) 4);
+            putEntry(tiff, 256, 3, 10);
+            putEntry(tiff, 257, 3, 10);
+            putEntry(tiff, 273, 4, ifdOffset(page) - DATA_LENGTH);
+            putEntry(tiff, 279, 4, DATA_LENGTH);
+            tiff.putInt(page + 1 < pages ? ifdOffset(page + 1) : 0);
+        }
+        return tiff;
+    }
+
+    private static int ifdOffset(final int page) {
+        return 8 + page * (DATA_LENGTH + IFD_LENGTH) + DATA_LENGTH;
+    }
+
+    private static void putEntry(final ByteBuffer tiff, final int tag, final int type, final int value) {
+        tiff.putShort((short) tag).putShort((short) type).putInt(1);
+        if (type == 3) {
+            tiff.putShort((short) value).putShort((short) 0);
+        } else {
+            tiff.putInt(value);
+        }
+    }
+}
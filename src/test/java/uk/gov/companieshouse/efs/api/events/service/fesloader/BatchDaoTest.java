@@ -27,33 +27,26 @@ class BatchDaoTest {
     @Mock
     private JdbcTemplate template;
 
+    @Mock
+    private SequenceAllocator sequenceAllocator;
+
     private BatchDao batchDao;
 
     @BeforeEach
     void setUp() {
-        this.batchDao = new BatchDao(template);
+        this.batchDao = new BatchDao(template, sequenceAllocator);
     }
 
     @Test
     void testBatchDaoObtainsNextBatchIdFromSequence() {
         //given
-        when(this.template.queryForObject(anyString(), eq(Long.class))).thenReturn(BATCH_ID);
+        when(sequenceAllocator.next("BATCH_ID_SEQ")).thenReturn(BATCH_ID);
 
         //when
         long actual = this.batchDao.getNextBatchId();
 
         //then
         assertEquals(BATCH_ID, actual);
-        verify(this.template).queryForObject("SELECT BATCH_ID_SEQ.nextval from dual", Long.class);
-    }
-
-    @Test
-    void getNextBatchIdThrowsExceptionWhenQueryReturnsNull() {
-        // given
-        when(this.template.queryForObject(anyString(), eq(Long.class))).thenReturn(null);
-
-        // when & then
-        assertThrows(IllegalStateException.class, () -> this.batchDao.getNextBatchId());
     }
 
     @Test
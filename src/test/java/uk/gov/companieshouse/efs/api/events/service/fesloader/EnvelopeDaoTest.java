@@ -8,7 +8,6 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.jdbc.core.JdbcTemplate;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.verify;
@@ -24,35 +23,24 @@ class EnvelopeDaoTest {
     @Mock
     private JdbcTemplate jdbcTemplate;
 
+    @Mock
+    private SequenceAllocator sequenceAllocator;
+
     @BeforeEach
     void setUp() {
-        this.envelopeDao = new EnvelopeDao(jdbcTemplate);
+        this.envelopeDao = new EnvelopeDao(jdbcTemplate, sequenceAllocator);
     }
 
     @Test
     void testEnvelopeDaoReturnsNextIdFromSequence() {
         //given
-        when(jdbcTemplate.queryForObject(anyString(), eq(Long.class))).thenReturn(ENVELOPE_ID);
+        when(sequenceAllocator.next("ENVELOPE_ID_SEQ")).thenReturn(ENVELOPE_ID);
 
         //when
         long actual = this.envelopeDao.getNextEnvelopeId();
 
         //then
         assertEquals(ENVELOPE_ID, actual);
-        verify(this.jdbcTemplate).queryForObject(anyString(), eq(Long.class));
-    }
-
-    @Test
-    void testGetNextEnvelopeIdThrowsExceptionWhenNullReturned() {
-        when(jdbcTemplate.queryForObject(anyString(), eq(Long.class))).thenReturn(null);
-
-        IllegalStateException exception = assertThrows(
-            IllegalStateException.class,
-            () -> envelopeDao.getNextEnvelopeId()
-        );
-
-        assertEquals("No value returned for next envelope id", exception.getMessage());
-        verify(jdbcTemplate).queryForObject(anyString(), eq(Long.class));
     }
 
     @Test
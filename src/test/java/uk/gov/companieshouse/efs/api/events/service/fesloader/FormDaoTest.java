@@ -1,15 +1,21 @@
 package uk.gov.companieshouse.efs.api.events.service.fesloader;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.anyString;
-import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 
 import java.sql.Timestamp;
 import java.time.LocalDateTime;
+import java.util.List;
 import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.jdbc.core.JdbcTemplate;
@@ -32,6 +38,9 @@ class FormDaoTest {
     @Mock
     private JdbcTemplate jdbcTemplate;
 
+    @Captor
+    private ArgumentCaptor<List<Object[]>> batchArgsCaptor;
+
     @BeforeEach
     void setUp() {
         this.formDao = new FormDao(jdbcTemplate);
@@ -44,13 +53,38 @@ class FormDaoTest {
         LocalDateTime now = LocalDateTime.now();
 
         //when
-        this.formDao.insertForm(getFormModel(now, isSameDay));
+        this.formDao.insertForms(List.of(getFormModel(now, isSameDay)));
+
+        //then
+        verify(jdbcTemplate).batchUpdate(anyString(), batchArgsCaptor.capture());
+        assertArrayEquals(new Object[]{BARCODE, COMPANY_NUMBER, COMPANY_NAME, FORM_TYPE, IMAGE_ID, ENVELOPE_ID,
+                FORM_STATUS, NUMBER_OF_PAGES, FORM_TYPE, COMPANY_NAME, COMPANY_NUMBER, BARCODE,
+                Timestamp.valueOf(now), isSameDay ? "Y" : "N"}, batchArgsCaptor.getValue().getFirst());
+    }
+
+    @Test
+    void testFormDaoInsertsFormsAsOneBatch() {
+        //given
+        LocalDateTime now = LocalDateTime.now();
+
+        //when
+        this.formDao.insertForms(List.of(getFormModel(now, false), getFormModel(now, true)));
+
+        //then
+        verify(jdbcTemplate).batchUpdate(anyString(), batchArgsCaptor.capture());
+        assertEquals(2, batchArgsCaptor.getValue().size());
+        assertArrayEquals(new Object[]{BARCODE, COMPANY_NUMBER, COMPANY_NAME, FORM_TYPE, IMAGE_ID, ENVELOPE_ID,
+                FORM_STATUS, NUMBER_OF_PAGES, FORM_TYPE, COMPANY_NAME, COMPANY_NUMBER, BARCODE,
+                Timestamp.valueOf(now), "Y"}, batchArgsCaptor.getValue().get(1));
+    }
+
+    @Test
+    void testFormDaoInsertsNothingWhenNoForms() {
+        //when
+        this.formDao.insertForms(List.of());
 
         //then
-        verify(jdbcTemplate).update(anyString(), eq(BARCODE), eq(COMPANY_NUMBER), eq(COMPANY_NAME),
-            eq(FORM_TYPE), eq(IMAGE_ID), eq(ENVELOPE_ID), eq(FORM_STATUS), eq(NUMBER_OF_PAGES),
-            eq(FORM_TYPE), eq(COMPANY_NAME), eq(COMPANY_NUMBER), eq(BARCODE),
-            eq(Timestamp.valueOf(now)), eq(isSameDay ? "Y" : "N"));
+        verifyNoInteractions(jdbcTemplate);
     }
 
     private FormModel getFormModel(LocalDateTime now, final boolean isSameDay) {
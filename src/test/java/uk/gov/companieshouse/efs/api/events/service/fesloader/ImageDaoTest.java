@@ -3,14 +3,26 @@ package uk.gov.companieshouse.efs.api.events.service.fesloader;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
 import org.springframework.jdbc.core.JdbcTemplate;
+import uk.gov.companieshouse.efs.api.events.service.model.TiffStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.anyString;
-import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -22,43 +34,72 @@ class ImageDaoTest {
     @Mock
     private JdbcTemplate jdbcTemplate;
 
+    @Mock
+    private SequenceAllocator sequenceAllocator;
+
+    @Captor
+    private ArgumentCaptor<BatchPreparedStatementSetter> batchSetterCaptor;
+
     @BeforeEach
     void setUp() {
-        this.imageDao = new ImageDao(jdbcTemplate);
+        this.imageDao = new ImageDao(jdbcTemplate, sequenceAllocator);
     }
 
     @Test
     void testImageDaoReturnsIdFromSequence() {
         //given
-        when(jdbcTemplate.queryForObject(anyString(), eq(Long.class))).thenReturn(IMAGE_ID);
+        when(sequenceAllocator.next("IMAGE_ID_SEQ")).thenReturn(IMAGE_ID);
 
         //when
-        long actual = imageDao.getNextImageId();
+        long actual = this.imageDao.getNextImageId();
 
         //then
         assertEquals(IMAGE_ID, actual);
-        verify(jdbcTemplate).queryForObject(anyString(), eq(Long.class));
     }
 
     @Test
-    void testGetNextImageIdThrowsExceptionWhenNullReturned() {
-        when(jdbcTemplate.queryForObject(anyString(), eq(Long.class))).thenReturn(null);
+    void testImageDaoInsertsImagesAsOneBatch() throws SQLException {
+        //given
+        InputStream first = new ByteArrayInputStream("Hello".getBytes());
+        InputStream second = new ByteArrayInputStream("World".getBytes());
+        PreparedStatement statement = mock(PreparedStatement.class);
+
+        //when
+        imageDao.insertImages(List.of(IMAGE_ID, IMAGE_ID + 1),
+            List.of(new TiffStream(first, 5L), new TiffStream(second, -1L)));
+
+        //then
+        verify(jdbcTemplate).batchUpdate(anyString(), batchSetterCaptor.capture());
+        BatchPreparedStatementSetter setter = batchSetterCaptor.getValue();
+        assertEquals(2, setter.getBatchSize());
+        setter.setValues(statement, 0);
+        setter.setValues(statement, 1);
+        verify(statement).setLong(1, IMAGE_ID);
+        verify(statement).setBinaryStream(2, first, 5L);
+        verify(statement).setLong(1, IMAGE_ID + 1);
+        verify(statement).setBinaryStream(2, second);
+    }
 
-        IllegalStateException exception =
-            org.junit.jupiter.api.Assertions.assertThrows(
-                IllegalStateException.class,
-                () -> imageDao.getNextImageId()
-            );
+    @Test
+    void testImageDaoInsertsNothingWhenNoImages() {
+        //when
+        imageDao.insertImages(List.of(), List.of());
 
-        assertEquals("No value returned for next image id", exception.getMessage());
+        //then
+        verifyNoInteractions(jdbcTemplate);
     }
 
     @Test
-    void testImageDaoInsertsNewImage() {
+    void testImageDaoRejectsImagesWithoutIds() {
+        //given
+        List<TiffStream> images = List.of(new TiffStream(new ByteArrayInputStream(new byte[0]), 0L));
+        List<Long> imageIds = List.of();
+
         //when
-        imageDao.insertImage(IMAGE_ID, "Hello".getBytes());
+        assertThrows(IllegalArgumentException.class, () -> imageDao.insertImages(imageIds, images));
 
         //then
-        verify(jdbcTemplate).update(anyString(), eq(IMAGE_ID), eq("Hello".getBytes()));
+        verifyNoInteractions(jdbcTemplate);
     }
+
 }
@@ -0,0 +1,165 @@
+package uk.gov.companieshouse.efs.api.events.service.fesloader;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.sql.Array;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.time.Month;
+import java.util.List;
+import oracle.jdbc.OracleConnection;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.CallableStatementCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import uk.gov.companieshouse.efs.api.events.service.model.FormModel;
+import uk.gov.companieshouse.efs.api.events.service.model.TiffStream;
+
+@ExtendWith(MockitoExtension.class)
+class PlsqlSubmissionDaoTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2020, Month.MAY, 1, 12, 0);
+    private static final long BATCH_ID = 321L;
+    private static final long ENVELOPE_ID = 456L;
+
+    private PlsqlSubmissionDao dao;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private CallableStatement statement;
+
+    @Mock
+    private Connection connection;
+
+    @Mock
+    private OracleConnection oracleConnection;
+
+    @Mock
+    private Array imageIds;
+
+    @Mock
+    private Array pageCounts;
+
+    @Captor
+    private ArgumentCaptor<String> sqlCaptor;
+
+    @Captor
+    private ArgumentCaptor<CallableStatementCallback<String>> callbackCaptor;
+
+    @BeforeEach
+    void setUp() {
+        this.dao = new PlsqlSubmissionDao(jdbcTemplate);
+    }
+
+    @Test
+    void testInsertSubmissionBindsWholeGraphInOneCall() throws SQLException {
+        //given
+        InputStream first = new ByteArrayInputStream("Hello".getBytes());
+        InputStream second = new ByteArrayInputStream("World".getBytes());
+        when(statement.getConnection()).thenReturn(connection);
+        when(connection.unwrap(OracleConnection.class)).thenReturn(oracleConnection);
+        when(oracleConnection.createOracleArray("SYS.ODCINUMBERLIST", new Long[]{1L, 2L})).thenReturn(imageIds);
+        when(oracleConnection.createOracleArray("SYS.ODCINUMBERLIST", new Integer[]{4, 6})).thenReturn(pageCounts);
+        when(statement.getString(16)).thenReturn("EFS_200501_0432");
+
+        //when
+        dao.insertSubmission(BATCH_ID, "EFS_200501", NOW, ENVELOPE_ID, List.of(form(1L, 4), form(2L, 6)),
+            List.of(new TiffStream(first, 5L), new TiffStream(second, -1L)));
+
+        //then
+        verify(jdbcTemplate).execute(sqlCaptor.capture(), callbackCaptor.capture());
+        String actual = callbackCaptor.getValue().doInCallableStatement(statement);
+
+        assertThat(actual, is("EFS_200501_0432"));
+        assertThat(sqlCaptor.getValue(), containsString("l_image_ids(2)"));
+        assertThat(sqlCaptor.getValue(), containsString("FORALL i IN 1 .. l_image_ids.COUNT"));
+        verify(statement).setLong(1, BATCH_ID);
+        verify(statement).setTimestamp(2, Timestamp.valueOf(NOW));
+        verify(statement).setString(3, "EFS_200501");
+        verify(statement).setLong(4, ENVELOPE_ID);
+        verify(statement).setArray(5, imageIds);
+        verify(statement).setArray(6, pageCounts);
+        verify(statement).setString(7, "Y123456");
+        verify(statement).setString(13, "N");
+        verify(statement).setBinaryStream(14, first, 5L);
+        verify(statement).setBinaryStream(15, second);
+        verify(statement).registerOutParameter(16, Types.VARCHAR);
+        verify(statement).execute();
+        verify(imageIds).free();
+        verify(pageCounts).free();
+    }
+
+    @Test
+    void testInsertSubmissionWithoutFormsInsertsBatchAndEnvelopeOnly() throws SQLException {
+        //when
+        dao.insertSubmission(BATCH_ID, "EFS_200501", NOW, ENVELOPE_ID, List.of(), List.of());
+
+        //then
+        verify(jdbcTemplate).execute(sqlCaptor.capture(), callbackCaptor.capture());
+        callbackCaptor.getValue().doInCallableStatement(statement);
+
+        assertThat(sqlCaptor.getValue(), not(containsString("INSERT INTO form")));
+        verify(statement, never()).setArray(anyInt(), any());
+        verify(statement).registerOutParameter(5, Types.VARCHAR);
+        verify(statement).execute();
+    }
+
+    @Test
+    void testInsertSubmissionRejectsFormsWithoutImages() {
+        //when
+        assertThrows(IllegalArgumentException.class,
+            () -> dao.insertSubmission(BATCH_ID, "EFS_200501", NOW, ENVELOPE_ID, List.of(form(1L, 4)), List.of()));
+
+        //then
+        verifyNoInteractions(jdbcTemplate);
+    }
+
+    @Test
+    void testBuildBlockBindsOneImagePerForm() {
+        //when
+        String block = PlsqlSubmissionDao.buildBlock(3);
+
+        //then
+        assertThat(block, containsString("l_image_ids(3), ?"));
+        assertThat(block, not(containsString("l_image_ids(4)")));
+        assertThat(block.chars().filter(c -> c == '?').count(), is(4L + 9L + 3L + 1L));
+    }
+
+    private static FormModel form(final long imageId, final int pages) {
+        return FormModel.builder()
+            .withBarcode("Y123456")
+            .withCompanyName("ACME")
+            .withCompanyNumber("58676784")
+            .withFormType("SH04")
+            .withImageId(imageId)
+            .withEnvelopeId(ENVELOPE_ID)
+            .withFormStatus(1L)
+            .withNumberOfPages(pages)
+            .withBarcodeDate(NOW)
+            .withSameDayService(false)
+            .build();
+    }
+}
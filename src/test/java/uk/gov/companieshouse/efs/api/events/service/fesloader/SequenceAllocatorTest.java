@@ -0,0 +1,146 @@
+package uk.gov.companieshouse.efs.api.events.service.fesloader;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+@ExtendWith(MockitoExtension.class)
+class SequenceAllocatorTest {
+
+    private static final String BLOCK_SQL = "SELECT BATCH_ID_SEQ.nextval FROM dual CONNECT BY LEVEL <= ?";
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private SequenceAllocator allocator;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        allocator = new SequenceAllocator(jdbcTemplate, meterRegistry, 3);
+    }
+
+    @Test
+    void testHandsOutBlockBeforeFetchingAnother() {
+        //given
+        when(jdbcTemplate.queryForList(BLOCK_SQL, Long.class, 3)).thenReturn(List.of(1L, 2L, 3L), List.of(7L, 8L, 9L));
+
+        //when
+        List<Long> actual = List.of(allocator.next("BATCH_ID_SEQ"), allocator.next("BATCH_ID_SEQ"),
+            allocator.next("BATCH_ID_SEQ"), allocator.next("BATCH_ID_SEQ"));
+
+        //then
+        assertThat(actual, is(List.of(1L, 2L, 3L, 7L)));
+        verify(jdbcTemplate, times(2)).queryForList(BLOCK_SQL, Long.class, 3);
+        assertThat(meterRegistry.get("efs.fes.sequence.fetches").tag("sequence", "BATCH_ID_SEQ").counter().count(),
+            is(2.0));
+        assertThat(meterRegistry.get("efs.fes.sequence.remaining").tag("sequence", "BATCH_ID_SEQ").gauge().value(),
+            is(2.0));
+    }
+
+    @Test
+    void testKeepsSeparateBlockPerSequence() {
+        //given
+        when(jdbcTemplate.queryForList(BLOCK_SQL, Long.class, 3)).thenReturn(List.of(1L, 2L, 3L));
+        when(jdbcTemplate.queryForList("SELECT IMAGE_ID_SEQ.nextval FROM dual CONNECT BY LEVEL <= ?", Long.class, 3))
+            .thenReturn(List.of(50L, 51L, 52L));
+
+        //when
+        long batchId = allocator.next("BATCH_ID_SEQ");
+        long imageId = allocator.next("IMAGE_ID_SEQ");
+
+        //then
+        assertEquals(1L, batchId);
+        assertEquals(50L, imageId);
+    }
+
+    @Test
+    void testFetchesSingleValueWhenBlockSizeIsOne() {
+        //given
+        allocator = new SequenceAllocator(jdbcTemplate, meterRegistry, 1);
+        when(jdbcTemplate.queryForList("SELECT BATCH_ID_SEQ.nextval FROM dual", Long.class)).thenReturn(
+            List.of(1L), List.of(2L));
+
+        //when
+        List<Long> actual = List.of(allocator.next("BATCH_ID_SEQ"), allocator.next("BATCH_ID_SEQ"));
+
+        //then
+        assertThat(actual, is(List.of(1L, 2L)));
+    }
+
+    @Test
+    void testThrowsExceptionWhenNoValueReturned() {
+        //given
+        when(jdbcTemplate.queryForList(BLOCK_SQL, Long.class, 3)).thenReturn(Collections.emptyList());
+
+        //when
+        IllegalStateException exception =
+            assertThrows(IllegalStateException.class, () -> allocator.next("BATCH_ID_SEQ"));
+
+        //then
+        assertEquals("No value returned for next BATCH_ID_SEQ", exception.getMessage());
+    }
+
+    @Test
+    void testRejectsInvalidSequenceName() {
+        assertThrows(IllegalArgumentException.class, () -> allocator.next("BATCH_ID_SEQ.nextval FROM dual; --"));
+        verifyNoInteractions(jdbcTemplate);
+    }
+
+    @Test
+    void testRejectsBlockSizeBelowOne() {
+        assertThrows(IllegalArgumentException.class, () -> new SequenceAllocator(jdbcTemplate, meterRegistry, 0));
+    }
+
+    @Test
+    void testConcurrentAllocationsAreUnique() throws InterruptedException {
+        //given
+        final AtomicLong sequence = new AtomicLong();
+        when(jdbcTemplate.queryForList(anyString(), eq(Long.class), eq(3))).thenAnswer(invocation -> List.of(
+            sequence.incrementAndGet(), sequence.incrementAndGet(), sequence.incrementAndGet()));
+        final List<Long> ids = Collections.synchronizedList(new ArrayList<>());
+
+        //when
+        final List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            threads.add(Thread.ofVirtual().start(() -> {
+                for (int j = 0; j < 50; j++) {
+                    ids.add(allocator.next("BATCH_ID_SEQ"));
+                }
+            }));
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+
+        //then
+        assertThat(ids.size(), is(400));
+        assertThat(ids.stream().distinct().count(), is(400L));
+        final double gaps =
+            meterRegistry.get("efs.fes.sequence.gaps").tag("sequence", "BATCH_ID_SEQ").counter().count();
+        final double remaining =
+            meterRegistry.get("efs.fes.sequence.remaining").tag("sequence", "BATCH_ID_SEQ").gauge().value();
+        assertThat((double) sequence.get(), is(400 + gaps + remaining));
+    }
+}
@@ -1,9 +1,14 @@
 package uk.gov.companieshouse.efs.api.filetransfer;
 
+import static org.hamcrest.CoreMatchers.not;
 import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
+import java.util.function.Function;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -14,24 +19,43 @@ import uk.gov.companieshouse.api.handler.filetransfer.InternalFileTransferClient
 @ExtendWith(MockitoExtension.class)
 class ApiClientUtilTest {
 
+    private static final String FILE_TRANSFER_API_URL = "http://file-transfer-api";
+
     private ApiClientUtil apiClientUtil;
 
+    @Mock
+    private Function<String, InternalFileTransferClient> clientFactory;
+
     @Mock
     private InternalFileTransferClient internalFileTransferClient;
 
     @BeforeEach
     void setUp() {
-        apiClientUtil = new ApiClientUtil(internalFileTransferClient);
+        apiClientUtil = new ApiClientUtil(clientFactory);
     }
 
     @Test
-    void getInternalFileTransferClientSetsBasePathAndReturnsClient() {
-        final var fileTransferApiUrl = "http://file-transfer-api";
+    void getInternalFileTransferClientCreatesClientOncePerBasePath() {
+        when(clientFactory.apply(FILE_TRANSFER_API_URL)).thenReturn(internalFileTransferClient);
 
-        final var client = apiClientUtil.getInternalFileTransferClient(fileTransferApiUrl);
+        final var first = apiClientUtil.getInternalFileTransferClient(FILE_TRANSFER_API_URL);
+        final var second = apiClientUtil.getInternalFileTransferClient(FILE_TRANSFER_API_URL);
 
-        verify(internalFileTransferClient).setBasePath(fileTransferApiUrl);
-        assertThat(client, sameInstance(internalFileTransferClient));
+        assertThat(first, sameInstance(internalFileTransferClient));
+        assertThat(second, sameInstance(internalFileTransferClient));
+        verify(clientFactory, times(1)).apply(FILE_TRANSFER_API_URL);
     }
-}
 
+    @Test
+    void getInternalFileTransferClientDoesNotShareClientsBetweenBasePaths() {
+        final var otherUrl = "http://other-file-transfer-api";
+        final var otherClient = mock(InternalFileTransferClient.class);
+        when(clientFactory.apply(FILE_TRANSFER_API_URL)).thenReturn(internalFileTransferClient);
+        when(clientFactory.apply(otherUrl)).thenReturn(otherClient);
+
+        final var first = apiClientUtil.getInternalFileTransferClient(FILE_TRANSFER_API_URL);
+        final var other = apiClientUtil.getInternalFileTransferClient(otherUrl);
+
+        assertThat(first, not(sameInstance(other)));
+    }
+}
@@ -1,17 +1,29 @@
 package uk.gov.companieshouse.efs.api.kafka;
 
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.Future;
+import org.apache.kafka.clients.producer.Callback;
 import org.apache.kafka.clients.producer.KafkaProducer;
 import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.errors.RecordTooLargeException;
+import org.apache.kafka.common.errors.TimeoutException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import uk.gov.companieshouse.kafka.message.Message;
@@ -45,9 +57,21 @@ class CHKafkaProducerTest {
     @Mock
     private KafkaProducerFactory mockProducerFactory;
 
+    @Mock
+    private RecordMetadata recordMetadata;
+
+    @Captor
+    private ArgumentCaptor<Properties> propertiesCaptor;
+
+    @Captor
+    private ArgumentCaptor<Callback> callbackCaptor;
+
+    private SimpleMeterRegistry meterRegistry;
+
     @BeforeEach
     public void setUp() {
         createTestMessage();
+        meterRegistry = new SimpleMeterRegistry();
 
         when(mockProducerFactory.getProducer(any())).thenReturn(mockKafkaProducer);
     }
@@ -104,6 +128,91 @@ class CHKafkaProducerTest {
         verify(mockKafkaProducer).close();
     }
 
+    @Test
+    void testDefaultProducerKeepsIdempotenceOffAndClientBatching() {
+        createTestProducer(true, Acks.WAIT_FOR_ALL);
+
+        verify(mockProducerFactory).getProducer(propertiesCaptor.capture());
+        assertThat(propertiesCaptor.getValue().get("enable.idempotence"), is(false));
+        assertThat(propertiesCaptor.getValue().containsKey("linger.ms"), is(false));
+        assertThat(propertiesCaptor.getValue().containsKey("compression.type"), is(false));
+    }
+
+    @Test
+    void testBatchingProducerAppliesLingerBatchSizeCompressionAndIdempotence() {
+        createBatchingProducer();
+
+        verify(mockProducerFactory).getProducer(propertiesCaptor.capture());
+        final Properties props = propertiesCaptor.getValue();
+        assertThat(props.get("linger.ms"), is(20));
+        assertThat(props.get("batch.size"), is(65536));
+        assertThat(props.get("compression.type"), is("lz4"));
+        assertThat(props.get("enable.idempotence"), is(true));
+    }
+
+    @Test
+    void testSendAsyncCompletesWhenAcknowledgedAndRecordsLatencyPerTopic() {
+        createBatchingProducer();
+
+        final CompletableFuture<RecordMetadata> sent = producer.sendAsync(message);
+
+        verify(mockKafkaProducer).send(any(), callbackCaptor.capture());
+        assertThat(sent.isDone(), is(false));
+        callbackCaptor.getValue().onCompletion(recordMetadata, null);
+        assertThat(sent.join(), is(recordMetadata));
+        assertThat(meterRegistry.get("efs.kafka.producer.send").tags("topic", TOPIC, "outcome", "success").timer()
+                .count(), is(1L));
+    }
+
+    @Test
+    void testSendAsyncFailsWhenBrokerRejectsAndRecordsErrorPerTopic() {
+        createBatchingProducer();
+
+        final CompletableFuture<RecordMetadata> sent = producer.sendAsync(message);
+
+        verify(mockKafkaProducer).send(any(), callbackCaptor.capture());
+        callbackCaptor.getValue().onCompletion(null, new RecordTooLargeException("stub"));
+        final CompletionException expected = assertThrows(CompletionException.class, sent::join);
+        assertThat(expected.getCause() instanceof RecordTooLargeException, is(true));
+        assertThat(meterRegistry.get("efs.kafka.producer.errors")
+                .tags("topic", TOPIC, "error", "RecordTooLargeException").counter().count(), is(1.0));
+    }
+
+    @Test
+    void testSendAsyncFailsWhenSendThrows() {
+        createBatchingProducer();
+        doThrow(new TimeoutException("stub")).when(mockKafkaProducer).send(any(), any());
+
+        final CompletableFuture<RecordMetadata> sent = producer.sendAsync(message);
+
+        assertThat(sent.isCompletedExceptionally(), is(true));
+        assertThat(meterRegistry.get("efs.kafka.producer.errors")
+                .tags("topic", TOPIC, "error", "TimeoutException").counter().count(), is(1.0));
+    }
+
+    @Test
+    void testIdempotenceAppliedWithoutBatching() {
+        producer = new CHKafkaProducer(createConfig(Acks.WAIT_FOR_ALL, TEST_RETRIES), mockProducerFactory,
+                new ProducerBatching(false, 0, 0, "none", true), meterRegistry);
+
+        verify(mockProducerFactory).getProducer(propertiesCaptor.capture());
+        assertThat(propertiesCaptor.getValue().get("enable.idempotence"), is(true));
+        assertThat(propertiesCaptor.getValue().containsKey("linger.ms"), is(false));
+    }
+
+    private ProducerConfig createConfig(Acks acks, int retries) {
+        ProducerConfig config = new ProducerConfig();
+        config.setAcks(acks);
+        config.setBrokerAddresses(new String[]{TEST_BROKER});
+        config.setRetries(retries);
+        return config;
+    }
+
+    private void createBatchingProducer() {
+        producer = new CHKafkaProducer(createConfig(Acks.WAIT_FOR_ALL, TEST_RETRIES), mockProducerFactory,
+                new ProducerBatching(true, 20, 65536, "lz4", true), meterRegistry);
+    }
+
     /**
      * Create the test configuration and a producer to test
      *
@@ -0,0 +1,153 @@
+package uk.gov.companieshouse.efs.api.kafka;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import org.apache.avro.Schema;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.KafkaException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import uk.gov.companieshouse.efs.api.email.EmailSerialiser;
+import uk.gov.companieshouse.efs.api.email.exception.EmailNotPublishedException;
+import uk.gov.companieshouse.efs.api.email.exception.EmailServiceException;
+import uk.gov.companieshouse.efs.api.email.model.EmailDocument;
+import uk.gov.companieshouse.kafka.message.Message;
+
+@ExtendWith(MockitoExtension.class)
+class EmailProducerTest {
+
+    private static final byte[] SERIALISED = "avro".getBytes();
+
+    private EmailProducer emailProducer;
+
+    @Mock
+    private CHKafkaProducer producer;
+
+    @Mock
+    private EmailSerialiser serialiser;
+
+    @Mock
+    private Schema schema;
+
+    @Mock
+    private RecordMetadata recordMetadata;
+
+    @Captor
+    private ArgumentCaptor<Message> messageCaptor;
+
+    private EmailDocument<Map<String, Object>> document;
+
+    @BeforeEach
+    void setUp() {
+        emailProducer = new EmailProducer(producer, serialiser, schema, true, true, 5000, Runnable::run);
+        document = EmailDocument.<Map<String, Object>>builder()
+            .withTopic("email-send")
+            .withMessageId("message-id")
+            .withRecipientEmailAddress("unit-test@ch.gov.uk")
+            .withData(Map.of("to", "unit-test@ch.gov.uk"))
+            .build();
+    }
+
+    @Test
+    void testPublishesSerialisedEmailToItsTopic() {
+        //given
+        when(serialiser.serialize(document, schema)).thenReturn(SERIALISED);
+        when(producer.sendAsync(any())).thenReturn(CompletableFuture.completedFuture(recordMetadata));
+
+        //when
+        emailProducer.send(document).join();
+
+        //then
+        verify(producer).sendAsync(messageCaptor.capture());
+        assertThat(messageCaptor.getValue().getTopic(), is("email-send"));
+        assertThat(messageCaptor.getValue().getValue(), is(SERIALISED));
+    }
+
+    @Test
+    void testFailsWhenBrokerRejectsEmail() {
+        //given
+        final CompletableFuture<RecordMetadata> acknowledged = new CompletableFuture<>();
+        when(serialiser.serialize(document, schema)).thenReturn(SERIALISED);
+        when(producer.sendAsync(any())).thenReturn(acknowledged);
+
+        //when
+        final CompletableFuture<Void> sent = emailProducer.send(document);
+        acknowledged.completeExceptionally(new KafkaException("stub"));
+        final CompletionException expected = assertThrows(CompletionException.class, sent::join);
+
+        //then
+        assertThat(expected.getCause(), is(instanceOf(EmailServiceException.class)));
+        assertThat(expected.getCause(), is(not(instanceOf(EmailNotPublishedException.class))));
+        assertThat(expected.getCause().getMessage(), is("Error publishing email to Kafka topic [email-send]"));
+    }
+
+    @Test
+    void testFailsAsNotPublishedWhenProducerRejectsEmailBeforeTakingIt() {
+        //given
+        final KafkaException failure = new KafkaException("stub");
+        when(serialiser.serialize(document, schema)).thenReturn(SERIALISED);
+        when(producer.sendAsync(any())).thenReturn(CompletableFuture.failedFuture(failure));
+
+        //when
+        final CompletionException expected = assertThrows(CompletionException.class,
+            () -> emailProducer.send(document).join());
+
+        //then
+        assertThat(expected.getCause(), is(instanceOf(EmailNotPublishedException.class)));
+        assertThat(expected.getCause().getCause(), is(failure));
+    }
+
+    @Test
+    void testFailsWhenBrokerDoesNotAcknowledgeInTime() {
+        //given
+        emailProducer = new EmailProducer(producer, serialiser, schema, true, true, 1, Runnable::run);
+        when(serialiser.serialize(document, schema)).thenReturn(SERIALISED);
+        when(producer.sendAsync(any())).thenReturn(new CompletableFuture<>());
+
+        //when
+        final CompletionException expected = assertThrows(CompletionException.class,
+            () -> emailProducer.send(document).join());
+
+        //then
+        assertThat(expected.getCause().getMessage(), is("Timed out publishing email to Kafka topic [email-send]"));
+        assertThat(expected.getCause(), is(not(instanceOf(EmailNotPublishedException.class))));
+    }
+
+    @Test
+    void testFailsWithoutPublishingWhenEmailCannotBeSerialised() {
+        //given
+        final EmailServiceException failure = new EmailServiceException("Error serializing email");
+        when(serialiser.serialize(document, schema)).thenThrow(failure);
+
+        //when
+        final CompletionException expected = assertThrows(CompletionException.class,
+            () -> emailProducer.send(document).join());
+
+        //then
+        assertThat(expected.getCause(), is(instanceOf(EmailNotPublishedException.class)));
+        assertThat(expected.getCause().getCause(), is(failure));
+        verifyNoInteractions(producer);
+    }
+
+    @Test
+    void testRejectsSendTimeoutBelowOne() {
+        assertThrows(IllegalArgumentException.class,
+            () -> new EmailProducer(producer, serialiser, schema, true, true, 0, Runnable::run));
+    }
+}
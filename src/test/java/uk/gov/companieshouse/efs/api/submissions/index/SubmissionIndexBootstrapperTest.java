@@ -0,0 +1,111 @@
+package uk.gov.companieshouse.efs.api.submissions.index;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.List;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import uk.gov.companieshouse.efs.api.submissions.index.SubmissionIndexBootstrapper.IndexBuild;
+import uk.gov.companieshouse.efs.api.submissions.index.SubmissionIndexBootstrapper.State;
+
+@ExtendWith(MockitoExtension.class)
+class SubmissionIndexBootstrapperTest {
+
+    private static final Instant FIXED_NOW = Instant.parse("2024-03-01T10:00:00Z");
+    private static final Clock CLOCK = Clock.fixed(FIXED_NOW, ZoneId.of("UTC"));
+
+    @Mock
+    private MongoTemplate template;
+
+    @Mock
+    private IndexOperations indexOperations;
+
+    @Mock
+    private ApplicationArguments args;
+
+    @Captor
+    private ArgumentCaptor<IndexDefinition> indexCaptor;
+
+    @Test
+    void runEnsuresEachDeclaredIndex() {
+        final var bootstrapper = new SubmissionIndexBootstrapper(template, CLOCK, true);
+        when(template.indexOps("submissions")).thenReturn(indexOperations);
+
+        bootstrapper.run(args);
+
+        verify(indexOperations, times(6)).createIndex(indexCaptor.capture());
+        final List<IndexDefinition> indexes = indexCaptor.getAllValues();
+        assertThat(indexes.get(0).getIndexKeys(), is(new Document("status", 1).append("created_at", 1)));
+        assertThat(indexes.get(1).getIndexKeys(),
+            is(new Document("status", 1).append("same_day", -1).append("created_at", 1)));
+        assertThat(indexes.get(1).getIndexOptions().get("name"),
+            is(SubmissionIndexBootstrapper.PRIORITY_INDEX_NAME));
+        assertThat(indexes.get(2).getIndexKeys(), is(new Document("form.barcode", 1)));
+        assertThat(indexes.get(2).getIndexOptions().get("unique"), is(true));
+        assertThat(indexes.get(2).getIndexOptions().get("partialFilterExpression"),
+            is(new Document("form.barcode", new Document("$exists", true))));
+        assertThat(indexes.get(3).getIndexKeys(),
+            is(new Document("status", 1).append("last_modified_at", 1).append("form.form_type", 1)));
+        assertThat(indexes.get(4).getIndexKeys(),
+            is(new Document("status", 1).append("submitted_at", 1).append("form.form_type", 1)));
+        assertThat(indexes.get(5).getIndexKeys(),
+            is(new Document("status", 1).append("submitted_at", 1).append("fee_on_submission", 1)));
+        bootstrapper.getIndexBuilds().forEach(build -> {
+            assertThat(build.state(), is(State.READY));
+            assertThat(build.startedAt(), is(FIXED_NOW));
+            assertThat(build.completedAt(), is(FIXED_NOW));
+        });
+    }
+
+    @Test
+    void runRecordsFailedBuildAndContinues() {
+        final var bootstrapper = new SubmissionIndexBootstrapper(template, CLOCK, true);
+        when(template.indexOps("submissions")).thenReturn(indexOperations);
+        when(indexOperations.createIndex(any(IndexDefinition.class))).thenReturn("status_created_at")
+            .thenReturn(SubmissionIndexBootstrapper.PRIORITY_INDEX_NAME)
+            .thenThrow(new DuplicateKeyException("duplicate barcode"))
+            .thenReturn("other");
+
+        bootstrapper.run(args);
+
+        verify(indexOperations, times(6)).createIndex(any(IndexDefinition.class));
+        final IndexBuild barcode = bootstrapper.getIndexBuilds().get(2);
+        assertThat(barcode.name(), is("form_barcode"));
+        assertThat(barcode.state(), is(State.FAILED));
+        assertThat(barcode.error(), is("duplicate barcode"));
+        assertThat(bootstrapper.getIndexBuilds().get(5).state(), is(State.READY));
+    }
+
+    @Test
+    void runDoesNothingWhenDisabled() {
+        final var bootstrapper = new SubmissionIndexBootstrapper(template, CLOCK, false);
+
+        bootstrapper.run(args);
+
+        verifyNoInteractions(template);
+        bootstrapper.getIndexBuilds().forEach(build -> {
+            assertThat(build.state(), is(State.DISABLED));
+            assertThat(build.startedAt(), is(nullValue()));
+        });
+    }
+}
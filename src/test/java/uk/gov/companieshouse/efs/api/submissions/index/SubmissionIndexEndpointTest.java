@@ -0,0 +1,94 @@
+package uk.gov.companieshouse.efs.api.submissions.index;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+import com.mongodb.MongoCommandException;
+import com.mongodb.ServerAddress;
+import com.mongodb.client.MongoDatabase;
+import java.time.Instant;
+import java.util.Date;
+import java.util.List;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.PermissionDeniedDataAccessException;
+import org.springframework.data.mongodb.MongoDatabaseFactory;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationResults;
+import uk.gov.companieshouse.efs.api.submissions.index.SubmissionIndexBootstrapper.IndexBuild;
+import uk.gov.companieshouse.efs.api.submissions.index.SubmissionIndexBootstrapper.State;
+import uk.gov.companieshouse.efs.api.submissions.index.SubmissionIndexEndpoint.IndexUsage;
+import uk.gov.companieshouse.efs.api.submissions.index.SubmissionIndexEndpoint.ServerIndexBuild;
+
+@ExtendWith(MockitoExtension.class)
+class SubmissionIndexEndpointTest {
+
+    private static final Date SINCE = Date.from(Instant.parse("2024-03-01T09:00:00Z"));
+
+    private SubmissionIndexEndpoint testEndpoint;
+
+    @Mock
+    private SubmissionIndexBootstrapper bootstrapper;
+
+    @Mock
+    private MongoTemplate template;
+
+    @Mock
+    private MongoDatabaseFactory databaseFactory;
+
+    @Mock
+    private MongoDatabase adminDatabase;
+
+    private final List<IndexBuild> builds = List.of(
+        new IndexBuild("status_created_at", new Document("status", 1).append("created_at", 1), State.READY,
+            SINCE.toInstant(), SINCE.toInstant(), null));
+
+    @BeforeEach
+    void setUp() {
+        testEndpoint = new SubmissionIndexEndpoint(bootstrapper, template);
+        when(bootstrapper.getIndexBuilds()).thenReturn(builds);
+        when(template.getMongoDatabaseFactory()).thenReturn(databaseFactory);
+        when(databaseFactory.getMongoDatabase("admin")).thenReturn(adminDatabase);
+    }
+
+    @Test
+    void reportIncludesBuildsProgressAndUsage() {
+        when(adminDatabase.runCommand(
+            new Document("currentOp", true).append("command.createIndexes", "submissions"))).thenReturn(
+            new Document("inprog", List.of(new Document("msg", "Index Build: scanning collection").append("progress",
+                new Document("done", 250L).append("total", 1000L))))));
+        when(template.aggregate(any(Aggregation.class), eq("submissions"), eq(Document.class))).thenReturn(
+            new AggregationResults<>(List.of(new Document("name", "form_barcode").append("accesses",
+                new Document("ops", 42L).append("since", SINCE))), new Document()));
+
+        final var report = testEndpoint.report();
+
+        assertThat(report.builds(), is(builds));
+        assertThat(report.building(),
+            is(List.of(new ServerIndexBuild("Index Build: scanning collection", 250L, 1000L))));
+        assertThat(report.usage(), is(List.of(new IndexUsage("form_barcode", 42L, SINCE))));
+    }
+
+    @Test
+    void reportOmitsServerSectionsWhenNotPermitted() {
+        when(adminDatabase.runCommand(any(Document.class))).thenThrow(
+            new MongoCommandException(new BsonDocument(), new ServerAddress()));
+        when(template.aggregate(any(Aggregation.class), eq("submissions"), eq(Document.class))).thenThrow(
+            new PermissionDeniedDataAccessException("not authorized", null));
+
+        final var report = testEndpoint.report();
+
+        assertThat(report.builds(), is(builds));
+        assertThat(report.building(), is(List.of()));
+        assertThat(report.usage(), is(List.of()));
+    }
+}
@@ -0,0 +1,72 @@
+package uk.gov.companieshouse.efs.api.submissions.migration;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import com.mongodb.client.result.UpdateResult;
+import java.util.regex.Pattern;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+@ExtendWith(MockitoExtension.class)
+class SameDayFlagMigrationTest {
+
+    private static final String SUBMISSIONS_COLLECTION = "submissions";
+    private static final Query MISSING_FLAG_PROBE = Query.query(Criteria.where("same_day").exists(false)).limit(1);
+
+    @Mock
+    private MongoTemplate template;
+
+    @Mock
+    private UpdateResult updateResult;
+
+    @Mock
+    private ApplicationArguments args;
+
+    @Test
+    void runBackfillsOnlyDocumentsWithoutFlag() {
+        final var migration = new SameDayFlagMigration(template, true);
+        when(template.exists(MISSING_FLAG_PROBE, SUBMISSIONS_COLLECTION)).thenReturn(true);
+        when(template.updateMulti(any(Query.class), any(Update.class), eq(SUBMISSIONS_COLLECTION))).thenReturn(
+            updateResult);
+
+        migration.run(args);
+
+        verify(template).updateMulti(
+            Query.query(Criteria.where("same_day").exists(false).and("form.form_type")
+                .regex(Pattern.compile("SAMEDAY$"))),
+            new Update().set("same_day", true), SUBMISSIONS_COLLECTION);
+        verify(template).updateMulti(Query.query(Criteria.where("same_day").exists(false)),
+            new Update().set("same_day", false), SUBMISSIONS_COLLECTION);
+    }
+
+    @Test
+    void runSkipsBackfillWhenEveryDocumentHasFlag() {
+        final var migration = new SameDayFlagMigration(template, true);
+        when(template.exists(MISSING_FLAG_PROBE, SUBMISSIONS_COLLECTION)).thenReturn(false);
+
+        migration.run(args);
+
+        verify(template, never()).updateMulti(any(Query.class), any(Update.class), any(String.class));
+    }
+
+    @Test
+    void runDoesNothingWhenDisabled() {
+        final var migration = new SameDayFlagMigration(template, false);
+
+        migration.run(args);
+
+        verifyNoInteractions(template);
+    }
+}
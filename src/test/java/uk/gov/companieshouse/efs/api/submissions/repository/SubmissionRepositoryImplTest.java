@@ -6,28 +6,42 @@ import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.collection.IsIterableContainingInOrder.contains;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
-import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.result.UpdateResult;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
+import org.bson.BsonDocument;
+import org.bson.Document;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.data.mongodb.core.query.Update;
 import uk.gov.companieshouse.api.model.efs.fes.FesSubmissionStatus;
+import uk.gov.companieshouse.api.model.efs.submissions.FileConversionStatus;
 import uk.gov.companieshouse.api.model.efs.submissions.SubmissionStatus;
+import uk.gov.companieshouse.efs.api.submissions.model.FileDetails;
 import uk.gov.companieshouse.efs.api.submissions.model.FormDetails;
 import uk.gov.companieshouse.efs.api.submissions.model.Submission;
 import uk.gov.companieshouse.efs.api.util.CurrentTimestampGenerator;
@@ -58,9 +72,18 @@ class SubmissionRepositoryImplTest {
     @Mock
     private CurrentTimestampGenerator timestampGenerator;
 
+    @Mock
+    private BulkOperations bulkOperations;
+
     @Mock
     private Submission submission;
 
+    @Captor
+    private ArgumentCaptor<Query> queryCaptor;
+
+    @Captor
+    private ArgumentCaptor<Update> updateCaptor;
+
     private LocalDateTime localDateTime;
 
     @BeforeEach
@@ -108,17 +131,233 @@ class SubmissionRepositoryImplTest {
         final int maxBatchCount = 5;
         final Submission sameDay = createTestSubmission("SAMEDAY");
         final Submission ordinary = createTestSubmission("QUOTIDIAN");
-        final int sameDayCount = 3;
 
         when(template.find(any(Query.class), eq(Submission.class), anyString())).thenReturn(
-                        Collections.nCopies(sameDayCount, sameDay))
-                .thenReturn(Collections.nCopies(maxBatchCount - sameDayCount, ordinary));
+            List.of(sameDay, ordinary));
 
         final List<Submission> priorityList = repository.findByStatusOrderByPriority(status, maxBatchCount);
 
-        assertThat(priorityList, contains(sameDay, sameDay, sameDay, ordinary, ordinary)); // sameDay occurs before ordinary
-        verify(template).find(argThat((Query q) -> q.getLimit() == maxBatchCount), eq(Submission.class), anyString());
-        verify(template).find(argThat((Query q) -> q.getLimit() == maxBatchCount - sameDayCount), eq(Submission.class), anyString());
+        assertThat(priorityList, contains(sameDay, ordinary));
+        verify(template).find(Query.query(Criteria.where(STATUS).is(status))
+                .with(Sort.by(Sort.Order.desc("same_day"), Sort.Order.asc("created_at")))
+                .limit(maxBatchCount), Submission.class, SUBMISSIONS_COLLECTION);
+    }
+
+    @Test
+    void claimByStatusOrderByPriorityLeasesSubmissionsInPriorityOrderUntilNoneLeft() {
+        final SubmissionStatus status = SubmissionStatus.SUBMITTED;
+        final Submission claimed = Submission.builder().withId(SUBMISSION_ID).withLeaseOwner("owner").build();
+        final Submission claimedNext = Submission.builder().withId("next").withLeaseOwner("owner").build();
+        when(timestampGenerator.generateTimestamp()).thenReturn(localDateTime);
+        when(template.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class),
+            eq(Submission.class), eq(SUBMISSIONS_COLLECTION))).thenReturn(claimed, claimedNext, null);
+
+        final List<Submission> result =
+            repository.claimByStatusOrderByPriority(status, 5, "owner", Duration.ofMinutes(5));
+
+        assertThat(result, contains(claimed, claimedNext));
+        verify(template, Mockito.times(3)).findAndModify(queryCaptor.capture(),
+            eq(new Update().set("lease_owner", "owner").set("lease_expires_at", localDateTime.plusMinutes(5))),
+            any(FindAndModifyOptions.class), eq(Submission.class), eq(SUBMISSIONS_COLLECTION));
+        final Query last = queryCaptor.getAllValues().getLast();
+        assertThat(last.getSortObject(), is(new Document("same_day", -1).append("created_at", 1)));
+        assertThat(last.getQueryObject().get(ID), is(new Document("$nin", List.of(SUBMISSION_ID, "next"))));
+        verify(template, Mockito.never()).find(any(Query.class), eq(Submission.class), anyString());
+    }
+
+    @Test
+    void claimByStatusOrderByPriorityStopsAtMaxBatchSize() {
+        final Submission claimed = Submission.builder().withId(SUBMISSION_ID).withLeaseOwner("owner").build();
+        when(timestampGenerator.generateTimestamp()).thenReturn(localDateTime);
+        when(template.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class),
+            eq(Submission.class), eq(SUBMISSIONS_COLLECTION))).thenReturn(claimed);
+
+        final List<Submission> result =
+            repository.claimByStatusOrderByPriority(SubmissionStatus.SUBMITTED, 1, "owner", Duration.ofMinutes(5));
+
+        assertThat(result, contains(claimed));
+        verify(template).findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class),
+            eq(Submission.class), eq(SUBMISSIONS_COLLECTION));
+    }
+
+    @Test
+    void releaseLeasesUnsetsLeaseFieldsHeldByOwner() {
+        repository.releaseLeases(List.of(SUBMISSION_ID), "owner");
+
+        verify(template).updateMulti(
+            Query.query(Criteria.where(ID).in(List.of(SUBMISSION_ID)).and("lease_owner").is("owner")),
+            new Update().unset("lease_owner").unset("lease_expires_at"), String.class, SUBMISSIONS_COLLECTION);
+    }
+
+    @Test
+    void releaseLeasesDoesNothingWhenNoSubmissions() {
+        repository.releaseLeases(Collections.emptyList(), "owner");
+
+        Mockito.verifyNoInteractions(template);
+    }
+
+    @Test
+    void updateFileConversionStatusSetsQueuedFileWithArrayFilter() {
+        when(timestampGenerator.generateTimestamp()).thenReturn(localDateTime);
+        when(template.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class),
+            eq(Submission.class), eq(SUBMISSIONS_COLLECTION))).thenReturn(submission);
+
+        final Submission result = repository.updateFileConversionStatus(SUBMISSION_ID, "abc",
+            FileConversionStatus.CONVERTED, "999", 3);
+
+        assertThat(result, is(submission));
+        verify(template).findAndModify(queryCaptor.capture(), updateCaptor.capture(), any(FindAndModifyOptions.class),
+            eq(Submission.class), eq(SUBMISSIONS_COLLECTION));
+        assertThat(queryCaptor.getValue(), is(Query.query(Criteria.where(ID).is(SUBMISSION_ID)
+            .and(STATUS).is(SubmissionStatus.PROCESSING)
+            .and("form.file_details").elemMatch(Criteria.where("file_id").is("abc")
+                .and("conversion_status").is(FileConversionStatus.QUEUED)))));
+        final Update update = updateCaptor.getValue();
+        assertThat(update.getUpdateObject(), is(new Document("$set",
+            new Document("form.file_details.$[file].conversion_status", FileConversionStatus.CONVERTED)
+                .append("form.file_details.$[file].converted_file_id", "999")
+                .append("form.file_details.$[file].number_of_pages", 3)
+                .append("form.file_details.$[file].last_modified_at", localDateTime)
+                .append("last_modified_at", localDateTime))));
+        assertThat(update.getArrayFilters().getFirst().asDocument(), is(new Document("file.file_id", "abc")));
+    }
+
+    @Test
+    void updateStatusOnConversionCompleteIsConditionalOnNoFileAwaitingConversion() {
+        when(timestampGenerator.generateTimestamp()).thenReturn(localDateTime);
+        when(template.updateFirst(any(Query.class), any(Update.class), eq(String.class),
+            eq(SUBMISSIONS_COLLECTION))).thenReturn(UpdateResult.acknowledged(1, 1L, null));
+
+        final boolean result =
+            repository.updateStatusOnConversionComplete(SUBMISSION_ID, SubmissionStatus.READY_TO_SUBMIT);
+
+        assertThat(result, is(true));
+        verify(template).updateFirst(Query.query(Criteria.where(ID).is(SUBMISSION_ID)
+                .and(STATUS).is(SubmissionStatus.PROCESSING)
+                .and("form.file_details").not().elemMatch(Criteria.where("conversion_status")
+                    .nin(FileConversionStatus.CONVERTED, FileConversionStatus.FAILED))),
+            new Update().set(STATUS, SubmissionStatus.READY_TO_SUBMIT).set("last_modified_at", localDateTime),
+            String.class, SUBMISSIONS_COLLECTION);
+    }
+
+    @Test
+    void updateStatusOnConversionCompleteReportsTransitionAlreadyMade() {
+        when(timestampGenerator.generateTimestamp()).thenReturn(localDateTime);
+        when(template.updateFirst(any(Query.class), any(Update.class), eq(String.class),
+            eq(SUBMISSIONS_COLLECTION))).thenReturn(UpdateResult.acknowledged(0, 0L, null));
+
+        assertThat(repository.updateStatusOnConversionComplete(SUBMISSION_ID, SubmissionStatus.READY_TO_SUBMIT),
+            is(false));
+    }
+
+    @Test
+    void updateFileConversionStatusesSetsEachFileWithItsOwnArrayFilter() {
+        final LocalDateTime avCheckedAt = localDateTime.minusSeconds(1);
+        final Submission avChecked = submissionWithFiles(
+            FileDetails.builder().withFileId("abc").withConversionStatus(FileConversionStatus.CLEAN_AV)
+                .withLastModifiedAt(avCheckedAt).build(),
+            FileDetails.builder().withFileId("def").withConversionStatus(FileConversionStatus.FAILED_AV)
+                .withLastModifiedAt(avCheckedAt).build());
+        when(timestampGenerator.generateTimestamp()).thenReturn(localDateTime);
+        when(template.bulkOps(BulkOperations.BulkMode.UNORDERED, Submission.class, SUBMISSIONS_COLLECTION))
+            .thenReturn(bulkOperations);
+        when(bulkOperations.execute()).thenReturn(bulkWriteResult(1));
+
+        final Set<String> failed = repository.updateFileConversionStatuses(List.of(avChecked));
+
+        assertThat(failed, is(Set.of()));
+        verify(bulkOperations).updateOne(queryCaptor.capture(), updateCaptor.capture());
+        assertThat(queryCaptor.getValue(), is(Query.query(Criteria.where(ID).is(SUBMISSION_ID))));
+        final Update update = updateCaptor.getValue();
+        assertThat(update.getUpdateObject(), is(new Document("$set",
+            new Document("last_modified_at", localDateTime)
+                .append("form.file_details.$[file0].conversion_status", FileConversionStatus.CLEAN_AV)
+                .append("form.file_details.$[file0].last_modified_at", avCheckedAt)
+                .append("form.file_details.$[file1].conversion_status", FileConversionStatus.FAILED_AV)
+                .append("form.file_details.$[file1].last_modified_at", avCheckedAt))));
+        assertThat(update.getArrayFilters().get(0).asDocument(), is(new Document("file0.file_id", "abc")));
+        assertThat(update.getArrayFilters().get(1).asDocument(), is(new Document("file1.file_id", "def")));
+    }
+
+    @Test
+    void updateFileConversionStatusesWritesNothingWithoutSubmissions() {
+        when(timestampGenerator.generateTimestamp()).thenReturn(localDateTime);
+
+        assertThat(repository.updateFileConversionStatuses(List.of()), is(Set.of()));
+        Mockito.verifyNoInteractions(template);
+    }
+
+    @Test
+    void updateSubmissionsQueuedIsConditionalOnSubmittedStatus() {
+        final Submission queued = submissionWithFiles(
+            FileDetails.builder().withFileId("abc").withConversionStatus(FileConversionStatus.CLEAN_AV)
+                .withQueueAttempts(1).build());
+        when(timestampGenerator.generateTimestamp()).thenReturn(localDateTime);
+        when(template.bulkOps(BulkOperations.BulkMode.UNORDERED, Submission.class, SUBMISSIONS_COLLECTION))
+            .thenReturn(bulkOperations);
+        when(bulkOperations.execute()).thenReturn(bulkWriteResult(1));
+
+        final Set<String> failed = repository.updateSubmissionsQueued(List.of(queued));
+
+        assertThat(failed, is(Set.of()));
+        verify(bulkOperations).updateOne(queryCaptor.capture(), updateCaptor.capture());
+        assertThat(queryCaptor.getValue(), is(Query.query(Criteria.where(ID).is(SUBMISSION_ID)
+            .and(STATUS).is(SubmissionStatus.SUBMITTED))));
+        final Update update = updateCaptor.getValue();
+        assertThat(update.getUpdateObject(), is(new Document("$set",
+            new Document(STATUS, SubmissionStatus.PROCESSING)
+                .append("last_modified_at", localDateTime)
+                .append("form.file_details.$[file0].conversion_status", FileConversionStatus.QUEUED)
+                .append("form.file_details.$[file0].last_modified_at", localDateTime)
+                .append("form.file_details.$[file0].queue_attempts", 2))));
+        assertThat(update.getArrayFilters().getFirst().asDocument(), is(new Document("file0.file_id", "abc")));
+    }
+
+    @Test
+    void updateSubmissionsQueuedReportsSubmissionsWhoseWriteFailed() {
+        final BulkOperationException exception = Mockito.mock(BulkOperationException.class);
+        when(exception.getErrors()).thenReturn(
+            List.of(new BulkWriteError(50, "operation exceeded time limit", new BsonDocument(), 1)));
+        when(exception.getResult()).thenReturn(bulkWriteResult(1));
+        when(timestampGenerator.generateTimestamp()).thenReturn(localDateTime);
+        when(template.bulkOps(BulkOperations.BulkMode.UNORDERED, Submission.class, SUBMISSIONS_COLLECTION))
+            .thenReturn(bulkOperations);
+        when(bulkOperations.execute()).thenThrow(exception);
+
+        final Set<String> failed = repository.updateSubmissionsQueued(List.of(
+            submissionWithFiles(FileDetails.builder().withFileId("abc").build()),
+            Submission.builder().withId("other").withFormDetails(FormDetails.builder()
+                .withFileDetailsList(List.of(FileDetails.builder().withFileId("def").build())).build()).build()));
+
+        assertThat(failed, is(Set.of("other")));
+    }
+
+    @Test
+    void updateQueueAttemptsCountsAttemptAgainstEachFileOfSubmittedSubmission() {
+        final Submission notQueued = submissionWithFiles(
+            FileDetails.builder().withFileId("abc").withConversionStatus(FileConversionStatus.CLEAN_AV).build());
+        when(template.bulkOps(BulkOperations.BulkMode.UNORDERED, Submission.class, SUBMISSIONS_COLLECTION))
+            .thenReturn(bulkOperations);
+        when(bulkOperations.execute()).thenReturn(bulkWriteResult(1));
+
+        repository.updateQueueAttempts(List.of(notQueued));
+
+        verify(bulkOperations).updateOne(queryCaptor.capture(), updateCaptor.capture());
+        assertThat(queryCaptor.getValue(), is(Query.query(Criteria.where(ID).is(SUBMISSION_ID)
+            .and(STATUS).is(SubmissionStatus.SUBMITTED))));
+        assertThat(updateCaptor.getValue().getUpdateObject(), is(new Document("$set",
+            new Document("form.file_details.$[file0].queue_attempts", 1))));
+        Mockito.verifyNoInteractions(timestampGenerator);
+    }
+
+    private static BulkWriteResult bulkWriteResult(final int matched) {
+        return BulkWriteResult.acknowledged(0, matched, 0, matched, List.of(), List.of());
+    }
+
+    private static Submission submissionWithFiles(final FileDetails... files) {
+        return Submission.builder().withId(SUBMISSION_ID)
+            .withFormDetails(FormDetails.builder().withFileDetailsList(List.of(files)).build())
+            .build();
     }
 
     private Submission createTestSubmission(final String formType) {
@@ -0,0 +1,149 @@
+package uk.gov.companieshouse.efs.api.submissions.repository;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import com.mongodb.bulk.BulkWriteError;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import org.bson.BsonDocument;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import uk.gov.companieshouse.api.model.efs.submissions.SubmissionStatus;
+import uk.gov.companieshouse.efs.api.submissions.model.Submission;
+import uk.gov.companieshouse.efs.api.util.CurrentTimestampGenerator;
+
+@ExtendWith(MockitoExtension.class)
+class SubmissionWriteSinkTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2024, 6, 1, 12, 0);
+
+    private SubmissionWriteSink sink;
+
+    @Mock
+    private MongoTemplate template;
+
+    @Mock
+    private BulkOperations bulkOperations;
+
+    @Mock
+    private CurrentTimestampGenerator timestampGenerator;
+
+    @BeforeEach
+    void setUp() {
+        sink = new SubmissionWriteSink(template, timestampGenerator);
+    }
+
+    @Test
+    void flushDoesNothingWhenEmpty() {
+        final var result = sink.flush();
+
+        assertThat(result.written(), is(0));
+        assertThat(result.failures(), is(Map.of()));
+        verifyNoInteractions(template);
+    }
+
+    @Test
+    void flushWritesStatusChangesAsUpdates() {
+        when(timestampGenerator.generateTimestamp()).thenReturn(NOW);
+        when(template.bulkOps(BulkOperations.BulkMode.UNORDERED, Submission.class, "submissions")).thenReturn(
+            bulkOperations);
+
+        sink.updateStatus("123", SubmissionStatus.PROCESSED_BY_EMAIL);
+        final var result = sink.flush();
+
+        verify(bulkOperations).updateOne(Query.query(Criteria.where("_id").is("123")),
+            new Update().set("status", SubmissionStatus.PROCESSED_BY_EMAIL).set("last_modified_at", NOW));
+        verify(bulkOperations).execute();
+        assertThat(result.written(), is(1));
+        assertThat(sink.size(), is(0));
+    }
+
+    @Test
+    void flushWritesLatestStatusChangePerSubmission() {
+        when(timestampGenerator.generateTimestamp()).thenReturn(NOW);
+        when(template.bulkOps(BulkOperations.BulkMode.UNORDERED, Submission.class, "submissions")).thenReturn(
+            bulkOperations);
+
+        sink.updateStatus("123", SubmissionStatus.PROCESSED_BY_EMAIL);
+        sink.updateStatus("123", SubmissionStatus.REJECTED_BY_VIRUS_SCAN);
+        final var result = sink.flush();
+
+        verify(bulkOperations).updateOne(Query.query(Criteria.where("_id").is("123")),
+            new Update().set("status", SubmissionStatus.REJECTED_BY_VIRUS_SCAN).set("last_modified_at", NOW));
+        verify(bulkOperations, never()).replaceOne(any(Query.class), any());
+        assertThat(result.written(), is(1));
+    }
+
+    @Test
+    void flushReportsFailedWritesPerSubmission() {
+        final var exception = mock(BulkOperationException.class);
+        when(exception.getErrors()).thenReturn(
+            List.of(new BulkWriteError(11000, "duplicate key", new BsonDocument(), 1)));
+        when(timestampGenerator.generateTimestamp()).thenReturn(NOW);
+        when(template.bulkOps(BulkOperations.BulkMode.UNORDERED, Submission.class, "submissions")).thenReturn(
+            bulkOperations);
+        when(bulkOperations.execute()).thenThrow(exception);
+
+        sink.updateStatus("123", SubmissionStatus.PROCESSED_BY_EMAIL);
+        sink.updateStatus("456", SubmissionStatus.PROCESSED_BY_EMAIL);
+        sink.updateStatus("789", SubmissionStatus.PROCESSED_BY_EMAIL);
+        final var result = sink.flush();
+
+        assertThat(result.written(), is(2));
+        assertThat(result.failures(), is(Map.of("456", "duplicate key")));
+        assertThat(sink.size(), is(1));
+    }
+
+    @Test
+    void flushKeepsEveryWriteWhenBulkWriteFailsAsAWhole() {
+        when(timestampGenerator.generateTimestamp()).thenReturn(NOW);
+        when(template.bulkOps(BulkOperations.BulkMode.UNORDERED, Submission.class, "submissions")).thenReturn(
+            bulkOperations);
+        when(bulkOperations.execute()).thenThrow(new DataAccessResourceFailureException("connection reset"));
+
+        sink.updateStatus("123", SubmissionStatus.PROCESSED_BY_EMAIL);
+        sink.updateStatus("456", SubmissionStatus.REJECTED_BY_VIRUS_SCAN);
+        final var result = sink.flush();
+
+        assertThat(result.written(), is(0));
+        assertThat(result.failures(), is(Map.of("123", "connection reset", "456", "connection reset")));
+        assertThat(sink.size(), is(2));
+    }
+
+    @Test
+    void flushWritesKeptWritesAgain() {
+        when(timestampGenerator.generateTimestamp()).thenReturn(NOW);
+        when(template.bulkOps(BulkOperations.BulkMode.UNORDERED, Submission.class, "submissions")).thenReturn(
+            bulkOperations);
+        when(bulkOperations.execute()).thenThrow(new DataAccessResourceFailureException("connection reset"))
+            .thenReturn(null);
+
+        sink.updateStatus("123", SubmissionStatus.PROCESSED_BY_EMAIL);
+        sink.flush();
+        final var result = sink.flush();
+
+        verify(bulkOperations, times(2)).updateOne(Query.query(Criteria.where("_id").is("123")),
+            new Update().set("status", SubmissionStatus.PROCESSED_BY_EMAIL).set("last_modified_at", NOW));
+        assertThat(result.written(), is(1));
+        assertThat(sink.size(), is(0));
+    }
+}
@@ -9,6 +9,7 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.api.function.Executable;
 import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
 import org.junit.jupiter.params.provider.MethodSource;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
@@ -222,6 +223,21 @@ class SubmissionServiceImplTest {
         assertThat(updateSubmission.getFormDetails().getFormType(), is(equalTo(formApi.getFormType())));
     }
 
+    @ParameterizedTest
+    @CsvSource({"SH19_SAMEDAY,true", "SH19,false"})
+    void testUpdateSubmissionWithFormSetsSameDayFlag(final String formType, final boolean expectedSameDay) {
+        // given
+        when(submission.getStatus()).thenReturn(SubmissionStatus.OPEN);
+        when(submissionRepository.read(anyString())).thenReturn(submission);
+
+        // when
+        submissionService.updateSubmissionWithForm(SUBMISSION_ID, new FormTypeApi(formType));
+
+        // then
+        verify(submissionRepository).updateSubmission(submissionCaptor.capture());
+        assertThat(submissionCaptor.getValue().getSameDay(), is(expectedSameDay));
+    }
+
     @Test
     void testUpdateSubmissionWithFormWhenFormTypeNull() {
         // given